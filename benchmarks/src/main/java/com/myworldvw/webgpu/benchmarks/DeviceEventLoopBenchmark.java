@@ -0,0 +1,112 @@
+package com.myworldvw.webgpu.benchmarks;
+
+import com.myworldvw.webgpu.async.CallbackDispatcher;
+import com.myworldvw.webgpu.async.DeviceEventLoop;
+import com.myworldvw.webgpu.wgpu.wgpu_h;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.foreign.MemorySegment;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Completing {@code wgpuQueueOnSubmittedWorkDone} requests with a {@link DeviceEventLoop},
+ * compared to a naive polling thread that calls {@code wgpuDevicePoll} in a tight loop
+ * ({@code BUSY_POLL}) or once per millisecond ({@code SLEEP_POLL}).
+ * <p>
+ * {@code completionLatency} samples the time from making a request to its completion, which
+ * on the mock is almost entirely the time the polling thread takes to notice it.
+ * {@code idle} waits a millisecond without any request pending; its {@code pollerCpuMicros}
+ * counter is the CPU time the polling thread burned meanwhile.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--enable-preview", "--enable-native-access=ALL-UNNAMED"})
+public class DeviceEventLoopBenchmark {
+
+    public enum Driver {
+        EVENT_LOOP, BUSY_POLL, SLEEP_POLL
+    }
+
+    @Param({"EVENT_LOOP", "BUSY_POLL", "SLEEP_POLL"})
+    public Driver driver;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class PollerCpu {
+
+        public double pollerCpuMicros;
+
+        @Setup(Level.Iteration)
+        public void reset(){
+            pollerCpuMicros = 0;
+        }
+    }
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private DeviceEventLoop loop;
+    private Thread poller;
+    private volatile boolean running;
+
+    @Setup
+    public void setup(MockDevice mock){
+        running = true;
+        switch(driver){
+            case EVENT_LOOP -> loop = new DeviceEventLoop(mock.device, task -> poller = new Thread(task, "event-loop"));
+            case BUSY_POLL -> poller = new Thread(() -> {
+                while(running){
+                    wgpu_h.wgpuDevicePoll(mock.device, 0, MemorySegment.NULL);
+                }
+            }, "busy-poll");
+            case SLEEP_POLL -> poller = new Thread(() -> {
+                while(running){
+                    wgpu_h.wgpuDevicePoll(mock.device, 0, MemorySegment.NULL);
+                    try{
+                        Thread.sleep(1);
+                    }catch(InterruptedException e){
+                        return;
+                    }
+                }
+            }, "sleep-poll");
+        }
+        if(loop == null){
+            poller.setDaemon(true);
+            poller.start();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        running = false;
+        if(loop != null){
+            loop.close();
+        }
+        poller.join();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Integer completionLatency(MockDevice mock){
+        return workDone(mock).join();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void idle(PollerCpu cpu) throws InterruptedException {
+        var start = THREADS.getThreadCpuTime(poller.threadId());
+        Thread.sleep(1);
+        cpu.pollerCpuMicros += (THREADS.getThreadCpuTime(poller.threadId()) - start) / 1e3;
+    }
+
+    private CompletableFuture<Integer> workDone(MockDevice mock){
+        return loop != null
+                ? loop.onSubmittedWorkDone(mock.queue)
+                : CallbackDispatcher.onSubmittedWorkDone(mock.queue);
+    }
+}
@@ -0,0 +1,63 @@
+package com.myworldvw.webgpu.benchmarks;
+
+import com.myworldvw.webgpu.binding.WebGPU;
+import com.myworldvw.webgpu.webgpu_h;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+
+/**
+ * Downcall latency.
+ * <p>
+ * The {@code native*} benchmarks call libc's {@code getpid} - a real native function that does
+ * next to nothing - as a regular and as a trivial downcall, which is the difference
+ * {@link com.myworldvw.webgpu.binding.TrivialCalls} makes for the per-draw entry points. The
+ * mock can't show that difference: trivial downcalls must not call back into Java, so
+ * {@code TrivialCalls} falls back to regular downcalls while the mock is installed.
+ * <p>
+ * The {@code mock*} benchmarks call a cheap WebGPU function through {@code webgpu_h} and the
+ * lazily bound {@code WebGPU}, which should perform the same once both are initialized.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--enable-preview", "--enable-native-access=ALL-UNNAMED"})
+public class DowncallBenchmark {
+
+    private static final MethodHandle GETPID;
+    private static final MethodHandle GETPID_TRIVIAL;
+
+    static {
+        var linker = Linker.nativeLinker();
+        var getpid = linker.defaultLookup().find("getpid").orElseThrow();
+        GETPID = linker.downcallHandle(getpid, FunctionDescriptor.of(JAVA_INT));
+        GETPID_TRIVIAL = linker.downcallHandle(getpid, FunctionDescriptor.of(JAVA_INT), Linker.Option.isTrivial());
+    }
+
+    @Benchmark
+    public int nativeDowncall() throws Throwable {
+        return (int) GETPID.invokeExact();
+    }
+
+    @Benchmark
+    public int nativeTrivialDowncall() throws Throwable {
+        return (int) GETPID_TRIVIAL.invokeExact();
+    }
+
+    @Benchmark
+    public long mockJextractBinding(MockDevice mock){
+        return webgpu_h.wgpuBufferGetSize(mock.buffer);
+    }
+
+    @Benchmark
+    public long mockLazyBinding(MockDevice mock){
+        return WebGPU.wgpuBufferGetSize(mock.buffer);
+    }
+}
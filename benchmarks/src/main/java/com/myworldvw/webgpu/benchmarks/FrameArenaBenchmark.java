@@ -0,0 +1,67 @@
+package com.myworldvw.webgpu.benchmarks;
+
+import com.myworldvw.webgpu.*;
+import com.myworldvw.webgpu.memory.FrameArena;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.SegmentAllocator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-frame descriptor allocation with {@link FrameArena} versus a confined arena opened and
+ * closed every frame. The 100k-frame soak that checks native memory stays flat is
+ * {@code FrameArenaSoakTest} in {@code :lib}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--enable-preview", "--enable-native-access=ALL-UNNAMED"})
+public class FrameArenaBenchmark {
+
+    private FrameArena frames;
+    private int frame;
+
+    @Setup(Level.Iteration)
+    public void setup(){
+        frames = new FrameArena(FrameArena.DEFAULT_BLOCK_SIZE, 3);
+        frame = 0;
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown(){
+        frames.close();
+    }
+
+    /**
+     * The descriptors a small frame allocates: a render pass, a few bind groups whose entry
+     * count varies from frame to frame, and a label.
+     */
+    private static void allocateFrame(SegmentAllocator allocator, int frame){
+        var pass = WGPURenderPassDescriptor.allocate(allocator);
+        var attachment = WGPURenderPassColorAttachment.allocate(allocator);
+        WGPURenderPassDescriptor.colorAttachments$set(pass, attachment);
+        for(int i = 0; i < 4; i++){
+            var group = WGPUBindGroupDescriptor.allocate(allocator);
+            var entries = WGPUBindGroupEntry.allocateArray(1 + (frame + i) % 5, allocator);
+            WGPUBindGroupDescriptor.entries$set(group, entries);
+        }
+        WGPUCommandEncoderDescriptor.label$set(WGPUCommandEncoderDescriptor.allocate(allocator),
+                allocator.allocateUtf8String("frame encoder"));
+    }
+
+    @Benchmark
+    public void frameArena(){
+        frames.nextFrame();
+        allocateFrame(frames, frame++);
+    }
+
+    @Benchmark
+    public void confinedArenaPerFrame(){
+        try(var arena = Arena.ofConfined()){
+            allocateFrame(arena, frame++);
+        }
+    }
+}
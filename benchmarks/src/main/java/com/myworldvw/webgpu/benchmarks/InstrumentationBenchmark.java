@@ -0,0 +1,87 @@
+package com.myworldvw.webgpu.benchmarks;
+
+import com.myworldvw.webgpu.async.CallbackDispatcher;
+import com.myworldvw.webgpu.instrument.Instrumentation;
+import com.myworldvw.webgpu.wgpu.wgpu_h;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.concurrent.TimeUnit;
+
+import static com.myworldvw.webgpu.webgpu_h.*;
+
+/**
+ * The cost of {@link Instrumentation} on calls it wraps. Each benchmark runs once in a JVM
+ * without instrumentation and once, as its {@code *Instrumented} twin, in a JVM started with
+ * {@value Instrumentation#PROPERTY}{@code =true} - but no JFR recording, so the events are
+ * created and discarded.
+ * <p>
+ * {@code encodeAndSubmit} creates, finishes, submits and releases a command encoder, going
+ * through the live-object counters and the submit event. {@code map} maps and unmaps a
+ * buffer, going through the interposed map callback.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--enable-preview", "--enable-native-access=ALL-UNNAMED"})
+public class InstrumentationBenchmark {
+
+    private static final String INSTRUMENTED = "-D" + Instrumentation.PROPERTY + "=true";
+
+    private Arena arena;
+    private MemorySegment commands;
+
+    @Setup
+    public void setup(){
+        arena = Arena.ofConfined();
+        commands = arena.allocateArray(WGPUCommandBuffer, 1);
+    }
+
+    @TearDown
+    public void tearDown(){
+        arena.close();
+    }
+
+    @Benchmark
+    public void encodeAndSubmit(MockDevice mock){
+        encodeAndSubmit(mock.device, mock.queue);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = {"--enable-preview", "--enable-native-access=ALL-UNNAMED", INSTRUMENTED})
+    public void encodeAndSubmitInstrumented(MockDevice mock){
+        encodeAndSubmit(mock.device, mock.queue);
+    }
+
+    @Benchmark
+    public int map(MockDevice mock) throws Exception {
+        return map(mock.device, mock.mapBuffer);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = {"--enable-preview", "--enable-native-access=ALL-UNNAMED", INSTRUMENTED})
+    public int mapInstrumented(MockDevice mock) throws Exception {
+        return map(mock.device, mock.mapBuffer);
+    }
+
+    private void encodeAndSubmit(MemorySegment device, MemorySegment queue){
+        var encoder = wgpuDeviceCreateCommandEncoder(device, MemorySegment.NULL);
+        var commandBuffer = wgpuCommandEncoderFinish(encoder, MemorySegment.NULL);
+        commands.setAtIndex(WGPUCommandBuffer, 0, commandBuffer);
+        wgpuQueueSubmit(queue, 1, commands);
+        wgpuCommandBufferRelease(commandBuffer);
+        wgpuCommandEncoderRelease(encoder);
+    }
+
+    private static int map(MemorySegment device, MemorySegment buffer) throws Exception {
+        var mapped = CallbackDispatcher.mapAsync(buffer, WGPUMapMode_Read(), 0, 256);
+        while(!mapped.isDone()){
+            wgpu_h.wgpuDevicePoll(device, 0, MemorySegment.NULL);
+        }
+        wgpuBufferUnmap(buffer);
+        return mapped.get();
+    }
+}
@@ -0,0 +1,58 @@
+package com.myworldvw.webgpu.benchmarks;
+
+import com.myworldvw.webgpu.*;
+import com.myworldvw.webgpu.async.CallbackDispatcher;
+import com.myworldvw.webgpu.mock.MockWebGPU;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+
+import static com.myworldvw.webgpu.webgpu_h.*;
+
+/**
+ * A device, queue and a few objects on the Java mock backend, shared by the benchmarks
+ * that call through the bindings.
+ * <p>
+ * Note that every call into the mock is a downcall immediately followed by an upcall back
+ * into Java, so absolute timings are higher than against wgpu-native - the benchmarks are
+ * meant for comparing binding patterns with each other and across binding releases.
+ */
+@State(Scope.Benchmark)
+public class MockDevice {
+
+    public MockWebGPU mock;
+    public MemorySegment instance;
+    public MemorySegment device;
+    public MemorySegment queue;
+    public MemorySegment buffer;
+    public MemorySegment mapBuffer;
+
+    @Setup
+    public void setup() throws Exception {
+        mock = MockWebGPU.install();
+        instance = wgpuCreateInstance(MemorySegment.NULL);
+        var adapter = CallbackDispatcher.requestAdapter(instance, MemorySegment.NULL).get().handle();
+        device = CallbackDispatcher.requestDevice(adapter, MemorySegment.NULL).get().handle();
+        queue = wgpuDeviceGetQueue(device);
+
+        try(var arena = Arena.ofConfined()){
+            var descriptor = WGPUBufferDescriptor.allocate(arena);
+            WGPUBufferDescriptor.usage$set(descriptor, WGPUBufferUsage_Vertex() | WGPUBufferUsage_CopyDst());
+            WGPUBufferDescriptor.size$set(descriptor, 64 * 1024);
+            buffer = wgpuDeviceCreateBuffer(device, descriptor);
+
+            WGPUBufferDescriptor.usage$set(descriptor, WGPUBufferUsage_MapRead() | WGPUBufferUsage_CopyDst());
+            WGPUBufferDescriptor.size$set(descriptor, 256);
+            mapBuffer = wgpuDeviceCreateBuffer(device, descriptor);
+        }
+    }
+
+    @TearDown
+    public void tearDown(){
+        mock.reset();
+    }
+}
@@ -0,0 +1,89 @@
+package com.myworldvw.webgpu.benchmarks;
+
+import com.myworldvw.webgpu.builder.RenderPassDescriptorBuilder;
+import com.myworldvw.webgpu.frame.OffscreenRenderer;
+import com.myworldvw.webgpu.memory.FrameArena;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.foreign.ValueLayout;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import static com.myworldvw.webgpu.webgpu_h.*;
+
+/**
+ * Headless rendering and readback with an {@link OffscreenRenderer}, in frames per second, as
+ * the number of frames in flight grows. {@code framesInFlight = 1} waits for every frame's
+ * readback before rendering the next; with more the readback of one frame overlaps the
+ * rendering of the following ones.
+ * <p>
+ * A width of 256 texels gives rows that need no padding, so images are views of the mapped
+ * buffer; 300 texels has every row repacked without its padding.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--enable-preview", "--enable-native-access=ALL-UNNAMED"})
+public class OffscreenRendererBenchmark {
+
+    @Param({"1", "2", "3"})
+    public int framesInFlight;
+
+    @Param({"256", "300"})
+    public int width;
+
+    private OffscreenRenderer renderer;
+    private FrameArena arena;
+    private OffscreenRenderer.Scene scene;
+    private volatile long checksum;
+
+    @Setup
+    public void setup(MockDevice mock){
+        renderer = new OffscreenRenderer(mock.device, null, WGPUTextureFormat_RGBA8Unorm(), width, 256,
+                framesInFlight, null, Runnable::run);
+        arena = new FrameArena(4 * 1024);
+        scene = (encoder, target, frame) -> {
+            arena.reset();
+            var descriptor = RenderPassDescriptorBuilder.allocate(arena);
+            descriptor.colorAttachments(1)
+                    .view(target)
+                    .loadOp(WGPULoadOp_Clear())
+                    .storeOp(WGPUStoreOp_Store())
+                    .clearValue().r(frame % 2).g(0.5).b(0).a(1);
+            var pass = wgpuCommandEncoderBeginRenderPass(encoder, descriptor.segment());
+            wgpuRenderPassEncoderEnd(pass);
+            wgpuRenderPassEncoderRelease(pass);
+        };
+        renderer.subscribe(new Flow.Subscriber<>(){
+            @Override
+            public void onSubscribe(Flow.Subscription subscription){
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(OffscreenRenderer.Image image){
+                checksum += image.pixels().get(ValueLayout.JAVA_BYTE, image.pixels().byteSize() - 1);
+            }
+
+            @Override
+            public void onError(Throwable throwable){}
+
+            @Override
+            public void onComplete(){}
+        });
+    }
+
+    @TearDown
+    public void tearDown(MockDevice mock){
+        renderer.close();
+        arena.close();
+        mock.mock.flush();
+    }
+
+    @Benchmark
+    public long render() throws InterruptedException {
+        return renderer.render(scene);
+    }
+}
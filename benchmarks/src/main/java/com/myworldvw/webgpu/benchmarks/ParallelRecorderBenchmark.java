@@ -0,0 +1,197 @@
+package com.myworldvw.webgpu.benchmarks;
+
+import com.myworldvw.webgpu.WGPUExtent3D;
+import com.myworldvw.webgpu.WGPURenderBundleEncoderDescriptor;
+import com.myworldvw.webgpu.WGPUTextureDescriptor;
+import com.myworldvw.webgpu.builder.RenderPassDescriptorBuilder;
+import com.myworldvw.webgpu.builder.RenderPipelineDescriptorBuilder;
+import com.myworldvw.webgpu.builder.ShaderModuleDescriptorBuilder;
+import com.myworldvw.webgpu.builder.ShaderModuleWGSLDescriptorBuilder;
+import com.myworldvw.webgpu.cache.RenderBundleCache;
+import com.myworldvw.webgpu.frame.ParallelRecorder;
+import com.myworldvw.webgpu.memory.FrameArena;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static com.myworldvw.webgpu.binding.TrivialCalls.wgpuRenderPassEncoderDraw;
+import static com.myworldvw.webgpu.binding.TrivialCalls.wgpuRenderPassEncoderSetPipeline;
+import static com.myworldvw.webgpu.binding.TrivialCalls.wgpuRenderPassEncoderSetVertexBuffer;
+import static com.myworldvw.webgpu.webgpu_h.*;
+
+/**
+ * Recording a CPU-bound frame - {@code passes} render passes or render bundles of
+ * {@code drawsPerPass} draws each - with a {@link ParallelRecorder} on 1 to N threads.
+ * <p>
+ * {@code threads} counts the recording thread itself: with 1 everything is recorded on the
+ * calling thread, with N the recorder's pool has N - 1 workers. {@code commandBuffers} records
+ * one command buffer per pass and submits them together; {@code renderBundles} records one
+ * bundle per pass and executes them in a single render pass; {@code cachedBundles} executes
+ * the same bundles from a {@link RenderBundleCache}, which is what static geometry costs once
+ * recorded.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--enable-preview", "--enable-native-access=ALL-UNNAMED"})
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ParallelRecorderBenchmark {
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    @Param({"16"})
+    public int passes;
+
+    @Param({"256"})
+    public int drawsPerPass;
+
+    private ForkJoinPool pool;
+    private ParallelRecorder recorder;
+    private RenderBundleCache bundles;
+    private Arena arena;
+    private FrameArena frameArena;
+    private MemorySegment pipeline;
+    private MemorySegment target;
+    private MemorySegment view;
+    private MemorySegment bundleDescriptor;
+    private List<ParallelRecorder.Pass> passList;
+    private List<ParallelRecorder.Bundle> bundleList;
+
+    @Setup
+    public void setup(MockDevice mock){
+        Executor executor;
+        if(threads > 1){
+            pool = new ForkJoinPool(threads - 1);
+            executor = pool;
+        }else{
+            executor = Runnable::run;
+        }
+        recorder = new ParallelRecorder(mock.device, mock.queue, executor);
+        bundles = new RenderBundleCache(mock.device);
+        arena = Arena.ofShared();
+        frameArena = new FrameArena(4 * 1024);
+
+        var shader = ShaderModuleDescriptorBuilder.allocate(arena);
+        shader.nextInChain(ShaderModuleWGSLDescriptorBuilder.allocate(shader.writer()).code("fn vs_main(){} fn fs_main(){}"));
+        var module = wgpuDeviceCreateShaderModule(mock.device, shader.segment());
+        var pipelineDesc = RenderPipelineDescriptorBuilder.allocate(arena);
+        pipelineDesc.vertex().module(module).entryPoint("vs_main");
+        pipelineDesc.fragment().module(module).entryPoint("fs_main")
+                .targets(1).format(WGPUTextureFormat_RGBA8Unorm()).writeMask(WGPUColorWriteMask_All());
+        pipelineDesc.multisample().count(1).mask(0xFFFFFFFF);
+        pipeline = wgpuDeviceCreateRenderPipeline(mock.device, pipelineDesc.segment());
+        wgpuShaderModuleRelease(module);
+
+        var textureDesc = WGPUTextureDescriptor.allocate(arena);
+        WGPUTextureDescriptor.usage$set(textureDesc, WGPUTextureUsage_RenderAttachment());
+        WGPUTextureDescriptor.dimension$set(textureDesc, WGPUTextureDimension_2D());
+        var size = WGPUTextureDescriptor.size$slice(textureDesc);
+        WGPUExtent3D.width$set(size, 64);
+        WGPUExtent3D.height$set(size, 64);
+        WGPUExtent3D.depthOrArrayLayers$set(size, 1);
+        WGPUTextureDescriptor.format$set(textureDesc, WGPUTextureFormat_RGBA8Unorm());
+        WGPUTextureDescriptor.mipLevelCount$set(textureDesc, 1);
+        WGPUTextureDescriptor.sampleCount$set(textureDesc, 1);
+        target = wgpuDeviceCreateTexture(mock.device, textureDesc);
+        view = wgpuTextureCreateView(target, MemorySegment.NULL);
+
+        bundleDescriptor = WGPURenderBundleEncoderDescriptor.allocate(arena);
+        WGPURenderBundleEncoderDescriptor.colorFormatCount$set(bundleDescriptor, 1);
+        WGPURenderBundleEncoderDescriptor.colorFormats$set(bundleDescriptor,
+                arena.allocate(ValueLayout.JAVA_INT, WGPUTextureFormat_RGBA8Unorm()));
+        WGPURenderBundleEncoderDescriptor.sampleCount$set(bundleDescriptor, 1);
+
+        passList = new ArrayList<>();
+        bundleList = new ArrayList<>();
+        for(int i = 0; i < passes; i++){
+            passList.add((encoder, frameArena) -> {
+                var pass = wgpuCommandEncoderBeginRenderPass(encoder, renderPass(frameArena, WGPULoadOp_Load()));
+                wgpuRenderPassEncoderSetPipeline(pass, pipeline);
+                wgpuRenderPassEncoderSetVertexBuffer(pass, 0, mock.buffer, 0, 64 * 1024);
+                for(int d = 0; d < drawsPerPass; d++){
+                    wgpuRenderPassEncoderDraw(pass, 3, 1, 3 * d, 0);
+                }
+                wgpuRenderPassEncoderEnd(pass);
+                wgpuRenderPassEncoderRelease(pass);
+            });
+            bundleList.add((encoder, frameArena) -> {
+                wgpuRenderBundleEncoderSetPipeline(encoder, pipeline);
+                wgpuRenderBundleEncoderSetVertexBuffer(encoder, 0, mock.buffer, 0, 64 * 1024);
+                for(int d = 0; d < drawsPerPass; d++){
+                    wgpuRenderBundleEncoderDraw(encoder, 3, 1, 3 * d, 0);
+                }
+            });
+        }
+    }
+
+    @TearDown
+    public void tearDown(){
+        recorder.close();
+        bundles.close();
+        if(pool != null){
+            pool.shutdown();
+        }
+        wgpuTextureViewRelease(view);
+        wgpuTextureRelease(target);
+        wgpuRenderPipelineRelease(pipeline);
+        frameArena.close();
+        arena.close();
+    }
+
+    @Benchmark
+    public void commandBuffers(){
+        recorder.record(passList);
+        recorder.submit();
+    }
+
+    @Benchmark
+    public void renderBundles(MockDevice mock){
+        frameArena.reset();
+        var encoder = wgpuDeviceCreateCommandEncoder(mock.device, MemorySegment.NULL);
+        var pass = wgpuCommandEncoderBeginRenderPass(encoder, renderPass(frameArena, WGPULoadOp_Clear()));
+        recorder.executeBundles(pass, bundleDescriptor, bundleList);
+        end(pass, encoder);
+    }
+
+    @Benchmark
+    public void cachedBundles(MockDevice mock){
+        frameArena.reset();
+        var encoder = wgpuDeviceCreateCommandEncoder(mock.device, MemorySegment.NULL);
+        var pass = wgpuCommandEncoderBeginRenderPass(encoder, renderPass(frameArena, WGPULoadOp_Clear()));
+        var handles = frameArena.allocateArray(WGPURenderBundle, passes);
+        for(int i = 0; i < passes; i++){
+            handles.setAtIndex(WGPURenderBundle, i, bundles.get(i, drawsPerPass, bundleDescriptor, frameArena, bundleList.get(i)));
+        }
+        wgpuRenderPassEncoderExecuteBundles(pass, passes, handles);
+        for(int i = 0; i < passes; i++){
+            wgpuRenderBundleRelease(handles.getAtIndex(WGPURenderBundle, i));
+        }
+        end(pass, encoder);
+    }
+
+    private MemorySegment renderPass(FrameArena allocator, int loadOp){
+        var descriptor = RenderPassDescriptorBuilder.allocate(allocator);
+        descriptor.colorAttachments(1)
+                .view(view)
+                .loadOp(loadOp)
+                .storeOp(WGPUStoreOp_Store());
+        return descriptor.segment();
+    }
+
+    private void end(MemorySegment pass, MemorySegment encoder){
+        wgpuRenderPassEncoderEnd(pass);
+        wgpuRenderPassEncoderRelease(pass);
+        recorder.add(wgpuCommandEncoderFinish(encoder, MemorySegment.NULL));
+        recorder.submit();
+        wgpuCommandEncoderRelease(encoder);
+    }
+}
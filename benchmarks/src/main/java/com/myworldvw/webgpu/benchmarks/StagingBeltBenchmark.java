@@ -0,0 +1,122 @@
+package com.myworldvw.webgpu.benchmarks;
+
+import com.myworldvw.webgpu.memory.StagingBelt;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.concurrent.TimeUnit;
+
+import static com.myworldvw.webgpu.binding.WebGPU.*;
+
+/**
+ * Uploading a frame's worth of small dynamic buffer writes, once with a
+ * {@code wgpuQueueWriteBuffer} per write and once through a {@link StagingBelt}, including
+ * the encoder, submit and (for the belt) chunk recycling every frame costs.
+ * <p>
+ * The {@code megabytes} counter gives the upload throughput in MB/s; {@code stagingAllocations}
+ * counts staging allocations per frame - one per write for {@code wgpuQueueWriteBuffer}, which
+ * stages every call separately, and newly created chunks for the belt.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--enable-preview", "--enable-native-access=ALL-UNNAMED"})
+public class StagingBeltBenchmark {
+
+    private static final long TARGET_SIZE = 64 * 1024;
+
+    @Param({"64", "1024"})
+    public int writeSize;
+
+    @Param({"256"})
+    public int writesPerFrame;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Uploaded {
+
+        public double megabytes;
+
+        @Setup(Level.Iteration)
+        public void reset(){
+            megabytes = 0;
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Allocations {
+
+        public long stagingAllocations;
+
+        @Setup(Level.Iteration)
+        public void reset(){
+            stagingAllocations = 0;
+        }
+    }
+
+    private Arena arena;
+    private MemorySegment data;
+    private float[] floats;
+    private MemorySegment commands;
+    private StagingBelt belt;
+
+    @Setup
+    public void setup(MockDevice mock){
+        arena = Arena.ofConfined();
+        data = arena.allocate(writeSize, 16);
+        floats = new float[writeSize / Float.BYTES];
+        commands = arena.allocate(ValueLayout.ADDRESS);
+        belt = new StagingBelt(mock.device, mock.queue);
+    }
+
+    @TearDown
+    public void tearDown(MockDevice mock){
+        belt.close();
+        mock.mock.flush();
+        arena.close();
+    }
+
+    @Benchmark
+    public void queueWriteBuffer(MockDevice mock, Uploaded uploaded, Allocations allocations){
+        for(int i = 0; i < writesPerFrame; i++){
+            wgpuQueueWriteBuffer(mock.queue, mock.buffer, offset(i), data, writeSize);
+        }
+        submit(mock, wgpuDeviceCreateCommandEncoder(mock.device, MemorySegment.NULL));
+        mock.mock.flush();
+
+        uploaded.megabytes += (double) writesPerFrame * writeSize / 1e6;
+        allocations.stagingAllocations += writesPerFrame;
+    }
+
+    @Benchmark
+    public void stagingBelt(MockDevice mock, Uploaded uploaded, Allocations allocations){
+        for(int i = 0; i < writesPerFrame; i++){
+            belt.write(mock.buffer, offset(i), floats);
+        }
+        var encoder = wgpuDeviceCreateCommandEncoder(mock.device, MemorySegment.NULL);
+        belt.finish(encoder);
+        submit(mock, encoder);
+        belt.recall();
+        mock.mock.flush();
+
+        uploaded.megabytes += (double) writesPerFrame * writeSize / 1e6;
+        allocations.stagingAllocations += belt.statistics().frameChunksAllocated();
+    }
+
+    private long offset(int write){
+        return (long) write * writeSize % TARGET_SIZE;
+    }
+
+    private void submit(MockDevice mock, MemorySegment encoder){
+        var commandBuffer = wgpuCommandEncoderFinish(encoder, MemorySegment.NULL);
+        commands.set(ValueLayout.ADDRESS, 0, commandBuffer);
+        wgpuQueueSubmit(mock.queue, 1, commands);
+        wgpuCommandBufferRelease(commandBuffer);
+        wgpuCommandEncoderRelease(encoder);
+    }
+}
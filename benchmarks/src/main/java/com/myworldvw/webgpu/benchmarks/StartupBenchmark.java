@@ -0,0 +1,64 @@
+package com.myworldvw.webgpu.benchmarks;
+
+import com.myworldvw.webgpu.binding.WebGPU;
+import com.myworldvw.webgpu.mock.MockWebGPU;
+import com.myworldvw.webgpu.webgpu_h;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time from a cold JVM to the first {@code wgpuCreateInstance} call returning, and the number
+ * of classes loaded on the way, through jextract's {@code webgpu_h} (which binds every function
+ * in its static initializer) and the lazily bound {@code WebGPU} (which binds only the function
+ * being called). Every measurement runs in a fresh JVM.
+ * <p>
+ * Against the mock, binding a function also creates its upcall stub, so the cost of eager
+ * binding is somewhat exaggerated compared with wgpu-native.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(value = 10, jvmArgsAppend = {"--enable-preview", "--enable-native-access=ALL-UNNAMED"})
+public class StartupBenchmark {
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class LoadedClasses {
+
+        public long loadedClasses;
+        private long before;
+
+        @Setup(Level.Iteration)
+        public void before(){
+            before = ManagementFactory.getClassLoadingMXBean().getTotalLoadedClassCount();
+        }
+
+        void after(){
+            loadedClasses = ManagementFactory.getClassLoadingMXBean().getTotalLoadedClassCount() - before;
+        }
+    }
+
+    @Setup
+    public void setup(){
+        MockWebGPU.install();
+    }
+
+    @Benchmark
+    public MemorySegment jextractBinding(LoadedClasses classes){
+        var instance = webgpu_h.wgpuCreateInstance(MemorySegment.NULL);
+        classes.after();
+        return instance;
+    }
+
+    @Benchmark
+    public MemorySegment lazyBinding(LoadedClasses classes){
+        var instance = WebGPU.wgpuCreateInstance(MemorySegment.NULL);
+        classes.after();
+        return instance;
+    }
+}
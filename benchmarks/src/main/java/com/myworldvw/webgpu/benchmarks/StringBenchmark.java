@@ -0,0 +1,66 @@
+package com.myworldvw.webgpu.benchmarks;
+
+import com.myworldvw.webgpu.memory.FrameArena;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * String marshalling as the bindings do it: labels and shader entry points are copied into
+ * native memory with {@code allocateUtf8String}, and callback messages arrive as zero-length
+ * pointers that are read with {@code reinterpret(Long.MAX_VALUE).getUtf8String(0)}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--enable-preview", "--enable-native-access=ALL-UNNAMED"})
+public class StringBenchmark {
+
+    /**
+     * A typical object label, entry point name and validation error message.
+     */
+    @Param({"16", "64", "512"})
+    public int length;
+
+    private String string;
+    private Arena arena;
+    private FrameArena frame;
+    private MemorySegment message;
+
+    @Setup
+    public void setup(){
+        string = "x".repeat(length);
+        arena = Arena.ofConfined();
+        frame = new FrameArena();
+        // Callback parameters are zero-length segments at the message's address
+        message = MemorySegment.ofAddress(arena.allocateUtf8String(string).address());
+    }
+
+    @TearDown
+    public void tearDown(){
+        frame.close();
+        arena.close();
+    }
+
+    @Benchmark
+    public MemorySegment allocateUtf8StringConfinedArena(){
+        try(var call = Arena.ofConfined()){
+            return call.allocateUtf8String(string);
+        }
+    }
+
+    @Benchmark
+    public MemorySegment allocateUtf8StringFrameArena(){
+        frame.reset();
+        return frame.allocateUtf8String(string);
+    }
+
+    @Benchmark
+    public String getUtf8String(){
+        return message.reinterpret(Long.MAX_VALUE).getUtf8String(0);
+    }
+}
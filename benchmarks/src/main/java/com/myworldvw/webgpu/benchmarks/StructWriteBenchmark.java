@@ -0,0 +1,114 @@
+package com.myworldvw.webgpu.benchmarks;
+
+import com.myworldvw.webgpu.*;
+import com.myworldvw.webgpu.memory.FrameArena;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.util.concurrent.TimeUnit;
+
+import static com.myworldvw.webgpu.binding.WebGPU.*;
+
+/**
+ * Filling in a {@code WGPURenderPassDescriptor} with one color attachment - the descriptor
+ * every frame builds at least once - field by field through the generated {@code $set}
+ * VarHandle accessors, versus bulk-copying a prebuilt template and patching only the fields
+ * that change per frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--enable-preview", "--enable-native-access=ALL-UNNAMED"})
+public class StructWriteBenchmark {
+
+    private static final long ATTACHMENT_OFFSET = align(WGPURenderPassDescriptor.sizeof(),
+            WGPURenderPassColorAttachment.$LAYOUT().byteAlignment());
+    private static final long TEMPLATE_SIZE = ATTACHMENT_OFFSET + WGPURenderPassColorAttachment.sizeof();
+    private static final long CLEAR_VALUE_OFFSET = WGPURenderPassColorAttachment.$LAYOUT()
+            .byteOffset(MemoryLayout.PathElement.groupElement("clearValue"));
+
+    private Arena arena;
+    private FrameArena frame;
+    private MemorySegment template;
+    private MemorySegment view;
+    private MemorySegment label;
+
+    @Setup
+    public void setup(){
+        arena = Arena.ofConfined();
+        frame = new FrameArena();
+        view = MemorySegment.ofAddress(0x1000);
+        label = arena.allocateUtf8String("main pass");
+
+        template = arena.allocate(TEMPLATE_SIZE, 8);
+        var descriptor = template.asSlice(0, WGPURenderPassDescriptor.sizeof());
+        var attachment = template.asSlice(ATTACHMENT_OFFSET, WGPURenderPassColorAttachment.sizeof());
+        fillDescriptor(descriptor, attachment, 0.1, 0.2, 0.3);
+    }
+
+    @TearDown
+    public void tearDown(){
+        frame.close();
+        arena.close();
+    }
+
+    private static long align(long offset, long alignment){
+        return (offset + alignment - 1) & -alignment;
+    }
+
+    private void fillDescriptor(MemorySegment descriptor, MemorySegment attachment, double r, double g, double b){
+        WGPURenderPassColorAttachment.view$set(attachment, view);
+        WGPURenderPassColorAttachment.resolveTarget$set(attachment, MemorySegment.NULL);
+        WGPURenderPassColorAttachment.loadOp$set(attachment, WGPULoadOp_Clear);
+        WGPURenderPassColorAttachment.storeOp$set(attachment, WGPUStoreOp_Store);
+        var clear = WGPURenderPassColorAttachment.clearValue$slice(attachment);
+        WGPUColor.r$set(clear, r);
+        WGPUColor.g$set(clear, g);
+        WGPUColor.b$set(clear, b);
+        WGPUColor.a$set(clear, 1.0);
+
+        WGPURenderPassDescriptor.label$set(descriptor, label);
+        WGPURenderPassDescriptor.colorAttachmentCount$set(descriptor, 1);
+        WGPURenderPassDescriptor.colorAttachments$set(descriptor, attachment);
+        WGPURenderPassDescriptor.depthStencilAttachment$set(descriptor, MemorySegment.NULL);
+        WGPURenderPassDescriptor.occlusionQuerySet$set(descriptor, MemorySegment.NULL);
+        WGPURenderPassDescriptor.timestampWrites$set(descriptor, MemorySegment.NULL);
+    }
+
+    @Benchmark
+    public MemorySegment varHandleSetters(){
+        frame.reset();
+        var descriptor = WGPURenderPassDescriptor.allocate(frame);
+        var attachment = WGPURenderPassColorAttachment.allocate(frame);
+        fillDescriptor(descriptor, attachment, 0.1, 0.2, 0.3);
+        return descriptor;
+    }
+
+    @Benchmark
+    public MemorySegment templateCopy(){
+        frame.reset();
+        var copy = frame.allocate(TEMPLATE_SIZE, 8);
+        copy.copyFrom(template);
+        // Only the pointers into the copy and the per-frame values need patching
+        var attachment = copy.asSlice(ATTACHMENT_OFFSET, WGPURenderPassColorAttachment.sizeof());
+        WGPURenderPassDescriptor.colorAttachments$set(copy, attachment);
+        WGPURenderPassColorAttachment.view$set(attachment, view);
+        WGPUColor.r$set(attachment.asSlice(CLEAR_VALUE_OFFSET, WGPUColor.sizeof()), 0.1);
+        return copy;
+    }
+
+    /**
+     * The lower bound: the same field writes into memory that is reused as-is every frame.
+     */
+    @Benchmark
+    public MemorySegment varHandleSettersReused(){
+        var descriptor = template.asSlice(0, WGPURenderPassDescriptor.sizeof());
+        var attachment = template.asSlice(ATTACHMENT_OFFSET, WGPURenderPassColorAttachment.sizeof());
+        fillDescriptor(descriptor, attachment, 0.1, 0.2, 0.3);
+        return descriptor;
+    }
+}
@@ -0,0 +1,133 @@
+package com.myworldvw.webgpu.benchmarks;
+
+import com.myworldvw.webgpu.WGPUExtent3D;
+import com.myworldvw.webgpu.WGPUTextureDescriptor;
+import com.myworldvw.webgpu.texture.TextureFile;
+import com.myworldvw.webgpu.texture.TextureLoader;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static com.myworldvw.webgpu.webgpu_h.*;
+
+/**
+ * Copying an RGBA8 image with unaligned rows into staging memory at the 256-byte
+ * {@code bytesPerRow} alignment, and uploading it through a {@link TextureLoader}.
+ * <p>
+ * {@code naive} copies byte by byte, {@code sequential} and {@code parallel} use
+ * {@link TextureLoader#repack} on the calling thread and across the common pool.
+ * {@code upload} is the whole path into a texture on the mock backend, including staging
+ * buffer recycling, and {@code uploadWithMips} also generates the mip chain on the CPU.
+ * The {@code gigabytes} counter gives the throughput of the level 0 texel data in GB/s.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--enable-preview", "--enable-native-access=ALL-UNNAMED"})
+public class TextureLoaderBenchmark {
+
+    @Param({"1000", "4000"})
+    public int size;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Uploaded {
+
+        public double gigabytes;
+
+        @Setup(Level.Iteration)
+        public void reset(){
+            gigabytes = 0;
+        }
+    }
+
+    private Arena arena;
+    private MemorySegment source;
+    private MemorySegment target;
+    private long bytesPerRow;
+    private long pitch;
+    private TextureFile file;
+    private TextureLoader loader;
+    private MemorySegment texture;
+    private MemorySegment mippedTexture;
+
+    @Setup
+    public void setup(MockDevice mock){
+        arena = Arena.ofShared();
+        bytesPerRow = size * 4L;
+        pitch = TextureLoader.alignedBytesPerRow(bytesPerRow);
+        source = arena.allocate(bytesPerRow * size);
+        for(long i = 0; i < source.byteSize(); i++){
+            source.set(ValueLayout.JAVA_BYTE, i, (byte) i);
+        }
+        target = arena.allocate(pitch * size);
+
+        file = TextureFile.of(source, WGPUTextureFormat_RGBA8Unorm(), size, size, 1);
+        loader = new TextureLoader(mock.device, mock.queue);
+        texture = createTexture(mock, 1);
+        mippedTexture = createTexture(mock, 32 - Integer.numberOfLeadingZeros(size));
+    }
+
+    @TearDown
+    public void tearDown(MockDevice mock){
+        loader.close();
+        wgpuTextureRelease(texture);
+        wgpuTextureRelease(mippedTexture);
+        mock.mock.flush();
+        arena.close();
+    }
+
+    @Benchmark
+    public void naive(Uploaded uploaded){
+        for(long row = 0; row < size; row++){
+            for(long i = 0; i < bytesPerRow; i++){
+                target.set(ValueLayout.JAVA_BYTE, row * pitch + i, source.get(ValueLayout.JAVA_BYTE, row * bytesPerRow + i));
+            }
+        }
+        uploaded.gigabytes += source.byteSize() / 1e9;
+    }
+
+    @Benchmark
+    public void sequential(Uploaded uploaded){
+        TextureLoader.repack(null, source, bytesPerRow, target, pitch, bytesPerRow, size);
+        uploaded.gigabytes += source.byteSize() / 1e9;
+    }
+
+    @Benchmark
+    public void parallel(Uploaded uploaded){
+        TextureLoader.repack(ForkJoinPool.commonPool(), source, bytesPerRow, target, pitch, bytesPerRow, size);
+        uploaded.gigabytes += source.byteSize() / 1e9;
+    }
+
+    @Benchmark
+    public void upload(Uploaded uploaded){
+        loader.upload(file, texture);
+        uploaded.gigabytes += source.byteSize() / 1e9;
+    }
+
+    @Benchmark
+    public void uploadWithMips(Uploaded uploaded){
+        loader.upload(file, mippedTexture);
+        uploaded.gigabytes += source.byteSize() / 1e9;
+    }
+
+    private MemorySegment createTexture(MockDevice mock, int mipLevelCount){
+        var descriptor = WGPUTextureDescriptor.allocate(arena);
+        WGPUTextureDescriptor.usage$set(descriptor, WGPUTextureUsage_TextureBinding() | WGPUTextureUsage_CopyDst());
+        WGPUTextureDescriptor.dimension$set(descriptor, WGPUTextureDimension_2D());
+        var extent = WGPUTextureDescriptor.size$slice(descriptor);
+        WGPUExtent3D.width$set(extent, size);
+        WGPUExtent3D.height$set(extent, size);
+        WGPUExtent3D.depthOrArrayLayers$set(extent, 1);
+        WGPUTextureDescriptor.format$set(descriptor, WGPUTextureFormat_RGBA8Unorm());
+        WGPUTextureDescriptor.mipLevelCount$set(descriptor, mipLevelCount);
+        WGPUTextureDescriptor.sampleCount$set(descriptor, 1);
+        return wgpuDeviceCreateTexture(mock.device, descriptor);
+    }
+}
@@ -0,0 +1,74 @@
+package com.myworldvw.webgpu.benchmarks;
+
+import com.myworldvw.webgpu.WGPUBufferMapCallback;
+import com.myworldvw.webgpu.async.CallbackDispatcher;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+
+import static com.myworldvw.webgpu.binding.WebGPU.*;
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+
+/**
+ * Upcall round trips.
+ * <p>
+ * {@code upcallRoundTrip} invokes a {@code WGPUBufferMapCallback} stub through a downcall
+ * handle, i.e. exactly the native-to-Java transition a callback costs. The {@code mapAsync*}
+ * benchmarks map and unmap a buffer on the mock with callbacks delivered immediately, once
+ * through the shared {@link CallbackDispatcher} stub and once allocating a fresh upcall stub
+ * per request, as the generated {@code allocate(fi, arena)} methods encourage.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--enable-preview", "--enable-native-access=ALL-UNNAMED"})
+public class UpcallBenchmark {
+
+    private Arena arena;
+    private MethodHandle invokeCallback;
+    private int lastStatus;
+
+    @Setup
+    public void setup(MockDevice mock){
+        mock.mock.setDeferCallbacks(false);
+        arena = Arena.ofConfined();
+        var stub = WGPUBufferMapCallback.allocate((status, userdata) -> lastStatus = status, arena);
+        invokeCallback = Linker.nativeLinker().downcallHandle(stub, FunctionDescriptor.ofVoid(JAVA_INT, ADDRESS));
+    }
+
+    @TearDown
+    public void tearDown(){
+        arena.close();
+    }
+
+    @Benchmark
+    public int upcallRoundTrip() throws Throwable {
+        invokeCallback.invokeExact(WGPUBufferMapAsyncStatus_Success, MemorySegment.NULL);
+        return lastStatus;
+    }
+
+    @Benchmark
+    public int mapAsyncSharedStub(MockDevice mock){
+        var status = CallbackDispatcher.mapAsync(mock.mapBuffer, WGPUMapMode_Read, 0, 256).join();
+        wgpuBufferUnmap(mock.mapBuffer);
+        return status;
+    }
+
+    @Benchmark
+    public int mapAsyncStubPerCall(MockDevice mock){
+        try(var call = Arena.ofConfined()){
+            var stub = WGPUBufferMapCallback.allocate((status, userdata) -> lastStatus = status, call);
+            wgpuBufferMapAsync(mock.mapBuffer, WGPUMapMode_Read, 0, 256, stub, MemorySegment.NULL);
+        }
+        wgpuBufferUnmap(mock.mapBuffer);
+        return lastStatus;
+    }
+}
@@ -0,0 +1,341 @@
+package com.myworldvw.webgpu.build;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+import com.myworldvw.webgpu.build.Header.*;
+
+/**
+ * Generates a fluent builder for every struct in a header.
+ * <p>
+ * Builders write straight into native memory at the field offsets of the jextract-generated
+ * layouts, which are {@code static final} and therefore constants to the JIT. Everything a
+ * descriptor points to - nested structs, arrays given by a {@code xCount}/{@code x} field pair,
+ * strings - is allocated from the same {@code DescriptorWriter} as the descriptor itself, so a
+ * whole descriptor graph costs one allocation. Structs embedded by value are filled in place.
+ * <p>
+ * Builders of chained structs (those starting with a {@code WGPUChainedStruct chain} member)
+ * implement {@code Chained} and set their own {@code sType}, and {@code nextInChain} setters
+ * accept them directly.
+ */
+public class BuilderGenerator {
+
+    private static final String CHAINED_STRUCT = "WGPUChainedStruct";
+    private static final String CHAINED_STRUCT_OUT = "WGPUChainedStructOut";
+
+    /**
+     * String fields that are practically always literals from a small set, and are therefore
+     * interned in the {@code StringPool} rather than copied into every descriptor.
+     */
+    private static final Set<String> INTERNED_STRINGS = Set.of("entryPoint");
+
+    private final String packageName;
+    private final String structPackage;
+    private final String headerName;
+
+    /**
+     * @param packageName the package of the generated builders
+     * @param structPackage the package holding the jextract-generated struct classes
+     * @param headerName the header file name, for the generated class comments
+     */
+    public BuilderGenerator(String packageName, String structPackage, String headerName){
+        this.packageName = packageName;
+        this.structPackage = structPackage;
+        this.headerName = headerName;
+    }
+
+    public void generate(Header header, Path outputRoot){
+        var directory = outputRoot.resolve(packageName.replace('.', '/'));
+        try{
+            Files.createDirectories(directory);
+            for(var struct : header.structs().values()){
+                if(struct.name().equals(CHAINED_STRUCT) || struct.name().equals(CHAINED_STRUCT_OUT)){
+                    continue;
+                }
+                Files.writeString(directory.resolve(builderName(struct.name()) + ".java"), generate(header, struct));
+            }
+        }catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private String generate(Header header, Struct struct){
+        var name = builderName(struct.name());
+        var self = name + "<P>";
+        var sType = chainedType(header, struct);
+
+        var out = new StringBuilder();
+        out.append("package ").append(packageName).append(";\n\n");
+        out.append("import ").append(structPackage).append('.').append(struct.name()).append(";\n\n");
+        out.append("import java.lang.foreign.*;\n\n");
+        out.append("import static java.lang.foreign.MemoryLayout.PathElement.groupElement;\n");
+        out.append("import static java.lang.foreign.ValueLayout.*;\n\n");
+        out.append("/**\n");
+        out.append(" * Builds a {@code ").append(struct.name()).append("} from {@code ").append(headerName).append("}.\n");
+        out.append(" * Generated by {@code ").append(getClass().getName()).append("} - do not edit.\n");
+        out.append(" */\n");
+        out.append("public final class ").append(self);
+        if(sType != null){
+            out.append(" implements Chained");
+        }
+        out.append(" {\n\n");
+
+        out.append("    static final long BYTE_SIZE = ").append(struct.name()).append(".sizeof();\n");
+        out.append("    static final long BYTE_ALIGNMENT = ").append(struct.name()).append(".$LAYOUT().byteAlignment();\n\n");
+        for(var field : struct.fields()){
+            out.append("    private static final long ").append(offset(field)).append(" = ").append(struct.name())
+                    .append(".$LAYOUT().byteOffset(groupElement(\"").append(field.name()).append("\"));\n");
+        }
+        if(sType != null){
+            out.append("    private static final long CHAIN_NEXT_OFFSET = ").append(struct.name())
+                    .append(".$LAYOUT().byteOffset(groupElement(\"chain\"), groupElement(\"next\"));\n");
+            out.append("    private static final long CHAIN_S_TYPE_OFFSET = ").append(struct.name())
+                    .append(".$LAYOUT().byteOffset(groupElement(\"chain\"), groupElement(\"sType\"));\n");
+        }
+
+        out.append('\n');
+        out.append("    private final DescriptorWriter writer;\n");
+        out.append("    private final MemorySegment segment;\n");
+        out.append("    private final P parent;\n");
+        out.append("    private long offset;\n\n");
+
+        out.append("    ").append(name).append("(DescriptorWriter writer, MemorySegment segment, long offset, P parent){\n");
+        out.append("        this.writer = writer;\n");
+        out.append("        this.segment = segment;\n");
+        out.append("        this.offset = offset;\n");
+        out.append("        this.parent = parent;\n");
+        out.append("    }\n\n");
+
+        out.append("    /**\n");
+        out.append("     * Allocates a zeroed {@code ").append(struct.name()).append("} to build. Pass the same\n");
+        out.append("     * {@link DescriptorWriter} for every top-level builder of a descriptor graph to keep it in one allocation.\n");
+        out.append("     */\n");
+        out.append("    public static ").append(name).append("<Void> allocate(SegmentAllocator allocator){\n");
+        out.append("        var writer = allocator instanceof DescriptorWriter w ? w : new DescriptorWriter(allocator);\n");
+        if(sType != null){
+            out.append("        var builder = new ").append(name).append("<Void>(writer, writer.allocate(BYTE_SIZE, BYTE_ALIGNMENT), 0, null);\n");
+            out.append("        builder.segment.set(JAVA_INT, CHAIN_S_TYPE_OFFSET, 0x")
+                    .append(String.format("%08X", (int) sType.value())).append("); // ").append(sType.name()).append('\n');
+            out.append("        return builder;\n");
+        }else{
+            out.append("        return new ").append(name).append("<>(writer, writer.allocate(BYTE_SIZE, BYTE_ALIGNMENT), 0, null);\n");
+        }
+        out.append("    }\n\n");
+
+        out.append("    public DescriptorWriter writer(){\n");
+        out.append("        return writer;\n");
+        out.append("    }\n\n");
+
+        out.append("    /**\n");
+        out.append("     * @return the struct being built\n");
+        out.append("     */\n");
+        out.append("    public MemorySegment segment(){\n");
+        out.append("        return offset == 0 && segment.byteSize() == BYTE_SIZE ? segment : segment.asSlice(offset, BYTE_SIZE);\n");
+        out.append("    }\n\n");
+
+        if(sType != null){
+            out.append("    @Override\n");
+            out.append("    public MemorySegment chain(){\n");
+            out.append("        return segment();\n");
+            out.append("    }\n\n");
+        }
+
+        out.append("    /**\n");
+        out.append("     * @return the builder this one was obtained from, or null for a top-level builder\n");
+        out.append("     */\n");
+        out.append("    public P end(){\n");
+        out.append("        return parent;\n");
+        out.append("    }\n\n");
+
+        out.append("    /**\n");
+        out.append("     * Moves on to the next element of the array being built.\n");
+        out.append("     */\n");
+        out.append("    public ").append(self).append(" next(){\n");
+        out.append("        offset += BYTE_SIZE;\n");
+        out.append("        return this;\n");
+        out.append("    }\n");
+
+        if(sType != null){
+            appendChainSetters(out, self, "CHAIN_NEXT_OFFSET");
+        }
+
+        var fields = struct.fields();
+        for(int i = 0; i < fields.size(); i++){
+            var field = fields.get(i);
+            var count = i > 0 && isCount(fields.get(i - 1)) ? fields.get(i - 1) : null;
+            appendField(out, header, self, field, count);
+        }
+
+        out.append("}\n");
+        return out.toString();
+    }
+
+    private void appendField(StringBuilder out, Header header, String self, Variable field, Variable count){
+        var type = field.type();
+        var name = field.name();
+        var offset = offset(field);
+
+        if(type.kind() == Kind.STRUCT){
+            if(name.equals("chain") && (type.base().equals(CHAINED_STRUCT) || type.base().equals(CHAINED_STRUCT_OUT))){
+                return;
+            }
+            var nested = builderName(type.base()) + "<" + self + ">";
+            out.append('\n');
+            out.append("    public ").append(nested).append(' ').append(name).append("(){\n");
+            out.append("        return new ").append(builderName(type.base())).append("<>(writer, segment, offset + ")
+                    .append(offset).append(", this);\n");
+            out.append("    }\n");
+            return;
+        }
+
+        if(type.pointers() == 1 && type.base().equals(CHAINED_STRUCT)){
+            appendChainSetters(out, self, offset);
+            return;
+        }
+
+        if(type.pointers() == 1 && type.base().equals("char")){
+            var copy = INTERNED_STRINGS.contains(name) ? "StringPool.intern(value)" : "writer.string(value)";
+            appendSetter(out, self, name, "String", "segment.set(ADDRESS, offset + " + offset + ", " + copy + ");");
+            appendSetter(out, self, name, "MemorySegment", "segment.set(ADDRESS, offset + " + offset + ", value);");
+            return;
+        }
+
+        if(type.pointers() == 1 && header.structs().containsKey(type.base()) && !type.base().equals(CHAINED_STRUCT_OUT)){
+            var element = builderName(type.base());
+            var nested = element + "<" + self + ">";
+            out.append('\n');
+            if(count != null){
+                out.append("    /**\n");
+                out.append("     * Allocates the array and sets {@code ").append(count.name()).append("}.\n");
+                out.append("     * @return a builder for the first element - call {@code next()} to move on to the others\n");
+                out.append("     */\n");
+                out.append("    public ").append(nested).append(' ').append(name).append("(int count){\n");
+                out.append("        var array = writer.allocate(").append(element).append(".BYTE_SIZE * count, ")
+                        .append(element).append(".BYTE_ALIGNMENT);\n");
+                out.append("        segment.set(ADDRESS, offset + ").append(offset).append(", array);\n");
+                appendCountWrite(out, count);
+                out.append("        return new ").append(element).append("<>(writer, array, 0, this);\n");
+            }else{
+                out.append("    /**\n");
+                out.append("     * Allocates the struct this field points to, unless the field is already set.\n");
+                out.append("     */\n");
+                out.append("    public ").append(nested).append(' ').append(name).append("(){\n");
+                out.append("        var struct = segment.get(ADDRESS, offset + ").append(offset).append(");\n");
+                out.append("        if(MemorySegment.NULL.equals(struct)){\n");
+                out.append("            struct = writer.allocate(").append(element).append(".BYTE_SIZE, ")
+                        .append(element).append(".BYTE_ALIGNMENT);\n");
+                out.append("            segment.set(ADDRESS, offset + ").append(offset).append(", struct);\n");
+                out.append("        }else{\n");
+                out.append("            struct = struct.reinterpret(").append(element).append(".BYTE_SIZE);\n");
+                out.append("        }\n");
+                out.append("        return new ").append(element).append("<>(writer, struct, 0, this);\n");
+            }
+            out.append("    }\n");
+            appendSetter(out, self, name, "MemorySegment", "segment.set(ADDRESS, offset + " + offset + ", value);");
+            return;
+        }
+
+        if(type.pointers() == 1 && count != null && !type.base().equals("void")){
+            out.append('\n');
+            out.append("    /**\n");
+            out.append("     * Copies the values into a new array and sets {@code ").append(count.name()).append("}.\n");
+            out.append("     */\n");
+            if(isIntegral(header, type.base())){
+                out.append("    public ").append(self).append(' ').append(name).append("(int... values){\n");
+                out.append("        var count = values.length;\n");
+                out.append("        var array = writer.allocateArray(JAVA_INT, values);\n");
+            }else{
+                out.append("    public ").append(self).append(' ').append(name).append("(MemorySegment... values){\n");
+                out.append("        var count = values.length;\n");
+                out.append("        var array = writer.allocateArray(ADDRESS, count);\n");
+                out.append("        for(int i = 0; i < count; i++){\n");
+                out.append("            array.setAtIndex(ADDRESS, i, values[i]);\n");
+                out.append("        }\n");
+            }
+            out.append("        segment.set(ADDRESS, offset + ").append(offset).append(", array);\n");
+            appendCountWrite(out, count);
+            out.append("        return this;\n");
+            out.append("    }\n");
+            return;
+        }
+
+        appendSetter(out, self, name, type.javaType(),
+                "segment.set(" + type.layout(structPackage) + ", offset + " + offset + ", value);");
+    }
+
+    private static void appendChainSetters(StringBuilder out, String self, String offset){
+        appendSetter(out, self, "nextInChain", "Chained",
+                "segment.set(ADDRESS, offset + " + offset + ", value != null ? value.chain() : MemorySegment.NULL);");
+        appendSetter(out, self, "nextInChain", "MemorySegment", "segment.set(ADDRESS, offset + " + offset + ", value);");
+    }
+
+    private static void appendSetter(StringBuilder out, String self, String name, String javaType, String body){
+        out.append('\n');
+        out.append("    public ").append(self).append(' ').append(name).append('(').append(javaType).append(" value){\n");
+        out.append("        ").append(body).append('\n');
+        out.append("        return this;\n");
+        out.append("    }\n");
+    }
+
+    private static void appendCountWrite(StringBuilder out, Variable count){
+        var value = count.type().kind() == Kind.LONG ? "(long) count" : "count";
+        out.append("        segment.set(").append(count.type().kind() == Kind.LONG ? "JAVA_LONG" : "JAVA_INT")
+                .append(", offset + ").append(offset(count)).append(", ").append(value).append(");\n");
+    }
+
+    private static boolean isCount(Variable field){
+        var kind = field.type().kind();
+        return field.name().endsWith("Count") && !field.type().isPointer() && (kind == Kind.INT || kind == Kind.LONG);
+    }
+
+    private static boolean isIntegral(Header header, String base){
+        return header.enums().containsKey(base) || base.equals("uint32_t") || base.equals("int32_t");
+    }
+
+    /**
+     * @return the {@code WGPUSType} value for a chained struct, or null if the struct is not
+     * chained or has no matching {@code WGPUSType_*} value
+     */
+    private static Constant chainedType(Header header, Struct struct){
+        if(struct.fields().isEmpty()){
+            return null;
+        }
+        var first = struct.fields().get(0);
+        if(!first.name().equals("chain") || first.type().isPointer() || !first.type().base().equals(CHAINED_STRUCT)){
+            return null;
+        }
+        var sType = "WGPUSType_" + unprefixed(struct.name());
+        return header.enums().values().stream()
+                .flatMap(c -> c.stream())
+                .filter(c -> c.name().equals(sType))
+                .findFirst()
+                .orElse(null);
+    }
+
+    private static String builderName(String structName){
+        return unprefixed(structName) + "Builder";
+    }
+
+    private static String unprefixed(String structName){
+        return structName.startsWith("WGPU") ? structName.substring(4) : structName;
+    }
+
+    /**
+     * @return the name of the constant holding a field's offset, e.g. {@code NEXT_IN_CHAIN_OFFSET}
+     */
+    private static String offset(Variable field){
+        var name = new StringBuilder();
+        var previous = ' ';
+        for(var c : field.name().toCharArray()){
+            if(Character.isUpperCase(c) && Character.isLowerCase(previous)){
+                name.append('_');
+            }
+            name.append(Character.toUpperCase(c));
+            previous = c;
+        }
+        return name.append("_OFFSET").toString();
+    }
+}
@@ -0,0 +1,74 @@
+package com.myworldvw.webgpu.build;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The subset of a WebGPU C header that the binding generators care about: function
+ * declarations, struct definitions, enum values and integer macros, with every type
+ * already resolved to its ABI category.
+ */
+public record Header(List<Function> functions,
+                     Map<String, Struct> structs,
+                     Map<String, List<Constant>> enums,
+                     List<Constant> macros){
+
+    public enum Kind {
+        VOID, BYTE, SHORT, INT, LONG, FLOAT, DOUBLE, POINTER, STRUCT
+    }
+
+    /**
+     * A C type reduced to what matters for binding it.
+     * @param base the type name with qualifiers stripped, e.g. {@code WGPUVertexState} or {@code char}
+     * @param pointers the level of pointer indirection
+     * @param kind the ABI category of the type
+     */
+    public record CType(String base, int pointers, Kind kind){
+
+        public boolean isPointer(){
+            return pointers > 0;
+        }
+
+        public String javaType(){
+            return switch(kind){
+                case VOID -> "void";
+                case BYTE -> "byte";
+                case SHORT -> "short";
+                case INT -> "int";
+                case LONG -> "long";
+                case FLOAT -> "float";
+                case DOUBLE -> "double";
+                case POINTER, STRUCT -> "MemorySegment";
+            };
+        }
+
+        /**
+         * @param structPackage the package holding the jextract-generated struct classes
+         * @return a Java expression for the memory layout of this type
+         */
+        public String layout(String structPackage){
+            return switch(kind){
+                case VOID -> throw new IllegalStateException("void has no layout");
+                case BYTE -> "JAVA_BYTE";
+                case SHORT -> "JAVA_SHORT";
+                case INT -> "JAVA_INT";
+                case LONG -> "JAVA_LONG";
+                case FLOAT -> "JAVA_FLOAT";
+                case DOUBLE -> "JAVA_DOUBLE";
+                case POINTER -> "ADDRESS";
+                case STRUCT -> structPackage + "." + base + ".$LAYOUT()";
+            };
+        }
+    }
+
+    public record Variable(String name, CType type){}
+
+    public record Function(String name, CType returnType, List<Variable> parameters){}
+
+    public record Struct(String name, List<Variable> fields){}
+
+    /**
+     * @param wide true if the value needs 64 bits, e.g. {@code WGPU_WHOLE_SIZE}
+     */
+    public record Constant(String name, long value, boolean wide){}
+}
@@ -0,0 +1,274 @@
+package com.myworldvw.webgpu.build;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.myworldvw.webgpu.build.Header.*;
+
+/**
+ * A deliberately small parser for the WebGPU C headers.
+ * <p>
+ * {@code webgpu.h} and {@code wgpu.h} are machine-generated and very regular - one
+ * declaration per statement, no nested type definitions, no fixed-size arrays - so
+ * a handful of regular expressions over the comment-stripped source is enough to
+ * recover everything the generators need without depending on libclang.
+ */
+public class HeaderParser {
+
+    private static final Pattern BLOCK_COMMENT = Pattern.compile("/\\*.*?\\*/", Pattern.DOTALL);
+    private static final Pattern LINE_COMMENT = Pattern.compile("//[^\\n]*");
+
+    private static final Pattern DEFINE = Pattern.compile("^\\s*#\\s*define\\s+(\\w+)\\s+(.+)$", Pattern.MULTILINE);
+    private static final Pattern PREPROCESSOR = Pattern.compile("^\\s*#[^\\n]*$", Pattern.MULTILINE);
+
+    private static final Pattern HANDLE = Pattern.compile("typedef\\s+struct\\s+\\w+\\s*\\*\\s*(\\w+)[^;{]*;");
+    private static final Pattern CALLBACK = Pattern.compile("typedef\\s+([\\w\\s*]+?)\\s*\\(\\s*\\*\\s*(\\w+)\\s*\\)\\s*\\([^)]*\\)[^;]*;");
+    private static final Pattern ENUM = Pattern.compile("typedef\\s+enum\\s+(\\w+)\\s*\\{(.*?)}\\s*\\w+[^;]*;", Pattern.DOTALL);
+    private static final Pattern STRUCT = Pattern.compile("typedef\\s+struct\\s+(\\w+)\\s*\\{(.*?)}\\s*\\w+[^;]*;", Pattern.DOTALL);
+    private static final Pattern ALIAS = Pattern.compile("typedef\\s+(\\w+)\\s+(\\w+)(?:\\s+WGPU_\\w+)?\\s*;");
+    private static final Pattern ENUM_VALUE = Pattern.compile("(\\w+)\\s*=\\s*([^,]+)");
+    private static final Pattern FUNCTION = Pattern.compile(
+            "WGPU_EXPORT\\s+([\\w\\s*]+?)\\s*\\b(wgpu\\w+)\\s*\\(([^)]*)\\)\\s*(?:WGPU_FUNCTION_ATTRIBUTE)?\\s*;");
+
+    private static final Set<String> QUALIFIERS = Set.of("const", "struct", "enum", "WGPU_NULLABLE");
+
+    private static final Map<String, Kind> PRIMITIVES = Map.ofEntries(
+            Map.entry("void", Kind.VOID),
+            Map.entry("char", Kind.BYTE),
+            Map.entry("bool", Kind.BYTE),
+            Map.entry("int8_t", Kind.BYTE),
+            Map.entry("uint8_t", Kind.BYTE),
+            Map.entry("int16_t", Kind.SHORT),
+            Map.entry("uint16_t", Kind.SHORT),
+            Map.entry("int", Kind.INT),
+            Map.entry("int32_t", Kind.INT),
+            Map.entry("uint32_t", Kind.INT),
+            Map.entry("int64_t", Kind.LONG),
+            Map.entry("uint64_t", Kind.LONG),
+            Map.entry("size_t", Kind.LONG),
+            Map.entry("float", Kind.FLOAT),
+            Map.entry("double", Kind.DOUBLE)
+    );
+
+    private final Set<String> pointerTypes = new HashSet<>();
+    private final Set<String> enumTypes = new HashSet<>();
+    private final Set<String> structTypes = new HashSet<>();
+    private final Map<String, String> aliases = new HashMap<>();
+    private final Map<String, Long> knownConstants = new HashMap<>();
+
+    /**
+     * Parses {@code header}. Types declared in {@code dependencies} (e.g. {@code webgpu.h}
+     * when parsing {@code wgpu.h}) can be referenced, but only declarations made in
+     * {@code header} itself are returned.
+     */
+    public static Header parse(Path header, Path... dependencies){
+        var parser = new HeaderParser();
+        for(var dependency : dependencies){
+            parser.parseSource(read(dependency));
+        }
+        return parser.parseSource(read(header));
+    }
+
+    private static String read(Path path){
+        try{
+            var source = Files.readString(path);
+            source = BLOCK_COMMENT.matcher(source).replaceAll(" ");
+            return LINE_COMMENT.matcher(source).replaceAll("");
+        }catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Header parseSource(String source){
+        var macros = new ArrayList<Constant>();
+        var defines = DEFINE.matcher(source);
+        while(defines.find()){
+            var constant = evaluateMacro(defines.group(1), defines.group(2).trim());
+            if(constant != null){
+                macros.add(constant);
+            }
+        }
+        source = PREPROCESSOR.matcher(source).replaceAll("");
+
+        // Collect all type names first so that declarations may refer to types defined later
+        collect(HANDLE, source, pointerTypes);
+        var callbacks = CALLBACK.matcher(source);
+        while(callbacks.find()){
+            pointerTypes.add(callbacks.group(2));
+        }
+        collect(ENUM, source, enumTypes);
+        collect(STRUCT, source, structTypes);
+        var aliasMatcher = ALIAS.matcher(source);
+        while(aliasMatcher.find()){
+            aliases.put(aliasMatcher.group(2), aliasMatcher.group(1));
+        }
+
+        var enums = new LinkedHashMap<String, List<Constant>>();
+        var enumMatcher = ENUM.matcher(source);
+        while(enumMatcher.find()){
+            var values = new ArrayList<Constant>();
+            var valueMatcher = ENUM_VALUE.matcher(enumMatcher.group(2));
+            while(valueMatcher.find()){
+                var value = evaluate(valueMatcher.group(2).trim());
+                knownConstants.put(valueMatcher.group(1), value);
+                values.add(new Constant(valueMatcher.group(1), value, false));
+            }
+            enums.put(enumMatcher.group(1), values);
+        }
+
+        var structs = new LinkedHashMap<String, Struct>();
+        var structMatcher = STRUCT.matcher(source);
+        while(structMatcher.find()){
+            var fields = new ArrayList<Variable>();
+            for(var declaration : structMatcher.group(2).split(";")){
+                if(!declaration.isBlank()){
+                    fields.add(variable(declaration));
+                }
+            }
+            structs.put(structMatcher.group(1), new Struct(structMatcher.group(1), fields));
+        }
+
+        var functions = new ArrayList<Function>();
+        var functionMatcher = FUNCTION.matcher(source);
+        while(functionMatcher.find()){
+            var parameters = new ArrayList<Variable>();
+            var parameterList = functionMatcher.group(3).trim();
+            if(!parameterList.isEmpty() && !parameterList.equals("void")){
+                for(var declaration : parameterList.split(",")){
+                    parameters.add(variable(declaration));
+                }
+            }
+            functions.add(new Function(functionMatcher.group(2), type(functionMatcher.group(1)), parameters));
+        }
+
+        return new Header(functions, structs, enums, macros);
+    }
+
+    private static void collect(Pattern pattern, String source, Set<String> names){
+        var matcher = pattern.matcher(source);
+        while(matcher.find()){
+            names.add(matcher.group(1));
+        }
+    }
+
+    private Variable variable(String declaration){
+        declaration = declaration.trim();
+        var nameStart = declaration.length();
+        while(nameStart > 0 && Character.isJavaIdentifierPart(declaration.charAt(nameStart - 1))){
+            nameStart--;
+        }
+        return new Variable(declaration.substring(nameStart), type(declaration.substring(0, nameStart)));
+    }
+
+    private CType type(String spelling){
+        var pointers = (int) spelling.chars().filter(c -> c == '*').count();
+        String base = null;
+        for(var token : spelling.replace('*', ' ').trim().split("\\s+")){
+            if(!QUALIFIERS.contains(token)){
+                base = token;
+            }
+        }
+        if(base == null){
+            throw new IllegalArgumentException("Cannot parse C type: " + spelling);
+        }
+        return new CType(base, pointers, pointers > 0 ? Kind.POINTER : kind(base));
+    }
+
+    private Kind kind(String name){
+        while(aliases.containsKey(name)){
+            name = aliases.get(name);
+        }
+        var primitive = PRIMITIVES.get(name);
+        if(primitive != null){
+            return primitive;
+        }
+        if(pointerTypes.contains(name)){
+            return Kind.POINTER;
+        }
+        if(enumTypes.contains(name)){
+            return Kind.INT;
+        }
+        if(structTypes.contains(name)){
+            return Kind.STRUCT;
+        }
+        throw new IllegalArgumentException("Unknown C type: " + name);
+    }
+
+    private Constant evaluateMacro(String name, String expression){
+        if(expression.equals("SIZE_MAX")){
+            return new Constant(name, -1L, true);
+        }
+        var literal = expression.replaceAll("[()\\s]", "");
+        var matcher = Pattern.compile("(0[xX][0-9a-fA-F]+|\\d+)([uUlL]*)").matcher(literal);
+        if(!matcher.matches()){
+            return null;
+        }
+        var value = Long.parseUnsignedLong(matcher.group(1).replaceFirst("^0[xX]", ""),
+                matcher.group(1).startsWith("0x") || matcher.group(1).startsWith("0X") ? 16 : 10);
+        var wide = matcher.group(2).toUpperCase().contains("LL") || (value >>> 32) != 0;
+        return new Constant(name, wide ? value : (int) value, wide);
+    }
+
+    /**
+     * Evaluates an enum initializer. Besides literals, wgpu.h combines flags with
+     * {@code |} and {@code <<} and refers to previously declared values.
+     */
+    private long evaluate(String expression){
+        var tokens = new ArrayList<String>();
+        Matcher matcher = Pattern.compile("0[xX][0-9a-fA-F]+|\\d+|\\w+|<<|[|()]").matcher(expression);
+        while(matcher.find()){
+            tokens.add(matcher.group());
+        }
+        var position = new int[]{0};
+        return evaluateOr(tokens, position);
+    }
+
+    private long evaluateOr(List<String> tokens, int[] position){
+        var value = evaluateShift(tokens, position);
+        while(position[0] < tokens.size() && tokens.get(position[0]).equals("|")){
+            position[0]++;
+            value |= evaluateShift(tokens, position);
+        }
+        return value;
+    }
+
+    private long evaluateShift(List<String> tokens, int[] position){
+        var value = evaluateTerm(tokens, position);
+        while(position[0] < tokens.size() && tokens.get(position[0]).equals("<<")){
+            position[0]++;
+            value <<= evaluateTerm(tokens, position);
+        }
+        return value;
+    }
+
+    private long evaluateTerm(List<String> tokens, int[] position){
+        var token = tokens.get(position[0]++);
+        if(token.equals("(")){
+            var value = evaluateOr(tokens, position);
+            position[0]++;
+            return value;
+        }
+        if(token.startsWith("0x") || token.startsWith("0X")){
+            return Long.parseLong(token.substring(2), 16);
+        }
+        if(Character.isDigit(token.charAt(0))){
+            return Long.parseLong(token);
+        }
+        var constant = knownConstants.get(token);
+        if(constant == null){
+            throw new IllegalArgumentException("Unknown constant in enum initializer: " + token);
+        }
+        return constant;
+    }
+}
@@ -0,0 +1,141 @@
+package com.myworldvw.webgpu.build;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Collectors;
+
+import javax.lang.model.SourceVersion;
+
+import com.myworldvw.webgpu.build.Header.*;
+
+/**
+ * Generates a startup-friendly alternative to jextract's header class.
+ * <p>
+ * Every function gets its own nested holder class whose static initializer looks the symbol
+ * up and builds the downcall handle, so the JVM only does that work - and only loads that
+ * class - the first time the function is actually called. Enum values and integer macros
+ * become {@code static final} compile-time constants, which javac inlines into callers:
+ * reading a constant never initializes the generated class at all.
+ */
+public class LazyBindingGenerator {
+
+    private final String packageName;
+    private final String className;
+    private final String structPackage;
+    private final String headerName;
+
+    /**
+     * @param packageName the package of the generated class
+     * @param className the simple name of the generated class
+     * @param structPackage the package holding the jextract-generated struct classes, used for
+     *                      the layouts of structs passed by value
+     * @param headerName the header file name, for the generated class comment
+     */
+    public LazyBindingGenerator(String packageName, String className, String structPackage, String headerName){
+        this.packageName = packageName;
+        this.className = className;
+        this.structPackage = structPackage;
+        this.headerName = headerName;
+    }
+
+    public void generate(Header header, Path outputRoot){
+        var out = new StringBuilder();
+        out.append("package ").append(packageName).append(";\n\n");
+        out.append("import java.lang.foreign.*;\n");
+        out.append("import java.lang.invoke.MethodHandle;\n\n");
+        out.append("import static java.lang.foreign.ValueLayout.*;\n\n");
+        out.append("/**\n");
+        out.append(" * Lazily bound functions and constants from {@code ").append(headerName).append("}.\n");
+        out.append(" * Generated by {@code ").append(getClass().getName()).append("} - do not edit.\n");
+        out.append(" */\n");
+        out.append("public final class ").append(className).append(" {\n\n");
+        out.append("    private ").append(className).append("(){}\n");
+
+        for(var entry : header.enums().entrySet()){
+            out.append("\n    // ").append(entry.getKey()).append('\n');
+            for(var constant : entry.getValue()){
+                appendConstant(out, constant);
+            }
+        }
+
+        if(!header.macros().isEmpty()){
+            out.append('\n');
+            for(var constant : header.macros()){
+                appendConstant(out, constant);
+            }
+        }
+
+        for(var function : header.functions()){
+            appendFunction(out, function);
+        }
+
+        out.append("}\n");
+
+        var file = outputRoot.resolve(packageName.replace('.', '/')).resolve(className + ".java");
+        try{
+            Files.createDirectories(file.getParent());
+            Files.writeString(file, out);
+        }catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void appendConstant(StringBuilder out, Constant constant){
+        if(constant.wide()){
+            out.append("    public static final long ").append(constant.name())
+                    .append(" = 0x").append(Long.toHexString(constant.value())).append("L;\n");
+        }else{
+            out.append("    public static final int ").append(constant.name())
+                    .append(" = 0x").append(String.format("%08X", (int) constant.value())).append(";\n");
+        }
+    }
+
+    private void appendFunction(StringBuilder out, Function function){
+        var returnType = function.returnType();
+        var returnsStruct = returnType.kind() == Kind.STRUCT;
+
+        var parameters = function.parameters().stream()
+                .map(p -> p.type().javaType() + " " + identifier(p.name()))
+                .collect(Collectors.toList());
+        var arguments = function.parameters().stream()
+                .map(p -> identifier(p.name()))
+                .collect(Collectors.toList());
+        if(returnsStruct){
+            parameters.add(0, "SegmentAllocator allocator");
+            arguments.add(0, "allocator");
+        }
+
+        var layouts = function.parameters().stream()
+                .map(p -> p.type().layout(structPackage))
+                .collect(Collectors.joining(", "));
+        var descriptor = returnType.kind() == Kind.VOID
+                ? "FunctionDescriptor.ofVoid(" + layouts + ")"
+                : "FunctionDescriptor.of(" + returnType.layout(structPackage) + (layouts.isEmpty() ? "" : ", " + layouts) + ")";
+
+        var invoke = function.name() + "$.HANDLE.invokeExact(" + String.join(", ", arguments) + ");";
+        if(returnType.kind() != Kind.VOID){
+            invoke = "return (" + returnType.javaType() + ") " + invoke;
+        }
+
+        out.append('\n');
+        out.append("    public static ").append(returnType.javaType()).append(' ').append(function.name())
+                .append('(').append(String.join(", ", parameters)).append("){\n");
+        out.append("        try{\n");
+        out.append("            ").append(invoke).append('\n');
+        out.append("        }catch(Throwable ex){\n");
+        out.append("            throw new AssertionError(\"should not reach here\", ex);\n");
+        out.append("        }\n");
+        out.append("    }\n\n");
+        out.append("    private static final class ").append(function.name()).append("$ {\n");
+        out.append("        static final MethodHandle HANDLE = com.myworldvw.webgpu.binding.NativeLookup.downcallHandle(\"")
+                .append(function.name()).append("\",\n");
+        out.append("                ").append(descriptor).append(");\n");
+        out.append("    }\n");
+    }
+
+    private static String identifier(String name){
+        return SourceVersion.isKeyword(name) ? name + "$" : name;
+    }
+}
@@ -8,8 +8,6 @@ import io.github.libsdl4j.api.video.SDL_Window;
 
 import java.lang.foreign.*;
 import java.nio.file.Path;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
 
 import static com.myworldvw.webgpu.webgpu_h.*;
 import static io.github.libsdl4j.api.Sdl.*;
@@ -27,6 +25,11 @@ import static io.github.libsdl4j.api.video.SdlVideo.SDL_GetWindowSize;
 import static io.github.libsdl4j.api.video.SdlVideoConst.SDL_WINDOWPOS_CENTERED;
 
 import com.myworldvw.webgpu.*;
+import com.myworldvw.webgpu.async.CallbackDispatcher;
+import com.myworldvw.webgpu.async.DeviceEventLoop;
+import com.myworldvw.webgpu.frame.FrameScheduler;
+import com.myworldvw.webgpu.instrument.GpuProfiler;
+import com.myworldvw.webgpu.instrument.Instrumentation;
 
 public class Main {
 
@@ -53,6 +56,10 @@ public class Main {
                 System.out.println("Failed to create WGPU instance!");
             }
 
+            // Completes adapter & device requests, buffer maps and work-done notifications from
+            // a thread of its own, so the render loop never has to poll for them
+            var events = DeviceEventLoop.forInstance(instance);
+
             var wmInfo = new SDL_SysWMInfo();
             wmInfo.version = SDL_GetJavaBindingsVersion();
             if(!SDL_GetWindowWMInfo(window, wmInfo)){
@@ -87,75 +94,32 @@ public class Main {
             WGPURequestAdapterOptions.nextInChain$set(adapterRequestOptions, MemorySegment.NULL);
             WGPURequestAdapterOptions.compatibleSurface$set(adapterRequestOptions, surface);
 
-            var adapterFuture = new CompletableFuture<AdapterCallbackResult>();
-            var adapterCallback = WGPURequestDeviceCallback.allocate((status, device, message, userData) ->
-                    adapterFuture.complete(new AdapterCallbackResult(
-                        status,
-                        device,
-                        message.reinterpret(Long.MAX_VALUE).getUtf8String(0),
-                        userData
-                    )
-            ), arena);
-
-            wgpuInstanceRequestAdapter(instance, adapterRequestOptions, adapterCallback, MemorySegment.NULL);
-            var adapterInfo = adapterFuture.get();
+            var adapterInfo = events.await(events.requestAdapter(instance, adapterRequestOptions));
 
-            var adapterFeatureCount = wgpuAdapterEnumerateFeatures(adapterInfo.adapter(), MemorySegment.NULL);
+            var adapterFeatureCount = wgpuAdapterEnumerateFeatures(adapterInfo.handle(), MemorySegment.NULL);
 
             var features = arena.allocateArray(ValueLayout.JAVA_INT, adapterFeatureCount);
-            wgpuAdapterEnumerateFeatures(adapterInfo.adapter(), features);
-
-            var deviceFuture = new CompletableFuture<DeviceCallbackResult>();
-            var deviceCallback = WGPURequestDeviceCallback.allocate((status, device, message, userData) -> {
-                deviceFuture.complete(new DeviceCallbackResult(
-                        status,
-                        device,
-                        message.reinterpret(Long.MAX_VALUE).getUtf8String(0),
-                        userData
-                ));
-            }, arena);
-
-            var deviceDescriptor = WGPUDeviceDescriptor.allocate(arena);
-            WGPUDeviceDescriptor.nextInChain$set(deviceDescriptor, MemorySegment.NULL);
-            WGPUDeviceDescriptor.requiredFeatureCount$set(deviceDescriptor, 0);
-            WGPUDeviceDescriptor.requiredLimits$set(deviceDescriptor, MemorySegment.NULL);
+            wgpuAdapterEnumerateFeatures(adapterInfo.handle(), features);
 
-            var defaultQueue = WGPUDeviceDescriptor.defaultQueue$slice(deviceDescriptor);
-            WGPUQueueDescriptor.label$set(defaultQueue, arena.allocateUtf8String("Default Queue"));
+            var deviceDescriptor = TriangleScene.deviceDescriptor(adapterInfo.handle(), arena);
 
-            wgpuAdapterRequestDevice(adapterInfo.adapter(), deviceDescriptor, deviceCallback, MemorySegment.NULL);
+            var device = events.await(events.requestDevice(adapterInfo.handle(), deviceDescriptor));
 
-            var device = deviceFuture.get();
-            var deviceErrorCallback = WGPUErrorCallback.allocate((type, message, userData) -> {
-                System.out.println("Device error %d: %s".formatted(type, message.reinterpret(Long.MAX_VALUE).getUtf8String(0)));
-            }, Arena.global());
+            CallbackDispatcher.setUncapturedErrorCallback(device.handle(), (type, message) -> {
+                System.out.println("Device error %d: %s".formatted(type, message));
+            });
 
-            wgpuDeviceSetUncapturedErrorCallback(device.device(), deviceErrorCallback, MemorySegment.NULL);
-
-            var queue = wgpuDeviceGetQueue(device.device());
-            var workDoneCallback = WGPUQueueWorkDoneCallback.allocate((status, userData) -> {
+            var queue = wgpuDeviceGetQueue(device.handle());
+            events.onSubmittedWorkDone(queue).thenAccept(status -> {
                 System.out.println("Queued work finished with status: " + status);
-            }, Arena.global());
-
-            wgpuQueueOnSubmittedWorkDone(queue, workDoneCallback, MemorySegment.NULL);
-
-            var capabilities = WGPUSurfaceCapabilities.allocate(arena);
-            wgpuSurfaceGetCapabilities(surface, adapterInfo.adapter(), capabilities);
-
-            // Configure surface to use device
-            var surfaceConfig = WGPUSurfaceConfiguration.allocate(arena);
-            var format = wgpuSurfaceGetPreferredFormat(surface, adapterInfo.adapter());
+            });
 
-            WGPUSurfaceConfiguration.presentMode$set(surfaceConfig, WGPUPresentMode_Fifo());
-            WGPUSurfaceConfiguration.device$set(surfaceConfig, device.device());
-            WGPUSurfaceConfiguration.format$set(surfaceConfig, format);
-            WGPUSurfaceConfiguration.alphaMode$set(surfaceConfig, WGPUCompositeAlphaMode_Opaque());
-            WGPUSurfaceConfiguration.height$set(surfaceConfig, 200);
-            WGPUSurfaceConfiguration.width$set(surfaceConfig, 200);
-            WGPUSurfaceConfiguration.usage$set(surfaceConfig, WGPUTextureUsage_RenderAttachment());
-            wgpuSurfaceConfigure(surface, surfaceConfig);
-
-            var nextTex = WGPUSurfaceTexture.allocate(arena);
+            // Configures the surface from its capabilities and paces the render loop: the CPU
+            // runs at most two frames ahead of the GPU, and resizes or outdated surfaces are
+            // handled when the next frame begins
+            var scheduler = new FrameScheduler(adapterInfo.handle(), device.handle(), surface, 200, 200,
+                    FrameScheduler.DEFAULT_FRAMES_IN_FLIGHT, FrameScheduler.PresentPolicy.LOW_LATENCY, events);
+            var format = scheduler.format();
 
             var gradient = arena.allocateArray(ValueLayout.JAVA_BYTE, 4 * 200 * 200);
             for(int i = 0; i < 200; i++){
@@ -168,247 +132,74 @@ public class Main {
                 }
             }
 
-            var shaderSrc = """      
-                    @vertex
-                    fn vs_main(@location(0) in_vertex_position: vec2f) -> @builtin(position) vec4f {
-                        return vec4f(in_vertex_position, 0.0, 1.0);
-                    }
-                                        
-                    @fragment
-                    fn fs_main() -> @location(0) vec4f {
-                        return vec4f(0.0, 0.4, 1.0, 1.0);
-                    }
-                    """;
-
-            var shaderDesc = WGPUShaderModuleDescriptor.allocate(arena);
-            WGPUShaderModuleDescriptor.hintCount$set(shaderDesc, 0);
-            WGPUShaderModuleDescriptor.hints$set(shaderDesc, MemorySegment.NULL);
-
-            var shaderCodeDesc = WGPUShaderModuleWGSLDescriptor.allocate(arena);
-            WGPUChainedStruct.next$set(WGPUShaderModuleWGSLDescriptor.chain$slice(shaderCodeDesc), MemorySegment.NULL);
-            WGPUChainedStruct.sType$set(WGPUShaderModuleWGSLDescriptor.chain$slice(shaderCodeDesc), WGPUSType_ShaderModuleWGSLDescriptor());
-
-            WGPUShaderModuleDescriptor.nextInChain$set(shaderDesc, WGPUShaderModuleWGSLDescriptor.chain$slice(shaderCodeDesc));
-            WGPUShaderModuleWGSLDescriptor.code$set(shaderCodeDesc, arena.allocateUtf8String(shaderSrc));
-
-            var shaderModule = wgpuDeviceCreateShaderModule(device.device(), shaderDesc);
-
-            var pipelineDesc = WGPURenderPipelineDescriptor.allocate(arena);
-            WGPURenderPipelineDescriptor.nextInChain$set(pipelineDesc, MemorySegment.NULL);
-            WGPUVertexState.bufferCount$set(WGPURenderPipelineDescriptor.vertex$slice(pipelineDesc), 0);
-            WGPUVertexState.buffers$set(WGPURenderPipelineDescriptor.vertex$slice(pipelineDesc), MemorySegment.NULL);
-
-            WGPUVertexState.module$set(WGPURenderPipelineDescriptor.vertex$slice(pipelineDesc), shaderModule);
-            WGPUVertexState.entryPoint$set(WGPURenderPipelineDescriptor.vertex$slice(pipelineDesc), arena.allocateUtf8String("vs_main"));
-            WGPUVertexState.constantCount$set(WGPURenderPipelineDescriptor.vertex$slice(pipelineDesc), 0);
-            WGPUVertexState.constants$set(WGPURenderPipelineDescriptor.vertex$slice(pipelineDesc), MemorySegment.NULL);
-
-            WGPUPrimitiveState.topology$set(WGPURenderPipelineDescriptor.primitive$slice(pipelineDesc), WGPUPrimitiveTopology_TriangleList());
-            WGPUPrimitiveState.stripIndexFormat$set(WGPURenderPipelineDescriptor.primitive$slice(pipelineDesc), WGPUIndexFormat_Undefined());
-            WGPUPrimitiveState.frontFace$set(WGPURenderPipelineDescriptor.primitive$slice(pipelineDesc), WGPUFrontFace_CCW());
-            WGPUPrimitiveState.cullMode$set(WGPURenderPipelineDescriptor.primitive$slice(pipelineDesc), WGPUCullMode_None());
-
-            var fragmentState = WGPUFragmentState.allocate(arena);
-            WGPUFragmentState.module$set(fragmentState, shaderModule);
-            WGPUFragmentState.entryPoint$set(fragmentState, arena.allocateUtf8String("fs_main"));
-            WGPUFragmentState.constantCount$set(fragmentState, 0);
-            WGPUFragmentState.constants$set(fragmentState, MemorySegment.NULL);
-            WGPURenderPipelineDescriptor.fragment$set(pipelineDesc, fragmentState);
-
-            WGPURenderPipelineDescriptor.depthStencil$set(pipelineDesc, MemorySegment.NULL);
-
-            var blendState = WGPUBlendState.allocate(arena);
-            var blendColor = WGPUBlendState.color$slice(blendState);
-            WGPUBlendComponent.srcFactor$set(blendColor, WGPUBlendFactor_SrcAlpha());
-            WGPUBlendComponent.dstFactor$set(blendColor, WGPUBlendFactor_OneMinusSrcAlpha());
-            WGPUBlendComponent.operation$set(blendColor, WGPUBlendOperation_Add());
-
-            var blendAlpha = WGPUBlendState.alpha$slice(blendState);
-            WGPUBlendComponent.srcFactor$set(blendAlpha, WGPUBlendFactor_Zero());
-            WGPUBlendComponent.dstFactor$set(blendAlpha, WGPUBlendFactor_One());
-            WGPUBlendComponent.operation$set(blendAlpha, WGPUBlendOperation_Add());
-
-            var colorTargetState = WGPUColorTargetState.allocate(arena);
-            WGPUColorTargetState.format$set(colorTargetState, format);
-            WGPUColorTargetState.blend$set(colorTargetState, blendState);
-            WGPUColorTargetState.writeMask$set(colorTargetState, WGPUColorWriteMask_All());
-
-            WGPUFragmentState.targetCount$set(fragmentState, 1);
-            WGPUFragmentState.targets$set(fragmentState, colorTargetState);
-
-            var multisampleState = WGPURenderPipelineDescriptor.multisample$slice(pipelineDesc);
-            WGPUMultisampleState.count$set(multisampleState, 1);
-            WGPUMultisampleState.mask$set(multisampleState, 0xFFFFFFFF);
-            WGPUMultisampleState.alphaToCoverageEnabled$set(multisampleState, 0);
-
-            WGPURenderPipelineDescriptor.layout$set(pipelineDesc, MemorySegment.NULL);
-
-            var vertices = new float[]{
-                    -0.5f, -0.5f,
-                    +0.5f, -0.5f,
-                    +0.0f, +0.5f,
-
-                    -0.55f, -0.5f,
-                    -0.05f, +0.5f,
-                    -0.55f, +0.5f
-            };
-            var vertexCount = vertices.length / 2;
-
-            var bufferDesc = WGPUBufferDescriptor.allocate(arena);
-            WGPUBufferDescriptor.size$set(bufferDesc, vertices.length * 4);
-            WGPUBufferDescriptor.usage$set(bufferDesc, WGPUBufferUsage_CopyDst() | WGPUBufferUsage_Vertex());
-            WGPUBufferDescriptor.mappedAtCreation$set(bufferDesc, 0);
-            var buffer = wgpuDeviceCreateBuffer(device.device(), bufferDesc);
-
-            var vertexBufferData = arena.allocateArray(ValueLayout.JAVA_FLOAT, vertices.length);
-            vertexBufferData.copyFrom(MemorySegment.ofArray(vertices));
-
-            wgpuQueueWriteBuffer(queue, buffer, 0, vertexBufferData, WGPUBufferDescriptor.size$get(bufferDesc));
-
-            var vertexBufferLayout = WGPUVertexBufferLayout.allocate(arena);
+            var scene = new TriangleScene(device.handle(), queue, format);
 
-            var vertexAttrib = WGPUVertexAttribute.allocate(arena);
-            WGPUVertexAttribute.shaderLocation$set(vertexAttrib, 0);
-            WGPUVertexAttribute.format$set(vertexAttrib, WGPUVertexFormat_Float32x2());
-            WGPUVertexAttribute.offset$set(vertexAttrib, 0);
-
-            WGPUVertexBufferLayout.attributeCount$set(vertexBufferLayout, 1);
-            WGPUVertexBufferLayout.attributes$set(vertexBufferLayout, vertexAttrib);
-            WGPUVertexBufferLayout.arrayStride$set(vertexBufferLayout, 2 * 4);
-            WGPUVertexBufferLayout.stepMode$set(vertexBufferLayout, WGPUVertexStepMode_Vertex());
-
-            WGPUVertexState.bufferCount$set(WGPURenderPipelineDescriptor.vertex$slice(pipelineDesc), 1);
-            WGPUVertexState.buffers$set(WGPURenderPipelineDescriptor.vertex$slice(pipelineDesc), vertexBufferLayout);
-
-            var renderPipeline = wgpuDeviceCreateRenderPipeline(device.device(), pipelineDesc);
+            // Times the render pass with timestamp queries, read back without ever stalling the
+            // render loop. Without the TimestampQuery feature it profiles nothing.
+            var profiler = new GpuProfiler(device.handle(), GpuProfiler.DEFAULT_MAX_PASSES,
+                    GpuProfiler.DEFAULT_FRAMES_IN_FLIGHT, 1.0, events, null);
 
             SDL_Event evt = new SDL_Event();
             while(true){
                 while(SDL_PollEvent(evt) != 0) {
                     switch (evt.type){
                         case SDL_QUIT -> {
+                            profiler.close();
+                            scheduler.close();
+                            scene.close();
+                            wgpuQueueRelease(queue);
+                            events.close();
+                            profiler.passTimes().forEach((pass, time) ->
+                                    System.out.println("GPU time of %s: %s".formatted(pass, time)));
+                            // Run with -Dcom.myworldvw.webgpu.instrumentation=true to count live
+                            // objects; anything still live here (beyond the device, adapter,
+                            // surface and instance) has leaked
+                            if(Instrumentation.isEnabled()){
+                                Instrumentation.objectCounts().stream()
+                                        .filter(count -> count.live() != 0)
+                                        .forEach(count -> System.out.println("Live %s objects: %d".formatted(count.type(), count.live())));
+                            }
                             return;
                         }
                         case SDL_WINDOWEVENT -> {
                             if(evt.window.event == SDL_WINDOWEVENT_RESIZED || evt.window.event == SDL_WINDOWEVENT_SIZE_CHANGED){
-                                resize(surface, surfaceConfig, null);
+                                resize(scheduler);
                             }
                         }
                     }
                 }
 
-                wgpuSurfaceGetCurrentTexture(surface, nextTex);
-                var status = WGPUSurfaceTexture.status$get(nextTex);
-                if(status != 0){
-                    if(status == WGPUSurfaceGetCurrentTextureStatus_Timeout()
-                        || status == WGPUSurfaceGetCurrentTextureStatus_Outdated()
-                        || status == WGPUSurfaceGetCurrentTextureStatus_Lost()){
-
-                        resize(surface, surfaceConfig, nextTex);
-
-                    }else{
-                        //Thread.sleep(100);
-                        continue;
-                    }
+                // Waits until the GPU is done with the frame slot, then acquires the surface
+                // texture. Null means there is nothing to draw to yet, e.g. while minimized.
+                var frame = scheduler.beginFrame();
+                if(frame == null){
+                    continue;
                 }
 
-                var surfaceViewDesc = WGPUTextureViewDescriptor.allocate(arena);
-                WGPUTextureViewDescriptor.nextInChain$set(surfaceViewDesc, MemorySegment.NULL);
-                WGPUTextureViewDescriptor.format$set(surfaceViewDesc, format);
-                WGPUTextureViewDescriptor.dimension$set(surfaceViewDesc, WGPUTextureViewDimension_2D());
-                WGPUTextureViewDescriptor.mipLevelCount$set(surfaceViewDesc, 1);
-                WGPUTextureViewDescriptor.arrayLayerCount$set(surfaceViewDesc, 1);
-                WGPUTextureViewDescriptor.aspect$set(surfaceViewDesc, WGPUTextureAspect_All());
-
-                var nextTexView = wgpuTextureCreateView(
-                        WGPUSurfaceTexture.texture$get(nextTex),
-                        surfaceViewDesc
-                );
-
-                var commandEncoderDesc = WGPUCommandEncoderDescriptor.allocate(arena);
-                WGPUCommandEncoderDescriptor.nextInChain$set(commandEncoderDesc, MemorySegment.NULL);
-                WGPUCommandEncoderDescriptor.label$set(commandEncoderDesc, arena.allocateUtf8String("Command Encoder"));
-                var encoder = wgpuDeviceCreateCommandEncoder(device.device(), commandEncoderDesc);
-
-                var renderPassDesc = WGPURenderPassDescriptor.allocate(arena);
-                WGPURenderPassDescriptor.nextInChain$set(renderPassDesc, MemorySegment.NULL);
-
-                var colorAttachment = WGPURenderPassColorAttachment.allocate(arena);
-                WGPURenderPassColorAttachment.view$set(colorAttachment, nextTexView);
-                WGPURenderPassColorAttachment.resolveTarget$set(colorAttachment, MemorySegment.NULL);
-                WGPURenderPassColorAttachment.loadOp$set(colorAttachment, WGPULoadOp_Clear());
-                WGPURenderPassColorAttachment.storeOp$set(colorAttachment, WGPUStoreOp_Store());
-
-                var clearValue = WGPURenderPassColorAttachment.clearValue$slice(colorAttachment);
-                WGPUColor.r$set(clearValue, 0.9);
-                WGPUColor.g$set(clearValue, 0.1);
-                WGPUColor.b$set(clearValue, 0.2);
-                WGPUColor.a$set(clearValue, 1);
-
-                WGPURenderPassDescriptor.colorAttachmentCount$set(renderPassDesc, 1);
-                WGPURenderPassDescriptor.colorAttachments$set(renderPassDesc, colorAttachment);
-
-                WGPURenderPassDescriptor.depthStencilAttachment$set(renderPassDesc, MemorySegment.NULL);
-                WGPURenderPassDescriptor.timestampWrites$set(renderPassDesc, MemorySegment.NULL);
-
-                var renderPass = wgpuCommandEncoderBeginRenderPass(encoder, renderPassDesc);
-
-                wgpuRenderPassEncoderSetPipeline(renderPass, renderPipeline);
+                // Everything allocated per-frame comes out of the slot's frame arena, which is
+                // only recycled once the GPU has finished the frame that last used it.
+                var frameArena = frame.arena();
+                profiler.beginFrame();
 
-                wgpuRenderPassEncoderSetVertexBuffer(renderPass, 0, buffer, 0, buffer.byteSize());
+                scene.render(frame.encoder(), frame.view(), frameArena, profiler);
 
-                wgpuRenderPassEncoderDraw(renderPass, vertexCount, 1, 0, 0);
-
-                wgpuRenderPassEncoderEnd(renderPass);
-                wgpuRenderPassEncoderRelease(renderPass);
-
-
-                wgpuTextureRelease(nextTex);
-
-                var commandBufferDesc = WGPUCommandBufferDescriptor.allocate(arena);
-                WGPUCommandBufferDescriptor.label$set(commandBufferDesc, arena.allocateUtf8String("Command Buffer"));
-                WGPUCommandBufferDescriptor.nextInChain$set(commandBufferDesc, MemorySegment.NULL);
-
-                var command = wgpuCommandEncoderFinish(encoder, MemorySegment.NULL);
-
-                var commandArray = arena.allocateArray(WGPUCommandBuffer, 1);
-                commandArray.setAtIndex(WGPUCommandBuffer, 0, command);
-
-                wgpuQueueSubmit(queue, 1, commandArray);
-
-                wgpuCommandBufferRelease(command);
-                wgpuCommandEncoderRelease(encoder);
-
-                wgpuSurfacePresent(surface);
-
-                wgpuTextureViewRelease(nextTexView);
-                wgpuTextureRelease(WGPUSurfaceTexture.texture$get(nextTex));
-
-                Thread.sleep(100);
+                profiler.resolve(frame.encoder());
+                scheduler.endFrame(frame);
+                profiler.submitted();
             }
 
 
 
-        } catch (ExecutionException | InterruptedException e) {
+        } catch (InterruptedException e) {
             throw new RuntimeException(e);
         }
     }
 
-    private record AdapterCallbackResult(int status, MemorySegment adapter, String message, MemorySegment userData){}
-    private record DeviceCallbackResult(int status, MemorySegment device, String message, MemorySegment userData){}
-
-    private void resize(MemorySegment surface, MemorySegment surfaceConfig, MemorySegment surfaceTexture){
+    private void resize(FrameScheduler scheduler){
         var width = new IntByReference();
         var height = new IntByReference();
         SDL_GetWindowSize(window, width, height);
-        WGPUSurfaceConfiguration.width$set(surfaceConfig, width.getValue());
-        WGPUSurfaceConfiguration.height$set(surfaceConfig, height.getValue());
-
-        if(surfaceTexture != null){
-            wgpuTextureRelease(WGPUSurfaceTexture.texture$get(surfaceTexture));
-        }
-
-        wgpuSurfaceConfigure(surface, surfaceConfig);
+        scheduler.resize(width.getValue(), height.getValue());
     }
 
     private void run(){
@@ -0,0 +1,172 @@
+package com.myworldvw.webgpu.demo;
+
+import com.myworldvw.webgpu.*;
+import com.myworldvw.webgpu.builder.*;
+import com.myworldvw.webgpu.instrument.GpuProfiler;
+
+import java.lang.foreign.*;
+
+import static com.myworldvw.webgpu.webgpu_h.*;
+import static com.myworldvw.webgpu.binding.TrivialCalls.wgpuRenderPassEncoderDraw;
+import static com.myworldvw.webgpu.binding.TrivialCalls.wgpuRenderPassEncoderSetPipeline;
+import static com.myworldvw.webgpu.binding.TrivialCalls.wgpuRenderPassEncoderSetVertexBuffer;
+
+/**
+ * What the demo draws: two triangles from one vertex buffer, with the pipeline and the render
+ * pass that draw them. Nothing here depends on the window, so the same paths run against any
+ * device - including the mock backend's.
+ */
+public final class TriangleScene implements AutoCloseable {
+
+    private static final String SHADER = """
+            @vertex
+            fn vs_main(@location(0) in_vertex_position: vec2f) -> @builtin(position) vec4f {
+                return vec4f(in_vertex_position, 0.0, 1.0);
+            }
+
+            @fragment
+            fn fs_main() -> @location(0) vec4f {
+                return vec4f(0.0, 0.4, 1.0, 1.0);
+            }
+            """;
+
+    private static final float[] VERTICES = new float[]{
+            -0.5f, -0.5f,
+            +0.5f, -0.5f,
+            +0.0f, +0.5f,
+
+            -0.55f, -0.5f,
+            -0.05f, +0.5f,
+            -0.55f, +0.5f
+    };
+
+    private final MemorySegment shaderModule;
+    private final MemorySegment buffer;
+    private final MemorySegment renderPipeline;
+    private final long bufferSize = VERTICES.length * 4L;
+    private final int vertexCount = VERTICES.length / 2;
+
+    /**
+     * @param format the format of the color target the scene renders to
+     */
+    public TriangleScene(MemorySegment device, MemorySegment queue, int format){
+        try(var arena = Arena.ofConfined()){
+            var shaderDesc = ShaderModuleDescriptorBuilder.allocate(arena);
+            shaderDesc.nextInChain(ShaderModuleWGSLDescriptorBuilder.allocate(shaderDesc.writer()).code(SHADER));
+
+            shaderModule = wgpuDeviceCreateShaderModule(device, shaderDesc.segment());
+
+            var bufferDesc = WGPUBufferDescriptor.allocate(arena);
+            WGPUBufferDescriptor.size$set(bufferDesc, bufferSize);
+            WGPUBufferDescriptor.usage$set(bufferDesc, WGPUBufferUsage_CopyDst() | WGPUBufferUsage_Vertex());
+            WGPUBufferDescriptor.mappedAtCreation$set(bufferDesc, 0);
+            buffer = wgpuDeviceCreateBuffer(device, bufferDesc);
+
+            var vertexBufferData = arena.allocateArray(ValueLayout.JAVA_FLOAT, VERTICES.length);
+            vertexBufferData.copyFrom(MemorySegment.ofArray(VERTICES));
+
+            wgpuQueueWriteBuffer(queue, buffer, 0, vertexBufferData, bufferSize);
+
+            var pipelineDesc = RenderPipelineDescriptorBuilder.allocate(arena);
+            pipelineDesc.vertex()
+                    .module(shaderModule)
+                    .entryPoint("vs_main")
+                    .buffers(1)
+                        .arrayStride(2 * 4)
+                        .stepMode(WGPUVertexStepMode_Vertex())
+                        .attributes(1)
+                            .shaderLocation(0)
+                            .format(WGPUVertexFormat_Float32x2())
+                            .offset(0);
+
+            pipelineDesc.primitive()
+                    .topology(WGPUPrimitiveTopology_TriangleList())
+                    .stripIndexFormat(WGPUIndexFormat_Undefined())
+                    .frontFace(WGPUFrontFace_CCW())
+                    .cullMode(WGPUCullMode_None());
+
+            var colorTarget = pipelineDesc.fragment()
+                    .module(shaderModule)
+                    .entryPoint("fs_main")
+                    .targets(1)
+                        .format(format)
+                        .writeMask(WGPUColorWriteMask_All());
+
+            var blend = colorTarget.blend();
+            blend.color()
+                    .srcFactor(WGPUBlendFactor_SrcAlpha())
+                    .dstFactor(WGPUBlendFactor_OneMinusSrcAlpha())
+                    .operation(WGPUBlendOperation_Add());
+            blend.alpha()
+                    .srcFactor(WGPUBlendFactor_Zero())
+                    .dstFactor(WGPUBlendFactor_One())
+                    .operation(WGPUBlendOperation_Add());
+
+            pipelineDesc.multisample()
+                    .count(1)
+                    .mask(0xFFFFFFFF)
+                    .alphaToCoverageEnabled(0);
+
+            renderPipeline = wgpuDeviceCreateRenderPipeline(device, pipelineDesc.segment());
+        }
+    }
+
+    /**
+     * Fills in the descriptor of the device the scene is rendered with: it requests the
+     * {@code TimestampQuery} feature when the adapter has it, so a {@link GpuProfiler} can
+     * measure the render pass on the GPU.
+     */
+    public static MemorySegment deviceDescriptor(MemorySegment adapter, SegmentAllocator allocator){
+        var deviceDescriptor = WGPUDeviceDescriptor.allocate(allocator);
+        WGPUDeviceDescriptor.nextInChain$set(deviceDescriptor, MemorySegment.NULL);
+        if(wgpuAdapterHasFeature(adapter, WGPUFeatureName_TimestampQuery()) != 0){
+            var requiredFeatures = allocator.allocate(ValueLayout.JAVA_INT, WGPUFeatureName_TimestampQuery());
+            WGPUDeviceDescriptor.requiredFeatureCount$set(deviceDescriptor, 1);
+            WGPUDeviceDescriptor.requiredFeatures$set(deviceDescriptor, requiredFeatures);
+        }else{
+            WGPUDeviceDescriptor.requiredFeatureCount$set(deviceDescriptor, 0);
+        }
+        WGPUDeviceDescriptor.requiredLimits$set(deviceDescriptor, MemorySegment.NULL);
+
+        var defaultQueue = WGPUDeviceDescriptor.defaultQueue$slice(deviceDescriptor);
+        WGPUQueueDescriptor.label$set(defaultQueue, allocator.allocateUtf8String("Default Queue"));
+        return deviceDescriptor;
+    }
+
+    /**
+     * Records the render pass that clears {@code view} and draws the triangles.
+     * @param frameArena the frame's descriptor memory
+     * @param profiler times the pass, if the device supports timestamp queries
+     */
+    public void render(MemorySegment encoder, MemorySegment view, SegmentAllocator frameArena, GpuProfiler profiler){
+        var renderPassDesc = RenderPassDescriptorBuilder.allocate(frameArena);
+        renderPassDesc.colorAttachments(1)
+                .view(view)
+                .loadOp(WGPULoadOp_Clear())
+                .storeOp(WGPUStoreOp_Store())
+                .clearValue()
+                    .r(0.9)
+                    .g(0.1)
+                    .b(0.2)
+                    .a(1);
+        renderPassDesc.timestampWrites(profiler.renderPassTimestampWrites("triangles", frameArena));
+
+        var renderPass = wgpuCommandEncoderBeginRenderPass(encoder, renderPassDesc.segment());
+
+        wgpuRenderPassEncoderSetPipeline(renderPass, renderPipeline);
+
+        wgpuRenderPassEncoderSetVertexBuffer(renderPass, 0, buffer, 0, bufferSize);
+
+        wgpuRenderPassEncoderDraw(renderPass, vertexCount, 1, 0, 0);
+
+        wgpuRenderPassEncoderEnd(renderPass);
+        wgpuRenderPassEncoderRelease(renderPass);
+    }
+
+    @Override
+    public void close(){
+        wgpuRenderPipelineRelease(renderPipeline);
+        wgpuBufferRelease(buffer);
+        wgpuShaderModuleRelease(shaderModule);
+    }
+}
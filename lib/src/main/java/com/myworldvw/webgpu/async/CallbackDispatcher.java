@@ -0,0 +1,326 @@
+package com.myworldvw.webgpu.async;
+
+import com.myworldvw.webgpu.*;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static com.myworldvw.webgpu.webgpu_h.*;
+
+/**
+ * Routes WebGPU callbacks through one shared upcall stub per callback type.
+ * <p>
+ * Creating an upcall stub is expensive, and stubs allocated into {@link Arena#global()}
+ * are never freed. Instead of allocating a stub for every request, each callback type
+ * gets a single stub on first use. Requests register their handler in a lock-free ticket
+ * table and pass the ticket to WebGPU as the {@code userdata} pointer; the shared stub
+ * uses that ticket to find and complete the right handler.
+ * <p>
+ * One-shot requests (adapter/device requests, buffer maps, work-done notifications,
+ * async pipeline creation and error scopes) complete a {@link CompletableFuture} and
+ * release their ticket. Long-lived callbacks (uncaught errors, device loss) keep their
+ * ticket until {@link #unregister(long)} is called.
+ * <p>
+ * Futures are completed on whichever thread WebGPU invokes the callback from - usually
+ * the thread polling the device - so dependent stages should not block. The number of
+ * simultaneously pending tickets is bounded by the {@code webgpu.callbacks.capacity}
+ * system property (default 4096, rounded up to a power of two).
+ */
+public final class CallbackDispatcher {
+
+    public record RequestResult(int status, MemorySegment handle, String message){}
+
+    public record ErrorResult(int type, String message){}
+
+    @FunctionalInterface
+    public interface ErrorHandler {
+        void onError(int type, String message);
+    }
+
+    @FunctionalInterface
+    public interface DeviceLostHandler {
+        void onDeviceLost(int reason, String message);
+    }
+
+    private static final TicketTable tickets = new TicketTable(
+            Integer.highestOneBit(Math.max(1, Integer.getInteger("webgpu.callbacks.capacity", 4096) * 2 - 1)));
+
+    private CallbackDispatcher(){}
+
+    // Each stub lives in its own holder class so that only the callback types an
+    // application actually uses pay for stub creation.
+    private static final class BufferMap {
+        static final MemorySegment STUB = WGPUBufferMapCallback.allocate(
+                CallbackDispatcher::onStatus, Arena.global());
+    }
+
+    private static final class QueueWorkDone {
+        static final MemorySegment STUB = WGPUQueueWorkDoneCallback.allocate(
+                CallbackDispatcher::onStatus, Arena.global());
+    }
+
+    private static final class RequestAdapter {
+        static final MemorySegment STUB = WGPURequestAdapterCallback.allocate(
+                CallbackDispatcher::onRequest, Arena.global());
+    }
+
+    private static final class RequestDevice {
+        static final MemorySegment STUB = WGPURequestDeviceCallback.allocate(
+                CallbackDispatcher::onRequest, Arena.global());
+    }
+
+    private static final class CreateRenderPipeline {
+        static final MemorySegment STUB = WGPUCreateRenderPipelineAsyncCallback.allocate(
+                CallbackDispatcher::onRequest, Arena.global());
+    }
+
+    private static final class CreateComputePipeline {
+        static final MemorySegment STUB = WGPUCreateComputePipelineAsyncCallback.allocate(
+                CallbackDispatcher::onRequest, Arena.global());
+    }
+
+    private static final class ErrorCallback {
+        static final MemorySegment STUB = WGPUErrorCallback.allocate(
+                CallbackDispatcher::onError, Arena.global());
+    }
+
+    private static final class DeviceLost {
+        static final MemorySegment STUB = WGPUDeviceLostCallback.allocate(
+                CallbackDispatcher::onDeviceLost, Arena.global());
+    }
+
+    public static CompletableFuture<RequestResult> requestAdapter(MemorySegment instance, MemorySegment options){
+        var future = new CompletableFuture<RequestResult>();
+        var ticket = tickets.register(future);
+        try{
+            wgpuInstanceRequestAdapter(instance, options, RequestAdapter.STUB, userdata(ticket));
+        }catch(RuntimeException | Error e){
+            tickets.remove(ticket);
+            throw e;
+        }
+        return future;
+    }
+
+    public static CompletableFuture<RequestResult> requestDevice(MemorySegment adapter, MemorySegment descriptor){
+        var future = new CompletableFuture<RequestResult>();
+        var ticket = tickets.register(future);
+        try{
+            wgpuAdapterRequestDevice(adapter, descriptor, RequestDevice.STUB, userdata(ticket));
+        }catch(RuntimeException | Error e){
+            tickets.remove(ticket);
+            throw e;
+        }
+        return future;
+    }
+
+    /**
+     * Maps a buffer. The returned future completes with the {@code WGPUBufferMapAsyncStatus}
+     * once the device has been polled past the point where the mapping is ready.
+     */
+    public static CompletableFuture<Integer> mapAsync(MemorySegment buffer, int mode, long offset, long size){
+        var future = new CompletableFuture<Integer>();
+        var ticket = tickets.register(future);
+        try{
+            wgpuBufferMapAsync(buffer, mode, offset, size, BufferMap.STUB, userdata(ticket));
+        }catch(RuntimeException | Error e){
+            tickets.remove(ticket);
+            throw e;
+        }
+        return future;
+    }
+
+    /**
+     * Completes with the {@code WGPUQueueWorkDoneStatus} once all work submitted to the
+     * queue so far has finished executing.
+     */
+    public static CompletableFuture<Integer> onSubmittedWorkDone(MemorySegment queue){
+        var future = new CompletableFuture<Integer>();
+        var ticket = tickets.register(future);
+        try{
+            wgpuQueueOnSubmittedWorkDone(queue, QueueWorkDone.STUB, userdata(ticket));
+        }catch(RuntimeException | Error e){
+            tickets.remove(ticket);
+            throw e;
+        }
+        return future;
+    }
+
+    public static CompletableFuture<RequestResult> createRenderPipelineAsync(MemorySegment device, MemorySegment descriptor){
+        var future = new CompletableFuture<RequestResult>();
+        var ticket = tickets.register(future);
+        try{
+            wgpuDeviceCreateRenderPipelineAsync(device, descriptor, CreateRenderPipeline.STUB, userdata(ticket));
+        }catch(RuntimeException | Error e){
+            tickets.remove(ticket);
+            throw e;
+        }
+        return future;
+    }
+
+    public static CompletableFuture<RequestResult> createComputePipelineAsync(MemorySegment device, MemorySegment descriptor){
+        var future = new CompletableFuture<RequestResult>();
+        var ticket = tickets.register(future);
+        try{
+            wgpuDeviceCreateComputePipelineAsync(device, descriptor, CreateComputePipeline.STUB, userdata(ticket));
+        }catch(RuntimeException | Error e){
+            tickets.remove(ticket);
+            throw e;
+        }
+        return future;
+    }
+
+    public static CompletableFuture<ErrorResult> popErrorScope(MemorySegment device){
+        var future = new CompletableFuture<ErrorResult>();
+        var ticket = tickets.register(future);
+        try{
+            wgpuDevicePopErrorScope(device, ErrorCallback.STUB, userdata(ticket));
+        }catch(RuntimeException | Error e){
+            tickets.remove(ticket);
+            throw e;
+        }
+        return future;
+    }
+
+    /**
+     * Installs a long-lived uncaptured error handler on the device.
+     * @return the ticket for the handler, to be passed to {@link #unregister(long)} once
+     * the device has been released
+     */
+    public static long setUncapturedErrorCallback(MemorySegment device, ErrorHandler handler){
+        var ticket = tickets.register(handler);
+        try{
+            wgpuDeviceSetUncapturedErrorCallback(device, ErrorCallback.STUB, userdata(ticket));
+        }catch(RuntimeException | Error e){
+            tickets.remove(ticket);
+            throw e;
+        }
+        return ticket;
+    }
+
+    /**
+     * Wires a device-lost handler into a {@code WGPUDeviceDescriptor} before it is passed to
+     * {@link #requestDevice(MemorySegment, MemorySegment)}.
+     * @return the ticket for the handler, to be passed to {@link #unregister(long)} once
+     * the device has been released
+     */
+    public static long setDeviceLostCallback(MemorySegment deviceDescriptor, DeviceLostHandler handler){
+        var ticket = tickets.register(handler);
+        WGPUDeviceDescriptor.deviceLostCallback$set(deviceDescriptor, DeviceLost.STUB);
+        WGPUDeviceDescriptor.deviceLostUserdata$set(deviceDescriptor, userdata(ticket));
+        return ticket;
+    }
+
+    public static void unregister(long ticket){
+        tickets.remove(ticket);
+    }
+
+    /**
+     * Releases the tickets of one-shot requests whose futures are in {@code futures}, for a
+     * caller that will never poll for them again. A callback that still arrives for one of them
+     * is ignored.
+     * @return the number of tickets released
+     */
+    static int forget(Set<? extends CompletableFuture<?>> futures){
+        return futures.isEmpty() ? 0 : tickets.removeIf(futures::contains);
+    }
+
+    /**
+     * Registers a handler directly, for callers that invoke the WebGPU entry point themselves
+     * with one of the shared stubs (e.g. {@link #bufferMapCallback()}). One-shot handlers
+     * must be {@link CompletableFuture}s of the result type the stub produces.
+     * @return the ticket to pass (via {@link #userdata(long)}) as the callback userdata
+     */
+    public static long register(Object handler){
+        return tickets.register(handler);
+    }
+
+    public static MemorySegment userdata(long ticket){
+        return MemorySegment.ofAddress(ticket);
+    }
+
+    public static MemorySegment bufferMapCallback(){
+        return BufferMap.STUB;
+    }
+
+    public static MemorySegment queueWorkDoneCallback(){
+        return QueueWorkDone.STUB;
+    }
+
+    public static MemorySegment requestAdapterCallback(){
+        return RequestAdapter.STUB;
+    }
+
+    public static MemorySegment requestDeviceCallback(){
+        return RequestDevice.STUB;
+    }
+
+    public static MemorySegment errorCallback(){
+        return ErrorCallback.STUB;
+    }
+
+    public static MemorySegment deviceLostCallback(){
+        return DeviceLost.STUB;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void onStatus(int status, MemorySegment userdata){
+        try{
+            if(tickets.remove(userdata.address()) instanceof CompletableFuture<?> future){
+                ((CompletableFuture<Integer>) future).complete(status);
+            }
+        }catch(Throwable t){
+            reportUncaught(t);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void onRequest(int status, MemorySegment handle, MemorySegment message, MemorySegment userdata){
+        try{
+            if(tickets.remove(userdata.address()) instanceof CompletableFuture<?> future){
+                ((CompletableFuture<RequestResult>) future).complete(new RequestResult(status, handle, string(message)));
+            }
+        }catch(Throwable t){
+            reportUncaught(t);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void onError(int type, MemorySegment message, MemorySegment userdata){
+        try{
+            var ticket = userdata.address();
+            var handler = tickets.get(ticket);
+            if(handler instanceof ErrorHandler errorHandler){
+                errorHandler.onError(type, string(message));
+            }else if(handler instanceof CompletableFuture<?> && tickets.remove(ticket) instanceof CompletableFuture<?> future){
+                ((CompletableFuture<ErrorResult>) future).complete(new ErrorResult(type, string(message)));
+            }
+        }catch(Throwable t){
+            reportUncaught(t);
+        }
+    }
+
+    private static void onDeviceLost(int reason, MemorySegment message, MemorySegment userdata){
+        try{
+            if(tickets.get(userdata.address()) instanceof DeviceLostHandler handler){
+                handler.onDeviceLost(reason, string(message));
+            }
+        }catch(Throwable t){
+            reportUncaught(t);
+        }
+    }
+
+    private static String string(MemorySegment message){
+        if(MemorySegment.NULL.equals(message)){
+            return null;
+        }
+        return message.reinterpret(Long.MAX_VALUE).getUtf8String(0);
+    }
+
+    private static void reportUncaught(Throwable t){
+        // Exceptions must never escape an upcall - the JVM would terminate.
+        var thread = Thread.currentThread();
+        thread.getUncaughtExceptionHandler().uncaughtException(thread, t);
+    }
+}
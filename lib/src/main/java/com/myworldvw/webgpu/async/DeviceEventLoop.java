@@ -0,0 +1,375 @@
+package com.myworldvw.webgpu.async;
+
+import com.myworldvw.webgpu.wgpu.wgpu_h;
+
+import java.lang.foreign.MemorySegment;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.myworldvw.webgpu.webgpu_h.*;
+
+/**
+ * Drives a device's asynchronous callbacks from a thread of its own, so that buffer maps,
+ * work-done notifications and async pipeline creation complete without the application
+ * polling, and without a thread spinning on the device when there is nothing to wait for.
+ * <p>
+ * The loop polls the device with {@code wgpuDevicePoll} - or the instance with
+ * {@code wgpuInstanceProcessEvents}, for adapter and device requests made before there is a
+ * device - whenever requests made through it are pending. While polls keep completing
+ * requests it polls again right away; when they stop, it spins for a few more polls and then
+ * parks, doubling the park time up to a limit. Making a request or submitting work through
+ * the loop wakes it immediately. With nothing pending the loop parks for
+ * {@link #DEFAULT_IDLE_PARK_NANOS} at a time: callbacks requested directly through
+ * {@link CallbackDispatcher} still complete then, just not promptly - request them through the
+ * loop, or {@link #track(CompletableFuture)} them, instead.
+ * <p>
+ * Futures complete on the loop's thread, so dependent stages should not block. Code that needs
+ * the result can use the {@code await} methods, which are interruptible and cheap to block in
+ * from virtual threads, e.g. inside a {@code StructuredTaskScope}.
+ */
+public final class DeviceEventLoop implements AutoCloseable {
+
+    public static final int DEFAULT_SPIN_POLLS = 64;
+
+    public static final long MIN_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(20);
+
+    public static final long DEFAULT_MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    public static final long DEFAULT_IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private static final ThreadFactory DEFAULT_THREAD_FACTORY = Thread.ofPlatform()
+            .name("webgpu-event-loop-", 0)
+            .daemon()
+            .factory();
+
+    /**
+     * @param polls the number of times the device or instance was polled
+     * @param emptyPolls polls that completed no request
+     * @param parks the number of times the loop parked
+     * @param completions requests completed
+     * @param totalLatencyNanos the sum of the time between making each request and its
+     *                          completion, including the time the GPU took
+     * @param maxLatencyNanos the longest time a request took to complete
+     */
+    public record Statistics(long polls, long emptyPolls, long parks, long completions,
+                             long totalLatencyNanos, long maxLatencyNanos){
+
+        public double meanLatencyNanos(){
+            return completions > 0 ? (double) totalLatencyNanos / completions : 0;
+        }
+    }
+
+    private final MemorySegment instance;
+    private final MemorySegment device;
+    private final int spinPolls;
+    private final long maxParkNanos;
+    private final Thread thread;
+
+    private final Set<CompletableFuture<?>> pending = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private volatile boolean signalled;
+    private volatile boolean running = true;
+
+    private final LongAdder completions = new LongAdder();
+    private final LongAdder totalLatency = new LongAdder();
+    private final AtomicLong maxLatency = new AtomicLong();
+    // Only written by the loop thread
+    private volatile long polls;
+    private volatile long emptyPolls;
+    private volatile long parks;
+
+    public DeviceEventLoop(MemorySegment device){
+        this(MemorySegment.NULL, device, DEFAULT_THREAD_FACTORY, DEFAULT_SPIN_POLLS, DEFAULT_MAX_PARK_NANOS);
+    }
+
+    public DeviceEventLoop(MemorySegment device, ThreadFactory threadFactory){
+        this(MemorySegment.NULL, device, threadFactory, DEFAULT_SPIN_POLLS, DEFAULT_MAX_PARK_NANOS);
+    }
+
+    /**
+     * @param instance the instance to process events for, if {@code device} is NULL
+     * @param device the device to poll, or NULL to process the instance's events instead
+     * @param threadFactory creates the loop's thread - a platform or a virtual thread
+     * @param spinPolls the number of polls without completions before the loop starts parking
+     * @param maxParkNanos the longest the loop parks at a time while requests are pending. This
+     *                     bounds the latency the loop adds to a completion.
+     */
+    public DeviceEventLoop(MemorySegment instance, MemorySegment device, ThreadFactory threadFactory,
+                           int spinPolls, long maxParkNanos){
+        if(MemorySegment.NULL.equals(instance) && MemorySegment.NULL.equals(device)){
+            throw new IllegalArgumentException("Either an instance or a device is required");
+        }
+        if(spinPolls < 0 || maxParkNanos < MIN_PARK_NANOS){
+            throw new IllegalArgumentException("Invalid back-off: " + spinPolls + " spin polls, max park " + maxParkNanos + "ns");
+        }
+        this.instance = instance;
+        this.device = device;
+        this.spinPolls = spinPolls;
+        this.maxParkNanos = maxParkNanos;
+        thread = threadFactory.newThread(this::run);
+        thread.start();
+    }
+
+    /**
+     * Creates a loop processing the instance's events, for adapter and device requests.
+     */
+    public static DeviceEventLoop forInstance(MemorySegment instance){
+        return new DeviceEventLoop(instance, MemorySegment.NULL, DEFAULT_THREAD_FACTORY, DEFAULT_SPIN_POLLS, DEFAULT_MAX_PARK_NANOS);
+    }
+
+    public CompletableFuture<CallbackDispatcher.RequestResult> requestAdapter(MemorySegment instance, MemorySegment options){
+        var start = System.nanoTime();
+        return track(start, CallbackDispatcher.requestAdapter(instance, options));
+    }
+
+    public CompletableFuture<CallbackDispatcher.RequestResult> requestDevice(MemorySegment adapter, MemorySegment descriptor){
+        var start = System.nanoTime();
+        return track(start, CallbackDispatcher.requestDevice(adapter, descriptor));
+    }
+
+    /**
+     * @see CallbackDispatcher#mapAsync(MemorySegment, int, long, long)
+     */
+    public CompletableFuture<Integer> mapAsync(MemorySegment buffer, int mode, long offset, long size){
+        var start = System.nanoTime();
+        return track(start, CallbackDispatcher.mapAsync(buffer, mode, offset, size));
+    }
+
+    /**
+     * @see CallbackDispatcher#onSubmittedWorkDone(MemorySegment)
+     */
+    public CompletableFuture<Integer> onSubmittedWorkDone(MemorySegment queue){
+        var start = System.nanoTime();
+        return track(start, CallbackDispatcher.onSubmittedWorkDone(queue));
+    }
+
+    public CompletableFuture<CallbackDispatcher.RequestResult> createRenderPipelineAsync(MemorySegment device, MemorySegment descriptor){
+        var start = System.nanoTime();
+        return track(start, CallbackDispatcher.createRenderPipelineAsync(device, descriptor));
+    }
+
+    public CompletableFuture<CallbackDispatcher.RequestResult> createComputePipelineAsync(MemorySegment device, MemorySegment descriptor){
+        var start = System.nanoTime();
+        return track(start, CallbackDispatcher.createComputePipelineAsync(device, descriptor));
+    }
+
+    public CompletableFuture<CallbackDispatcher.ErrorResult> popErrorScope(MemorySegment device){
+        var start = System.nanoTime();
+        return track(start, CallbackDispatcher.popErrorScope(device));
+    }
+
+    /**
+     * Keeps the loop polling until the future completes. For requests made with one of
+     * {@link CallbackDispatcher}'s shared stubs directly.
+     */
+    public <T> CompletableFuture<T> track(CompletableFuture<T> future){
+        return track(System.nanoTime(), future);
+    }
+
+    /**
+     * Submits the command buffers and wakes the loop, so that requests waiting for this
+     * work are polled for without delay.
+     */
+    public void submit(MemorySegment queue, long commandCount, MemorySegment commands){
+        wgpuQueueSubmit(queue, commandCount, commands);
+        wake();
+    }
+
+    /**
+     * Like {@link #submit(MemorySegment, long, MemorySegment)}, using wgpu-native's
+     * {@code wgpuQueueSubmitForIndex}.
+     * @return the submission index
+     */
+    public long submitForIndex(MemorySegment queue, long commandCount, MemorySegment commands){
+        var index = wgpu_h.wgpuQueueSubmitForIndex(queue, commandCount, commands);
+        wake();
+        return index;
+    }
+
+    /**
+     * Waits for the future to complete.
+     * @throws CompletionException wrapping the exception the future completed with
+     * @throws CancellationException if the future was cancelled, or the loop was closed
+     * before it completed
+     * @throws IllegalStateException if called from the loop's own thread, which would never
+     * complete the future
+     */
+    public <T> T await(CompletableFuture<T> future) throws InterruptedException {
+        checkNotLoopThread();
+        try{
+            return future.get();
+        }catch(ExecutionException e){
+            throw new CompletionException(e.getCause());
+        }
+    }
+
+    /**
+     * Waits at most {@code timeout} for the future to complete.
+     * @see #await(CompletableFuture)
+     */
+    public <T> T await(CompletableFuture<T> future, Duration timeout) throws InterruptedException, TimeoutException {
+        checkNotLoopThread();
+        try{
+            return future.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        }catch(ExecutionException e){
+            throw new CompletionException(e.getCause());
+        }
+    }
+
+    /**
+     * Maps the buffer and waits for the mapping.
+     * @return the {@code WGPUBufferMapAsyncStatus}
+     */
+    public int awaitMap(MemorySegment buffer, int mode, long offset, long size) throws InterruptedException {
+        return await(mapAsync(buffer, mode, offset, size));
+    }
+
+    /**
+     * Waits until all work submitted to the queue so far has finished executing.
+     * @return the {@code WGPUQueueWorkDoneStatus}
+     */
+    public int awaitWorkDone(MemorySegment queue) throws InterruptedException {
+        return await(onSubmittedWorkDone(queue));
+    }
+
+    /**
+     * @return the number of requests made through the loop that haven't completed
+     */
+    public int pendingRequests(){
+        return pendingCount.get();
+    }
+
+    public Statistics statistics(){
+        return new Statistics(polls, emptyPolls, parks, completions.sum(), totalLatency.sum(), maxLatency.get());
+    }
+
+    /**
+     * Stops the loop and waits for its thread to finish, then polls once more without blocking
+     * to complete requests that have already finished. Requests that are still pending are
+     * cancelled and their {@link CallbackDispatcher} tickets released, so close the loop before
+     * releasing the device or instance it polls.
+     */
+    @Override
+    public void close(){
+        running = false;
+        LockSupport.unpark(thread);
+        if(Thread.currentThread() != thread){
+            var interrupted = false;
+            while(thread.isAlive()){
+                try{
+                    thread.join();
+                }catch(InterruptedException e){
+                    interrupted = true;
+                }
+            }
+            if(interrupted){
+                Thread.currentThread().interrupt();
+            }
+        }
+        if(pending.isEmpty()){
+            return;
+        }
+        poll();
+        CallbackDispatcher.forget(pending);
+        for(var future : pending){
+            future.cancel(false);
+        }
+    }
+
+    private <T> CompletableFuture<T> track(long start, CompletableFuture<T> future){
+        if(!running){
+            future.cancel(false);
+            return future;
+        }
+        pending.add(future);
+        pendingCount.incrementAndGet();
+        future.whenComplete((result, error) -> {
+            if(pending.remove(future)){
+                pendingCount.decrementAndGet();
+                var latency = System.nanoTime() - start;
+                completions.increment();
+                totalLatency.add(latency);
+                maxLatency.accumulateAndGet(latency, Math::max);
+            }
+        });
+        wake();
+        return future;
+    }
+
+    private void wake(){
+        signalled = true;
+        LockSupport.unpark(thread);
+    }
+
+    private void run(){
+        var idlePolls = 0;
+        var park = MIN_PARK_NANOS;
+        try{
+            while(running){
+                signalled = false;
+                if(pendingCount.get() == 0){
+                    idlePolls = 0;
+                    park = MIN_PARK_NANOS;
+                    parks++;
+                    LockSupport.parkNanos(this, DEFAULT_IDLE_PARK_NANOS);
+                    if(!signalled){
+                        // Still poll now and then for callbacks requested around the loop
+                        poll();
+                    }
+                    continue;
+                }
+
+                var completed = completions.sum();
+                poll();
+                if(signalled || completions.sum() != completed){
+                    idlePolls = 0;
+                    park = MIN_PARK_NANOS;
+                    continue;
+                }
+
+                emptyPolls++;
+                if(idlePolls++ < spinPolls){
+                    Thread.onSpinWait();
+                }else{
+                    parks++;
+                    LockSupport.parkNanos(this, park);
+                    park = Math.min(park * 2, maxParkNanos);
+                }
+            }
+        }catch(RuntimeException | Error e){
+            // Fail whatever is waiting on the loop rather than leaving it hanging
+            running = false;
+            for(var future : pending){
+                future.completeExceptionally(e);
+            }
+            throw e;
+        }
+    }
+
+    private void poll(){
+        polls++;
+        if(MemorySegment.NULL.equals(device)){
+            wgpuInstanceProcessEvents(instance);
+        }else{
+            wgpu_h.wgpuDevicePoll(device, 0, MemorySegment.NULL);
+        }
+    }
+
+    private void checkNotLoopThread(){
+        if(Thread.currentThread() == thread){
+            throw new IllegalStateException("Cannot await a completion on the event loop's own thread");
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.myworldvw.webgpu.async;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Predicate;
+
+/**
+ * A fixed-capacity, lock-free map from long tickets to callback handlers.
+ * <p>
+ * Tickets are handed out from a monotonically increasing counter and map onto a
+ * power-of-two ring of slots, so lookups are a mask and two array reads. A slot is
+ * claimed with a single CAS and released on removal; tickets that land on a busy slot
+ * are skipped. Ticket 0 is never issued so that a {@code NULL} userdata pointer can
+ * never resolve to a handler.
+ */
+final class TicketTable {
+
+    private final int mask;
+    private final AtomicReferenceArray<Object> handlers;
+    private final AtomicLongArray tickets;
+    private final AtomicLong next = new AtomicLong(1);
+
+    TicketTable(int capacity){
+        if(capacity < 1 || Integer.bitCount(capacity) != 1){
+            throw new IllegalArgumentException("Capacity must be a positive power of two: " + capacity);
+        }
+        mask = capacity - 1;
+        handlers = new AtomicReferenceArray<>(capacity);
+        tickets = new AtomicLongArray(capacity);
+    }
+
+    long register(Object handler){
+        for(int attempt = 0; attempt <= mask; attempt++){
+            var ticket = next.getAndIncrement();
+            if(ticket == 0){
+                continue;
+            }
+
+            var index = (int) (ticket & mask);
+            if(handlers.compareAndSet(index, null, handler)){
+                tickets.set(index, ticket);
+                return ticket;
+            }
+        }
+        throw new IllegalStateException("Too many pending callbacks (capacity %d)".formatted(mask + 1));
+    }
+
+    Object get(long ticket){
+        var index = (int) (ticket & mask);
+        if(tickets.get(index) != ticket){
+            return null;
+        }
+        return handlers.get(index);
+    }
+
+    Object remove(long ticket){
+        var index = (int) (ticket & mask);
+        if(tickets.get(index) != ticket || !tickets.compareAndSet(index, ticket, 0)){
+            return null;
+        }
+        return handlers.getAndSet(index, null);
+    }
+
+    /**
+     * Removes every handler matching the filter, scanning all slots.
+     * @return the number of handlers removed
+     */
+    int removeIf(Predicate<Object> filter){
+        var removed = 0;
+        for(int index = 0; index <= mask; index++){
+            // A slot whose ticket is not yet published belongs to a registration still in progress
+            var ticket = tickets.get(index);
+            var handler = handlers.get(index);
+            if(ticket != 0 && handler != null && filter.test(handler) && remove(ticket) == handler){
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    int capacity(){
+        return mask + 1;
+    }
+}
@@ -0,0 +1,76 @@
+package com.myworldvw.webgpu.binding;
+
+import com.myworldvw.webgpu.instrument.Instrumentation;
+
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.SymbolLookup;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+
+/**
+ * Resolves WebGPU entry points for the hand-written binding classes.
+ * <p>
+ * Symbols are looked up the same way the jextract-generated {@code webgpu_h} does: first in
+ * libraries loaded through {@link System#load(String)}/{@link System#loadLibrary(String)},
+ * then in the platform's default libraries.
+ * <p>
+ * A different implementation of the WebGPU API - such as a mock backend for running without
+ * a GPU - can be substituted with {@link #install(SymbolLookup)}. The jextract-generated
+ * {@code RuntimeHelper} is patched at build time to resolve its symbols through this class too.
+ */
+public final class NativeLookup {
+
+    private static final Linker LINKER = Linker.nativeLinker();
+    private static final SymbolLookup LOOKUP = SymbolLookup.loaderLookup().or(LINKER.defaultLookup());
+
+    private static volatile SymbolLookup installed;
+
+    private NativeLookup(){}
+
+    public static SymbolLookup lookup(){
+        var lookup = installed;
+        return lookup != null ? lookup : LOOKUP;
+    }
+
+    /**
+     * Resolves all WebGPU entry points through {@code lookup} instead of the native library.
+     * This must happen before any binding class is initialized: handles that have already
+     * been resolved keep pointing at the previous implementation.
+     * @throws IllegalStateException if a lookup has already been installed
+     */
+    public static synchronized void install(SymbolLookup lookup){
+        if(installed != null){
+            throw new IllegalStateException("A symbol lookup has already been installed");
+        }
+        installed = lookup;
+    }
+
+    /**
+     * @return true if a lookup has been installed with {@link #install(SymbolLookup)}
+     */
+    public static boolean isInstalled(){
+        return installed != null;
+    }
+
+    /**
+     * Creates a downcall handle for the named function. If the symbol cannot be found the
+     * returned handle throws {@link UnsatisfiedLinkError} when invoked, so a missing entry
+     * point only fails the code paths that actually use it.
+     * <p>
+     * Resolved handles are passed through {@link Instrumentation#instrument(String, MethodHandle)}.
+     */
+    public static MethodHandle downcallHandle(String name, FunctionDescriptor descriptor, Linker.Option... options){
+        return lookup().find(name)
+                .map(address -> Instrumentation.instrument(name, LINKER.downcallHandle(address, descriptor, options)))
+                .orElseGet(() -> unresolved(name, descriptor));
+    }
+
+    private static MethodHandle unresolved(String name, FunctionDescriptor descriptor){
+        var type = descriptor.toMethodType();
+        var thrower = MethodHandles.insertArguments(
+                MethodHandles.throwException(type.returnType(), UnsatisfiedLinkError.class),
+                0, new UnsatisfiedLinkError("unresolved symbol: " + name));
+        return MethodHandles.dropArguments(thrower, 0, type.parameterList());
+    }
+}
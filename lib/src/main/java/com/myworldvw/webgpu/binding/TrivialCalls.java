@@ -0,0 +1,515 @@
+package com.myworldvw.webgpu.binding;
+
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.invoke.MethodHandle;
+
+import static java.lang.foreign.ValueLayout.*;
+
+/**
+ * Fast-path bindings for the per-draw WebGPU entry points.
+ * <p>
+ * The functions in this class are bound with {@link Linker.Option#isTrivial()}, which skips
+ * the Java-to-native thread state transition. That is only safe for functions that return
+ * quickly, never block and never call back into Java. The curated set here is limited to
+ * encoder state setters, draw/dispatch calls and the {@code *Reference}/{@code *Release} calls
+ * for objects that cannot have callbacks pending on them - wgpu defers the actual destruction
+ * of released resources to queue maintenance, so releasing them never re-enters Java. Releases
+ * that can fire callbacks (devices, buffers with pending maps, queues) are deliberately not
+ * included; use {@code webgpu_h} for those.
+ * <p>
+ * Every method has the same name and signature as its {@code webgpu_h} counterpart, so a
+ * single-static-import of this class shadows the generated binding at the call site:
+ * <pre>
+ * import static com.myworldvw.webgpu.webgpu_h.*;
+ * import static com.myworldvw.webgpu.binding.TrivialCalls.wgpuRenderPassEncoderDraw;
+ * </pre>
+ * Set the system property {@code webgpu.trivialDowncalls=false} to bind the same functions as
+ * regular downcalls instead, e.g. to compare frame times or to rule this class out when
+ * debugging. Trivial binding is also skipped when an alternative implementation has been
+ * installed with {@link NativeLookup#install(SymbolLookup)}, since those are typically
+ * upcalls into Java. On JDKs after 21 this option is called {@code Linker.Option.critical(false)}.
+ */
+public final class TrivialCalls {
+
+    private static final boolean ENABLED = !"false".equalsIgnoreCase(System.getProperty("webgpu.trivialDowncalls"))
+            && !NativeLookup.isInstalled();
+
+    private static final MethodHandle wgpuRenderPassEncoderSetPipeline$MH = downcallHandle("wgpuRenderPassEncoderSetPipeline",
+            FunctionDescriptor.ofVoid(ADDRESS, ADDRESS));
+    private static final MethodHandle wgpuRenderPassEncoderSetBindGroup$MH = downcallHandle("wgpuRenderPassEncoderSetBindGroup",
+            FunctionDescriptor.ofVoid(ADDRESS, JAVA_INT, ADDRESS, JAVA_LONG, ADDRESS));
+    private static final MethodHandle wgpuRenderPassEncoderSetVertexBuffer$MH = downcallHandle("wgpuRenderPassEncoderSetVertexBuffer",
+            FunctionDescriptor.ofVoid(ADDRESS, JAVA_INT, ADDRESS, JAVA_LONG, JAVA_LONG));
+    private static final MethodHandle wgpuRenderPassEncoderSetIndexBuffer$MH = downcallHandle("wgpuRenderPassEncoderSetIndexBuffer",
+            FunctionDescriptor.ofVoid(ADDRESS, ADDRESS, JAVA_INT, JAVA_LONG, JAVA_LONG));
+    private static final MethodHandle wgpuRenderPassEncoderSetScissorRect$MH = downcallHandle("wgpuRenderPassEncoderSetScissorRect",
+            FunctionDescriptor.ofVoid(ADDRESS, JAVA_INT, JAVA_INT, JAVA_INT, JAVA_INT));
+    private static final MethodHandle wgpuRenderPassEncoderSetViewport$MH = downcallHandle("wgpuRenderPassEncoderSetViewport",
+            FunctionDescriptor.ofVoid(ADDRESS, JAVA_FLOAT, JAVA_FLOAT, JAVA_FLOAT, JAVA_FLOAT, JAVA_FLOAT, JAVA_FLOAT));
+    private static final MethodHandle wgpuRenderPassEncoderSetBlendConstant$MH = downcallHandle("wgpuRenderPassEncoderSetBlendConstant",
+            FunctionDescriptor.ofVoid(ADDRESS, ADDRESS));
+    private static final MethodHandle wgpuRenderPassEncoderSetStencilReference$MH = downcallHandle("wgpuRenderPassEncoderSetStencilReference",
+            FunctionDescriptor.ofVoid(ADDRESS, JAVA_INT));
+    private static final MethodHandle wgpuRenderPassEncoderDraw$MH = downcallHandle("wgpuRenderPassEncoderDraw",
+            FunctionDescriptor.ofVoid(ADDRESS, JAVA_INT, JAVA_INT, JAVA_INT, JAVA_INT));
+    private static final MethodHandle wgpuRenderPassEncoderDrawIndexed$MH = downcallHandle("wgpuRenderPassEncoderDrawIndexed",
+            FunctionDescriptor.ofVoid(ADDRESS, JAVA_INT, JAVA_INT, JAVA_INT, JAVA_INT, JAVA_INT));
+    private static final MethodHandle wgpuRenderPassEncoderDrawIndirect$MH = downcallHandle("wgpuRenderPassEncoderDrawIndirect",
+            FunctionDescriptor.ofVoid(ADDRESS, ADDRESS, JAVA_LONG));
+    private static final MethodHandle wgpuRenderPassEncoderDrawIndexedIndirect$MH = downcallHandle("wgpuRenderPassEncoderDrawIndexedIndirect",
+            FunctionDescriptor.ofVoid(ADDRESS, ADDRESS, JAVA_LONG));
+    private static final MethodHandle wgpuRenderBundleEncoderSetPipeline$MH = downcallHandle("wgpuRenderBundleEncoderSetPipeline",
+            FunctionDescriptor.ofVoid(ADDRESS, ADDRESS));
+    private static final MethodHandle wgpuRenderBundleEncoderSetBindGroup$MH = downcallHandle("wgpuRenderBundleEncoderSetBindGroup",
+            FunctionDescriptor.ofVoid(ADDRESS, JAVA_INT, ADDRESS, JAVA_LONG, ADDRESS));
+    private static final MethodHandle wgpuRenderBundleEncoderSetVertexBuffer$MH = downcallHandle("wgpuRenderBundleEncoderSetVertexBuffer",
+            FunctionDescriptor.ofVoid(ADDRESS, JAVA_INT, ADDRESS, JAVA_LONG, JAVA_LONG));
+    private static final MethodHandle wgpuRenderBundleEncoderSetIndexBuffer$MH = downcallHandle("wgpuRenderBundleEncoderSetIndexBuffer",
+            FunctionDescriptor.ofVoid(ADDRESS, ADDRESS, JAVA_INT, JAVA_LONG, JAVA_LONG));
+    private static final MethodHandle wgpuRenderBundleEncoderDraw$MH = downcallHandle("wgpuRenderBundleEncoderDraw",
+            FunctionDescriptor.ofVoid(ADDRESS, JAVA_INT, JAVA_INT, JAVA_INT, JAVA_INT));
+    private static final MethodHandle wgpuRenderBundleEncoderDrawIndexed$MH = downcallHandle("wgpuRenderBundleEncoderDrawIndexed",
+            FunctionDescriptor.ofVoid(ADDRESS, JAVA_INT, JAVA_INT, JAVA_INT, JAVA_INT, JAVA_INT));
+    private static final MethodHandle wgpuComputePassEncoderSetPipeline$MH = downcallHandle("wgpuComputePassEncoderSetPipeline",
+            FunctionDescriptor.ofVoid(ADDRESS, ADDRESS));
+    private static final MethodHandle wgpuComputePassEncoderSetBindGroup$MH = downcallHandle("wgpuComputePassEncoderSetBindGroup",
+            FunctionDescriptor.ofVoid(ADDRESS, JAVA_INT, ADDRESS, JAVA_LONG, ADDRESS));
+    private static final MethodHandle wgpuComputePassEncoderDispatchWorkgroups$MH = downcallHandle("wgpuComputePassEncoderDispatchWorkgroups",
+            FunctionDescriptor.ofVoid(ADDRESS, JAVA_INT, JAVA_INT, JAVA_INT));
+    private static final MethodHandle wgpuBindGroupReference$MH = downcallHandle("wgpuBindGroupReference",
+            FunctionDescriptor.ofVoid(ADDRESS));
+    private static final MethodHandle wgpuBindGroupLayoutReference$MH = downcallHandle("wgpuBindGroupLayoutReference",
+            FunctionDescriptor.ofVoid(ADDRESS));
+    private static final MethodHandle wgpuBufferReference$MH = downcallHandle("wgpuBufferReference",
+            FunctionDescriptor.ofVoid(ADDRESS));
+    private static final MethodHandle wgpuCommandBufferReference$MH = downcallHandle("wgpuCommandBufferReference",
+            FunctionDescriptor.ofVoid(ADDRESS));
+    private static final MethodHandle wgpuCommandEncoderReference$MH = downcallHandle("wgpuCommandEncoderReference",
+            FunctionDescriptor.ofVoid(ADDRESS));
+    private static final MethodHandle wgpuComputePassEncoderReference$MH = downcallHandle("wgpuComputePassEncoderReference",
+            FunctionDescriptor.ofVoid(ADDRESS));
+    private static final MethodHandle wgpuComputePipelineReference$MH = downcallHandle("wgpuComputePipelineReference",
+            FunctionDescriptor.ofVoid(ADDRESS));
+    private static final MethodHandle wgpuPipelineLayoutReference$MH = downcallHandle("wgpuPipelineLayoutReference",
+            FunctionDescriptor.ofVoid(ADDRESS));
+    private static final MethodHandle wgpuQuerySetReference$MH = downcallHandle("wgpuQuerySetReference",
+            FunctionDescriptor.ofVoid(ADDRESS));
+    private static final MethodHandle wgpuRenderBundleReference$MH = downcallHandle("wgpuRenderBundleReference",
+            FunctionDescriptor.ofVoid(ADDRESS));
+    private static final MethodHandle wgpuRenderBundleEncoderReference$MH = downcallHandle("wgpuRenderBundleEncoderReference",
+            FunctionDescriptor.ofVoid(ADDRESS));
+    private static final MethodHandle wgpuRenderPassEncoderReference$MH = downcallHandle("wgpuRenderPassEncoderReference",
+            FunctionDescriptor.ofVoid(ADDRESS));
+    private static final MethodHandle wgpuRenderPipelineReference$MH = downcallHandle("wgpuRenderPipelineReference",
+            FunctionDescriptor.ofVoid(ADDRESS));
+    private static final MethodHandle wgpuSamplerReference$MH = downcallHandle("wgpuSamplerReference",
+            FunctionDescriptor.ofVoid(ADDRESS));
+    private static final MethodHandle wgpuShaderModuleReference$MH = downcallHandle("wgpuShaderModuleReference",
+            FunctionDescriptor.ofVoid(ADDRESS));
+    private static final MethodHandle wgpuTextureReference$MH = downcallHandle("wgpuTextureReference",
+            FunctionDescriptor.ofVoid(ADDRESS));
+    private static final MethodHandle wgpuTextureViewReference$MH = downcallHandle("wgpuTextureViewReference",
+            FunctionDescriptor.ofVoid(ADDRESS));
+    private static final MethodHandle wgpuBindGroupRelease$MH = downcallHandle("wgpuBindGroupRelease",
+            FunctionDescriptor.ofVoid(ADDRESS));
+    private static final MethodHandle wgpuCommandBufferRelease$MH = downcallHandle("wgpuCommandBufferRelease",
+            FunctionDescriptor.ofVoid(ADDRESS));
+    private static final MethodHandle wgpuCommandEncoderRelease$MH = downcallHandle("wgpuCommandEncoderRelease",
+            FunctionDescriptor.ofVoid(ADDRESS));
+    private static final MethodHandle wgpuComputePassEncoderRelease$MH = downcallHandle("wgpuComputePassEncoderRelease",
+            FunctionDescriptor.ofVoid(ADDRESS));
+    private static final MethodHandle wgpuRenderBundleRelease$MH = downcallHandle("wgpuRenderBundleRelease",
+            FunctionDescriptor.ofVoid(ADDRESS));
+    private static final MethodHandle wgpuRenderBundleEncoderRelease$MH = downcallHandle("wgpuRenderBundleEncoderRelease",
+            FunctionDescriptor.ofVoid(ADDRESS));
+    private static final MethodHandle wgpuRenderPassEncoderRelease$MH = downcallHandle("wgpuRenderPassEncoderRelease",
+            FunctionDescriptor.ofVoid(ADDRESS));
+    private static final MethodHandle wgpuTextureViewRelease$MH = downcallHandle("wgpuTextureViewRelease",
+            FunctionDescriptor.ofVoid(ADDRESS));
+
+    private TrivialCalls(){}
+
+    /**
+     * @return true if the functions in this class are bound as trivial downcalls
+     */
+    public static boolean isEnabled(){
+        return ENABLED;
+    }
+
+    private static MethodHandle downcallHandle(String name, FunctionDescriptor descriptor){
+        return ENABLED
+                ? NativeLookup.downcallHandle(name, descriptor, Linker.Option.isTrivial())
+                : NativeLookup.downcallHandle(name, descriptor);
+    }
+
+    public static void wgpuRenderPassEncoderSetPipeline(MemorySegment renderPassEncoder, MemorySegment pipeline){
+        try{
+            wgpuRenderPassEncoderSetPipeline$MH.invokeExact(renderPassEncoder, pipeline);
+        }catch(Throwable ex){
+            throw new AssertionError("should not reach here", ex);
+        }
+    }
+
+    public static void wgpuRenderPassEncoderSetBindGroup(MemorySegment renderPassEncoder, int groupIndex, MemorySegment group, long dynamicOffsetCount, MemorySegment dynamicOffsets){
+        try{
+            wgpuRenderPassEncoderSetBindGroup$MH.invokeExact(renderPassEncoder, groupIndex, group, dynamicOffsetCount, dynamicOffsets);
+        }catch(Throwable ex){
+            throw new AssertionError("should not reach here", ex);
+        }
+    }
+
+    public static void wgpuRenderPassEncoderSetVertexBuffer(MemorySegment renderPassEncoder, int slot, MemorySegment buffer, long offset, long size){
+        try{
+            wgpuRenderPassEncoderSetVertexBuffer$MH.invokeExact(renderPassEncoder, slot, buffer, offset, size);
+        }catch(Throwable ex){
+            throw new AssertionError("should not reach here", ex);
+        }
+    }
+
+    public static void wgpuRenderPassEncoderSetIndexBuffer(MemorySegment renderPassEncoder, MemorySegment buffer, int format, long offset, long size){
+        try{
+            wgpuRenderPassEncoderSetIndexBuffer$MH.invokeExact(renderPassEncoder, buffer, format, offset, size);
+        }catch(Throwable ex){
+            throw new AssertionError("should not reach here", ex);
+        }
+    }
+
+    public static void wgpuRenderPassEncoderSetScissorRect(MemorySegment renderPassEncoder, int x, int y, int width, int height){
+        try{
+            wgpuRenderPassEncoderSetScissorRect$MH.invokeExact(renderPassEncoder, x, y, width, height);
+        }catch(Throwable ex){
+            throw new AssertionError("should not reach here", ex);
+        }
+    }
+
+    public static void wgpuRenderPassEncoderSetViewport(MemorySegment renderPassEncoder, float x, float y, float width, float height, float minDepth, float maxDepth){
+        try{
+            wgpuRenderPassEncoderSetViewport$MH.invokeExact(renderPassEncoder, x, y, width, height, minDepth, maxDepth);
+        }catch(Throwable ex){
+            throw new AssertionError("should not reach here", ex);
+        }
+    }
+
+    public static void wgpuRenderPassEncoderSetBlendConstant(MemorySegment renderPassEncoder, MemorySegment color){
+        try{
+            wgpuRenderPassEncoderSetBlendConstant$MH.invokeExact(renderPassEncoder, color);
+        }catch(Throwable ex){
+            throw new AssertionError("should not reach here", ex);
+        }
+    }
+
+    public static void wgpuRenderPassEncoderSetStencilReference(MemorySegment renderPassEncoder, int reference){
+        try{
+            wgpuRenderPassEncoderSetStencilReference$MH.invokeExact(renderPassEncoder, reference);
+        }catch(Throwable ex){
+            throw new AssertionError("should not reach here", ex);
+        }
+    }
+
+    public static void wgpuRenderPassEncoderDraw(MemorySegment renderPassEncoder, int vertexCount, int instanceCount, int firstVertex, int firstInstance){
+        try{
+            wgpuRenderPassEncoderDraw$MH.invokeExact(renderPassEncoder, vertexCount, instanceCount, firstVertex, firstInstance);
+        }catch(Throwable ex){
+            throw new AssertionError("should not reach here", ex);
+        }
+    }
+
+    public static void wgpuRenderPassEncoderDrawIndexed(MemorySegment renderPassEncoder, int indexCount, int instanceCount, int firstIndex, int baseVertex, int firstInstance){
+        try{
+            wgpuRenderPassEncoderDrawIndexed$MH.invokeExact(renderPassEncoder, indexCount, instanceCount, firstIndex, baseVertex, firstInstance);
+        }catch(Throwable ex){
+            throw new AssertionError("should not reach here", ex);
+        }
+    }
+
+    public static void wgpuRenderPassEncoderDrawIndirect(MemorySegment renderPassEncoder, MemorySegment indirectBuffer, long indirectOffset){
+        try{
+            wgpuRenderPassEncoderDrawIndirect$MH.invokeExact(renderPassEncoder, indirectBuffer, indirectOffset);
+        }catch(Throwable ex){
+            throw new AssertionError("should not reach here", ex);
+        }
+    }
+
+    public static void wgpuRenderPassEncoderDrawIndexedIndirect(MemorySegment renderPassEncoder, MemorySegment indirectBuffer, long indirectOffset){
+        try{
+            wgpuRenderPassEncoderDrawIndexedIndirect$MH.invokeExact(renderPassEncoder, indirectBuffer, indirectOffset);
+        }catch(Throwable ex){
+            throw new AssertionError("should not reach here", ex);
+        }
+    }
+
+    public static void wgpuRenderBundleEncoderSetPipeline(MemorySegment renderBundleEncoder, MemorySegment pipeline){
+        try{
+            wgpuRenderBundleEncoderSetPipeline$MH.invokeExact(renderBundleEncoder, pipeline);
+        }catch(Throwable ex){
+            throw new AssertionError("should not reach here", ex);
+        }
+    }
+
+    public static void wgpuRenderBundleEncoderSetBindGroup(MemorySegment renderBundleEncoder, int groupIndex, MemorySegment group, long dynamicOffsetCount, MemorySegment dynamicOffsets){
+        try{
+            wgpuRenderBundleEncoderSetBindGroup$MH.invokeExact(renderBundleEncoder, groupIndex, group, dynamicOffsetCount, dynamicOffsets);
+        }catch(Throwable ex){
+            throw new AssertionError("should not reach here", ex);
+        }
+    }
+
+    public static void wgpuRenderBundleEncoderSetVertexBuffer(MemorySegment renderBundleEncoder, int slot, MemorySegment buffer, long offset, long size){
+        try{
+            wgpuRenderBundleEncoderSetVertexBuffer$MH.invokeExact(renderBundleEncoder, slot, buffer, offset, size);
+        }catch(Throwable ex){
+            throw new AssertionError("should not reach here", ex);
+        }
+    }
+
+    public static void wgpuRenderBundleEncoderSetIndexBuffer(MemorySegment renderBundleEncoder, MemorySegment buffer, int format, long offset, long size){
+        try{
+            wgpuRenderBundleEncoderSetIndexBuffer$MH.invokeExact(renderBundleEncoder, buffer, format, offset, size);
+        }catch(Throwable ex){
+            throw new AssertionError("should not reach here", ex);
+        }
+    }
+
+    public static void wgpuRenderBundleEncoderDraw(MemorySegment renderBundleEncoder, int vertexCount, int instanceCount, int firstVertex, int firstInstance){
+        try{
+            wgpuRenderBundleEncoderDraw$MH.invokeExact(renderBundleEncoder, vertexCount, instanceCount, firstVertex, firstInstance);
+        }catch(Throwable ex){
+            throw new AssertionError("should not reach here", ex);
+        }
+    }
+
+    public static void wgpuRenderBundleEncoderDrawIndexed(MemorySegment renderBundleEncoder, int indexCount, int instanceCount, int firstIndex, int baseVertex, int firstInstance){
+        try{
+            wgpuRenderBundleEncoderDrawIndexed$MH.invokeExact(renderBundleEncoder, indexCount, instanceCount, firstIndex, baseVertex, firstInstance);
+        }catch(Throwable ex){
+            throw new AssertionError("should not reach here", ex);
+        }
+    }
+
+    public static void wgpuComputePassEncoderSetPipeline(MemorySegment computePassEncoder, MemorySegment pipeline){
+        try{
+            wgpuComputePassEncoderSetPipeline$MH.invokeExact(computePassEncoder, pipeline);
+        }catch(Throwable ex){
+            throw new AssertionError("should not reach here", ex);
+        }
+    }
+
+    public static void wgpuComputePassEncoderSetBindGroup(MemorySegment computePassEncoder, int groupIndex, MemorySegment group, long dynamicOffsetCount, MemorySegment dynamicOffsets){
+        try{
+            wgpuComputePassEncoderSetBindGroup$MH.invokeExact(computePassEncoder, groupIndex, group, dynamicOffsetCount, dynamicOffsets);
+        }catch(Throwable ex){
+            throw new AssertionError("should not reach here", ex);
+        }
+    }
+
+    public static void wgpuComputePassEncoderDispatchWorkgroups(MemorySegment computePassEncoder, int workgroupCountX, int workgroupCountY, int workgroupCountZ){
+        try{
+            wgpuComputePassEncoderDispatchWorkgroups$MH.invokeExact(computePassEncoder, workgroupCountX, workgroupCountY, workgroupCountZ);
+        }catch(Throwable ex){
+            throw new AssertionError("should not reach here", ex);
+        }
+    }
+
+    public static void wgpuBindGroupReference(MemorySegment bindGroup){
+        try{
+            wgpuBindGroupReference$MH.invokeExact(bindGroup);
+        }catch(Throwable ex){
+            throw new AssertionError("should not reach here", ex);
+        }
+    }
+
+    public static void wgpuBindGroupLayoutReference(MemorySegment bindGroupLayout){
+        try{
+            wgpuBindGroupLayoutReference$MH.invokeExact(bindGroupLayout);
+        }catch(Throwable ex){
+            throw new AssertionError("should not reach here", ex);
+        }
+    }
+
+    public static void wgpuBufferReference(MemorySegment buffer){
+        try{
+            wgpuBufferReference$MH.invokeExact(buffer);
+        }catch(Throwable ex){
+            throw new AssertionError("should not reach here", ex);
+        }
+    }
+
+    public static void wgpuCommandBufferReference(MemorySegment commandBuffer){
+        try{
+            wgpuCommandBufferReference$MH.invokeExact(commandBuffer);
+        }catch(Throwable ex){
+            throw new AssertionError("should not reach here", ex);
+        }
+    }
+
+    public static void wgpuCommandEncoderReference(MemorySegment commandEncoder){
+        try{
+            wgpuCommandEncoderReference$MH.invokeExact(commandEncoder);
+        }catch(Throwable ex){
+            throw new AssertionError("should not reach here", ex);
+        }
+    }
+
+    public static void wgpuComputePassEncoderReference(MemorySegment computePassEncoder){
+        try{
+            wgpuComputePassEncoderReference$MH.invokeExact(computePassEncoder);
+        }catch(Throwable ex){
+            throw new AssertionError("should not reach here", ex);
+        }
+    }
+
+    public static void wgpuComputePipelineReference(MemorySegment computePipeline){
+        try{
+            wgpuComputePipelineReference$MH.invokeExact(computePipeline);
+        }catch(Throwable ex){
+            throw new AssertionError("should not reach here", ex);
+        }
+    }
+
+    public static void wgpuPipelineLayoutReference(MemorySegment pipelineLayout){
+        try{
+            wgpuPipelineLayoutReference$MH.invokeExact(pipelineLayout);
+        }catch(Throwable ex){
+            throw new AssertionError("should not reach here", ex);
+        }
+    }
+
+    public static void wgpuQuerySetReference(MemorySegment querySet){
+        try{
+            wgpuQuerySetReference$MH.invokeExact(querySet);
+        }catch(Throwable ex){
+            throw new AssertionError("should not reach here", ex);
+        }
+    }
+
+    public static void wgpuRenderBundleReference(MemorySegment renderBundle){
+        try{
+            wgpuRenderBundleReference$MH.invokeExact(renderBundle);
+        }catch(Throwable ex){
+            throw new AssertionError("should not reach here", ex);
+        }
+    }
+
+    public static void wgpuRenderBundleEncoderReference(MemorySegment renderBundleEncoder){
+        try{
+            wgpuRenderBundleEncoderReference$MH.invokeExact(renderBundleEncoder);
+        }catch(Throwable ex){
+            throw new AssertionError("should not reach here", ex);
+        }
+    }
+
+    public static void wgpuRenderPassEncoderReference(MemorySegment renderPassEncoder){
+        try{
+            wgpuRenderPassEncoderReference$MH.invokeExact(renderPassEncoder);
+        }catch(Throwable ex){
+            throw new AssertionError("should not reach here", ex);
+        }
+    }
+
+    public static void wgpuRenderPipelineReference(MemorySegment renderPipeline){
+        try{
+            wgpuRenderPipelineReference$MH.invokeExact(renderPipeline);
+        }catch(Throwable ex){
+            throw new AssertionError("should not reach here", ex);
+        }
+    }
+
+    public static void wgpuSamplerReference(MemorySegment sampler){
+        try{
+            wgpuSamplerReference$MH.invokeExact(sampler);
+        }catch(Throwable ex){
+            throw new AssertionError("should not reach here", ex);
+        }
+    }
+
+    public static void wgpuShaderModuleReference(MemorySegment shaderModule){
+        try{
+            wgpuShaderModuleReference$MH.invokeExact(shaderModule);
+        }catch(Throwable ex){
+            throw new AssertionError("should not reach here", ex);
+        }
+    }
+
+    public static void wgpuTextureReference(MemorySegment texture){
+        try{
+            wgpuTextureReference$MH.invokeExact(texture);
+        }catch(Throwable ex){
+            throw new AssertionError("should not reach here", ex);
+        }
+    }
+
+    public static void wgpuTextureViewReference(MemorySegment textureView){
+        try{
+            wgpuTextureViewReference$MH.invokeExact(textureView);
+        }catch(Throwable ex){
+            throw new AssertionError("should not reach here", ex);
+        }
+    }
+
+    public static void wgpuBindGroupRelease(MemorySegment bindGroup){
+        try{
+            wgpuBindGroupRelease$MH.invokeExact(bindGroup);
+        }catch(Throwable ex){
+            throw new AssertionError("should not reach here", ex);
+        }
+    }
+
+    public static void wgpuCommandBufferRelease(MemorySegment commandBuffer){
+        try{
+            wgpuCommandBufferRelease$MH.invokeExact(commandBuffer);
+        }catch(Throwable ex){
+            throw new AssertionError("should not reach here", ex);
+        }
+    }
+
+    public static void wgpuCommandEncoderRelease(MemorySegment commandEncoder){
+        try{
+            wgpuCommandEncoderRelease$MH.invokeExact(commandEncoder);
+        }catch(Throwable ex){
+            throw new AssertionError("should not reach here", ex);
+        }
+    }
+
+    public static void wgpuComputePassEncoderRelease(MemorySegment computePassEncoder){
+        try{
+            wgpuComputePassEncoderRelease$MH.invokeExact(computePassEncoder);
+        }catch(Throwable ex){
+            throw new AssertionError("should not reach here", ex);
+        }
+    }
+
+    public static void wgpuRenderBundleRelease(MemorySegment renderBundle){
+        try{
+            wgpuRenderBundleRelease$MH.invokeExact(renderBundle);
+        }catch(Throwable ex){
+            throw new AssertionError("should not reach here", ex);
+        }
+    }
+
+    public static void wgpuRenderBundleEncoderRelease(MemorySegment renderBundleEncoder){
+        try{
+            wgpuRenderBundleEncoderRelease$MH.invokeExact(renderBundleEncoder);
+        }catch(Throwable ex){
+            throw new AssertionError("should not reach here", ex);
+        }
+    }
+
+    public static void wgpuRenderPassEncoderRelease(MemorySegment renderPassEncoder){
+        try{
+            wgpuRenderPassEncoderRelease$MH.invokeExact(renderPassEncoder);
+        }catch(Throwable ex){
+            throw new AssertionError("should not reach here", ex);
+        }
+    }
+
+    public static void wgpuTextureViewRelease(MemorySegment textureView){
+        try{
+            wgpuTextureViewRelease$MH.invokeExact(textureView);
+        }catch(Throwable ex){
+            throw new AssertionError("should not reach here", ex);
+        }
+    }
+}
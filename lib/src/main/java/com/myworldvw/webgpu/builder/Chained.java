@@ -0,0 +1,16 @@
+package com.myworldvw.webgpu.builder;
+
+import java.lang.foreign.MemorySegment;
+
+/**
+ * A builder for a struct that extends another through its {@code nextInChain} pointer. The
+ * generated builders of chained structs fill in their {@code sType} when they are allocated,
+ * so linking one only takes a {@code nextInChain(chained)} on the parent builder.
+ */
+public interface Chained {
+
+    /**
+     * @return the struct's {@code WGPUChainedStruct} header
+     */
+    MemorySegment chain();
+}
@@ -0,0 +1,83 @@
+package com.myworldvw.webgpu.builder;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SegmentAllocator;
+
+/**
+ * The memory behind one descriptor graph built with the generated builders.
+ * <p>
+ * A descriptor, the structs it points to, its arrays and its strings are all carved out of
+ * one block taken from the underlying allocator, so building e.g. a render pipeline descriptor
+ * costs a single allocation - typically from a {@link com.myworldvw.webgpu.memory.FrameArena}.
+ * Only if a graph outgrows the block is another block taken.
+ * <p>
+ * Every builder created from a writer (directly, or through a parent builder) shares it, so
+ * create one writer per descriptor graph: it is cheap, and a writer must not outlive the
+ * allocator's memory. Memory handed out is zeroed, so unset fields read as 0/NULL. A writer is
+ * not thread safe.
+ */
+public final class DescriptorWriter implements SegmentAllocator {
+
+    public static final long DEFAULT_BLOCK_SIZE = 1024;
+
+    private static final long BLOCK_ALIGNMENT = 16;
+
+    private final SegmentAllocator allocator;
+    private final long blockSize;
+    private MemorySegment block;
+    private long offset;
+    private int blockAllocations;
+
+    public DescriptorWriter(SegmentAllocator allocator){
+        this(allocator, DEFAULT_BLOCK_SIZE);
+    }
+
+    public DescriptorWriter(SegmentAllocator allocator, long blockSize){
+        if(blockSize <= 0){
+            throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+        }
+        this.allocator = allocator;
+        this.blockSize = blockSize;
+    }
+
+    @Override
+    public MemorySegment allocate(long byteSize, long byteAlignment){
+        if(byteSize < 0){
+            throw new IllegalArgumentException("Invalid allocation size: " + byteSize);
+        }
+        if(byteAlignment <= 0 || (byteAlignment & (byteAlignment - 1)) != 0){
+            throw new IllegalArgumentException("Invalid alignment: " + byteAlignment);
+        }
+
+        var start = block != null ? align(block.address() + offset, byteAlignment) - block.address() : 0;
+        if(block == null || start + byteSize > block.byteSize()){
+            block = allocator.allocate(Math.max(blockSize, byteSize), Math.max(byteAlignment, BLOCK_ALIGNMENT));
+            blockAllocations++;
+            start = 0;
+        }
+        offset = start + byteSize;
+
+        // The underlying allocator need not zero its memory (slicing and prefix allocators don't)
+        var segment = block.asSlice(start, byteSize);
+        segment.fill((byte) 0);
+        return segment;
+    }
+
+    /**
+     * @return a copy of the string, or NULL if it is null
+     */
+    public MemorySegment string(String value){
+        return value != null ? allocateUtf8String(value) : MemorySegment.NULL;
+    }
+
+    /**
+     * @return the number of blocks taken from the underlying allocator so far
+     */
+    public int blockAllocations(){
+        return blockAllocations;
+    }
+
+    private static long align(long address, long alignment){
+        return (address + alignment - 1) & -alignment;
+    }
+}
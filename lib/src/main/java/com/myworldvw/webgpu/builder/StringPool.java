@@ -0,0 +1,32 @@
+package com.myworldvw.webgpu.builder;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Native copies of constant strings such as shader entry points, made once and shared for the
+ * lifetime of the JVM. Interned strings are never freed, so only intern strings drawn from a
+ * small fixed set - never per-frame labels or other generated text.
+ */
+public final class StringPool {
+
+    private static final ConcurrentHashMap<String, MemorySegment> strings = new ConcurrentHashMap<>();
+
+    private StringPool(){}
+
+    /**
+     * @return the shared native copy of the string, or NULL if it is null
+     */
+    public static MemorySegment intern(String value){
+        if(value == null){
+            return MemorySegment.NULL;
+        }
+        var segment = strings.get(value);
+        return segment != null ? segment : strings.computeIfAbsent(value, Arena.global()::allocateUtf8String);
+    }
+
+    public static int size(){
+        return strings.size();
+    }
+}
@@ -0,0 +1,396 @@
+package com.myworldvw.webgpu.cache;
+
+import com.myworldvw.webgpu.*;
+
+import java.lang.foreign.MemorySegment;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.lang.foreign.ValueLayout.*;
+import static com.myworldvw.webgpu.webgpu_h.*;
+
+/**
+ * The content of a descriptor graph in a canonical byte encoding: every field that affects
+ * the created object, with pointers followed to the structs, arrays and strings they point to.
+ * Two descriptors have equal keys exactly when they describe the same object, no matter where
+ * their memory lives. Labels are not part of the key.
+ * <p>
+ * Object handles inside a descriptor (shader modules, pipeline layouts) are keyed by address.
+ * Shader modules that come from the same {@link PipelineCache} are shared, so pipelines built
+ * from identical WGSL still produce identical keys. A cached key {@linkplain #retain() retains}
+ * the handles it names, so that their addresses can't be reused by other objects while the key
+ * is in use.
+ */
+final class DescriptorKey {
+
+    private final PipelineCache.Kind kind;
+    private final byte[] bytes;
+    private final int hash;
+    private final List<MemorySegment> shaderModules;
+    private final List<MemorySegment> pipelineLayouts;
+
+    private DescriptorKey(PipelineCache.Kind kind, byte[] bytes, List<MemorySegment> shaderModules, List<MemorySegment> pipelineLayouts){
+        this.kind = kind;
+        this.bytes = bytes;
+        this.shaderModules = shaderModules;
+        this.pipelineLayouts = pipelineLayouts;
+        hash = 31 * kind.hashCode() + Arrays.hashCode(bytes);
+    }
+
+    PipelineCache.Kind kind(){
+        return kind;
+    }
+
+    /**
+     * Adds a reference to every object handle the key names.
+     */
+    void retain(){
+        shaderModules.forEach(h -> wgpuShaderModuleReference(h));
+        pipelineLayouts.forEach(h -> wgpuPipelineLayoutReference(h));
+    }
+
+    void release(){
+        shaderModules.forEach(h -> wgpuShaderModuleRelease(h));
+        pipelineLayouts.forEach(h -> wgpuPipelineLayoutRelease(h));
+    }
+
+    /**
+     * @return the descriptor's key, or null if the descriptor can't be cached because it
+     * chains a struct the key doesn't know how to encode
+     */
+    static DescriptorKey of(PipelineCache.Kind kind, MemorySegment descriptor){
+        var encoder = new Encoder();
+        switch(kind){
+            case SHADER_MODULE -> encoder.shaderModule(descriptor.reinterpret(WGPUShaderModuleDescriptor.sizeof()));
+            case RENDER_PIPELINE -> encoder.renderPipeline(descriptor.reinterpret(WGPURenderPipelineDescriptor.sizeof()));
+            case COMPUTE_PIPELINE -> encoder.computePipeline(descriptor.reinterpret(WGPUComputePipelineDescriptor.sizeof()));
+            case SAMPLER -> encoder.sampler(descriptor.reinterpret(WGPUSamplerDescriptor.sizeof()));
+            case BIND_GROUP_LAYOUT -> encoder.bindGroupLayout(descriptor.reinterpret(WGPUBindGroupLayoutDescriptor.sizeof()));
+        }
+        return encoder.cacheable
+                ? new DescriptorKey(kind, Arrays.copyOf(encoder.bytes, encoder.size), encoder.shaderModules, encoder.pipelineLayouts)
+                : null;
+    }
+
+    @Override
+    public boolean equals(Object o){
+        return o instanceof DescriptorKey other && kind == other.kind && hash == other.hash && Arrays.equals(bytes, other.bytes);
+    }
+
+    @Override
+    public int hashCode(){
+        return hash;
+    }
+
+    private static final class Encoder {
+
+        private static final int NULL_MARKER = -1;
+
+        // Not part of every webgpu.h revision's struct set, so read by offset:
+        // struct WGPUPrimitiveDepthClipControl { WGPUChainedStruct chain; WGPUBool unclippedDepth; }
+        private static final long UNCLIPPED_DEPTH_OFFSET = WGPUChainedStruct.sizeof();
+
+        byte[] bytes = new byte[256];
+        int size;
+        boolean cacheable = true;
+        final List<MemorySegment> shaderModules = new ArrayList<>(2);
+        final List<MemorySegment> pipelineLayouts = new ArrayList<>(1);
+
+        void shaderModule(MemorySegment d){
+            var chain = WGPUShaderModuleDescriptor.nextInChain$get(d);
+            while(!MemorySegment.NULL.equals(chain)){
+                chain = chain.reinterpret(WGPUChainedStruct.sizeof());
+                var sType = WGPUChainedStruct.sType$get(chain);
+                putInt(sType);
+                if(sType == WGPUSType_ShaderModuleWGSLDescriptor()){
+                    var wgsl = chain.reinterpret(WGPUShaderModuleWGSLDescriptor.sizeof());
+                    putString(WGPUShaderModuleWGSLDescriptor.code$get(wgsl));
+                }else if(sType == WGPUSType_ShaderModuleSPIRVDescriptor()){
+                    var spirv = chain.reinterpret(WGPUShaderModuleSPIRVDescriptor.sizeof());
+                    var codeSize = WGPUShaderModuleSPIRVDescriptor.codeSize$get(spirv);
+                    putInt(codeSize);
+                    putBytes(WGPUShaderModuleSPIRVDescriptor.code$get(spirv), Integer.toUnsignedLong(codeSize) * Integer.BYTES);
+                }else{
+                    cacheable = false;
+                    return;
+                }
+                chain = WGPUChainedStruct.next$get(chain);
+            }
+
+            var hintCount = WGPUShaderModuleDescriptor.hintCount$get(d);
+            var hints = array(WGPUShaderModuleDescriptor.hints$get(d), hintCount, WGPUShaderModuleCompilationHint.sizeof());
+            putLong(hintCount);
+            for(long i = 0; i < hintCount; i++){
+                var hint = hints.asSlice(i * WGPUShaderModuleCompilationHint.sizeof(), WGPUShaderModuleCompilationHint.sizeof());
+                noChain(WGPUShaderModuleCompilationHint.nextInChain$get(hint));
+                putString(WGPUShaderModuleCompilationHint.entryPoint$get(hint));
+                putPipelineLayout(WGPUShaderModuleCompilationHint.layout$get(hint));
+            }
+        }
+
+        void renderPipeline(MemorySegment d){
+            noChain(WGPURenderPipelineDescriptor.nextInChain$get(d));
+            putPipelineLayout(WGPURenderPipelineDescriptor.layout$get(d));
+
+            var vertex = WGPURenderPipelineDescriptor.vertex$slice(d);
+            noChain(WGPUVertexState.nextInChain$get(vertex));
+            putShaderModule(WGPUVertexState.module$get(vertex));
+            putString(WGPUVertexState.entryPoint$get(vertex));
+            constants(WGPUVertexState.constants$get(vertex), WGPUVertexState.constantCount$get(vertex));
+
+            var bufferCount = WGPUVertexState.bufferCount$get(vertex);
+            var buffers = array(WGPUVertexState.buffers$get(vertex), bufferCount, WGPUVertexBufferLayout.sizeof());
+            putLong(bufferCount);
+            for(long i = 0; i < bufferCount; i++){
+                var buffer = buffers.asSlice(i * WGPUVertexBufferLayout.sizeof(), WGPUVertexBufferLayout.sizeof());
+                putLong(WGPUVertexBufferLayout.arrayStride$get(buffer));
+                putInt(WGPUVertexBufferLayout.stepMode$get(buffer));
+
+                var attributeCount = WGPUVertexBufferLayout.attributeCount$get(buffer);
+                var attributes = array(WGPUVertexBufferLayout.attributes$get(buffer), attributeCount, WGPUVertexAttribute.sizeof());
+                putLong(attributeCount);
+                for(long j = 0; j < attributeCount; j++){
+                    var attribute = attributes.asSlice(j * WGPUVertexAttribute.sizeof(), WGPUVertexAttribute.sizeof());
+                    putInt(WGPUVertexAttribute.format$get(attribute));
+                    putLong(WGPUVertexAttribute.offset$get(attribute));
+                    putInt(WGPUVertexAttribute.shaderLocation$get(attribute));
+                }
+            }
+
+            var primitive = WGPURenderPipelineDescriptor.primitive$slice(d);
+            var chain = WGPUPrimitiveState.nextInChain$get(primitive);
+            while(!MemorySegment.NULL.equals(chain)){
+                chain = chain.reinterpret(UNCLIPPED_DEPTH_OFFSET + Integer.BYTES);
+                var sType = WGPUChainedStruct.sType$get(chain);
+                if(sType != WGPUSType_PrimitiveDepthClipControl()){
+                    cacheable = false;
+                    return;
+                }
+                putInt(sType);
+                putInt(chain.get(JAVA_INT, UNCLIPPED_DEPTH_OFFSET));
+                chain = WGPUChainedStruct.next$get(chain);
+            }
+            putInt(WGPUPrimitiveState.topology$get(primitive));
+            putInt(WGPUPrimitiveState.stripIndexFormat$get(primitive));
+            putInt(WGPUPrimitiveState.frontFace$get(primitive));
+            putInt(WGPUPrimitiveState.cullMode$get(primitive));
+
+            var depthStencil = WGPURenderPipelineDescriptor.depthStencil$get(d);
+            if(present(depthStencil)){
+                depthStencil = depthStencil.reinterpret(WGPUDepthStencilState.sizeof());
+                noChain(WGPUDepthStencilState.nextInChain$get(depthStencil));
+                putInt(WGPUDepthStencilState.format$get(depthStencil));
+                putInt(WGPUDepthStencilState.depthWriteEnabled$get(depthStencil));
+                putInt(WGPUDepthStencilState.depthCompare$get(depthStencil));
+                stencilFace(WGPUDepthStencilState.stencilFront$slice(depthStencil));
+                stencilFace(WGPUDepthStencilState.stencilBack$slice(depthStencil));
+                putInt(WGPUDepthStencilState.stencilReadMask$get(depthStencil));
+                putInt(WGPUDepthStencilState.stencilWriteMask$get(depthStencil));
+                putInt(WGPUDepthStencilState.depthBias$get(depthStencil));
+                putFloat(WGPUDepthStencilState.depthBiasSlopeScale$get(depthStencil));
+                putFloat(WGPUDepthStencilState.depthBiasClamp$get(depthStencil));
+            }
+
+            var multisample = WGPURenderPipelineDescriptor.multisample$slice(d);
+            noChain(WGPUMultisampleState.nextInChain$get(multisample));
+            putInt(WGPUMultisampleState.count$get(multisample));
+            putInt(WGPUMultisampleState.mask$get(multisample));
+            putInt(WGPUMultisampleState.alphaToCoverageEnabled$get(multisample));
+
+            var fragment = WGPURenderPipelineDescriptor.fragment$get(d);
+            if(present(fragment)){
+                fragment = fragment.reinterpret(WGPUFragmentState.sizeof());
+                noChain(WGPUFragmentState.nextInChain$get(fragment));
+                putShaderModule(WGPUFragmentState.module$get(fragment));
+                putString(WGPUFragmentState.entryPoint$get(fragment));
+                constants(WGPUFragmentState.constants$get(fragment), WGPUFragmentState.constantCount$get(fragment));
+
+                var targetCount = WGPUFragmentState.targetCount$get(fragment);
+                var targets = array(WGPUFragmentState.targets$get(fragment), targetCount, WGPUColorTargetState.sizeof());
+                putLong(targetCount);
+                for(long i = 0; i < targetCount; i++){
+                    var target = targets.asSlice(i * WGPUColorTargetState.sizeof(), WGPUColorTargetState.sizeof());
+                    noChain(WGPUColorTargetState.nextInChain$get(target));
+                    putInt(WGPUColorTargetState.format$get(target));
+                    putInt(WGPUColorTargetState.writeMask$get(target));
+
+                    var blend = WGPUColorTargetState.blend$get(target);
+                    if(present(blend)){
+                        blend = blend.reinterpret(WGPUBlendState.sizeof());
+                        blendComponent(WGPUBlendState.color$slice(blend));
+                        blendComponent(WGPUBlendState.alpha$slice(blend));
+                    }
+                }
+            }
+        }
+
+        void computePipeline(MemorySegment d){
+            noChain(WGPUComputePipelineDescriptor.nextInChain$get(d));
+            putPipelineLayout(WGPUComputePipelineDescriptor.layout$get(d));
+
+            var compute = WGPUComputePipelineDescriptor.compute$slice(d);
+            noChain(WGPUProgrammableStageDescriptor.nextInChain$get(compute));
+            putShaderModule(WGPUProgrammableStageDescriptor.module$get(compute));
+            putString(WGPUProgrammableStageDescriptor.entryPoint$get(compute));
+            constants(WGPUProgrammableStageDescriptor.constants$get(compute), WGPUProgrammableStageDescriptor.constantCount$get(compute));
+        }
+
+        void sampler(MemorySegment d){
+            noChain(WGPUSamplerDescriptor.nextInChain$get(d));
+            putInt(WGPUSamplerDescriptor.addressModeU$get(d));
+            putInt(WGPUSamplerDescriptor.addressModeV$get(d));
+            putInt(WGPUSamplerDescriptor.addressModeW$get(d));
+            putInt(WGPUSamplerDescriptor.magFilter$get(d));
+            putInt(WGPUSamplerDescriptor.minFilter$get(d));
+            putInt(WGPUSamplerDescriptor.mipmapFilter$get(d));
+            putFloat(WGPUSamplerDescriptor.lodMinClamp$get(d));
+            putFloat(WGPUSamplerDescriptor.lodMaxClamp$get(d));
+            putInt(WGPUSamplerDescriptor.compare$get(d));
+            putInt(WGPUSamplerDescriptor.maxAnisotropy$get(d));
+        }
+
+        void bindGroupLayout(MemorySegment d){
+            noChain(WGPUBindGroupLayoutDescriptor.nextInChain$get(d));
+
+            var entryCount = WGPUBindGroupLayoutDescriptor.entryCount$get(d);
+            var entries = array(WGPUBindGroupLayoutDescriptor.entries$get(d), entryCount, WGPUBindGroupLayoutEntry.sizeof());
+            putLong(entryCount);
+            for(long i = 0; i < entryCount; i++){
+                var entry = entries.asSlice(i * WGPUBindGroupLayoutEntry.sizeof(), WGPUBindGroupLayoutEntry.sizeof());
+                noChain(WGPUBindGroupLayoutEntry.nextInChain$get(entry));
+                putInt(WGPUBindGroupLayoutEntry.binding$get(entry));
+                putInt(WGPUBindGroupLayoutEntry.visibility$get(entry));
+
+                var buffer = WGPUBindGroupLayoutEntry.buffer$slice(entry);
+                noChain(WGPUBufferBindingLayout.nextInChain$get(buffer));
+                putInt(WGPUBufferBindingLayout.type$get(buffer));
+                putInt(WGPUBufferBindingLayout.hasDynamicOffset$get(buffer));
+                putLong(WGPUBufferBindingLayout.minBindingSize$get(buffer));
+
+                var sampler = WGPUBindGroupLayoutEntry.sampler$slice(entry);
+                noChain(WGPUSamplerBindingLayout.nextInChain$get(sampler));
+                putInt(WGPUSamplerBindingLayout.type$get(sampler));
+
+                var texture = WGPUBindGroupLayoutEntry.texture$slice(entry);
+                noChain(WGPUTextureBindingLayout.nextInChain$get(texture));
+                putInt(WGPUTextureBindingLayout.sampleType$get(texture));
+                putInt(WGPUTextureBindingLayout.viewDimension$get(texture));
+                putInt(WGPUTextureBindingLayout.multisampled$get(texture));
+
+                var storageTexture = WGPUBindGroupLayoutEntry.storageTexture$slice(entry);
+                noChain(WGPUStorageTextureBindingLayout.nextInChain$get(storageTexture));
+                putInt(WGPUStorageTextureBindingLayout.access$get(storageTexture));
+                putInt(WGPUStorageTextureBindingLayout.format$get(storageTexture));
+                putInt(WGPUStorageTextureBindingLayout.viewDimension$get(storageTexture));
+            }
+        }
+
+        private void constants(MemorySegment pointer, long count){
+            var constants = array(pointer, count, WGPUConstantEntry.sizeof());
+            putLong(count);
+            for(long i = 0; i < count; i++){
+                var constant = constants.asSlice(i * WGPUConstantEntry.sizeof(), WGPUConstantEntry.sizeof());
+                noChain(WGPUConstantEntry.nextInChain$get(constant));
+                putString(WGPUConstantEntry.key$get(constant));
+                putLong(Double.doubleToLongBits(WGPUConstantEntry.value$get(constant)));
+            }
+        }
+
+        private void stencilFace(MemorySegment face){
+            putInt(WGPUStencilFaceState.compare$get(face));
+            putInt(WGPUStencilFaceState.failOp$get(face));
+            putInt(WGPUStencilFaceState.depthFailOp$get(face));
+            putInt(WGPUStencilFaceState.passOp$get(face));
+        }
+
+        private void blendComponent(MemorySegment component){
+            putInt(WGPUBlendComponent.operation$get(component));
+            putInt(WGPUBlendComponent.srcFactor$get(component));
+            putInt(WGPUBlendComponent.dstFactor$get(component));
+        }
+
+        /**
+         * Extension structs this key doesn't know about could change the created object in ways
+         * the key can't see, so any chained struct makes the descriptor uncacheable.
+         */
+        private void noChain(MemorySegment nextInChain){
+            if(!MemorySegment.NULL.equals(nextInChain)){
+                cacheable = false;
+            }
+        }
+
+        /**
+         * Encodes whether an optional pointer is set, since a NULL struct and a zeroed struct
+         * describe different objects.
+         */
+        private boolean present(MemorySegment pointer){
+            var present = !MemorySegment.NULL.equals(pointer);
+            putInt(present ? 1 : NULL_MARKER);
+            return present;
+        }
+
+        private static MemorySegment array(MemorySegment pointer, long count, long elementSize){
+            return count > 0 ? pointer.reinterpret(count * elementSize) : MemorySegment.NULL;
+        }
+
+        private void putString(MemorySegment string){
+            if(MemorySegment.NULL.equals(string)){
+                putInt(NULL_MARKER);
+                return;
+            }
+            var unbounded = string.reinterpret(Long.MAX_VALUE);
+            long length = 0;
+            while(unbounded.get(JAVA_BYTE, length) != 0){
+                length++;
+            }
+            putInt(Math.toIntExact(length));
+            putBytes(unbounded, length);
+        }
+
+        private void putBytes(MemorySegment source, long length){
+            ensureCapacity(length);
+            MemorySegment.copy(source.reinterpret(length), JAVA_BYTE, 0, bytes, size, (int) length);
+            size += (int) length;
+        }
+
+        private void putShaderModule(MemorySegment handle){
+            putLong(handle.address());
+            if(!MemorySegment.NULL.equals(handle)){
+                shaderModules.add(handle);
+            }
+        }
+
+        private void putPipelineLayout(MemorySegment handle){
+            putLong(handle.address());
+            if(!MemorySegment.NULL.equals(handle)){
+                pipelineLayouts.add(handle);
+            }
+        }
+
+        private void putFloat(float value){
+            putInt(Float.floatToIntBits(value));
+        }
+
+        private void putInt(int value){
+            ensureCapacity(Integer.BYTES);
+            for(int i = 0; i < Integer.BYTES; i++){
+                bytes[size++] = (byte) (value >>> (i * 8));
+            }
+        }
+
+        private void putLong(long value){
+            ensureCapacity(Long.BYTES);
+            for(int i = 0; i < Long.BYTES; i++){
+                bytes[size++] = (byte) (value >>> (i * 8));
+            }
+        }
+
+        private void ensureCapacity(long additional){
+            var required = Math.addExact(size, Math.toIntExact(additional));
+            if(required > bytes.length){
+                bytes = Arrays.copyOf(bytes, Math.max(required, bytes.length * 2));
+            }
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package com.myworldvw.webgpu.cache;
+
+import java.lang.foreign.MemorySegment;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.myworldvw.webgpu.webgpu_h.*;
+
+/**
+ * A content-addressed cache of shader modules, render and compute pipelines, samplers and
+ * bind group layouts for one device.
+ * <p>
+ * Lookups key the full descriptor graph - WGSL or SPIR-V source, entry points, constants,
+ * vertex layouts, primitive, depth-stencil, multisample and blend state, target formats -
+ * so a descriptor that is equal in content to one seen before returns the existing object
+ * instead of compiling it again, no matter where its memory lives. Labels are ignored: the
+ * object keeps the label of the descriptor that created it. Descriptors chaining extension
+ * structs the cache can't key are created uncached.
+ * <p>
+ * Objects are shared through WebGPU's own reference counting. Every lookup returns a handle
+ * carrying a new reference that the caller owns and must {@code *Release} as usual; the cache
+ * holds one more reference per object. When the cache grows past its capacity, the least
+ * recently used objects are evicted and the cache's reference is released - an evicted object
+ * stays alive for as long as any caller still holds a reference.
+ * <p>
+ * A PipelineCache is thread safe. Objects are compiled outside the cache's lock, and threads
+ * asking for an object that is still being compiled wait for that compilation instead of
+ * starting another one, so {@link #warmUp} can pre-create objects on loader threads while the
+ * render thread keeps using the cache.
+ */
+public final class PipelineCache implements AutoCloseable {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    public enum Kind {
+        SHADER_MODULE, RENDER_PIPELINE, COMPUTE_PIPELINE, SAMPLER, BIND_GROUP_LAYOUT
+    }
+
+    /**
+     * @param hits lookups answered from the cache, including ones that waited for a compilation
+     *             started by another thread
+     * @param misses lookups that compiled a new object
+     * @param uncacheable lookups whose descriptor couldn't be keyed and were created uncached
+     * @param evictions objects evicted to stay within capacity
+     * @param compileNanos the total time spent creating objects, cached or not
+     * @param size the number of objects currently cached
+     */
+    public record Statistics(long hits, long misses, long uncacheable, long evictions, long compileNanos, int size){
+
+        public double hitRate(){
+            var lookups = hits + misses + uncacheable;
+            return lookups > 0 ? (double) hits / lookups : 0;
+        }
+    }
+
+    private static final class Entry {
+        final CompletableFuture<MemorySegment> handle = new CompletableFuture<>();
+        boolean released;
+    }
+
+    private final MemorySegment device;
+    private final int capacity;
+    private final LinkedHashMap<DescriptorKey, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder uncacheable = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder compileNanos = new LongAdder();
+    private boolean closed;
+
+    public PipelineCache(MemorySegment device){
+        this(device, DEFAULT_CAPACITY);
+    }
+
+    public PipelineCache(MemorySegment device, int capacity){
+        if(capacity < 1){
+            throw new IllegalArgumentException("Capacity must be at least 1: " + capacity);
+        }
+        this.device = device;
+        this.capacity = capacity;
+    }
+
+    public MemorySegment shaderModule(MemorySegment descriptor){
+        return get(Kind.SHADER_MODULE, descriptor);
+    }
+
+    public MemorySegment renderPipeline(MemorySegment descriptor){
+        return get(Kind.RENDER_PIPELINE, descriptor);
+    }
+
+    public MemorySegment computePipeline(MemorySegment descriptor){
+        return get(Kind.COMPUTE_PIPELINE, descriptor);
+    }
+
+    public MemorySegment sampler(MemorySegment descriptor){
+        return get(Kind.SAMPLER, descriptor);
+    }
+
+    public MemorySegment bindGroupLayout(MemorySegment descriptor){
+        return get(Kind.BIND_GROUP_LAYOUT, descriptor);
+    }
+
+    /**
+     * Returns the object described by the descriptor, creating it only if no object with
+     * equal content is cached.
+     * @return the object's handle with a reference owned by the caller, or NULL if the device
+     * failed to create it
+     */
+    public MemorySegment get(Kind kind, MemorySegment descriptor){
+        var key = DescriptorKey.of(kind, descriptor);
+        if(key == null){
+            uncacheable.increment();
+            return compile(kind, descriptor);
+        }
+
+        while(true){
+            Entry entry;
+            var owner = false;
+            synchronized(this){
+                ensureOpen();
+                entry = entries.get(key);
+                if(entry == null){
+                    entry = new Entry();
+                    entries.put(key, entry);
+                    owner = true;
+                }
+            }
+
+            if(owner){
+                misses.increment();
+                key.retain();
+                complete(key, entry, descriptor);
+            }else{
+                hits.increment();
+            }
+
+            var handle = entry.handle.join();
+            if(MemorySegment.NULL.equals(handle)){
+                return handle;
+            }
+            synchronized(this){
+                // The entry may have been evicted and released between completing and here
+                if(!entry.released){
+                    reference(kind, handle);
+                    return handle;
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the object on the executor, if it isn't cached yet, so that later lookups hit.
+     * The descriptor's memory must be accessible from the executor's threads (e.g. allocated
+     * from a shared arena) and stay valid until the returned future completes.
+     */
+    public CompletableFuture<Void> warmUp(Kind kind, MemorySegment descriptor, Executor executor){
+        return CompletableFuture.runAsync(() -> release(kind, get(kind, descriptor)), executor);
+    }
+
+    /**
+     * Warms up every descriptor, in parallel as far as the executor allows.
+     * @see #warmUp(Kind, MemorySegment, Executor)
+     */
+    public CompletableFuture<Void> warmUp(Kind kind, Collection<MemorySegment> descriptors, Executor executor){
+        return CompletableFuture.allOf(descriptors.stream()
+                .map(d -> warmUp(kind, d, executor))
+                .toArray(CompletableFuture[]::new));
+    }
+
+    public Statistics statistics(){
+        int size;
+        synchronized(this){
+            size = entries.size();
+        }
+        return new Statistics(hits.sum(), misses.sum(), uncacheable.sum(), evictions.sum(), compileNanos.sum(), size);
+    }
+
+    /**
+     * Releases the cache's reference to every cached object. Objects still being compiled
+     * stay cached.
+     */
+    public void clear(){
+        for(var evicted : evict(0)){
+            evicted.release();
+        }
+    }
+
+    @Override
+    public void close(){
+        synchronized(this){
+            closed = true;
+        }
+        clear();
+    }
+
+    private void complete(DescriptorKey key, Entry entry, MemorySegment descriptor){
+        MemorySegment handle;
+        try{
+            handle = compile(key.kind(), descriptor);
+        }catch(RuntimeException | Error e){
+            synchronized(this){
+                entries.remove(key, entry);
+            }
+            key.release();
+            entry.handle.completeExceptionally(e);
+            throw e;
+        }
+
+        if(MemorySegment.NULL.equals(handle)){
+            synchronized(this){
+                entries.remove(key, entry);
+            }
+            key.release();
+        }
+        entry.handle.complete(handle);
+
+        for(var evicted : evict(capacity)){
+            evictions.increment();
+            evicted.release();
+        }
+    }
+
+    private record Evicted(DescriptorKey key, MemorySegment handle){
+
+        void release(){
+            PipelineCache.release(key.kind(), handle);
+            key.release();
+        }
+    }
+
+    /**
+     * Removes least recently used, completed entries until no more than {@code limit} remain.
+     * The handles are released by the caller, outside the lock.
+     */
+    private synchronized ArrayList<Evicted> evict(int limit){
+        var evicted = new ArrayList<Evicted>();
+        var iterator = entries.entrySet().iterator();
+        var excess = entries.size() - limit;
+        while(excess > 0 && iterator.hasNext()){
+            var next = iterator.next();
+            var entry = next.getValue();
+            if(!entry.handle.isDone()){
+                continue;
+            }
+            iterator.remove();
+            excess--;
+            entry.released = true;
+            var handle = entry.handle.getNow(MemorySegment.NULL);
+            if(!MemorySegment.NULL.equals(handle)){
+                evicted.add(new Evicted(next.getKey(), handle));
+            }
+        }
+        return evicted;
+    }
+
+    private MemorySegment compile(Kind kind, MemorySegment descriptor){
+        var start = System.nanoTime();
+        try{
+            return switch(kind){
+                case SHADER_MODULE -> wgpuDeviceCreateShaderModule(device, descriptor);
+                case RENDER_PIPELINE -> wgpuDeviceCreateRenderPipeline(device, descriptor);
+                case COMPUTE_PIPELINE -> wgpuDeviceCreateComputePipeline(device, descriptor);
+                case SAMPLER -> wgpuDeviceCreateSampler(device, descriptor);
+                case BIND_GROUP_LAYOUT -> wgpuDeviceCreateBindGroupLayout(device, descriptor);
+            };
+        }finally{
+            compileNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    private static void reference(Kind kind, MemorySegment handle){
+        switch(kind){
+            case SHADER_MODULE -> wgpuShaderModuleReference(handle);
+            case RENDER_PIPELINE -> wgpuRenderPipelineReference(handle);
+            case COMPUTE_PIPELINE -> wgpuComputePipelineReference(handle);
+            case SAMPLER -> wgpuSamplerReference(handle);
+            case BIND_GROUP_LAYOUT -> wgpuBindGroupLayoutReference(handle);
+        }
+    }
+
+    private static void release(Kind kind, MemorySegment handle){
+        if(MemorySegment.NULL.equals(handle)){
+            return;
+        }
+        switch(kind){
+            case SHADER_MODULE -> wgpuShaderModuleRelease(handle);
+            case RENDER_PIPELINE -> wgpuRenderPipelineRelease(handle);
+            case COMPUTE_PIPELINE -> wgpuComputePipelineRelease(handle);
+            case SAMPLER -> wgpuSamplerRelease(handle);
+            case BIND_GROUP_LAYOUT -> wgpuBindGroupLayoutRelease(handle);
+        }
+    }
+
+    private void ensureOpen(){
+        if(closed){
+            throw new IllegalStateException("Pipeline cache is closed");
+        }
+    }
+}
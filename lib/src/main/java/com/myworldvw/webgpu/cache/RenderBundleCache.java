@@ -0,0 +1,159 @@
+package com.myworldvw.webgpu.cache;
+
+import com.myworldvw.webgpu.frame.ParallelRecorder;
+import com.myworldvw.webgpu.memory.FrameArena;
+
+import java.lang.foreign.MemorySegment;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.myworldvw.webgpu.webgpu_h.*;
+
+/**
+ * Keeps render bundles for static geometry - level chunks, UI that rarely changes - and
+ * re-records a bundle only when the inputs it was recorded from change.
+ * <p>
+ * Each bundle is identified by a key and carries the inputs it was recorded with: any value
+ * with content equality, such as a record of the pipeline, buffers, bind groups and draw
+ * counts the bundle uses. {@link #get} returns the cached bundle while the inputs are equal to
+ * the previous ones, and records a new bundle otherwise. The inputs must cover everything the
+ * recording depends on, including the formats in the bundle encoder descriptor.
+ * <p>
+ * Bundles are shared through WebGPU's reference counting, as with {@link PipelineCache}: every
+ * lookup returns a handle carrying a new reference that the caller owns and must release with
+ * {@code wgpuRenderBundleRelease} once it has been executed, and the cache holds one more. A
+ * bundle that is re-recorded, invalidated or cleared while another thread is still about to
+ * execute it stays alive until that thread releases it.
+ * <p>
+ * A RenderBundleCache is thread safe, and bundles with different keys are recorded
+ * concurrently, so the bundles of a {@link ParallelRecorder} pass can use it from its workers.
+ * Recording allocates from the frame arena passed to {@link #get}, which must belong to the
+ * calling thread, e.g. the worker's own arena.
+ */
+public final class RenderBundleCache implements AutoCloseable {
+
+    /**
+     * @param hits lookups answered with a cached bundle
+     * @param recordings lookups that recorded a bundle, because its key was new or its inputs changed
+     * @param size the number of bundles currently cached
+     */
+    public record Statistics(long hits, long recordings, int size){
+
+        public double hitRate(){
+            var lookups = hits + recordings;
+            return lookups > 0 ? (double) hits / lookups : 0;
+        }
+    }
+
+    private static final class Entry {
+        Object inputs;
+        MemorySegment bundle;
+        boolean removed;
+    }
+
+    private final MemorySegment device;
+    private final ConcurrentHashMap<Object, Entry> entries = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder recordings = new LongAdder();
+    private volatile boolean closed;
+
+    public RenderBundleCache(MemorySegment device){
+        this.device = device;
+    }
+
+    /**
+     * @param key identifies the bundle
+     * @param inputs everything the recording depends on, compared with {@link Object#equals}
+     * @param descriptor the {@code WGPURenderBundleEncoderDescriptor} to record with if the
+     *                   bundle has to be recorded
+     * @param arena the calling thread's frame arena, handed to {@code recording}
+     * @param recording records the bundle's draws
+     * @return a new reference to the bundle, which the caller must release
+     */
+    public MemorySegment get(Object key, Object inputs, MemorySegment descriptor, FrameArena arena,
+                             ParallelRecorder.Bundle recording){
+        Objects.requireNonNull(key);
+        while(true){
+            ensureOpen();
+            var entry = entries.computeIfAbsent(key, k -> new Entry());
+            synchronized(entry){
+                if(entry.removed){
+                    // Invalidated while waiting for the lock - look the key up again
+                    continue;
+                }
+                if(entry.bundle != null && Objects.equals(entry.inputs, inputs)){
+                    hits.increment();
+                    wgpuRenderBundleReference(entry.bundle);
+                    return entry.bundle;
+                }
+
+                var bundle = record(descriptor, arena, recording);
+                if(entry.bundle != null){
+                    wgpuRenderBundleRelease(entry.bundle);
+                }
+                entry.bundle = bundle;
+                entry.inputs = inputs;
+                recordings.increment();
+                wgpuRenderBundleReference(bundle);
+                return bundle;
+            }
+        }
+    }
+
+    /**
+     * Releases the cache's reference to the key's bundle, so the next lookup records it again.
+     */
+    public void invalidate(Object key){
+        var entry = entries.remove(key);
+        if(entry != null){
+            release(entry);
+        }
+    }
+
+    public Statistics statistics(){
+        return new Statistics(hits.sum(), recordings.sum(), entries.size());
+    }
+
+    /**
+     * Releases the cache's references to every cached bundle.
+     */
+    public void clear(){
+        for(var key : entries.keySet()){
+            invalidate(key);
+        }
+    }
+
+    @Override
+    public void close(){
+        closed = true;
+        clear();
+    }
+
+    private MemorySegment record(MemorySegment descriptor, FrameArena arena, ParallelRecorder.Bundle recording){
+        var encoder = wgpuDeviceCreateRenderBundleEncoder(device, descriptor);
+        try{
+            recording.record(encoder, arena);
+            return wgpuRenderBundleEncoderFinish(encoder, MemorySegment.NULL);
+        }finally{
+            wgpuRenderBundleEncoderRelease(encoder);
+        }
+    }
+
+    private static void release(Entry entry){
+        synchronized(entry){
+            entry.removed = true;
+            if(entry.bundle != null){
+                wgpuRenderBundleRelease(entry.bundle);
+                entry.bundle = null;
+                entry.inputs = null;
+            }
+        }
+    }
+
+    private void ensureOpen(){
+        if(closed){
+            throw new IllegalStateException("Render bundle cache is closed");
+        }
+    }
+}
@@ -0,0 +1,539 @@
+package com.myworldvw.webgpu.frame;
+
+import com.myworldvw.webgpu.WGPUCommandEncoderDescriptor;
+import com.myworldvw.webgpu.WGPUSurfaceCapabilities;
+import com.myworldvw.webgpu.WGPUSurfaceConfiguration;
+import com.myworldvw.webgpu.WGPUSurfaceTexture;
+import com.myworldvw.webgpu.async.CallbackDispatcher;
+import com.myworldvw.webgpu.async.DeviceEventLoop;
+import com.myworldvw.webgpu.memory.FrameArena;
+import com.myworldvw.webgpu.memory.StagingBelt;
+import com.myworldvw.webgpu.wgpu.WGPUWrappedSubmissionIndex;
+import com.myworldvw.webgpu.wgpu.wgpu_h;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.myworldvw.webgpu.webgpu_h.*;
+
+/**
+ * Drives a surface render loop: acquires the surface texture, hands out a {@link Frame} to
+ * record into, submits and presents it, and keeps at most N frames in flight on the GPU.
+ * <p>
+ * Every frame slot owns a {@link FrameArena} for descriptor memory, a {@link StagingBelt} for
+ * uploads and a fence - a {@code wgpuQueueOnSubmittedWorkDone} request made right after the
+ * slot's frame was submitted. {@link #beginFrame()} waits for the fence of the slot it is about
+ * to reuse, so the CPU runs at most {@code framesInFlight} frames ahead of the GPU and never
+ * overwrites memory the GPU may still read, instead of pacing the loop with a fixed sleep.
+ * With a {@link DeviceEventLoop} the fence completes on the loop's thread; without one the
+ * render thread waits in {@code wgpuDevicePoll} for the slot's submission.
+ * <p>
+ * The surface is configured lazily, with the present mode the {@link PresentPolicy} prefers
+ * among those the surface supports. {@link #resize(int, int)}, outdated, lost and suboptimal
+ * surface textures just mark the configuration stale - the next acquisition reconfigures the
+ * surface without waiting for the GPU to go idle. A frame is skipped, and {@code beginFrame}
+ * returns null, while the surface has no area or acquiring its texture times out; skipped
+ * frames back off from 1 to 64 milliseconds so a minimized window doesn't spin.
+ * <p>
+ * A FrameScheduler is not thread safe - it belongs to the render thread.
+ */
+public final class FrameScheduler implements AutoCloseable {
+
+    public static final int DEFAULT_FRAMES_IN_FLIGHT = 2;
+
+    public static final long DEFAULT_ARENA_BLOCK_SIZE = 16 * 1024;
+
+    public static final long MIN_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    public static final long MAX_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(64);
+
+    /**
+     * How to choose the surface's present mode. Every policy falls back to {@code Fifo},
+     * which all surfaces support.
+     */
+    public enum PresentPolicy {
+        /** {@code Fifo}: present on vertical blank, throttling the loop to the display rate. */
+        VSYNC,
+        /** {@code Mailbox}, else {@code Fifo}: no tearing, with the newest frame replacing a queued one. */
+        LOW_LATENCY,
+        /** {@code Immediate}, else {@code Mailbox}, else {@code Fifo}: as many frames as the GPU can render, tearing allowed. */
+        UNCAPPED;
+
+        int[] preference(){
+            return switch(this){
+                case VSYNC -> new int[]{WGPUPresentMode_Fifo()};
+                case LOW_LATENCY -> new int[]{WGPUPresentMode_Mailbox(), WGPUPresentMode_Fifo()};
+                case UNCAPPED -> new int[]{WGPUPresentMode_Immediate(), WGPUPresentMode_Mailbox(), WGPUPresentMode_Fifo()};
+            };
+        }
+    }
+
+    /**
+     * @param frames the number of frames submitted
+     * @param skippedFrames calls to {@link #beginFrame()} that returned null
+     * @param reconfigurations the number of times the surface was configured
+     * @param cpuFrame the time from {@link #beginFrame()} returning a frame to {@link #endFrame(Frame)} having presented it
+     * @param presentInterval the time between consecutive presents
+     * @param fenceWait the time {@link #beginFrame()} spent waiting for the GPU to release a frame slot
+     */
+    public record Statistics(long frames, long skippedFrames, long reconfigurations, Histogram.Snapshot cpuFrame,
+                             Histogram.Snapshot presentInterval, Histogram.Snapshot fenceWait){}
+
+    /**
+     * A frame being recorded. Its texture, view and encoder are released by
+     * {@link #endFrame(Frame)}; its arena and staging belt belong to the frame slot and are
+     * reused once the GPU has finished with the slot's previous frame.
+     */
+    public final class Frame {
+
+        private final int slot;
+        private final FrameArena arena;
+        private final StagingBelt staging;
+        private CompletableFuture<Integer> fence;
+        private long submissionIndex;
+
+        private long index;
+        private MemorySegment texture;
+        private MemorySegment view;
+        private MemorySegment encoder;
+        private long start;
+
+        private Frame(int slot){
+            this.slot = slot;
+            arena = new FrameArena(DEFAULT_ARENA_BLOCK_SIZE);
+            staging = new StagingBelt(device, queue);
+        }
+
+        /**
+         * @return the number of frames begun before this one
+         */
+        public long index(){
+            return index;
+        }
+
+        public int slot(){
+            return slot;
+        }
+
+        public MemorySegment texture(){
+            return texture;
+        }
+
+        /**
+         * @return a view of the whole surface texture
+         */
+        public MemorySegment view(){
+            return view;
+        }
+
+        public MemorySegment encoder(){
+            return encoder;
+        }
+
+        /**
+         * @return the slot's descriptor memory, reset when the frame begins
+         */
+        public FrameArena arena(){
+            return arena;
+        }
+
+        /**
+         * @return the slot's staging belt. Copies written to it are recorded into a separate
+         * command buffer that is submitted ahead of the frame's encoder.
+         */
+        public StagingBelt staging(){
+            return staging;
+        }
+
+        public int width(){
+            return width;
+        }
+
+        public int height(){
+            return height;
+        }
+    }
+
+    private final MemorySegment device;
+    private final MemorySegment surface;
+    private final MemorySegment queue;
+    private final DeviceEventLoop events;
+
+    private final Arena arena = Arena.ofConfined();
+    private final MemorySegment surfaceTexture;
+    private final MemorySegment wrappedIndex;
+    private final MemorySegment encoderLabel;
+    private final MemorySegment uploadLabel;
+
+    private final int[] presentModes;
+    private final int alphaMode;
+    private final int format;
+    private final int usage;
+
+    private final Frame[] frames;
+    private Frame current;
+
+    private PresentPolicy presentPolicy;
+    private int presentMode;
+    private int width;
+    private int height;
+    private boolean stale = true;
+    private long backoffNanos;
+    private long lastPresent;
+    private boolean closed;
+
+    private long frameCount;
+    private long skippedFrames;
+    private long reconfigurations;
+    private final Histogram cpuFrame = new Histogram();
+    private final Histogram presentInterval = new Histogram();
+    private final Histogram fenceWait = new Histogram();
+
+    public FrameScheduler(MemorySegment adapter, MemorySegment device, MemorySegment surface, int width, int height){
+        this(adapter, device, surface, width, height, DEFAULT_FRAMES_IN_FLIGHT, PresentPolicy.LOW_LATENCY, null);
+    }
+
+    /**
+     * @param adapter the adapter the device was requested from, used to query the surface's capabilities
+     * @param framesInFlight the number of frames the CPU may run ahead of the GPU
+     * @param events the loop that completes the frame fences, or null to poll the device from the render thread
+     */
+    public FrameScheduler(MemorySegment adapter, MemorySegment device, MemorySegment surface, int width, int height,
+                          int framesInFlight, PresentPolicy presentPolicy, DeviceEventLoop events){
+        this(adapter, device, surface, width, height, framesInFlight, presentPolicy, WGPUTextureFormat_Undefined(),
+                WGPUTextureUsage_RenderAttachment(), events);
+    }
+
+    /**
+     * @param format the surface format, or {@code Undefined} for the surface's preferred format
+     * @param usage the surface texture usage, which must include {@code RenderAttachment}
+     */
+    public FrameScheduler(MemorySegment adapter, MemorySegment device, MemorySegment surface, int width, int height,
+                          int framesInFlight, PresentPolicy presentPolicy, int format, int usage, DeviceEventLoop events){
+        if(framesInFlight < 1){
+            throw new IllegalArgumentException("Frames in flight must be at least 1: " + framesInFlight);
+        }
+        this.device = device;
+        this.surface = surface;
+        this.events = events;
+        this.presentPolicy = presentPolicy;
+        this.usage = usage;
+        this.width = Math.max(width, 0);
+        this.height = Math.max(height, 0);
+
+        var capabilities = WGPUSurfaceCapabilities.allocate(arena);
+        wgpuSurfaceGetCapabilities(surface, adapter, capabilities);
+        var formats = array(WGPUSurfaceCapabilities.formats$get(capabilities), WGPUSurfaceCapabilities.formatCount$get(capabilities));
+        presentModes = array(WGPUSurfaceCapabilities.presentModes$get(capabilities), WGPUSurfaceCapabilities.presentModeCount$get(capabilities));
+        var alphaModes = array(WGPUSurfaceCapabilities.alphaModes$get(capabilities), WGPUSurfaceCapabilities.alphaModeCount$get(capabilities));
+        wgpuSurfaceCapabilitiesFreeMembers(capabilities);
+
+        if(formats.length == 0){
+            arena.close();
+            throw new IllegalArgumentException("Surface is not supported by the adapter");
+        }
+        if(format == WGPUTextureFormat_Undefined()){
+            this.format = formats[0];
+        }else if(contains(formats, format)){
+            this.format = format;
+        }else{
+            arena.close();
+            throw new IllegalArgumentException("Unsupported surface format: 0x" + Integer.toHexString(format));
+        }
+        alphaMode = alphaModes.length > 0 ? alphaModes[0] : WGPUCompositeAlphaMode_Auto();
+        presentMode = choosePresentMode(presentPolicy);
+
+        queue = wgpuDeviceGetQueue(device);
+        surfaceTexture = WGPUSurfaceTexture.allocate(arena);
+        wrappedIndex = WGPUWrappedSubmissionIndex.allocate(arena);
+        WGPUWrappedSubmissionIndex.queue$set(wrappedIndex, queue);
+        encoderLabel = arena.allocateUtf8String("FrameScheduler");
+        uploadLabel = arena.allocateUtf8String("FrameScheduler uploads");
+
+        frames = new Frame[framesInFlight];
+        for(int i = 0; i < framesInFlight; i++){
+            frames[i] = new Frame(i);
+        }
+    }
+
+    /**
+     * Waits until the next frame slot is free, acquires the surface texture and creates the
+     * frame's view and command encoder.
+     * @return the frame to record, or null if no surface texture is available this time -
+     * keep handling window events and try again
+     */
+    public Frame beginFrame() throws InterruptedException {
+        if(closed){
+            throw new IllegalStateException("Frame scheduler is closed");
+        }
+        if(current != null){
+            throw new IllegalStateException("Frame " + current.index + " has not been ended");
+        }
+
+        var frame = frames[(int) (frameCount % frames.length)];
+        var waitStart = System.nanoTime();
+        awaitFence(frame);
+        var start = System.nanoTime();
+        fenceWait.record(start - waitStart);
+
+        if(!acquire()){
+            skippedFrames++;
+            backoffNanos = backoffNanos == 0 ? MIN_BACKOFF_NANOS : Math.min(backoffNanos * 2, MAX_BACKOFF_NANOS);
+            LockSupport.parkNanos(backoffNanos);
+            if(Thread.interrupted()){
+                throw new InterruptedException();
+            }
+            return null;
+        }
+        backoffNanos = 0;
+
+        frame.arena.reset();
+        frame.index = frameCount;
+        frame.start = start;
+        frame.texture = WGPUSurfaceTexture.texture$get(surfaceTexture);
+        frame.view = wgpuTextureCreateView(frame.texture, MemorySegment.NULL);
+        frame.encoder = createEncoder(frame.arena, encoderLabel);
+        current = frame;
+        return frame;
+    }
+
+    /**
+     * Submits the frame's staged uploads and its encoder, presents the surface texture and
+     * releases the frame's texture, view and encoder. Passes recorded into the encoder must
+     * have been ended.
+     */
+    public void endFrame(Frame frame){
+        if(frame == null || frame != current){
+            throw new IllegalArgumentException("Frame was not begun by this scheduler or has already been ended");
+        }
+
+        var commands = frame.arena.allocateArray(WGPUCommandBuffer, 2);
+        var commandCount = 0;
+        var upload = MemorySegment.NULL;
+        if(frame.staging.pendingCopies() > 0){
+            upload = createEncoder(frame.arena, uploadLabel);
+            frame.staging.finish(upload);
+            commands.setAtIndex(WGPUCommandBuffer, commandCount++, wgpuCommandEncoderFinish(upload, MemorySegment.NULL));
+        }
+        commands.setAtIndex(WGPUCommandBuffer, commandCount++, wgpuCommandEncoderFinish(frame.encoder, MemorySegment.NULL));
+
+        frame.submissionIndex = events != null
+                ? events.submitForIndex(queue, commandCount, commands)
+                : wgpu_h.wgpuQueueSubmitForIndex(queue, commandCount, commands);
+        frame.fence = events != null
+                ? events.onSubmittedWorkDone(queue)
+                : CallbackDispatcher.onSubmittedWorkDone(queue);
+        frame.staging.recall();
+
+        wgpuSurfacePresent(surface);
+        var presented = System.nanoTime();
+        if(lastPresent != 0){
+            presentInterval.record(presented - lastPresent);
+        }
+        lastPresent = presented;
+
+        for(int i = 0; i < commandCount; i++){
+            wgpuCommandBufferRelease(commands.getAtIndex(WGPUCommandBuffer, i));
+        }
+        if(!MemorySegment.NULL.equals(upload)){
+            wgpuCommandEncoderRelease(upload);
+        }
+        release(frame);
+        current = null;
+        frameCount++;
+        cpuFrame.record(System.nanoTime() - frame.start);
+    }
+
+    /**
+     * Sets the surface size, typically from a window resize event. The surface is reconfigured
+     * when the next frame begins.
+     */
+    public void resize(int width, int height){
+        width = Math.max(width, 0);
+        height = Math.max(height, 0);
+        if(width != this.width || height != this.height){
+            this.width = width;
+            this.height = height;
+            stale = true;
+        }
+    }
+
+    /**
+     * Changes the present policy, taking effect when the next frame begins.
+     */
+    public void setPresentPolicy(PresentPolicy presentPolicy){
+        var mode = choosePresentMode(presentPolicy);
+        this.presentPolicy = presentPolicy;
+        if(mode != presentMode){
+            presentMode = mode;
+            stale = true;
+        }
+    }
+
+    public PresentPolicy presentPolicy(){
+        return presentPolicy;
+    }
+
+    /**
+     * @return the {@code WGPUPresentMode} chosen for the present policy
+     */
+    public int presentMode(){
+        return presentMode;
+    }
+
+    /**
+     * @return the surface's texture format, which render pipelines targeting it must use
+     */
+    public int format(){
+        return format;
+    }
+
+    public int framesInFlight(){
+        return frames.length;
+    }
+
+    public Statistics statistics(){
+        return new Statistics(frameCount, skippedFrames, reconfigurations, cpuFrame.snapshot(),
+                presentInterval.snapshot(), fenceWait.snapshot());
+    }
+
+    /**
+     * Waits for every frame in flight, then releases the per-frame resources and unconfigures
+     * the surface. A frame begun but not ended is discarded.
+     */
+    @Override
+    public void close(){
+        if(closed){
+            return;
+        }
+        closed = true;
+        if(current != null){
+            release(current);
+            current = null;
+        }
+
+        var interrupted = false;
+        for(var frame : frames){
+            while(frame.fence != null){
+                try{
+                    awaitFence(frame);
+                }catch(InterruptedException e){
+                    interrupted = true;
+                }
+            }
+            frame.staging.close();
+            frame.arena.close();
+        }
+        if(interrupted){
+            Thread.currentThread().interrupt();
+        }
+        wgpuSurfaceUnconfigure(surface);
+        wgpuQueueRelease(queue);
+        arena.close();
+    }
+
+    private boolean acquire(){
+        if(width == 0 || height == 0){
+            return false;
+        }
+        if(stale){
+            configure();
+        }
+        for(int attempt = 0; attempt < 2; attempt++){
+            wgpuSurfaceGetCurrentTexture(surface, surfaceTexture);
+            var status = WGPUSurfaceTexture.status$get(surfaceTexture);
+            if(status == WGPUSurfaceGetCurrentTextureStatus_Success()){
+                // Usable this frame, but the surface should be reconfigured for the next one
+                stale = WGPUSurfaceTexture.suboptimal$get(surfaceTexture) != 0;
+                return true;
+            }
+
+            var texture = WGPUSurfaceTexture.texture$get(surfaceTexture);
+            if(!MemorySegment.NULL.equals(texture)){
+                wgpuTextureRelease(texture);
+            }
+            if(status == WGPUSurfaceGetCurrentTextureStatus_Timeout()){
+                return false;
+            }else if(status == WGPUSurfaceGetCurrentTextureStatus_Outdated()
+                    || status == WGPUSurfaceGetCurrentTextureStatus_Lost()){
+                configure();
+            }else{
+                throw new IllegalStateException("Unable to acquire surface texture, status " + status);
+            }
+        }
+        return false;
+    }
+
+    private void configure(){
+        try(var arena = Arena.ofConfined()){
+            var config = WGPUSurfaceConfiguration.allocate(arena);
+            WGPUSurfaceConfiguration.device$set(config, device);
+            WGPUSurfaceConfiguration.format$set(config, format);
+            WGPUSurfaceConfiguration.usage$set(config, usage);
+            WGPUSurfaceConfiguration.alphaMode$set(config, alphaMode);
+            WGPUSurfaceConfiguration.width$set(config, width);
+            WGPUSurfaceConfiguration.height$set(config, height);
+            WGPUSurfaceConfiguration.presentMode$set(config, presentMode);
+            wgpuSurfaceConfigure(surface, config);
+        }
+        reconfigurations++;
+        stale = false;
+    }
+
+    private void awaitFence(Frame frame) throws InterruptedException {
+        var fence = frame.fence;
+        if(fence == null){
+            return;
+        }
+        if(events != null){
+            events.await(fence);
+        }else{
+            WGPUWrappedSubmissionIndex.submissionIndex$set(wrappedIndex, frame.submissionIndex);
+            while(!fence.isDone()){
+                wgpu_h.wgpuDevicePoll(device, 1, wrappedIndex);
+            }
+        }
+        frame.fence = null;
+    }
+
+    private MemorySegment createEncoder(FrameArena arena, MemorySegment label){
+        var descriptor = WGPUCommandEncoderDescriptor.allocate(arena);
+        WGPUCommandEncoderDescriptor.label$set(descriptor, label);
+        return wgpuDeviceCreateCommandEncoder(device, descriptor);
+    }
+
+    private int choosePresentMode(PresentPolicy policy){
+        for(var mode : policy.preference()){
+            if(contains(presentModes, mode)){
+                return mode;
+            }
+        }
+        return WGPUPresentMode_Fifo();
+    }
+
+    private static void release(Frame frame){
+        wgpuCommandEncoderRelease(frame.encoder);
+        wgpuTextureViewRelease(frame.view);
+        wgpuTextureRelease(frame.texture);
+        frame.texture = null;
+        frame.view = null;
+        frame.encoder = null;
+    }
+
+    private static int[] array(MemorySegment values, long count){
+        return count > 0 ? values.reinterpret(count * ValueLayout.JAVA_INT.byteSize()).toArray(ValueLayout.JAVA_INT) : new int[0];
+    }
+
+    private static boolean contains(int[] values, int value){
+        for(var v : values){
+            if(v == value){
+                return true;
+            }
+        }
+        return false;
+    }
+}
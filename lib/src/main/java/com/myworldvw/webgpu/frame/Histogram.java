@@ -0,0 +1,97 @@
+package com.myworldvw.webgpu.frame;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size log-linear histogram of durations in nanoseconds.
+ * <p>
+ * Every power of two is split into 8 linear buckets, so values are recorded with at most
+ * 12.5% relative error in a few kilobytes, with no allocation per sample and without a
+ * configured range. A Histogram is thread safe.
+ */
+public final class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    /**
+     * @param count the number of recorded values
+     * @param mean the exact mean of the recorded values
+     * @param p50 the median, to within the histogram's precision
+     * @param p90 the 90th percentile
+     * @param p99 the 99th percentile
+     * @param max the exact maximum
+     */
+    public record Snapshot(long count, double mean, long p50, long p90, long p99, long max){}
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long sum;
+    private long max;
+
+    public synchronized void record(long nanos){
+        if(nanos < 0){
+            nanos = 0;
+        }
+        counts[index(nanos)]++;
+        count++;
+        sum += nanos;
+        max = Math.max(max, nanos);
+    }
+
+    public synchronized long count(){
+        return count;
+    }
+
+    /**
+     * @param percentile from 0 to 100
+     * @return the smallest recorded bucket's midpoint below which the given percentage of
+     * values fall, or 0 if nothing has been recorded
+     */
+    public synchronized long percentile(double percentile){
+        if(count == 0){
+            return 0;
+        }
+        var rank = (long) Math.ceil(percentile / 100 * count);
+        long seen = 0;
+        for(int i = 0; i < BUCKETS; i++){
+            seen += counts[i];
+            if(seen >= Math.max(rank, 1)){
+                return Math.min(midpoint(i), max);
+            }
+        }
+        return max;
+    }
+
+    public synchronized Snapshot snapshot(){
+        return new Snapshot(count, count > 0 ? (double) sum / count : 0,
+                percentile(50), percentile(90), percentile(99), max);
+    }
+
+    public synchronized void reset(){
+        Arrays.fill(counts, 0);
+        count = 0;
+        sum = 0;
+        max = 0;
+    }
+
+    static int index(long value){
+        if(value < SUB_BUCKETS){
+            return (int) value;
+        }
+        var exponent = 63 - Long.numberOfLeadingZeros(value);
+        var subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long midpoint(int index){
+        if(index < SUB_BUCKETS){
+            return index;
+        }
+        var exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        var width = 1L << (exponent - SUB_BUCKET_BITS);
+        var lower = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+        return lower + width / 2;
+    }
+}
@@ -0,0 +1,507 @@
+package com.myworldvw.webgpu.frame;
+
+import com.myworldvw.webgpu.WGPUBufferDescriptor;
+import com.myworldvw.webgpu.WGPUCommandEncoderDescriptor;
+import com.myworldvw.webgpu.WGPUExtent3D;
+import com.myworldvw.webgpu.WGPUImageCopyBuffer;
+import com.myworldvw.webgpu.WGPUImageCopyTexture;
+import com.myworldvw.webgpu.WGPUTextureDataLayout;
+import com.myworldvw.webgpu.async.CallbackDispatcher;
+import com.myworldvw.webgpu.async.DeviceEventLoop;
+import com.myworldvw.webgpu.memory.TexturePool;
+import com.myworldvw.webgpu.texture.TextureLoader;
+import com.myworldvw.webgpu.wgpu.wgpu_h;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.myworldvw.webgpu.webgpu_h.*;
+
+/**
+ * Renders frames into textures without a surface and reads them back, for thumbnails, image
+ * diffs and other headless rendering.
+ * <p>
+ * Each frame is rendered into a render target from a {@link TexturePool}, copied with
+ * {@code wgpuCommandEncoderCopyTextureToBuffer} into one of a ring of {@code MapRead} buffers
+ * and submitted, and the buffer is mapped asynchronously. {@link #render(Scene)} returns as
+ * soon as the frame is submitted, so up to {@code framesInFlight} frames are rendered and read
+ * back at once: the copy and map of frame k overlap the recording and rendering of frame k + 1.
+ * {@code render} only waits when it comes back around to a buffer whose frame hasn't been
+ * delivered yet, which bounds memory to the ring however fast frames are rendered.
+ * <p>
+ * Frames are published in order as {@link Image}s to a single {@link Flow.Subscriber} at a
+ * time, honoring its demand: a subscriber that stops requesting holds up the ring, and with it
+ * {@code render}. When the texture's rows are a multiple of 256 bytes the image is a view of
+ * the mapped buffer; otherwise the rows are copied to tightly packed memory first, so images
+ * never contain row padding. Either way an image is only valid until {@code onNext} returns -
+ * the buffer is then reused. Frames rendered while nobody is subscribed are dropped, and a
+ * subscriber that throws from {@code onNext} is cancelled, as with {@code SubmissionPublisher}.
+ * <p>
+ * Maps complete, and images are published, while the device is polled: by {@code render}
+ * waiting for a buffer, by {@link #flush()}, or by a {@link DeviceEventLoop}. Subscribers are
+ * called from that thread unless an executor is given to call them from.
+ * <p>
+ * {@code render}, {@code flush} and {@code close} belong to one rendering thread; subscribing
+ * and requesting may happen from any thread.
+ */
+public final class OffscreenRenderer implements Flow.Publisher<OffscreenRenderer.Image>, AutoCloseable {
+
+    public static final int DEFAULT_FRAMES_IN_FLIGHT = 3;
+
+    /**
+     * Records a frame into an encoder, rendering into {@code target}. Passes must be ended
+     * before returning.
+     */
+    @FunctionalInterface
+    public interface Scene {
+        void render(MemorySegment encoder, MemorySegment target, long frame);
+    }
+
+    /**
+     * A frame read back from the GPU.
+     * @param pixels the tightly packed rows of the frame, {@code bytesPerRow x height} bytes,
+     *               valid only until {@code onNext} returns
+     */
+    public record Image(long frame, int format, int width, int height, long bytesPerRow, MemorySegment pixels){}
+
+    /**
+     * @param frames the number of frames rendered
+     * @param delivered frames published to the subscriber
+     * @param dropped frames rendered with nobody subscribed, or whose buffer failed to map
+     * @param bytesReadBack the bytes of delivered images
+     * @param slotWait how long {@code render} waited for a readback buffer to be delivered
+     */
+    public record Statistics(long frames, long delivered, long dropped, long bytesReadBack, Histogram.Snapshot slotWait){}
+
+    private final class Slot {
+        final MemorySegment buffer;
+        MemorySegment packed;
+        volatile long frame;
+        volatile CompletableFuture<Integer> mapped;
+        CompletableFuture<Void> delivered;
+
+        Slot(MemorySegment buffer){
+            this.buffer = buffer;
+        }
+    }
+
+    private final class Subscription implements Flow.Subscription {
+        final Flow.Subscriber<? super Image> subscriber;
+        final AtomicLong demand = new AtomicLong();
+        volatile boolean cancelled;
+
+        Subscription(Flow.Subscriber<? super Image> subscriber){
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n){
+            if(n <= 0){
+                cancel();
+                subscriber.onError(new IllegalArgumentException("Requested a non-positive number of images: " + n));
+                return;
+            }
+            demand.getAndAccumulate(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            signal();
+        }
+
+        @Override
+        public void cancel(){
+            cancelled = true;
+            synchronized(OffscreenRenderer.this){
+                if(subscription == this){
+                    subscription = null;
+                }
+            }
+            signal();
+        }
+    }
+
+    private final MemorySegment device;
+    private final MemorySegment queue;
+    private final TexturePool targets;
+    private final boolean ownsTargets;
+    private final DeviceEventLoop events;
+    private final Executor executor;
+
+    private final int format;
+    private final int width;
+    private final int height;
+    private final long bytesPerRow;
+    private final long paddedBytesPerRow;
+    private final long bufferSize;
+
+    private final Arena arena = Arena.ofShared();
+    private final MemorySegment encoderDescriptor;
+    private final MemorySegment source;
+    private final MemorySegment destination;
+    private final MemorySegment copySize;
+    private final MemorySegment commands;
+
+    private final Slot[] slots;
+    private final ConcurrentLinkedQueue<Slot> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger drains = new AtomicInteger();
+    private volatile Subscription subscription;
+    private volatile boolean closing;
+    private boolean completed;
+    private boolean closed;
+
+    private long frames;
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder bytesReadBack = new LongAdder();
+    private final Histogram slotWait = new Histogram();
+
+    public OffscreenRenderer(MemorySegment device, int format, int width, int height){
+        this(device, null, format, width, height, DEFAULT_FRAMES_IN_FLIGHT, null, Runnable::run);
+    }
+
+    /**
+     * @param targets the pool to take render targets from, or null for a pool of the renderer's own
+     * @param framesInFlight the number of readback buffers, and so of frames rendered ahead of delivery
+     * @param events the loop that completes the buffer maps, or null to poll the device from the rendering thread
+     * @param executor calls the subscriber; {@code Runnable::run} calls it from the thread that completed the map
+     */
+    public OffscreenRenderer(MemorySegment device, TexturePool targets, int format, int width, int height,
+                             int framesInFlight, DeviceEventLoop events, Executor executor){
+        var texelBytes = bytesPerTexel(format);
+        if(texelBytes == 0){
+            throw new IllegalArgumentException("Unsupported render target format: 0x" + Integer.toHexString(format));
+        }
+        if(width < 1 || height < 1){
+            throw new IllegalArgumentException("Invalid render target size: " + width + "x" + height);
+        }
+        if(framesInFlight < 1){
+            throw new IllegalArgumentException("Frames in flight must be at least 1: " + framesInFlight);
+        }
+        this.device = device;
+        this.queue = wgpuDeviceGetQueue(device);
+        this.targets = targets != null ? targets : new TexturePool(device, queue);
+        this.ownsTargets = targets == null;
+        this.events = events;
+        this.executor = executor;
+        this.format = format;
+        this.width = width;
+        this.height = height;
+        bytesPerRow = (long) width * texelBytes;
+        paddedBytesPerRow = TextureLoader.alignedBytesPerRow(bytesPerRow);
+        bufferSize = paddedBytesPerRow * height;
+
+        encoderDescriptor = WGPUCommandEncoderDescriptor.allocate(arena);
+        WGPUCommandEncoderDescriptor.label$set(encoderDescriptor, arena.allocateUtf8String("OffscreenRenderer"));
+        source = WGPUImageCopyTexture.allocate(arena);
+        WGPUImageCopyTexture.aspect$set(source, WGPUTextureAspect_All());
+        destination = WGPUImageCopyBuffer.allocate(arena);
+        var layout = WGPUImageCopyBuffer.layout$slice(destination);
+        WGPUTextureDataLayout.bytesPerRow$set(layout, (int) paddedBytesPerRow);
+        WGPUTextureDataLayout.rowsPerImage$set(layout, height);
+        copySize = WGPUExtent3D.allocate(arena);
+        WGPUExtent3D.width$set(copySize, width);
+        WGPUExtent3D.height$set(copySize, height);
+        WGPUExtent3D.depthOrArrayLayers$set(copySize, 1);
+        commands = arena.allocateArray(WGPUCommandBuffer, 1);
+
+        var bufferDescriptor = WGPUBufferDescriptor.allocate(arena);
+        WGPUBufferDescriptor.label$set(bufferDescriptor, arena.allocateUtf8String("OffscreenRenderer readback"));
+        WGPUBufferDescriptor.usage$set(bufferDescriptor, WGPUBufferUsage_MapRead() | WGPUBufferUsage_CopyDst());
+        WGPUBufferDescriptor.size$set(bufferDescriptor, bufferSize);
+        slots = new Slot[framesInFlight];
+        for(int i = 0; i < framesInFlight; i++){
+            slots[i] = new Slot(wgpuDeviceCreateBuffer(device, bufferDescriptor));
+        }
+    }
+
+    /**
+     * Subscribes to the rendered frames. Only one subscriber is supported at a time; others
+     * are signalled an {@code IllegalStateException}.
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super Image> subscriber){
+        var added = new Subscription(subscriber);
+        boolean rejected;
+        synchronized(this){
+            rejected = closing || subscription != null;
+            if(rejected){
+                added.cancelled = true;
+            }else{
+                subscription = added;
+            }
+        }
+        subscriber.onSubscribe(added);
+        if(rejected){
+            subscriber.onError(new IllegalStateException(closing
+                    ? "Offscreen renderer is closed" : "Offscreen renderer already has a subscriber"));
+        }
+    }
+
+    /**
+     * Records a frame, copies it to the next readback buffer and submits it. Waits first if
+     * that buffer's previous frame hasn't been delivered yet.
+     * @return the frame number
+     */
+    public long render(Scene scene) throws InterruptedException {
+        ensureOpen();
+        var slot = slots[(int) (frames % slots.length)];
+        if(slot.delivered != null){
+            var start = System.nanoTime();
+            await(slot);
+            slotWait.record(System.nanoTime() - start);
+        }
+
+        var frame = frames++;
+        var target = targets.acquire(format, width, height, WGPUTextureUsage_RenderAttachment() | WGPUTextureUsage_CopySrc());
+        var view = wgpuTextureCreateView(target, MemorySegment.NULL);
+        var encoder = wgpuDeviceCreateCommandEncoder(device, encoderDescriptor);
+        try{
+            scene.render(encoder, view, frame);
+
+            WGPUImageCopyTexture.texture$set(source, target);
+            WGPUImageCopyBuffer.buffer$set(destination, slot.buffer);
+            wgpuCommandEncoderCopyTextureToBuffer(encoder, source, destination, copySize);
+            var command = wgpuCommandEncoderFinish(encoder, MemorySegment.NULL);
+            commands.setAtIndex(WGPUCommandBuffer, 0, command);
+            if(events != null){
+                events.submit(queue, 1, commands);
+            }else{
+                wgpuQueueSubmit(queue, 1, commands);
+            }
+            wgpuCommandBufferRelease(command);
+        }finally{
+            wgpuCommandEncoderRelease(encoder);
+            wgpuTextureViewRelease(view);
+            targets.release(target);
+            targets.submitted();
+        }
+
+        slot.frame = frame;
+        slot.delivered = new CompletableFuture<>();
+        // Replace the previous frame's completed map before the slot becomes visible to drain(),
+        // and signal only once it is queued
+        slot.mapped = events != null
+                ? events.mapAsync(slot.buffer, WGPUMapMode_Read(), 0, bufferSize)
+                : CallbackDispatcher.mapAsync(slot.buffer, WGPUMapMode_Read(), 0, bufferSize);
+        pending.add(slot);
+        slot.mapped.whenComplete((status, e) -> signal());
+        return frame;
+    }
+
+    /**
+     * Waits until every frame rendered so far has been delivered or dropped.
+     */
+    public void flush() throws InterruptedException {
+        for(int i = 0; i < slots.length; i++){
+            var slot = slots[(int) ((frames + i) % slots.length)];
+            if(slot.delivered != null){
+                await(slot);
+            }
+        }
+    }
+
+    public int format(){
+        return format;
+    }
+
+    public int width(){
+        return width;
+    }
+
+    public int height(){
+        return height;
+    }
+
+    public int framesInFlight(){
+        return slots.length;
+    }
+
+    public Statistics statistics(){
+        return new Statistics(frames, delivered.sum(), dropped.sum(), bytesReadBack.sum(), slotWait.snapshot());
+    }
+
+    /**
+     * Waits for the frames in flight to be read back, delivers those the subscriber has
+     * requested and drops the rest, completes the subscriber and releases the buffers.
+     */
+    @Override
+    public void close(){
+        if(closed){
+            return;
+        }
+        closed = true;
+
+        var interrupted = false;
+        for(var slot : slots){
+            while(slot.mapped != null && !slot.mapped.isDone()){
+                if(events != null){
+                    try{
+                        events.await(slot.mapped);
+                    }catch(InterruptedException e){
+                        interrupted = true;
+                    }
+                }else{
+                    wgpu_h.wgpuDevicePoll(device, 1, MemorySegment.NULL);
+                }
+            }
+        }
+        synchronized(this){
+            closing = true;
+        }
+        signal();
+        for(var slot : slots){
+            while(slot.delivered != null && !slot.delivered.isDone()){
+                try{
+                    slot.delivered.get();
+                }catch(InterruptedException e){
+                    interrupted = true;
+                }catch(ExecutionException e){
+                    break;
+                }
+            }
+            wgpuBufferDestroy(slot.buffer);
+            wgpuBufferRelease(slot.buffer);
+        }
+        if(interrupted){
+            Thread.currentThread().interrupt();
+        }
+        if(ownsTargets){
+            targets.close();
+        }
+        wgpuQueueRelease(queue);
+        arena.close();
+    }
+
+    private void await(Slot slot) throws InterruptedException {
+        if(events != null){
+            events.await(slot.delivered);
+        }else{
+            while(!slot.mapped.isDone()){
+                wgpu_h.wgpuDevicePoll(device, 1, MemorySegment.NULL);
+            }
+            try{
+                // Mapped, so only the subscriber can hold up delivery now
+                slot.delivered.get();
+            }catch(ExecutionException e){
+                throw new IllegalStateException("Failed to deliver frame " + slot.frame, e.getCause());
+            }
+        }
+        slot.delivered = null;
+    }
+
+    private void signal(){
+        if(drains.getAndIncrement() == 0){
+            executor.execute(this::drain);
+        }
+    }
+
+    /**
+     * Publishes mapped frames in order, for as long as the subscriber has demand. Only one
+     * thread drains at a time; signals that arrive meanwhile make it loop again.
+     */
+    private void drain(){
+        var missed = 1;
+        do{
+            Slot slot;
+            while((slot = pending.peek()) != null){
+                var mapped = slot.mapped;
+                var current = subscription;
+                if(mapped == null || !mapped.isDone()
+                        || (current != null && current.demand.get() == 0 && !closing)){
+                    break;
+                }
+                pending.poll();
+                deliver(slot, current);
+            }
+            if(closing && pending.isEmpty() && !completed){
+                completed = true;
+                var current = subscription;
+                if(current != null){
+                    subscription = null;
+                    current.subscriber.onComplete();
+                }
+            }
+            missed = drains.addAndGet(-missed);
+        }while(missed != 0);
+    }
+
+    private void deliver(Slot slot, Subscription current){
+        var status = slot.mapped.isCompletedExceptionally() ? -1 : slot.mapped.join();
+        if(status != WGPUBufferMapAsyncStatus_Success()){
+            dropped.increment();
+            slot.delivered.complete(null);
+            if(current != null){
+                current.cancel();
+                current.subscriber.onError(new IllegalStateException("Failed to map readback buffer of frame "
+                        + slot.frame + ", status " + status));
+            }
+            return;
+        }
+
+        var mapped = true;
+        try{
+            if(current == null || current.cancelled || current.demand.get() == 0){
+                dropped.increment();
+                return;
+            }
+            var range = wgpuBufferGetConstMappedRange(slot.buffer, 0, bufferSize).reinterpret(bufferSize);
+            MemorySegment pixels;
+            if(paddedBytesPerRow == bytesPerRow){
+                pixels = range.asReadOnly();
+            }else{
+                if(slot.packed == null){
+                    slot.packed = arena.allocate(bytesPerRow * height);
+                }
+                TextureLoader.repack(null, range, paddedBytesPerRow, slot.packed, bytesPerRow, bytesPerRow, height);
+                wgpuBufferUnmap(slot.buffer);
+                mapped = false;
+                pixels = slot.packed.asReadOnly();
+            }
+            current.demand.decrementAndGet();
+            delivered.increment();
+            bytesReadBack.add(pixels.byteSize());
+            try{
+                current.subscriber.onNext(new Image(slot.frame, format, width, height, bytesPerRow, pixels));
+            }catch(Throwable e){
+                current.cancel();
+            }
+        }finally{
+            if(mapped){
+                wgpuBufferUnmap(slot.buffer);
+            }
+            slot.delivered.complete(null);
+        }
+    }
+
+    private void ensureOpen(){
+        if(closed){
+            throw new IllegalStateException("Offscreen renderer is closed");
+        }
+    }
+
+    /**
+     * @return the size of one texel of a color format that can be rendered to and copied, or 0
+     */
+    private static int bytesPerTexel(int format){
+        if(format == WGPUTextureFormat_R8Unorm()){
+            return 1;
+        }else if(format == WGPUTextureFormat_RG8Unorm() || format == WGPUTextureFormat_R16Float()){
+            return 2;
+        }else if(format == WGPUTextureFormat_RGBA8Unorm() || format == WGPUTextureFormat_RGBA8UnormSrgb()
+                || format == WGPUTextureFormat_BGRA8Unorm() || format == WGPUTextureFormat_BGRA8UnormSrgb()
+                || format == WGPUTextureFormat_RGB10A2Unorm() || format == WGPUTextureFormat_RG16Float()
+                || format == WGPUTextureFormat_R32Float()){
+            return 4;
+        }else if(format == WGPUTextureFormat_RGBA16Float() || format == WGPUTextureFormat_RG32Float()){
+            return 8;
+        }else if(format == WGPUTextureFormat_RGBA32Float()){
+            return 16;
+        }
+        return 0;
+    }
+}
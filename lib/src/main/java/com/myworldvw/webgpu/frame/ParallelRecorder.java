@@ -0,0 +1,284 @@
+package com.myworldvw.webgpu.frame;
+
+import com.myworldvw.webgpu.WGPUCommandEncoderDescriptor;
+import com.myworldvw.webgpu.memory.FrameArena;
+import com.myworldvw.webgpu.webgpu_h;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+import static com.myworldvw.webgpu.webgpu_h.*;
+
+/**
+ * Records a frame's command buffers or render bundles on several threads at once.
+ * <p>
+ * {@link #record(List)} runs each {@link Pass} as its own task on the executor, with its own
+ * command encoder and its own {@link FrameArena} for descriptor memory, so workers share no
+ * state. The finished command buffers are stored in a contiguous off-heap array in the order
+ * of the passes - not the order the workers finished in - and {@link #submit()} hands them to
+ * one {@code wgpuQueueSubmit}, so what the GPU executes is deterministic regardless of
+ * scheduling. {@link #executeBundles(MemorySegment, MemorySegment, List)} does the same for
+ * the draws of a single render pass, recording one render bundle per {@link Bundle} and
+ * executing them in order.
+ * <p>
+ * The calling thread records the first pass itself while the executor records the others.
+ * Recording methods must be called from one thread at a time; the passes themselves run
+ * concurrently and must only touch the encoder and arena they are given, or other thread
+ * safe state. Descriptor memory only has to outlive the call that consumes it, so the arenas
+ * are reset every time they are used.
+ */
+public final class ParallelRecorder implements AutoCloseable {
+
+    public static final long DEFAULT_ARENA_BLOCK_SIZE = 16 * 1024;
+
+    /**
+     * Records commands into a command encoder.
+     */
+    @FunctionalInterface
+    public interface Pass {
+        void record(MemorySegment encoder, FrameArena arena);
+    }
+
+    /**
+     * Records draws into a render bundle encoder.
+     */
+    @FunctionalInterface
+    public interface Bundle {
+        void record(MemorySegment bundleEncoder, FrameArena arena);
+    }
+
+    /**
+     * @param recordings calls to {@link #record(List)} and {@link #executeBundles}
+     * @param tasks the passes and bundles recorded
+     * @param submissions the number of {@code wgpuQueueSubmit} calls made
+     * @param recordNanos the total wall-clock time spent recording, from the first task starting to the last finishing
+     */
+    public record Statistics(long recordings, long tasks, long submissions, long recordNanos){}
+
+    private final MemorySegment device;
+    private final MemorySegment queue;
+    private final Executor executor;
+
+    private final Arena arena = Arena.ofShared();
+    private final MemorySegment label;
+    private final List<FrameArena> arenas = new ArrayList<>();
+    private MemorySegment handles;
+    private int commandCount;
+
+    private long recordings;
+    private long tasks;
+    private long submissions;
+    private long recordNanos;
+    private boolean closed;
+
+    public ParallelRecorder(MemorySegment device, MemorySegment queue){
+        this(device, queue, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param executor runs the recording tasks, e.g. a {@link ForkJoinPool} sized to the cores
+     *                 available for recording, or a virtual thread per task executor
+     */
+    public ParallelRecorder(MemorySegment device, MemorySegment queue, Executor executor){
+        this.device = device;
+        this.queue = queue;
+        this.executor = executor;
+        label = arena.allocateUtf8String("ParallelRecorder");
+        handles = arena.allocateArray(WGPUCommandBuffer, 16);
+    }
+
+    /**
+     * Records the passes in parallel, appending one command buffer per pass, in the passes'
+     * order, to those waiting for {@link #submit()}.
+     * @throws CompletionException if a pass failed; the command buffers of the whole call are
+     * discarded
+     */
+    public void record(List<? extends Pass> passes){
+        ensureOpen();
+        var count = passes.size();
+        var results = new MemorySegment[count];
+        run(count, i -> {
+            var frameArena = arenas.get(i);
+            var descriptor = WGPUCommandEncoderDescriptor.allocate(frameArena);
+            WGPUCommandEncoderDescriptor.label$set(descriptor, label);
+            var encoder = wgpuDeviceCreateCommandEncoder(device, descriptor);
+            try{
+                passes.get(i).record(encoder, frameArena);
+                results[i] = wgpuCommandEncoderFinish(encoder, MemorySegment.NULL);
+            }finally{
+                wgpuCommandEncoderRelease(encoder);
+            }
+        }, results, webgpu_h::wgpuCommandBufferRelease);
+
+        ensureCapacity(commandCount + count);
+        for(var buffer : results){
+            handles.setAtIndex(WGPUCommandBuffer, commandCount++, buffer);
+        }
+    }
+
+    /**
+     * Appends a command buffer recorded elsewhere, e.g. on the frame's own encoder, to those
+     * waiting for {@link #submit()}. The recorder takes over the caller's reference.
+     */
+    public void add(MemorySegment commandBuffer){
+        ensureOpen();
+        ensureCapacity(commandCount + 1);
+        handles.setAtIndex(WGPUCommandBuffer, commandCount++, commandBuffer);
+    }
+
+    /**
+     * @return the number of command buffers waiting for {@link #submit()}
+     */
+    public int pendingCommands(){
+        return commandCount;
+    }
+
+    /**
+     * Submits every pending command buffer, in the order they were recorded or added, with a
+     * single {@code wgpuQueueSubmit}, then releases them.
+     */
+    public void submit(){
+        ensureOpen();
+        if(commandCount == 0){
+            return;
+        }
+        wgpuQueueSubmit(queue, commandCount, handles);
+        submissions++;
+        releaseCommands();
+    }
+
+    /**
+     * Records the bundles in parallel and executes them in order in the render pass.
+     * @param descriptor the {@code WGPURenderBundleEncoderDescriptor} every bundle is recorded
+     *                   with, matching the render pass's attachments
+     * @throws CompletionException if a bundle failed; nothing is executed
+     */
+    public void executeBundles(MemorySegment renderPass, MemorySegment descriptor, List<? extends Bundle> bundles){
+        ensureOpen();
+        var count = bundles.size();
+        if(count == 0){
+            return;
+        }
+        var results = new MemorySegment[count];
+        run(count, i -> {
+            var frameArena = arenas.get(i);
+            var encoder = wgpuDeviceCreateRenderBundleEncoder(device, descriptor);
+            try{
+                bundles.get(i).record(encoder, frameArena);
+                results[i] = wgpuRenderBundleEncoderFinish(encoder, MemorySegment.NULL);
+            }finally{
+                wgpuRenderBundleEncoderRelease(encoder);
+            }
+        }, results, webgpu_h::wgpuRenderBundleRelease);
+
+        var array = arenas.get(0).allocateArray(WGPURenderBundle, count);
+        for(int i = 0; i < count; i++){
+            array.setAtIndex(WGPURenderBundle, i, results[i]);
+        }
+        wgpuRenderPassEncoderExecuteBundles(renderPass, count, array);
+        for(var bundle : results){
+            wgpuRenderBundleRelease(bundle);
+        }
+    }
+
+    public Statistics statistics(){
+        return new Statistics(recordings, tasks, submissions, recordNanos);
+    }
+
+    /**
+     * Releases pending command buffers without submitting them, and the recorder's memory.
+     * Don't close the recorder while a recording is in progress.
+     */
+    @Override
+    public void close(){
+        if(closed){
+            return;
+        }
+        closed = true;
+        releaseCommands();
+        for(var frameArena : arenas){
+            frameArena.close();
+        }
+        arenas.clear();
+        arena.close();
+    }
+
+    private interface Task {
+        void run(int index);
+    }
+
+    private void run(int count, Task task, MemorySegment[] results, Consumer<MemorySegment> release){
+        if(count == 0){
+            return;
+        }
+        while(arenas.size() < count){
+            arenas.add(new FrameArena(DEFAULT_ARENA_BLOCK_SIZE));
+        }
+        for(int i = 0; i < count; i++){
+            arenas.get(i).reset();
+        }
+
+        var start = System.nanoTime();
+        var futures = new CompletableFuture<?>[count - 1];
+        for(int i = 1; i < count; i++){
+            var index = i;
+            futures[i - 1] = CompletableFuture.runAsync(() -> task.run(index), executor);
+        }
+
+        Throwable failure = null;
+        try{
+            task.run(0);
+        }catch(Throwable t){
+            failure = t;
+        }
+        for(var future : futures){
+            try{
+                future.join();
+            }catch(CompletionException e){
+                failure = failure == null ? e.getCause() : failure;
+            }
+        }
+        recordNanos += System.nanoTime() - start;
+        recordings++;
+        tasks += count;
+
+        if(failure != null){
+            for(var result : results){
+                if(result != null){
+                    release.accept(result);
+                }
+            }
+            throw failure instanceof CompletionException e ? e : new CompletionException(failure);
+        }
+    }
+
+    private void ensureCapacity(int capacity){
+        var current = handles.byteSize() / WGPUCommandBuffer.byteSize();
+        if(capacity <= current){
+            return;
+        }
+        var grown = arena.allocateArray(WGPUCommandBuffer, Math.max(capacity, current * 2));
+        grown.copyFrom(handles.asSlice(0, commandCount * WGPUCommandBuffer.byteSize()));
+        handles = grown;
+    }
+
+    private void releaseCommands(){
+        for(int i = 0; i < commandCount; i++){
+            wgpuCommandBufferRelease(handles.getAtIndex(WGPUCommandBuffer, i));
+        }
+        commandCount = 0;
+    }
+
+    private void ensureOpen(){
+        if(closed){
+            throw new IllegalStateException("Parallel recorder is closed");
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.myworldvw.webgpu.instrument;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.myworldvw.webgpu.BufferMap")
+@Label("Buffer Map")
+@Category("WebGPU")
+@Description("A wgpuBufferMapAsync request, from the call until its callback ran")
+@StackTrace(false)
+final class BufferMapEvent extends jdk.jfr.Event {
+
+    @Label("Mode")
+    int mode;
+
+    @Label("Size")
+    @DataAmount
+    long size;
+
+    @Label("Status")
+    int status;
+}
@@ -0,0 +1,26 @@
+package com.myworldvw.webgpu.instrument;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+@Name("com.myworldvw.webgpu.GpuPass")
+@Label("GPU Pass")
+@Category("WebGPU")
+@Description("The GPU time of a render or compute pass, measured with timestamp queries by a GpuProfiler")
+@StackTrace(false)
+final class GpuPassEvent extends jdk.jfr.Event {
+
+    @Label("Frame")
+    long frame;
+
+    @Label("Pass")
+    String pass;
+
+    @Label("GPU Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    long gpuDuration;
+}
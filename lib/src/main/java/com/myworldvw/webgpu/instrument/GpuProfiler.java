@@ -0,0 +1,364 @@
+package com.myworldvw.webgpu.instrument;
+
+import com.myworldvw.webgpu.WGPUBufferDescriptor;
+import com.myworldvw.webgpu.WGPUComputePassTimestampWrites;
+import com.myworldvw.webgpu.WGPUQuerySetDescriptor;
+import com.myworldvw.webgpu.WGPURenderPassTimestampWrites;
+import com.myworldvw.webgpu.async.CallbackDispatcher;
+import com.myworldvw.webgpu.async.DeviceEventLoop;
+import com.myworldvw.webgpu.frame.Histogram;
+import com.myworldvw.webgpu.wgpu.wgpu_h;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SegmentAllocator;
+import java.lang.foreign.ValueLayout;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import static com.myworldvw.webgpu.webgpu_h.*;
+
+/**
+ * Measures the GPU time of render and compute passes with timestamp queries.
+ * <p>
+ * Each frame, {@link #renderPassTimestampWrites} and {@link #computePassTimestampWrites} hand
+ * out the {@code timestampWrites} for a pass's descriptor, writing the pass's beginning and end
+ * into a query set. {@link #resolve(MemorySegment)} records the resolve of the frame's queries
+ * into a readback buffer at the end of the frame's last encoder, and {@link #submitted()} maps
+ * that buffer once the encoder's commands have been submitted. When the map completes the
+ * timings are recorded into a histogram per pass, emitted as {@code com.myworldvw.webgpu.GpuPass}
+ * JFR events and handed to the listener.
+ * <p>
+ * Nothing ever waits for the GPU: up to {@code framesInFlight} frames are resolved at once, and
+ * a frame that comes around to a readback buffer that is still mapping is not profiled - its
+ * passes get no timestamp writes. Maps complete while the device is polled, by the
+ * {@link DeviceEventLoop} if one is given, otherwise by a non-blocking poll in
+ * {@link #beginFrame()}.
+ * <p>
+ * Timestamp queries need the device to have been created with
+ * {@code WGPUFeatureName_TimestampQuery}; without it {@link #isSupported()} is false and the
+ * timestamp writes are always NULL. WebGPU specifies timestamps in nanoseconds, but wgpu-native
+ * may report raw ticks on some backends and has no function for the period, so it can be given
+ * as {@code nanosPerTick}.
+ * <p>
+ * A GpuProfiler belongs to one rendering thread; the listener is called from the thread that
+ * completes the maps.
+ */
+public final class GpuProfiler implements AutoCloseable {
+
+    public static final int DEFAULT_MAX_PASSES = 16;
+    public static final int DEFAULT_FRAMES_IN_FLIGHT = 3;
+
+    private static final long QUERY_BYTES = 8;
+    private static final long RESOLVE_OFFSET_ALIGNMENT = 256;
+
+    public record PassTiming(long frame, String pass, long nanos){}
+
+    public record Statistics(long framesProfiled, long framesSkipped, Map<String, Histogram.Snapshot> passes){}
+
+    private static final class Slot {
+        final MemorySegment readback;
+        final String[] passes;
+        long frame;
+        int passCount;
+        CompletableFuture<Void> done;
+
+        Slot(MemorySegment readback, int maxPasses){
+            this.readback = readback;
+            this.passes = new String[maxPasses];
+        }
+    }
+
+    private final MemorySegment device;
+    private final DeviceEventLoop events;
+    private final int maxPasses;
+    private final double nanosPerTick;
+    private final Consumer<List<PassTiming>> listener;
+    private final boolean supported;
+    private final Arena arena = Arena.ofShared();
+    private final MemorySegment querySet;
+    private final MemorySegment resolveBuffer;
+    private final long slotStride;
+    private final Slot[] slots;
+    private final ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private final LongAdder profiled = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+
+    private long frames;
+    private Slot current;
+    private boolean resolved;
+    private boolean closed;
+
+    public GpuProfiler(MemorySegment device){
+        this(device, DEFAULT_MAX_PASSES, DEFAULT_FRAMES_IN_FLIGHT, 1.0, null, null);
+    }
+
+    /**
+     * @param maxPasses the most passes profiled per frame; further passes get no timestamp writes
+     * @param framesInFlight the number of frames whose timings can be read back at once
+     * @param nanosPerTick the timestamp period, 1 if the backend reports nanoseconds
+     * @param events the loop that completes the buffer maps, or null to poll the device in {@link #beginFrame()}
+     * @param listener receives the timings of each profiled frame, or null
+     */
+    public GpuProfiler(MemorySegment device, int maxPasses, int framesInFlight, double nanosPerTick,
+                       DeviceEventLoop events, Consumer<List<PassTiming>> listener){
+        if(maxPasses < 1){
+            throw new IllegalArgumentException("Max passes must be at least 1: " + maxPasses);
+        }
+        if(framesInFlight < 1){
+            throw new IllegalArgumentException("Frames in flight must be at least 1: " + framesInFlight);
+        }
+        if(!(nanosPerTick > 0)){
+            throw new IllegalArgumentException("Invalid timestamp period: " + nanosPerTick);
+        }
+        this.device = device;
+        this.events = events;
+        this.maxPasses = maxPasses;
+        this.nanosPerTick = nanosPerTick;
+        this.listener = listener;
+        supported = wgpuDeviceHasFeature(device, WGPUFeatureName_TimestampQuery()) != 0;
+        slots = new Slot[supported ? framesInFlight : 0];
+
+        // Resolve offsets must be 256-byte aligned, so each slot resolves into its own aligned range
+        slotStride = (2 * maxPasses * QUERY_BYTES + RESOLVE_OFFSET_ALIGNMENT - 1) & -RESOLVE_OFFSET_ALIGNMENT;
+        if(!supported){
+            querySet = MemorySegment.NULL;
+            resolveBuffer = MemorySegment.NULL;
+            return;
+        }
+        var queryDescriptor = WGPUQuerySetDescriptor.allocate(arena);
+        WGPUQuerySetDescriptor.label$set(queryDescriptor, arena.allocateUtf8String("GpuProfiler"));
+        WGPUQuerySetDescriptor.type$set(queryDescriptor, WGPUQueryType_Timestamp());
+        WGPUQuerySetDescriptor.count$set(queryDescriptor, 2 * maxPasses * framesInFlight);
+        querySet = wgpuDeviceCreateQuerySet(device, queryDescriptor);
+
+        var bufferDescriptor = WGPUBufferDescriptor.allocate(arena);
+        WGPUBufferDescriptor.label$set(bufferDescriptor, arena.allocateUtf8String("GpuProfiler resolve"));
+        WGPUBufferDescriptor.usage$set(bufferDescriptor, WGPUBufferUsage_QueryResolve() | WGPUBufferUsage_CopySrc());
+        WGPUBufferDescriptor.size$set(bufferDescriptor, slotStride * framesInFlight);
+        resolveBuffer = wgpuDeviceCreateBuffer(device, bufferDescriptor);
+
+        WGPUBufferDescriptor.label$set(bufferDescriptor, arena.allocateUtf8String("GpuProfiler readback"));
+        WGPUBufferDescriptor.usage$set(bufferDescriptor, WGPUBufferUsage_MapRead() | WGPUBufferUsage_CopyDst());
+        WGPUBufferDescriptor.size$set(bufferDescriptor, 2 * maxPasses * QUERY_BYTES);
+        for(int i = 0; i < framesInFlight; i++){
+            slots[i] = new Slot(wgpuDeviceCreateBuffer(device, bufferDescriptor), maxPasses);
+        }
+    }
+
+    /**
+     * @return true if the device supports timestamp queries
+     */
+    public boolean isSupported(){
+        return supported;
+    }
+
+    /**
+     * Starts a frame. If the frame's readback buffer is still in use by an earlier frame, the
+     * frame is counted as skipped and none of its passes are profiled.
+     */
+    public void beginFrame(){
+        ensureOpen();
+        if(current != null){
+            throw new IllegalStateException("The previous frame has not been submitted");
+        }
+        if(!supported){
+            return;
+        }
+        var frame = frames++;
+        var slot = slots[(int) (frame % slots.length)];
+        if(slot.done != null && !slot.done.isDone() && events == null){
+            wgpu_h.wgpuDevicePoll(device, 0, MemorySegment.NULL);
+        }
+        if(slot.done != null && !slot.done.isDone()){
+            skipped.increment();
+            return;
+        }
+        slot.done = null;
+        slot.frame = frame;
+        slot.passCount = 0;
+        current = slot;
+        resolved = false;
+    }
+
+    /**
+     * @return the {@code WGPURenderPassTimestampWrites} for the named pass, or NULL if the pass isn't profiled
+     */
+    public MemorySegment renderPassTimestampWrites(String pass, SegmentAllocator allocator){
+        var first = addPass(pass);
+        if(first < 0){
+            return MemorySegment.NULL;
+        }
+        var writes = WGPURenderPassTimestampWrites.allocate(allocator);
+        WGPURenderPassTimestampWrites.querySet$set(writes, querySet);
+        WGPURenderPassTimestampWrites.beginningOfPassWriteIndex$set(writes, first);
+        WGPURenderPassTimestampWrites.endOfPassWriteIndex$set(writes, first + 1);
+        return writes;
+    }
+
+    /**
+     * @return the {@code WGPUComputePassTimestampWrites} for the named pass, or NULL if the pass isn't profiled
+     */
+    public MemorySegment computePassTimestampWrites(String pass, SegmentAllocator allocator){
+        var first = addPass(pass);
+        if(first < 0){
+            return MemorySegment.NULL;
+        }
+        var writes = WGPUComputePassTimestampWrites.allocate(allocator);
+        WGPUComputePassTimestampWrites.querySet$set(writes, querySet);
+        WGPUComputePassTimestampWrites.beginningOfPassWriteIndex$set(writes, first);
+        WGPUComputePassTimestampWrites.endOfPassWriteIndex$set(writes, first + 1);
+        return writes;
+    }
+
+    /**
+     * Records the resolve of this frame's timestamps into {@code encoder}, which must be
+     * submitted after every profiled pass of the frame.
+     */
+    public void resolve(MemorySegment encoder){
+        ensureOpen();
+        var slot = current;
+        if(slot == null || slot.passCount == 0 || resolved){
+            return;
+        }
+        var offset = slotIndex(slot) * slotStride;
+        var queries = 2 * slot.passCount;
+        wgpuCommandEncoderResolveQuerySet(encoder, querySet, 2 * maxPasses * slotIndex(slot), queries, resolveBuffer, offset);
+        wgpuCommandEncoderCopyBufferToBuffer(encoder, resolveBuffer, offset, slot.readback, 0, queries * QUERY_BYTES);
+        resolved = true;
+    }
+
+    /**
+     * Ends the frame after the encoder given to {@link #resolve(MemorySegment)} has been
+     * submitted, and starts reading its timestamps back.
+     */
+    public void submitted(){
+        ensureOpen();
+        var slot = current;
+        current = null;
+        if(slot == null || !resolved){
+            return;
+        }
+        var size = 2 * slot.passCount * QUERY_BYTES;
+        var mapped = events != null
+                ? events.mapAsync(slot.readback, WGPUMapMode_Read(), 0, size)
+                : CallbackDispatcher.mapAsync(slot.readback, WGPUMapMode_Read(), 0, size);
+        slot.done = mapped.thenAccept(status -> read(slot, status, size));
+    }
+
+    /**
+     * @return a snapshot of the GPU time of each pass, by pass name
+     */
+    public Map<String, Histogram.Snapshot> passTimes(){
+        var times = new TreeMap<String, Histogram.Snapshot>();
+        histograms.forEach((pass, histogram) -> times.put(pass, histogram.snapshot()));
+        return times;
+    }
+
+    public Statistics statistics(){
+        return new Statistics(profiled.sum(), skipped.sum(), passTimes());
+    }
+
+    /**
+     * Waits for the frames being read back and releases the query set and buffers.
+     */
+    @Override
+    public void close(){
+        if(closed){
+            return;
+        }
+        closed = true;
+        current = null;
+
+        var interrupted = false;
+        for(var slot : slots){
+            while(slot.done != null && !slot.done.isDone()){
+                if(events != null){
+                    try{
+                        events.await(slot.done);
+                    }catch(InterruptedException e){
+                        interrupted = true;
+                    }
+                }else{
+                    wgpu_h.wgpuDevicePoll(device, 1, MemorySegment.NULL);
+                }
+            }
+            wgpuBufferDestroy(slot.readback);
+            wgpuBufferRelease(slot.readback);
+        }
+        if(interrupted){
+            Thread.currentThread().interrupt();
+        }
+        if(supported){
+            wgpuBufferDestroy(resolveBuffer);
+            wgpuBufferRelease(resolveBuffer);
+            wgpuQuerySetDestroy(querySet);
+            wgpuQuerySetRelease(querySet);
+        }
+        arena.close();
+    }
+
+    /**
+     * @return the index of the pass's first query, or -1 if it isn't profiled
+     */
+    private int addPass(String pass){
+        ensureOpen();
+        var slot = current;
+        if(slot == null || slot.passCount == maxPasses || resolved){
+            return -1;
+        }
+        slot.passes[slot.passCount] = pass;
+        return 2 * (maxPasses * slotIndex(slot) + slot.passCount++);
+    }
+
+    private int slotIndex(Slot slot){
+        return (int) (slot.frame % slots.length);
+    }
+
+    private void read(Slot slot, int status, long size){
+        if(status != WGPUBufferMapAsyncStatus_Success()){
+            return;
+        }
+        var timings = new ArrayList<PassTiming>(slot.passCount);
+        try{
+            var timestamps = wgpuBufferGetConstMappedRange(slot.readback, 0, size).reinterpret(size);
+            for(int i = 0; i < slot.passCount; i++){
+                var begin = timestamps.getAtIndex(ValueLayout.JAVA_LONG, 2L * i);
+                var end = timestamps.getAtIndex(ValueLayout.JAVA_LONG, 2L * i + 1);
+                if(Long.compareUnsigned(end, begin) < 0){
+                    // A pass that wasn't run, or a backend whose timestamps aren't monotonic
+                    continue;
+                }
+                timings.add(new PassTiming(slot.frame, slot.passes[i], Math.round((end - begin) * nanosPerTick)));
+            }
+        }finally{
+            wgpuBufferUnmap(slot.readback);
+        }
+        profiled.increment();
+        for(var timing : timings){
+            histograms.computeIfAbsent(timing.pass(), p -> new Histogram()).record(timing.nanos());
+            var event = new GpuPassEvent();
+            if(event.shouldCommit()){
+                event.frame = timing.frame();
+                event.pass = timing.pass();
+                event.gpuDuration = timing.nanos();
+                event.commit();
+            }
+        }
+        if(listener != null){
+            listener.accept(timings);
+        }
+    }
+
+    private void ensureOpen(){
+        if(closed){
+            throw new IllegalStateException("GPU profiler is closed");
+        }
+    }
+}
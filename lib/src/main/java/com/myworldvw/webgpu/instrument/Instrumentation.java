@@ -0,0 +1,190 @@
+package com.myworldvw.webgpu.instrument;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.invoke.MethodHandle;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Opt-in instrumentation of the WebGPU bindings.
+ * <p>
+ * When enabled, the downcall handles of selected functions are wrapped as they are created:
+ * <ul>
+ *     <li>every {@code wgpu*Create*}, {@code Begin*Pass}, {@code *Finish}, {@code GetQueue},
+ *     {@code GetBindGroupLayout} and {@code SurfaceGetCurrentTexture} counts an object of its
+ *     handle type as acquired, every {@code wgpu*Reference} counts another reference, and every
+ *     {@code wgpu*Release} counts one as released. The difference is the number of live objects,
+ *     so a handle type whose count keeps growing is being leaked.</li>
+ *     <li>{@code wgpuQueueSubmit}, {@code wgpuBufferMapAsync}, pipeline creation (synchronous and
+ *     asynchronous) and surface acquire/present emit JFR events in the {@code WebGPU} category.
+ *     Map and async creation events cover the time until their callback ran.</li>
+ * </ul>
+ * The counters are available from {@link #statistics()} and over JMX as {@value #OBJECT_NAME}.
+ * <p>
+ * When disabled - the default - the bindings use the native handles unchanged, so there is no
+ * cost beyond one check while each handle is created. Instrumentation is enabled with the
+ * {@value #PROPERTY} system property or by calling {@link #enable()} before the bindings are
+ * first used; handles created earlier are not instrumented.
+ */
+public final class Instrumentation {
+
+    public static final String PROPERTY = "com.myworldvw.webgpu.instrumentation";
+    public static final String OBJECT_NAME = "com.myworldvw.webgpu:type=Instrumentation";
+
+    /**
+     * The number of objects of one handle type that have been acquired and released.
+     */
+    public record ObjectCount(String type, long acquired, long released){
+        public long live(){
+            return acquired - released;
+        }
+    }
+
+    public record Statistics(long queueSubmits, long commandBuffersSubmitted, long bufferMaps,
+                             long surfacePresents, List<ObjectCount> objects){
+        public long liveObjects(){
+            return objects.stream().mapToLong(ObjectCount::live).sum();
+        }
+    }
+
+    static final class Counter {
+        final LongAdder acquired = new LongAdder();
+        final LongAdder released = new LongAdder();
+    }
+
+    private static final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+    static final LongAdder queueSubmits = new LongAdder();
+    static final LongAdder commandBuffersSubmitted = new LongAdder();
+    static final LongAdder bufferMaps = new LongAdder();
+    static final LongAdder surfacePresents = new LongAdder();
+
+    private static volatile boolean enabled = Boolean.getBoolean(PROPERTY);
+    private static volatile boolean handlesCreated;
+    private static boolean registered;
+
+    private Instrumentation(){}
+
+    /**
+     * Enables instrumentation of the handles created from now on.
+     * @throws IllegalStateException if binding handles have already been created without instrumentation
+     */
+    public static synchronized void enable(){
+        if(enabled){
+            return;
+        }
+        if(handlesCreated){
+            throw new IllegalStateException("Instrumentation must be enabled before the WebGPU bindings are used");
+        }
+        enabled = true;
+    }
+
+    public static boolean isEnabled(){
+        return enabled;
+    }
+
+    /**
+     * Wraps the downcall handle of the named WebGPU function if instrumentation is enabled and
+     * the function is instrumented. Called by the bindings as each handle is created.
+     * @return {@code handle} itself if there is nothing to instrument
+     */
+    public static MethodHandle instrument(String name, MethodHandle handle){
+        if(!enabled){
+            handlesCreated = true;
+            return handle;
+        }
+        register();
+        return Probes.wrap(name, handle);
+    }
+
+    /**
+     * @return the number of live objects of {@code type}, e.g. {@code "Buffer"} or {@code "TextureView"}
+     */
+    public static long liveObjects(String type){
+        var counter = counters.get(type);
+        return counter == null ? 0 : counter.acquired.sum() - counter.released.sum();
+    }
+
+    /**
+     * @return the counts of every handle type that has had an object acquired or released, by type
+     */
+    public static List<ObjectCount> objectCounts(){
+        var counts = new ArrayList<ObjectCount>(counters.size());
+        counters.forEach((type, counter) -> {
+            var acquired = counter.acquired.sum();
+            var released = counter.released.sum();
+            if(acquired != 0 || released != 0){
+                counts.add(new ObjectCount(type, acquired, released));
+            }
+        });
+        counts.sort(Comparator.comparing(ObjectCount::type));
+        return counts;
+    }
+
+    public static Statistics statistics(){
+        return new Statistics(queueSubmits.sum(), commandBuffersSubmitted.sum(), bufferMaps.sum(),
+                surfacePresents.sum(), objectCounts());
+    }
+
+    static Counter counter(String type){
+        return counters.computeIfAbsent(type, t -> new Counter());
+    }
+
+    private static synchronized void register(){
+        if(registered){
+            return;
+        }
+        registered = true;
+        try{
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new Bean(), new ObjectName(OBJECT_NAME));
+        }catch(InstanceAlreadyExistsException e){
+            // Another copy of the bindings, loaded by a different class loader, got there first
+        }catch(JMException e){
+            throw new IllegalStateException("Could not register " + OBJECT_NAME, e);
+        }
+    }
+
+    private static final class Bean implements InstrumentationMXBean {
+
+        @Override
+        public Map<String, Long> getLiveObjects(){
+            var live = new TreeMap<String, Long>();
+            for(var count : objectCounts()){
+                live.put(count.type(), count.live());
+            }
+            return live;
+        }
+
+        @Override
+        public long getTotalLiveObjects(){
+            return statistics().liveObjects();
+        }
+
+        @Override
+        public long getQueueSubmits(){
+            return queueSubmits.sum();
+        }
+
+        @Override
+        public long getCommandBuffersSubmitted(){
+            return commandBuffersSubmitted.sum();
+        }
+
+        @Override
+        public long getBufferMaps(){
+            return bufferMaps.sum();
+        }
+
+        @Override
+        public long getSurfacePresents(){
+            return surfacePresents.sum();
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.myworldvw.webgpu.instrument;
+
+import java.util.Map;
+
+/**
+ * The counters of {@link Instrumentation}, registered with the platform MBean server as
+ * {@value Instrumentation#OBJECT_NAME} once instrumentation is enabled.
+ */
+public interface InstrumentationMXBean {
+
+    /**
+     * @return the number of live objects of each handle type that has had one acquired or released
+     */
+    Map<String, Long> getLiveObjects();
+
+    long getTotalLiveObjects();
+
+    long getQueueSubmits();
+
+    long getCommandBuffersSubmitted();
+
+    long getBufferMaps();
+
+    long getSurfacePresents();
+}
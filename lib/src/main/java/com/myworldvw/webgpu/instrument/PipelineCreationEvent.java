@@ -0,0 +1,24 @@
+package com.myworldvw.webgpu.instrument;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.myworldvw.webgpu.PipelineCreation")
+@Label("Pipeline Creation")
+@Category("WebGPU")
+@Description("Creation of a render or compute pipeline; for the async functions, from the call until its callback ran")
+final class PipelineCreationEvent extends jdk.jfr.Event {
+
+    @Label("Function")
+    String function;
+
+    @Label("Pipeline Label")
+    String label;
+
+    @Label("Status")
+    @Description("The WGPUCreatePipelineAsyncStatus, or 0 for synchronous creation")
+    int status;
+}
@@ -0,0 +1,404 @@
+package com.myworldvw.webgpu.instrument;
+
+import com.myworldvw.webgpu.*;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Builds the instrumented downcall handles for {@link Instrumentation}.
+ * <p>
+ * Live-object counting uses {@link MethodHandles#filterReturnValue} on the functions that
+ * return a new handle and {@link MethodHandles#foldArguments} on {@code Reference}/{@code Release}.
+ * Timed functions are wrapped in {@link MethodHandles#tryFinally}, with the JFR event created
+ * and begun by a folded-in combiner, and ended and committed by the cleanup. Functions that complete through a callback
+ * are bound to a static method here that passes WebGPU a probe callback instead, which records
+ * the event and forwards to the caller's callback with the caller's userdata.
+ * <p>
+ * Nothing here may call into the bindings while a handle is being built, since that happens
+ * during the bindings' own class initialization.
+ */
+final class Probes {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final Pattern CREATE = Pattern.compile("wgpu\\w*?Create(\\w+)");
+    private static final Pattern RELEASE = Pattern.compile("wgpu(\\w+)Release");
+    private static final Pattern REFERENCE = Pattern.compile("wgpu(\\w+)Reference");
+
+    // Functions returning a new handle whose type doesn't follow from a *Create* name
+    private static final Map<String, String> ACQUIRES = Map.of(
+            "wgpuTextureCreateView", "TextureView",
+            "wgpuCommandEncoderBeginRenderPass", "RenderPassEncoder",
+            "wgpuCommandEncoderBeginComputePass", "ComputePassEncoder",
+            "wgpuCommandEncoderFinish", "CommandBuffer",
+            "wgpuRenderBundleEncoderFinish", "RenderBundle",
+            "wgpuDeviceGetQueue", "Queue",
+            "wgpuRenderPipelineGetBindGroupLayout", "BindGroupLayout",
+            "wgpuComputePipelineGetBindGroupLayout", "BindGroupLayout");
+
+    private static final MethodHandle ACQUIRE;
+    private static final MethodHandle RELEASED;
+    private static final MethodHandle BEGIN_SUBMIT;
+    private static final MethodHandle END_SUBMIT;
+    private static final MethodHandle END_SUBMIT_FOR_INDEX;
+    private static final MethodHandle BEGIN_ACQUIRE;
+    private static final MethodHandle END_ACQUIRE;
+    private static final MethodHandle BEGIN_PRESENT;
+    private static final MethodHandle END_PRESENT;
+    private static final MethodHandle BEGIN_PIPELINE;
+    private static final MethodHandle END_RENDER_PIPELINE;
+    private static final MethodHandle END_COMPUTE_PIPELINE;
+    private static final MethodHandle MAP_ASYNC;
+    private static final MethodHandle REQUEST;
+    private static final MethodHandle ENUMERATE_ADAPTERS;
+
+    static {
+        var segment = MemorySegment.class;
+        try{
+            ACQUIRE = LOOKUP.findStatic(Probes.class, "acquire",
+                    MethodType.methodType(segment, Instrumentation.Counter.class, segment));
+            RELEASED = LOOKUP.findStatic(Probes.class, "release",
+                    MethodType.methodType(void.class, Instrumentation.Counter.class, segment));
+            BEGIN_SUBMIT = LOOKUP.findStatic(Probes.class, "beginSubmit", MethodType.methodType(QueueSubmitEvent.class));
+            END_SUBMIT = LOOKUP.findStatic(Probes.class, "endSubmit",
+                    MethodType.methodType(void.class, Throwable.class, QueueSubmitEvent.class, segment, long.class));
+            END_SUBMIT_FOR_INDEX = LOOKUP.findStatic(Probes.class, "endSubmit",
+                    MethodType.methodType(long.class, Throwable.class, long.class, QueueSubmitEvent.class, segment, long.class));
+            BEGIN_ACQUIRE = LOOKUP.findStatic(Probes.class, "beginAcquire", MethodType.methodType(SurfaceAcquireEvent.class));
+            END_ACQUIRE = LOOKUP.findStatic(Probes.class, "endAcquire",
+                    MethodType.methodType(void.class, Throwable.class, SurfaceAcquireEvent.class, segment, segment));
+            BEGIN_PRESENT = LOOKUP.findStatic(Probes.class, "beginPresent", MethodType.methodType(SurfacePresentEvent.class));
+            END_PRESENT = LOOKUP.findStatic(Probes.class, "endPresent",
+                    MethodType.methodType(void.class, Throwable.class, SurfacePresentEvent.class));
+            BEGIN_PIPELINE = LOOKUP.findStatic(Probes.class, "beginPipeline", MethodType.methodType(PipelineCreationEvent.class));
+            END_RENDER_PIPELINE = LOOKUP.findStatic(Probes.class, "endRenderPipeline",
+                    MethodType.methodType(segment, Throwable.class, segment, PipelineCreationEvent.class, segment, segment));
+            END_COMPUTE_PIPELINE = LOOKUP.findStatic(Probes.class, "endComputePipeline",
+                    MethodType.methodType(segment, Throwable.class, segment, PipelineCreationEvent.class, segment, segment));
+            MAP_ASYNC = LOOKUP.findStatic(Probes.class, "mapAsync",
+                    MethodType.methodType(void.class, MethodHandle.class, segment, int.class, long.class, long.class, segment, segment));
+            REQUEST = LOOKUP.findStatic(Probes.class, "request",
+                    MethodType.methodType(void.class, MethodHandle.class, Request.class, segment, segment, segment, segment));
+            ENUMERATE_ADAPTERS = LOOKUP.findStatic(Probes.class, "enumerateAdapters",
+                    MethodType.methodType(long.class, MethodHandle.class, segment, segment, segment));
+        }catch(ReflectiveOperationException e){
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Probes(){}
+
+    static MethodHandle wrap(String name, MethodHandle handle){
+        var wrapped = switch(name){
+            case "wgpuQueueSubmit" -> timed(handle, BEGIN_SUBMIT, END_SUBMIT);
+            case "wgpuQueueSubmitForIndex" -> timed(handle, BEGIN_SUBMIT, END_SUBMIT_FOR_INDEX);
+            case "wgpuSurfaceGetCurrentTexture" -> timed(handle, BEGIN_ACQUIRE, END_ACQUIRE);
+            case "wgpuSurfacePresent" -> timed(handle, BEGIN_PRESENT, END_PRESENT);
+            case "wgpuDeviceCreateRenderPipeline" -> timed(handle, BEGIN_PIPELINE, END_RENDER_PIPELINE);
+            case "wgpuDeviceCreateComputePipeline" -> timed(handle, BEGIN_PIPELINE, END_COMPUTE_PIPELINE);
+            case "wgpuBufferMapAsync" -> interposed(handle, MethodHandles.insertArguments(MAP_ASYNC, 0, handle));
+            case "wgpuInstanceRequestAdapter" -> interposed(handle, MethodHandles.insertArguments(REQUEST, 0, handle, Request.ADAPTER));
+            case "wgpuAdapterRequestDevice" -> interposed(handle, MethodHandles.insertArguments(REQUEST, 0, handle, Request.DEVICE));
+            case "wgpuDeviceCreateRenderPipelineAsync" -> interposed(handle, MethodHandles.insertArguments(REQUEST, 0, handle, Request.RENDER_PIPELINE));
+            case "wgpuDeviceCreateComputePipelineAsync" -> interposed(handle, MethodHandles.insertArguments(REQUEST, 0, handle, Request.COMPUTE_PIPELINE));
+            case "wgpuInstanceEnumerateAdapters" -> interposed(handle, MethodHandles.insertArguments(ENUMERATE_ADAPTERS, 0, handle));
+            default -> handle;
+        };
+        return counted(name, wrapped);
+    }
+
+    private static MethodHandle counted(String name, MethodHandle handle){
+        var type = handle.type();
+        var segment = MemorySegment.class;
+        if(type.returnType() == segment){
+            var acquired = ACQUIRES.get(name);
+            var create = CREATE.matcher(name);
+            if(acquired == null && create.matches() && !name.endsWith("Async")){
+                acquired = create.group(1);
+            }
+            if(acquired != null){
+                return MethodHandles.filterReturnValue(handle, ACQUIRE.bindTo(Instrumentation.counter(acquired)));
+            }
+        }else if(type.returnType() == void.class && type.parameterCount() == 1 && type.parameterType(0) == segment){
+            var release = RELEASE.matcher(name);
+            if(release.matches()){
+                return MethodHandles.foldArguments(handle, RELEASED.bindTo(Instrumentation.counter(release.group(1))));
+            }
+            var reference = REFERENCE.matcher(name);
+            if(reference.matches()){
+                var acquire = ACQUIRE.bindTo(Instrumentation.counter(reference.group(1)));
+                return MethodHandles.foldArguments(handle, acquire.asType(acquire.type().changeReturnType(void.class)));
+            }
+        }
+        return handle;
+    }
+
+    private static MethodHandle timed(MethodHandle target, MethodHandle begin, MethodHandle end){
+        try{
+            var body = MethodHandles.tryFinally(
+                    MethodHandles.dropArguments(target, 0, begin.type().returnType()), end);
+            return MethodHandles.foldArguments(body, begin);
+        }catch(IllegalArgumentException e){
+            // The function's signature isn't the one this probe was written for - leave it alone
+            return target;
+        }
+    }
+
+    private static MethodHandle interposed(MethodHandle target, MethodHandle probe){
+        return probe.type().equals(target.type()) ? probe : target;
+    }
+
+    private static MemorySegment acquire(Instrumentation.Counter counter, MemorySegment handle){
+        if(!MemorySegment.NULL.equals(handle)){
+            counter.acquired.increment();
+        }
+        return handle;
+    }
+
+    private static void release(Instrumentation.Counter counter, MemorySegment handle){
+        if(!MemorySegment.NULL.equals(handle)){
+            counter.released.increment();
+        }
+    }
+
+    private static final class Counters {
+        static final Instrumentation.Counter TEXTURE = Instrumentation.counter("Texture");
+        static final Instrumentation.Counter ADAPTER = Instrumentation.counter("Adapter");
+    }
+
+    // --- Synchronous calls ---
+
+    // The begin handles are folded in ahead of the call, so that each event's duration covers it
+
+    private static QueueSubmitEvent beginSubmit(){
+        var event = new QueueSubmitEvent();
+        event.begin();
+        return event;
+    }
+
+    private static SurfaceAcquireEvent beginAcquire(){
+        var event = new SurfaceAcquireEvent();
+        event.begin();
+        return event;
+    }
+
+    private static SurfacePresentEvent beginPresent(){
+        var event = new SurfacePresentEvent();
+        event.begin();
+        return event;
+    }
+
+    private static PipelineCreationEvent beginPipeline(){
+        var event = new PipelineCreationEvent();
+        event.begin();
+        return event;
+    }
+
+    private static void endSubmit(Throwable t, QueueSubmitEvent event, MemorySegment queue, long commandCount){
+        Instrumentation.queueSubmits.increment();
+        Instrumentation.commandBuffersSubmitted.add(commandCount);
+        event.end();
+        if(event.shouldCommit()){
+            event.commandBufferCount = commandCount;
+            event.commit();
+        }
+    }
+
+    private static long endSubmit(Throwable t, long index, QueueSubmitEvent event, MemorySegment queue, long commandCount){
+        endSubmit(t, event, queue, commandCount);
+        return index;
+    }
+
+    private static void endAcquire(Throwable t, SurfaceAcquireEvent event, MemorySegment surface, MemorySegment surfaceTexture){
+        event.end();
+        if(t != null){
+            return;
+        }
+        var result = surfaceTexture.reinterpret(WGPUSurfaceTexture.sizeof());
+        if(!MemorySegment.NULL.equals(WGPUSurfaceTexture.texture$get(result))){
+            Counters.TEXTURE.acquired.increment();
+        }
+        if(event.shouldCommit()){
+            event.status = WGPUSurfaceTexture.status$get(result);
+            event.suboptimal = WGPUSurfaceTexture.suboptimal$get(result) != 0;
+            event.commit();
+        }
+    }
+
+    private static void endPresent(Throwable t, SurfacePresentEvent event){
+        Instrumentation.surfacePresents.increment();
+        event.end();
+        if(event.shouldCommit()){
+            event.commit();
+        }
+    }
+
+    private static MemorySegment endRenderPipeline(Throwable t, MemorySegment pipeline, PipelineCreationEvent event,
+                                                   MemorySegment device, MemorySegment descriptor){
+        event.end();
+        if(event.shouldCommit()){
+            event.function = "wgpuDeviceCreateRenderPipeline";
+            event.label = string(WGPURenderPipelineDescriptor.label$get(descriptor.reinterpret(WGPURenderPipelineDescriptor.sizeof())));
+            event.commit();
+        }
+        return pipeline;
+    }
+
+    private static MemorySegment endComputePipeline(Throwable t, MemorySegment pipeline, PipelineCreationEvent event,
+                                                    MemorySegment device, MemorySegment descriptor){
+        event.end();
+        if(event.shouldCommit()){
+            event.function = "wgpuDeviceCreateComputePipeline";
+            event.label = string(WGPUComputePipelineDescriptor.label$get(descriptor.reinterpret(WGPUComputePipelineDescriptor.sizeof())));
+            event.commit();
+        }
+        return pipeline;
+    }
+
+    private static long enumerateAdapters(MethodHandle target, MemorySegment instance, MemorySegment options,
+                                          MemorySegment adapters) throws Throwable {
+        var count = (long) target.invokeExact(instance, options, adapters);
+        if(!MemorySegment.NULL.equals(adapters)){
+            var array = adapters.reinterpret(count * ValueLayout.ADDRESS.byteSize());
+            for(long i = 0; i < count; i++){
+                acquire(Counters.ADAPTER, array.getAtIndex(ValueLayout.ADDRESS, i));
+            }
+        }
+        return count;
+    }
+
+    // --- Callbacks ---
+
+    // The caller's callback and userdata, kept under a key that is passed to WebGPU as the probe's userdata
+    private record PendingMap(MemorySegment callback, MemorySegment userdata, BufferMapEvent event){}
+
+    private record PendingRequest(Request request, MemorySegment callback, MemorySegment userdata,
+                                  PipelineCreationEvent event){}
+
+    enum Request {
+        ADAPTER("Adapter", null),
+        DEVICE("Device", null),
+        RENDER_PIPELINE("RenderPipeline", "wgpuDeviceCreateRenderPipelineAsync"),
+        COMPUTE_PIPELINE("ComputePipeline", "wgpuDeviceCreateComputePipelineAsync");
+
+        final Instrumentation.Counter counter;
+        final String function;
+
+        Request(String type, String function){
+            this.counter = Instrumentation.counter(type);
+            this.function = function;
+        }
+    }
+
+    private static final AtomicLong keys = new AtomicLong();
+    private static final ConcurrentHashMap<Long, Object> pending = new ConcurrentHashMap<>();
+
+    private static final class MapProbe {
+        static final MemorySegment STUB = WGPUBufferMapCallback.allocate(Probes::onMapped, Arena.global());
+    }
+
+    // Adapter, device and async pipeline callbacks all have the same native signature,
+    // so one stub serves all four.
+    private static final class RequestProbe {
+        static final MemorySegment STUB = WGPURequestAdapterCallback.allocate(Probes::onRequest, Arena.global());
+    }
+
+    private static void mapAsync(MethodHandle target, MemorySegment buffer, int mode, long offset, long size,
+                                 MemorySegment callback, MemorySegment userdata) throws Throwable {
+        if(MemorySegment.NULL.equals(callback)){
+            target.invokeExact(buffer, mode, offset, size, callback, userdata);
+            return;
+        }
+        var event = new BufferMapEvent();
+        event.begin();
+        event.mode = mode;
+        event.size = size;
+        var key = keys.incrementAndGet();
+        pending.put(key, new PendingMap(callback, userdata, event));
+        try{
+            target.invokeExact(buffer, mode, offset, size, MapProbe.STUB, MemorySegment.ofAddress(key));
+        }catch(Throwable t){
+            pending.remove(key);
+            throw t;
+        }
+    }
+
+    private static void onMapped(int status, MemorySegment key){
+        if(!(pending.remove(key.address()) instanceof PendingMap map)){
+            return;
+        }
+        try{
+            Instrumentation.bufferMaps.increment();
+            map.event.end();
+            if(map.event.shouldCommit()){
+                map.event.status = status;
+                map.event.commit();
+            }
+        }finally{
+            WGPUBufferMapCallback.ofAddress(map.callback, Arena.global()).apply(status, map.userdata);
+        }
+    }
+
+    private static void request(MethodHandle target, Request request, MemorySegment source, MemorySegment descriptor,
+                                MemorySegment callback, MemorySegment userdata) throws Throwable {
+        if(MemorySegment.NULL.equals(callback)){
+            target.invokeExact(source, descriptor, callback, userdata);
+            return;
+        }
+        PipelineCreationEvent event = null;
+        if(request.function != null){
+            event = new PipelineCreationEvent();
+            if(event.isEnabled()){
+                // The descriptor is only valid for the duration of the call
+                event.function = request.function;
+                event.label = string(request == Request.RENDER_PIPELINE
+                        ? WGPURenderPipelineDescriptor.label$get(descriptor.reinterpret(WGPURenderPipelineDescriptor.sizeof()))
+                        : WGPUComputePipelineDescriptor.label$get(descriptor.reinterpret(WGPUComputePipelineDescriptor.sizeof())));
+            }
+            event.begin();
+        }
+        var key = keys.incrementAndGet();
+        pending.put(key, new PendingRequest(request, callback, userdata, event));
+        try{
+            target.invokeExact(source, descriptor, RequestProbe.STUB, MemorySegment.ofAddress(key));
+        }catch(Throwable t){
+            pending.remove(key);
+            throw t;
+        }
+    }
+
+    private static void onRequest(int status, MemorySegment handle, MemorySegment message, MemorySegment key){
+        if(!(pending.remove(key.address()) instanceof PendingRequest request)){
+            return;
+        }
+        try{
+            acquire(request.request.counter, handle);
+            var event = request.event;
+            if(event != null){
+                event.end();
+                if(event.shouldCommit()){
+                    event.status = status;
+                    event.commit();
+                }
+            }
+        }finally{
+            WGPURequestAdapterCallback.ofAddress(request.callback, Arena.global()).apply(status, handle, message, request.userdata);
+        }
+    }
+
+    private static String string(MemorySegment string){
+        if(MemorySegment.NULL.equals(string)){
+            return null;
+        }
+        return string.reinterpret(Long.MAX_VALUE).getUtf8String(0);
+    }
+}
@@ -0,0 +1,18 @@
+package com.myworldvw.webgpu.instrument;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.myworldvw.webgpu.QueueSubmit")
+@Label("Queue Submit")
+@Category("WebGPU")
+@Description("A call to wgpuQueueSubmit or wgpuQueueSubmitForIndex")
+@StackTrace(false)
+final class QueueSubmitEvent extends jdk.jfr.Event {
+
+    @Label("Command Buffers")
+    long commandBufferCount;
+}
@@ -0,0 +1,21 @@
+package com.myworldvw.webgpu.instrument;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.myworldvw.webgpu.SurfaceAcquire")
+@Label("Surface Acquire")
+@Category("WebGPU")
+@Description("A call to wgpuSurfaceGetCurrentTexture")
+@StackTrace(false)
+final class SurfaceAcquireEvent extends jdk.jfr.Event {
+
+    @Label("Status")
+    int status;
+
+    @Label("Suboptimal")
+    boolean suboptimal;
+}
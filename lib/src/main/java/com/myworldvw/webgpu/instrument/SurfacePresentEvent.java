@@ -0,0 +1,15 @@
+package com.myworldvw.webgpu.instrument;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.myworldvw.webgpu.SurfacePresent")
+@Label("Surface Present")
+@Category("WebGPU")
+@Description("A call to wgpuSurfacePresent")
+@StackTrace(false)
+final class SurfacePresentEvent extends jdk.jfr.Event {
+}
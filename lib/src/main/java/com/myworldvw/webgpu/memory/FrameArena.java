@@ -0,0 +1,212 @@
+package com.myworldvw.webgpu.memory;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SegmentAllocator;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A bump allocator for short-lived descriptor memory that is reset once per frame.
+ * <p>
+ * Each frame slot owns one or more pre-reserved off-heap blocks. Allocations slice the
+ * current block and only fall back to reserving a new block when the slot runs out of
+ * space. When a slot is reset and it had to grow during the previous frame, its blocks
+ * are coalesced into one block big enough for the whole frame, so a steady-state render
+ * loop performs no native allocations at all.
+ * <p>
+ * Use more than one slot when the memory handed to WebGPU must stay valid while the GPU
+ * is still consuming earlier frames - {@link #nextFrame()} rotates through the slots, so
+ * with N slots memory is only reused N frames after it was handed out.
+ * <p>
+ * Allocated memory is zeroed, matching the behaviour of {@link Arena#allocate(long, long)}
+ * that the generated struct {@code allocate} methods rely on. A FrameArena is not thread
+ * safe - use one instance per recording thread.
+ */
+public class FrameArena implements SegmentAllocator, AutoCloseable {
+
+    public static final long DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+    private static final long BLOCK_ALIGNMENT = 64;
+
+    private final Slot[] slots;
+    private int current;
+
+    public FrameArena(){
+        this(DEFAULT_BLOCK_SIZE, 1);
+    }
+
+    public FrameArena(long blockSize){
+        this(blockSize, 1);
+    }
+
+    public FrameArena(long blockSize, int framesInFlight){
+        if(blockSize <= 0){
+            throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+        }
+        if(framesInFlight < 1){
+            throw new IllegalArgumentException("Frames in flight must be at least 1: " + framesInFlight);
+        }
+
+        slots = new Slot[framesInFlight];
+        for(int i = 0; i < slots.length; i++){
+            slots[i] = new Slot(blockSize);
+        }
+    }
+
+    @Override
+    public MemorySegment allocate(long byteSize, long byteAlignment){
+        if(byteSize < 0){
+            throw new IllegalArgumentException("Invalid allocation size: " + byteSize);
+        }
+        if(byteAlignment <= 0 || (byteAlignment & (byteAlignment - 1)) != 0){
+            throw new IllegalArgumentException("Invalid alignment: " + byteAlignment);
+        }
+
+        var segment = slots[current].allocate(byteSize, byteAlignment);
+        segment.fill((byte) 0);
+        return segment;
+    }
+
+    /**
+     * Advances to the next frame slot and resets it, making all memory handed out from
+     * that slot available again.
+     * @return the index of the now-current frame slot
+     */
+    public int nextFrame(){
+        current = (current + 1) % slots.length;
+        slots[current].reset();
+        return current;
+    }
+
+    /**
+     * Resets the current frame slot without advancing.
+     */
+    public void reset(){
+        slots[current].reset();
+    }
+
+    public int frameSlot(){
+        return current;
+    }
+
+    public int framesInFlight(){
+        return slots.length;
+    }
+
+    /**
+     * @return the number of bytes handed out from the current frame slot since its last reset,
+     * including alignment padding
+     */
+    public long usedBytes(){
+        return slots[current].used();
+    }
+
+    /**
+     * @return the total off-heap memory currently reserved by all frame slots
+     */
+    public long reservedBytes(){
+        long total = 0;
+        for(var slot : slots){
+            total += slot.reserved();
+        }
+        return total;
+    }
+
+    /**
+     * @return the number of native block reservations made since this arena was created. In
+     * a steady-state render loop this stops increasing after the first few frames.
+     */
+    public long blockAllocations(){
+        long total = 0;
+        for(var slot : slots){
+            total += slot.blockAllocations;
+        }
+        return total;
+    }
+
+    @Override
+    public void close(){
+        for(var slot : slots){
+            slot.free();
+        }
+    }
+
+    private static final class Slot {
+
+        private final long minBlockSize;
+        private final List<Block> blocks = new ArrayList<>();
+        private int blockIndex;
+        private long offset;
+        private long retired;
+        private long blockAllocations;
+
+        Slot(long minBlockSize){
+            this.minBlockSize = minBlockSize;
+            blocks.add(newBlock(minBlockSize));
+        }
+
+        MemorySegment allocate(long byteSize, long byteAlignment){
+            while(true){
+                var block = blocks.get(blockIndex);
+                var base = block.segment.address();
+                var start = alignUp(base + offset, byteAlignment) - base;
+                if(start + byteSize <= block.segment.byteSize()){
+                    offset = start + byteSize;
+                    return block.segment.asSlice(start, byteSize);
+                }
+
+                retired += block.segment.byteSize();
+                blockIndex++;
+                offset = 0;
+                if(blockIndex == blocks.size()){
+                    blocks.add(newBlock(Math.max(minBlockSize, byteSize + byteAlignment)));
+                }
+            }
+        }
+
+        void reset(){
+            if(blocks.size() > 1){
+                // The last frame outgrew a single block - replace the chain with one block
+                // that fits everything so future frames stay on the single-block fast path.
+                var required = reserved();
+                free();
+                blocks.add(newBlock(required));
+            }
+            blockIndex = 0;
+            offset = 0;
+            retired = 0;
+        }
+
+        long used(){
+            return retired + offset;
+        }
+
+        long reserved(){
+            long total = 0;
+            for(var block : blocks){
+                total += block.segment.byteSize();
+            }
+            return total;
+        }
+
+        void free(){
+            for(var block : blocks){
+                block.arena.close();
+            }
+            blocks.clear();
+        }
+
+        private Block newBlock(long size){
+            blockAllocations++;
+            var arena = Arena.ofShared();
+            return new Block(arena, arena.allocate(size, BLOCK_ALIGNMENT));
+        }
+    }
+
+    private record Block(Arena arena, MemorySegment segment){}
+
+    private static long alignUp(long value, long alignment){
+        return (value + alignment - 1) & -alignment;
+    }
+}
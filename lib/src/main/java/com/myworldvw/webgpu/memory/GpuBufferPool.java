@@ -0,0 +1,455 @@
+package com.myworldvw.webgpu.memory;
+
+import com.myworldvw.webgpu.WGPUBufferDescriptor;
+import com.myworldvw.webgpu.async.CallbackDispatcher;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+import static com.myworldvw.webgpu.webgpu_h.*;
+
+/**
+ * Pools GPU buffers for transient vertex, index, uniform, storage and readback data, so a
+ * render loop doesn't create and destroy buffers every frame.
+ * <p>
+ * Requests are bucketed by usage flags. Small requests are suballocated from large slab
+ * buffers with a buddy allocator: block sizes are powers of two from {@link #MIN_BLOCK_SIZE}
+ * (which also satisfies the uniform and storage buffer offset alignment) up to the slab size,
+ * and the allocator's free lists and block states are kept in off-heap {@code int} and
+ * {@code byte} arrays rather than Java objects. Requests for mappable buffers, which can't
+ * share a buffer because mapping applies to the whole buffer, and requests larger than a
+ * quarter slab get a dedicated buffer rounded up to a power-of-two size class, which is pooled
+ * and reused for later requests of the same usage and class.
+ * <p>
+ * {@link #free(Allocation)} doesn't make memory reusable right away: the GPU may still be
+ * reading it. Frees are collected until {@link #submitted()} is called after the frame's
+ * command buffers have been submitted, and take effect once {@code wgpuQueueOnSubmittedWorkDone}
+ * reports that work complete - the device must be polled for that to happen.
+ * <p>
+ * A GpuBufferPool is thread safe.
+ */
+public final class GpuBufferPool implements AutoCloseable {
+
+    public static final long MIN_BLOCK_SIZE = 256;
+
+    public static final long DEFAULT_SLAB_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * A range of a pooled buffer. Bind or copy to {@link #buffer()} at {@link #offset()}.
+     */
+    public static final class Allocation {
+
+        private final MemorySegment buffer;
+        private final long offset;
+        private final long size;
+        private final long blockSize;
+        private final Slab slab;
+        private final int block;
+        private final int usage;
+        private boolean freed;
+
+        private Allocation(MemorySegment buffer, long offset, long size, long blockSize, Slab slab, int block, int usage){
+            this.buffer = buffer;
+            this.offset = offset;
+            this.size = size;
+            this.blockSize = blockSize;
+            this.slab = slab;
+            this.block = block;
+            this.usage = usage;
+        }
+
+        public MemorySegment buffer(){
+            return buffer;
+        }
+
+        public long offset(){
+            return offset;
+        }
+
+        /**
+         * @return the requested size. The range reserved for the allocation may be larger.
+         */
+        public long size(){
+            return size;
+        }
+    }
+
+    /**
+     * @param liveBytes bytes currently allocated to callers, as requested
+     * @param reservedBytes the total size of every buffer the pool holds
+     * @param freeBytes bytes in slabs and pooled buffers that are available for reuse
+     * @param fragmentation the share of free slab memory outside the largest free block of its
+     *                      slab, from 0 (every slab's free memory is one block) to 1
+     * @param allocations the number of allocations served
+     * @param reused allocations served without creating a buffer
+     * @param buffersCreated the number of buffers the pool has created
+     * @param pendingFrees frees waiting for their submission to complete
+     */
+    public record Statistics(long liveBytes, long reservedBytes, long freeBytes, double fragmentation,
+                             long allocations, long reused, long buffersCreated, int pendingFrees){
+
+        public double reuseRate(){
+            return allocations > 0 ? (double) reused / allocations : 0;
+        }
+    }
+
+    private final MemorySegment device;
+    private final MemorySegment queue;
+    private final long slabSize;
+    private final int maxOrder;
+    private final Arena arena = Arena.ofShared();
+
+    private final Map<Integer, List<Slab>> slabs = new HashMap<>();
+    private final Map<Long, ArrayDeque<MemorySegment>> dedicated = new HashMap<>();
+    private final Set<Allocation> dedicatedInUse = Collections.newSetFromMap(new IdentityHashMap<>());
+    private List<Allocation> pendingFrees = new ArrayList<>();
+    private int inFlightFrees;
+
+    private long liveBytes;
+    private long reservedBytes;
+    private long dedicatedFreeBytes;
+    private long allocations;
+    private long reused;
+    private long buffersCreated;
+    private boolean closed;
+
+    public GpuBufferPool(MemorySegment device, MemorySegment queue){
+        this(device, queue, DEFAULT_SLAB_SIZE);
+    }
+
+    /**
+     * @param slabSize the size of the buffers small requests are suballocated from - a power
+     *                 of two no smaller than {@link #MIN_BLOCK_SIZE}
+     */
+    public GpuBufferPool(MemorySegment device, MemorySegment queue, long slabSize){
+        if(slabSize < MIN_BLOCK_SIZE || Long.bitCount(slabSize) != 1){
+            throw new IllegalArgumentException("Slab size must be a power of two >= " + MIN_BLOCK_SIZE + ": " + slabSize);
+        }
+        this.device = device;
+        this.queue = queue;
+        this.slabSize = slabSize;
+        maxOrder = Long.numberOfTrailingZeros(slabSize / MIN_BLOCK_SIZE);
+    }
+
+    /**
+     * Allocates {@code size} bytes of buffer memory with the given {@code WGPUBufferUsage}
+     * flags. The offset of a suballocated range is a multiple of {@link #MIN_BLOCK_SIZE}.
+     */
+    public synchronized Allocation allocate(int usage, long size){
+        ensureOpen();
+        if(size <= 0){
+            throw new IllegalArgumentException("Invalid allocation size: " + size);
+        }
+        allocations++;
+        liveBytes += size;
+
+        var mappable = (usage & (WGPUBufferUsage_MapRead() | WGPUBufferUsage_MapWrite())) != 0;
+        if(mappable || size > slabSize / 4){
+            return allocateDedicated(usage, size);
+        }
+
+        var order = order(size);
+        var bucket = slabs.computeIfAbsent(usage, u -> new ArrayList<>());
+        for(var slab : bucket){
+            var block = slab.allocate(order);
+            if(block >= 0){
+                reused++;
+                return new Allocation(slab.buffer, block * MIN_BLOCK_SIZE, size, MIN_BLOCK_SIZE << order, slab, block, usage);
+            }
+        }
+
+        var slab = new Slab(createBuffer(usage, slabSize));
+        bucket.add(slab);
+        var block = slab.allocate(order);
+        return new Allocation(slab.buffer, block * MIN_BLOCK_SIZE, size, MIN_BLOCK_SIZE << order, slab, block, usage);
+    }
+
+    /**
+     * Returns the allocation to the pool once the work submitted after the next
+     * {@link #submitted()} call has completed.
+     */
+    public synchronized void free(Allocation allocation){
+        if(allocation.freed){
+            throw new IllegalStateException("Allocation has already been freed");
+        }
+        allocation.freed = true;
+        liveBytes -= allocation.size;
+        if(closed){
+            return;
+        }
+        pendingFrees.add(allocation);
+    }
+
+    /**
+     * Call after submitting a frame's command buffers: the frees made since the previous call
+     * take effect once the work submitted so far completes.
+     */
+    public void submitted(){
+        List<Allocation> frees;
+        synchronized(this){
+            if(pendingFrees.isEmpty() || closed){
+                return;
+            }
+            frees = pendingFrees;
+            pendingFrees = new ArrayList<>();
+            inFlightFrees += frees.size();
+        }
+        CallbackDispatcher.onSubmittedWorkDone(queue).thenAccept(status -> release(frees));
+    }
+
+    public synchronized Statistics statistics(){
+        long free = dedicatedFreeBytes;
+        long fragmented = 0;
+        long slabFree = 0;
+        for(var bucket : slabs.values()){
+            for(var slab : bucket){
+                free += slab.freeBytes;
+                slabFree += slab.freeBytes;
+                fragmented += slab.freeBytes - slab.largestFreeBlock();
+            }
+        }
+        var fragmentation = slabFree > 0 ? (double) fragmented / slabFree : 0;
+        return new Statistics(liveBytes, reservedBytes, free, fragmentation, allocations, reused, buffersCreated,
+                pendingFrees.size() + inFlightFrees);
+    }
+
+    /**
+     * Releases every slab without live allocations and every pooled dedicated buffer.
+     */
+    public synchronized void trim(){
+        for(var bucket : slabs.values()){
+            var iterator = bucket.iterator();
+            while(iterator.hasNext()){
+                var slab = iterator.next();
+                if(slab.freeBytes == slabSize){
+                    iterator.remove();
+                    destroy(slab.buffer, slabSize);
+                }
+            }
+        }
+        for(var entry : dedicated.entrySet()){
+            var size = sizeClass(entry.getKey());
+            MemorySegment buffer;
+            while((buffer = entry.getValue().poll()) != null){
+                destroy(buffer, size);
+                dedicatedFreeBytes -= size;
+            }
+        }
+    }
+
+    /**
+     * Releases every buffer the pool holds, including those of live allocations.
+     */
+    @Override
+    public synchronized void close(){
+        if(closed){
+            return;
+        }
+        closed = true;
+        trim();
+        for(var bucket : slabs.values()){
+            for(var slab : bucket){
+                destroy(slab.buffer, slabSize);
+            }
+        }
+        slabs.clear();
+        for(var allocation : dedicatedInUse){
+            destroy(allocation.buffer, allocation.blockSize);
+        }
+        dedicatedInUse.clear();
+        pendingFrees.clear();
+        arena.close();
+    }
+
+    private Allocation allocateDedicated(int usage, long size){
+        var classSize = Math.max(MIN_BLOCK_SIZE, Long.highestOneBit(size - 1) << 1);
+        var pooled = dedicated.computeIfAbsent(key(usage, classSize), k -> new ArrayDeque<>());
+        var buffer = pooled.poll();
+        if(buffer != null){
+            reused++;
+            dedicatedFreeBytes -= classSize;
+        }else{
+            buffer = createBuffer(usage, classSize);
+        }
+        var allocation = new Allocation(buffer, 0, size, classSize, null, -1, usage);
+        dedicatedInUse.add(allocation);
+        return allocation;
+    }
+
+    private synchronized void release(List<Allocation> frees){
+        inFlightFrees -= frees.size();
+        if(closed){
+            // Every buffer has been released by close()
+            return;
+        }
+        for(var allocation : frees){
+            if(allocation.slab != null){
+                allocation.slab.free(allocation.block);
+            }else{
+                dedicatedInUse.remove(allocation);
+                dedicated.get(key(allocation.usage, allocation.blockSize)).add(allocation.buffer);
+                dedicatedFreeBytes += allocation.blockSize;
+            }
+        }
+    }
+
+    private MemorySegment createBuffer(int usage, long size){
+        try(var descriptorArena = Arena.ofConfined()){
+            var descriptor = WGPUBufferDescriptor.allocate(descriptorArena);
+            WGPUBufferDescriptor.label$set(descriptor, descriptorArena.allocateUtf8String("GpuBufferPool"));
+            WGPUBufferDescriptor.usage$set(descriptor, usage);
+            WGPUBufferDescriptor.size$set(descriptor, size);
+            buffersCreated++;
+            reservedBytes += size;
+            return wgpuDeviceCreateBuffer(device, descriptor);
+        }
+    }
+
+    private void destroy(MemorySegment buffer, long size){
+        wgpuBufferDestroy(buffer);
+        wgpuBufferRelease(buffer);
+        reservedBytes -= size;
+    }
+
+    private int order(long size){
+        var blocks = (size + MIN_BLOCK_SIZE - 1) / MIN_BLOCK_SIZE;
+        return 64 - Long.numberOfLeadingZeros(blocks - 1);
+    }
+
+    /**
+     * Usage flags are 32 bits and size classes powers of two, so both fit one key.
+     */
+    private static long key(int usage, long classSize){
+        return ((long) usage << 32) | Long.numberOfTrailingZeros(classSize);
+    }
+
+    private static long sizeClass(long key){
+        return 1L << (int) key;
+    }
+
+    private void ensureOpen(){
+        if(closed){
+            throw new IllegalStateException("Buffer pool is closed");
+        }
+    }
+
+    /**
+     * A buddy allocator over one slab buffer. Blocks are identified by their index in units of
+     * {@link #MIN_BLOCK_SIZE}; each free block is linked into the free list of its order through
+     * the {@code next}/{@code prev} arrays, and {@code orders}/{@code states} record the order
+     * and state of the block starting at each index.
+     */
+    private final class Slab {
+
+        private static final byte USED = 0;
+        private static final byte FREE = 1;
+        private static final int NONE = -1;
+
+        final MemorySegment buffer;
+        final MemorySegment next;
+        final MemorySegment prev;
+        final MemorySegment orders;
+        final MemorySegment states;
+        final int[] heads = new int[maxOrder + 1];
+        long freeBytes = slabSize;
+
+        Slab(MemorySegment buffer){
+            this.buffer = buffer;
+            var blocks = 1 << maxOrder;
+            next = arena.allocateArray(JAVA_INT, blocks);
+            prev = arena.allocateArray(JAVA_INT, blocks);
+            orders = arena.allocateArray(JAVA_BYTE, blocks);
+            states = arena.allocateArray(JAVA_BYTE, blocks);
+            Arrays.fill(heads, NONE);
+            push(0, maxOrder);
+        }
+
+        /**
+         * @return the index of a free block of the given order, now in use, or -1 if the slab
+         * has no free block that large
+         */
+        int allocate(int order){
+            var from = order;
+            while(from <= maxOrder && heads[from] == NONE){
+                from++;
+            }
+            if(from > maxOrder){
+                return NONE;
+            }
+
+            var block = heads[from];
+            unlink(block, from);
+            // Split down to the requested order, freeing the upper halves
+            while(from > order){
+                from--;
+                push(block + (1 << from), from);
+            }
+            orders.set(JAVA_BYTE, block, (byte) order);
+            states.set(JAVA_BYTE, block, USED);
+            freeBytes -= MIN_BLOCK_SIZE << order;
+            return block;
+        }
+
+        void free(int block){
+            int order = orders.get(JAVA_BYTE, block);
+            freeBytes += MIN_BLOCK_SIZE << order;
+            // Merge with the buddy for as long as it is free and whole
+            while(order < maxOrder){
+                var buddy = block ^ (1 << order);
+                if(states.get(JAVA_BYTE, buddy) != FREE || orders.get(JAVA_BYTE, buddy) != order){
+                    break;
+                }
+                unlink(buddy, order);
+                block = Math.min(block, buddy);
+                order++;
+            }
+            push(block, order);
+        }
+
+        long largestFreeBlock(){
+            for(int order = maxOrder; order >= 0; order--){
+                if(heads[order] != NONE){
+                    return MIN_BLOCK_SIZE << order;
+                }
+            }
+            return 0;
+        }
+
+        private void push(int block, int order){
+            var head = heads[order];
+            next.setAtIndex(JAVA_INT, block, head);
+            prev.setAtIndex(JAVA_INT, block, NONE);
+            if(head != NONE){
+                prev.setAtIndex(JAVA_INT, head, block);
+            }
+            heads[order] = block;
+            orders.set(JAVA_BYTE, block, (byte) order);
+            states.set(JAVA_BYTE, block, FREE);
+        }
+
+        private void unlink(int block, int order){
+            var n = next.getAtIndex(JAVA_INT, block);
+            var p = prev.getAtIndex(JAVA_INT, block);
+            if(p != NONE){
+                next.setAtIndex(JAVA_INT, p, n);
+            }else{
+                heads[order] = n;
+            }
+            if(n != NONE){
+                prev.setAtIndex(JAVA_INT, n, p);
+            }
+            states.set(JAVA_BYTE, block, USED);
+        }
+    }
+}
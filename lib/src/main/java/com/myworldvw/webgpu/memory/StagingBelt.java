@@ -0,0 +1,338 @@
+package com.myworldvw.webgpu.memory;
+
+import com.myworldvw.webgpu.WGPUBufferDescriptor;
+import com.myworldvw.webgpu.async.CallbackDispatcher;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static com.myworldvw.webgpu.webgpu_h.*;
+
+/**
+ * Uploads buffer data through a ring of persistently mapped staging buffers instead of one
+ * {@code wgpuQueueWriteBuffer} - and one staging copy inside wgpu - per call.
+ * <p>
+ * Writes sub-allocate ranges of a {@code MapWrite | CopySrc} chunk whose mapped memory the
+ * caller writes into directly. {@link #finish(MemorySegment)} unmaps the chunks used since the
+ * last call and records the pending copies into a command encoder, merging copies that are
+ * contiguous in both the chunk and the target buffer into one {@code CopyBufferToBuffer}.
+ * After the command buffer has been submitted, {@link #recall()} waits for
+ * {@code wgpuQueueOnSubmittedWorkDone} and then maps the chunks again, returning them to the
+ * ring. In steady state no buffers are created at all; the device must be polled for chunks
+ * to come back.
+ * <p>
+ * Offsets and sizes of writes must be multiples of {@link #COPY_BUFFER_ALIGNMENT}, the
+ * alignment {@code wgpuCommandEncoderCopyBufferToBuffer} requires. Writes larger than the
+ * chunk size get a dedicated chunk, which is recycled like the others. Writing, finishing and
+ * recalling must happen on one thread; chunks are returned to the ring from whichever thread
+ * polls the device.
+ */
+public final class StagingBelt implements AutoCloseable {
+
+    public static final long COPY_BUFFER_ALIGNMENT = 4;
+
+    public static final long DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    /**
+     * @param bytesWritten the total bytes written through the belt
+     * @param writes the number of writes
+     * @param copies the number of {@code CopyBufferToBuffer} commands recorded after coalescing
+     * @param chunksAllocated the number of staging buffers created
+     * @param bytesAllocated the total size of the staging buffers created
+     * @param frameBytes the bytes written between the last two {@link #recall()} calls
+     * @param frameChunksAllocated the staging buffers created between the last two {@link #recall()} calls
+     */
+    public record Statistics(long bytesWritten, long writes, long copies, long chunksAllocated, long bytesAllocated,
+                             long frameBytes, long frameChunksAllocated){}
+
+    private static final class Chunk {
+        final MemorySegment buffer;
+        final long size;
+        MemorySegment mapped;
+        long offset;
+
+        Chunk(MemorySegment buffer, long size){
+            this.buffer = buffer;
+            this.size = size;
+        }
+    }
+
+    private final MemorySegment device;
+    private final MemorySegment queue;
+    private final long chunkSize;
+
+    private final ConcurrentLinkedQueue<Chunk> free = new ConcurrentLinkedQueue<>();
+    private final List<Chunk> active = new ArrayList<>();
+    private final List<Chunk> closed = new ArrayList<>();
+    private Chunk current;
+
+    // Pending copies, coalesced as they are recorded
+    private Chunk[] copySources = new Chunk[64];
+    private MemorySegment[] copyTargets = new MemorySegment[64];
+    private long[] copySourceOffsets = new long[64];
+    private long[] copyTargetOffsets = new long[64];
+    private long[] copySizes = new long[64];
+    private int copyCount;
+
+    private long bytesWritten;
+    private long writes;
+    private long copies;
+    private long chunksAllocated;
+    private long bytesAllocated;
+    private long frameBytes;
+    private long frameChunksAllocated;
+    private long lastFrameBytes;
+    private long lastFrameChunksAllocated;
+    private volatile boolean isClosed;
+
+    public StagingBelt(MemorySegment device, MemorySegment queue){
+        this(device, queue, DEFAULT_CHUNK_SIZE);
+    }
+
+    public StagingBelt(MemorySegment device, MemorySegment queue, long chunkSize){
+        if(chunkSize <= 0 || chunkSize % COPY_BUFFER_ALIGNMENT != 0){
+            throw new IllegalArgumentException("Chunk size must be a positive multiple of " + COPY_BUFFER_ALIGNMENT + ": " + chunkSize);
+        }
+        this.device = device;
+        this.queue = queue;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Reserves staging memory for a write of {@code size} bytes to {@code target} at
+     * {@code offset}. The returned segment is mapped memory that is copied to the target
+     * when the commands recorded by {@link #finish(MemorySegment)} execute - it must be filled
+     * before {@code finish} and not touched afterwards.
+     */
+    public MemorySegment allocate(MemorySegment target, long offset, long size){
+        var chunk = reserve(target, offset, size);
+        return chunk.mapped.asSlice(chunk.offset - size, size);
+    }
+
+    public void write(MemorySegment target, long offset, MemorySegment data){
+        var size = data.byteSize();
+        var chunk = reserve(target, offset, size);
+        MemorySegment.copy(data, 0, chunk.mapped, chunk.offset - size, size);
+    }
+
+    public void write(MemorySegment target, long offset, float[] data){
+        var size = (long) data.length * Float.BYTES;
+        var chunk = reserve(target, offset, size);
+        MemorySegment.copy(data, 0, chunk.mapped, ValueLayout.JAVA_FLOAT_UNALIGNED, chunk.offset - size, data.length);
+    }
+
+    public void write(MemorySegment target, long offset, int[] data){
+        var size = (long) data.length * Integer.BYTES;
+        var chunk = reserve(target, offset, size);
+        MemorySegment.copy(data, 0, chunk.mapped, ValueLayout.JAVA_INT_UNALIGNED, chunk.offset - size, data.length);
+    }
+
+    /**
+     * Writes the buffer's remaining bytes. The buffer's position is not changed.
+     */
+    public void write(MemorySegment target, long offset, ByteBuffer data){
+        write(target, offset, MemorySegment.ofBuffer(data));
+    }
+
+    /**
+     * Unmaps every chunk written to since the last call and records the pending copies into
+     * the encoder. Submit the encoder's command buffer before calling {@link #recall()}.
+     */
+    public void finish(MemorySegment encoder){
+        for(var chunk : active){
+            wgpuBufferUnmap(chunk.buffer);
+            chunk.mapped = null;
+        }
+
+        for(int i = 0; i < copyCount; i++){
+            wgpuCommandEncoderCopyBufferToBuffer(encoder, copySources[i].buffer, copySourceOffsets[i],
+                    copyTargets[i], copyTargetOffsets[i], copySizes[i]);
+            copySources[i] = null;
+            copyTargets[i] = null;
+        }
+        copies += copyCount;
+        copyCount = 0;
+
+        closed.addAll(active);
+        active.clear();
+        current = null;
+    }
+
+    /**
+     * Returns the chunks closed by {@link #finish(MemorySegment)} to the ring once the work
+     * submitted so far has completed. Call after submitting the command buffer.
+     */
+    public void recall(){
+        lastFrameBytes = frameBytes;
+        lastFrameChunksAllocated = frameChunksAllocated;
+        frameBytes = 0;
+        frameChunksAllocated = 0;
+
+        if(closed.isEmpty()){
+            return;
+        }
+        var recalled = closed.toArray(Chunk[]::new);
+        closed.clear();
+        CallbackDispatcher.onSubmittedWorkDone(queue).thenAccept(status -> {
+            for(var chunk : recalled){
+                remap(chunk);
+            }
+        });
+    }
+
+    /**
+     * @return the number of copies the next {@link #finish(MemorySegment)} will record
+     */
+    public int pendingCopies(){
+        return copyCount;
+    }
+
+    public Statistics statistics(){
+        return new Statistics(bytesWritten, writes, copies, chunksAllocated, bytesAllocated, lastFrameBytes, lastFrameChunksAllocated);
+    }
+
+    /**
+     * Releases every staging buffer. Chunks still in flight are released once their mapping
+     * completes or fails.
+     */
+    @Override
+    public void close(){
+        isClosed = true;
+        Chunk chunk;
+        while((chunk = free.poll()) != null){
+            wgpuBufferRelease(chunk.buffer);
+        }
+        for(var c : active){
+            wgpuBufferRelease(c.buffer);
+        }
+        for(var c : closed){
+            wgpuBufferRelease(c.buffer);
+        }
+        active.clear();
+        closed.clear();
+        current = null;
+        copyCount = 0;
+    }
+
+    private void remap(Chunk chunk){
+        if(isClosed){
+            wgpuBufferRelease(chunk.buffer);
+            return;
+        }
+        CallbackDispatcher.mapAsync(chunk.buffer, WGPUMapMode_Write(), 0, chunk.size).thenAccept(status -> {
+            if(status == WGPUBufferMapAsyncStatus_Success() && !isClosed){
+                chunk.offset = 0;
+                free.add(chunk);
+                // close() may have drained the ring between the check and the add - whichever
+                // of the two removes the chunk releases it
+                if(isClosed && free.remove(chunk)){
+                    wgpuBufferRelease(chunk.buffer);
+                }
+            }else{
+                // Mapping fails once the device is lost or the belt is closed - drop the chunk
+                wgpuBufferRelease(chunk.buffer);
+            }
+        });
+    }
+
+    /**
+     * Reserves {@code size} bytes at the current chunk's offset, which the write then advances
+     * past, and records the copy.
+     */
+    private Chunk reserve(MemorySegment target, long offset, long size){
+        if(isClosed){
+            throw new IllegalStateException("Staging belt is closed");
+        }
+        if(offset % COPY_BUFFER_ALIGNMENT != 0 || size % COPY_BUFFER_ALIGNMENT != 0){
+            throw new IllegalArgumentException("Offset and size must be multiples of " + COPY_BUFFER_ALIGNMENT
+                    + ": offset " + offset + ", size " + size);
+        }
+
+        var chunk = current;
+        if(chunk == null || chunk.size - chunk.offset < size){
+            chunk = acquire(size);
+        }
+        var sourceOffset = chunk.offset;
+        chunk.offset += size;
+
+        bytesWritten += size;
+        frameBytes += size;
+        writes++;
+
+        if(size > 0){
+            record(chunk, sourceOffset, target, offset, size);
+        }
+        return chunk;
+    }
+
+    private void record(Chunk chunk, long sourceOffset, MemorySegment target, long targetOffset, long size){
+        var last = copyCount - 1;
+        if(last >= 0 && copySources[last] == chunk && copyTargets[last].equals(target)
+                && copySourceOffsets[last] + copySizes[last] == sourceOffset
+                && copyTargetOffsets[last] + copySizes[last] == targetOffset){
+            copySizes[last] += size;
+            return;
+        }
+
+        if(copyCount == copySizes.length){
+            var capacity = copyCount * 2;
+            copySources = Arrays.copyOf(copySources, capacity);
+            copyTargets = Arrays.copyOf(copyTargets, capacity);
+            copySourceOffsets = Arrays.copyOf(copySourceOffsets, capacity);
+            copyTargetOffsets = Arrays.copyOf(copyTargetOffsets, capacity);
+            copySizes = Arrays.copyOf(copySizes, capacity);
+        }
+        copySources[copyCount] = chunk;
+        copyTargets[copyCount] = target;
+        copySourceOffsets[copyCount] = sourceOffset;
+        copyTargetOffsets[copyCount] = targetOffset;
+        copySizes[copyCount] = size;
+        copyCount++;
+    }
+
+    /**
+     * @return a mapped chunk with at least {@code size} bytes free, recycled from the ring if
+     * one is big enough
+     */
+    private Chunk acquire(long size){
+        Chunk chunk = null;
+        for(var candidate : free){
+            if(candidate.size >= size && free.remove(candidate)){
+                chunk = candidate;
+                break;
+            }
+        }
+        if(chunk == null){
+            chunk = create(Math.max(chunkSize, size));
+        }
+        if(chunk.mapped == null){
+            chunk.mapped = wgpuBufferGetMappedRange(chunk.buffer, 0, chunk.size).reinterpret(chunk.size);
+        }
+        active.add(chunk);
+        current = chunk;
+        return chunk;
+    }
+
+    private Chunk create(long size){
+        MemorySegment buffer;
+        try(var arena = Arena.ofConfined()){
+            var descriptor = WGPUBufferDescriptor.allocate(arena);
+            WGPUBufferDescriptor.label$set(descriptor, arena.allocateUtf8String("StagingBelt chunk"));
+            WGPUBufferDescriptor.usage$set(descriptor, WGPUBufferUsage_MapWrite() | WGPUBufferUsage_CopySrc());
+            WGPUBufferDescriptor.size$set(descriptor, size);
+            WGPUBufferDescriptor.mappedAtCreation$set(descriptor, 1);
+            buffer = wgpuDeviceCreateBuffer(device, descriptor);
+        }
+        var chunk = new Chunk(buffer, size);
+        chunksAllocated++;
+        frameChunksAllocated++;
+        bytesAllocated += size;
+        return chunk;
+    }
+}
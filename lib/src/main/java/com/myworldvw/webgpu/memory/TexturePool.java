@@ -0,0 +1,206 @@
+package com.myworldvw.webgpu.memory;
+
+import com.myworldvw.webgpu.WGPUExtent3D;
+import com.myworldvw.webgpu.WGPUTextureDescriptor;
+import com.myworldvw.webgpu.async.CallbackDispatcher;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.myworldvw.webgpu.webgpu_h.*;
+
+/**
+ * Pools transient 2D textures - render targets, depth buffers, intermediate passes - keyed by
+ * format, size, mip and sample count and usage, so passes that need the same kind of target
+ * every frame reuse one instead of creating it again.
+ * <p>
+ * Like {@link GpuBufferPool}, a released texture only returns to the pool once the work
+ * submitted after the next {@link #submitted()} call completes. Targets of sizes that are no
+ * longer requested, e.g. after a window resize, stay pooled until {@link #trim()}.
+ * <p>
+ * A TexturePool is thread safe.
+ */
+public final class TexturePool implements AutoCloseable {
+
+    public record Key(int format, int width, int height, int depthOrArrayLayers, int mipLevelCount,
+                      int sampleCount, int usage){
+
+        public Key {
+            if(width < 1 || height < 1 || depthOrArrayLayers < 1 || mipLevelCount < 1 || sampleCount < 1){
+                throw new IllegalArgumentException("Invalid texture dimensions: " + width + "x" + height + "x" + depthOrArrayLayers
+                        + ", " + mipLevelCount + " mips, " + sampleCount + " samples");
+            }
+        }
+    }
+
+    /**
+     * @param liveTextures textures acquired and not released yet
+     * @param pooledTextures textures available for reuse
+     * @param acquisitions the number of textures acquired
+     * @param reused acquisitions served from the pool
+     * @param texturesCreated the number of textures the pool has created
+     * @param pendingReleases releases waiting for their submission to complete
+     */
+    public record Statistics(int liveTextures, int pooledTextures, long acquisitions, long reused,
+                             long texturesCreated, int pendingReleases){
+
+        public double reuseRate(){
+            return acquisitions > 0 ? (double) reused / acquisitions : 0;
+        }
+    }
+
+    private final MemorySegment device;
+    private final MemorySegment queue;
+
+    private final Map<Key, ArrayDeque<MemorySegment>> free = new HashMap<>();
+    // A texture is in exactly one of live, releasing (pending or in flight) and free
+    private final Map<MemorySegment, Key> live = new HashMap<>();
+    private final Map<MemorySegment, Key> releasing = new HashMap<>();
+    private List<MemorySegment> pendingReleases = new ArrayList<>();
+    private int pooledTextures;
+
+    private long acquisitions;
+    private long reused;
+    private long texturesCreated;
+    private boolean closed;
+
+    public TexturePool(MemorySegment device, MemorySegment queue){
+        this.device = device;
+        this.queue = queue;
+    }
+
+    public MemorySegment acquire(int format, int width, int height, int usage){
+        return acquire(new Key(format, width, height, 1, 1, 1, usage));
+    }
+
+    /**
+     * @return a texture matching the key. The pool keeps ownership: give it back with
+     * {@link #release(MemorySegment)} rather than releasing it.
+     */
+    public synchronized MemorySegment acquire(Key key){
+        if(closed){
+            throw new IllegalStateException("Texture pool is closed");
+        }
+        acquisitions++;
+        var pooled = free.get(key);
+        var texture = pooled != null ? pooled.poll() : null;
+        if(texture != null){
+            reused++;
+            pooledTextures--;
+        }else{
+            texture = create(key);
+        }
+        live.put(texture, key);
+        return texture;
+    }
+
+    /**
+     * Returns the texture to the pool once the work submitted after the next
+     * {@link #submitted()} call has completed.
+     */
+    public synchronized void release(MemorySegment texture){
+        if(closed){
+            return;
+        }
+        var key = live.remove(texture);
+        if(key == null){
+            throw new IllegalArgumentException("Texture was not acquired from this pool or has already been released");
+        }
+        releasing.put(texture, key);
+        pendingReleases.add(texture);
+    }
+
+    /**
+     * Call after submitting a frame's command buffers: the textures released since the
+     * previous call return to the pool once the work submitted so far completes.
+     */
+    public void submitted(){
+        List<MemorySegment> releases;
+        synchronized(this){
+            if(pendingReleases.isEmpty() || closed){
+                return;
+            }
+            releases = pendingReleases;
+            pendingReleases = new ArrayList<>();
+        }
+        CallbackDispatcher.onSubmittedWorkDone(queue).thenAccept(status -> recycle(releases));
+    }
+
+    public synchronized Statistics statistics(){
+        return new Statistics(live.size(), pooledTextures, acquisitions, reused, texturesCreated, releasing.size());
+    }
+
+    /**
+     * Destroys every pooled texture.
+     */
+    public synchronized void trim(){
+        for(var pooled : free.values()){
+            MemorySegment texture;
+            while((texture = pooled.poll()) != null){
+                destroy(texture);
+            }
+        }
+        free.clear();
+        pooledTextures = 0;
+    }
+
+    /**
+     * Destroys every texture the pool holds, including acquired ones.
+     */
+    @Override
+    public synchronized void close(){
+        if(closed){
+            return;
+        }
+        closed = true;
+        trim();
+        for(var texture : live.keySet()){
+            destroy(texture);
+        }
+        for(var texture : releasing.keySet()){
+            destroy(texture);
+        }
+        live.clear();
+        releasing.clear();
+        pendingReleases.clear();
+    }
+
+    private synchronized void recycle(List<MemorySegment> releases){
+        if(closed){
+            return;
+        }
+        for(var texture : releases){
+            var key = releasing.remove(texture);
+            free.computeIfAbsent(key, k -> new ArrayDeque<>()).add(texture);
+            pooledTextures++;
+        }
+    }
+
+    private MemorySegment create(Key key){
+        try(var arena = Arena.ofConfined()){
+            var descriptor = WGPUTextureDescriptor.allocate(arena);
+            WGPUTextureDescriptor.label$set(descriptor, arena.allocateUtf8String("TexturePool"));
+            WGPUTextureDescriptor.usage$set(descriptor, key.usage());
+            WGPUTextureDescriptor.dimension$set(descriptor, WGPUTextureDimension_2D());
+            var size = WGPUTextureDescriptor.size$slice(descriptor);
+            WGPUExtent3D.width$set(size, key.width());
+            WGPUExtent3D.height$set(size, key.height());
+            WGPUExtent3D.depthOrArrayLayers$set(size, key.depthOrArrayLayers());
+            WGPUTextureDescriptor.format$set(descriptor, key.format());
+            WGPUTextureDescriptor.mipLevelCount$set(descriptor, key.mipLevelCount());
+            WGPUTextureDescriptor.sampleCount$set(descriptor, key.sampleCount());
+            texturesCreated++;
+            return wgpuDeviceCreateTexture(device, descriptor);
+        }
+    }
+
+    private static void destroy(MemorySegment texture){
+        wgpuTextureDestroy(texture);
+        wgpuTextureRelease(texture);
+    }
+}
@@ -0,0 +1,149 @@
+package com.myworldvw.webgpu.texture;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Box-filters 8-bit per channel mip levels on the CPU, splitting the rows of the level being
+ * generated across a fork-join pool. sRGB color channels are averaged in linear space; alpha
+ * and non-sRGB channels are averaged as stored. Even dimensions use a 2-tap box filter; odd
+ * dimensions above 1, which halve to {@code n / 2} texels, use a 3-tap filter whose weights
+ * cover {@code n / (n / 2)} source texels per target texel, so the last row and column are
+ * sampled too.
+ */
+final class MipGenerator {
+
+    private static final long ROWS_PER_TASK_BYTES = 64 * 1024;
+
+    private static final float[] SRGB_TO_LINEAR = new float[256];
+    private static final byte[] LINEAR_TO_SRGB = new byte[4096];
+
+    static {
+        for(int i = 0; i < SRGB_TO_LINEAR.length; i++){
+            var c = i / 255.0;
+            SRGB_TO_LINEAR[i] = (float) (c <= 0.04045 ? c / 12.92 : Math.pow((c + 0.055) / 1.055, 2.4));
+        }
+        for(int i = 0; i < LINEAR_TO_SRGB.length; i++){
+            var l = i / (double) (LINEAR_TO_SRGB.length - 1);
+            var c = l <= 0.0031308 ? l * 12.92 : 1.055 * Math.pow(l, 1 / 2.4) - 0.055;
+            LINEAR_TO_SRGB[i] = (byte) Math.round(c * 255);
+        }
+    }
+
+    private MipGenerator(){}
+
+    /**
+     * Writes the next smaller mip level of {@code source} into {@code target}, which holds
+     * {@code max(1, width / 2) x max(1, height / 2)} tightly packed texels.
+     */
+    static void downsample(ForkJoinPool pool, MemorySegment source, int width, int height,
+                           MemorySegment target, int channels, boolean srgb){
+        var targetWidth = Math.max(1, width / 2);
+        var targetHeight = Math.max(1, height / 2);
+        var task = new Rows(source, width, height, target, targetWidth, channels, srgb, 0, targetHeight);
+        if(pool == null || (long) targetWidth * targetHeight * channels <= ROWS_PER_TASK_BYTES){
+            task.compute();
+        }else{
+            pool.invoke(task);
+        }
+    }
+
+    private static final class Rows extends RecursiveAction {
+
+        final MemorySegment source;
+        final int width;
+        final int height;
+        final MemorySegment target;
+        final int targetWidth;
+        final int channels;
+        final boolean srgb;
+        final int first;
+        final int last;
+
+        Rows(MemorySegment source, int width, int height, MemorySegment target, int targetWidth,
+             int channels, boolean srgb, int first, int last){
+            this.source = source;
+            this.width = width;
+            this.height = height;
+            this.target = target;
+            this.targetWidth = targetWidth;
+            this.channels = channels;
+            this.srgb = srgb;
+            this.first = first;
+            this.last = last;
+        }
+
+        @Override
+        protected void compute(){
+            var rows = last - first;
+            if(rows > 1 && (long) rows * targetWidth * channels > ROWS_PER_TASK_BYTES){
+                var middle = first + rows / 2;
+                invokeAll(new Rows(source, width, height, target, targetWidth, channels, srgb, first, middle),
+                        new Rows(source, width, height, target, targetWidth, channels, srgb, middle, last));
+                return;
+            }
+            for(int y = first; y < last; y++){
+                row(y);
+            }
+        }
+
+        private void row(int y){
+            var rowWeights = new float[3];
+            var columnWeights = new float[3];
+            var rowTaps = weights(height, y, rowWeights);
+            var out = (long) y * targetWidth * channels;
+            for(int x = 0; x < targetWidth; x++){
+                var columnTaps = weights(width, x, columnWeights);
+                for(int c = 0; c < channels; c++){
+                    var linear = srgb && c < 3;
+                    var sum = 0f;
+                    for(int j = 0; j < rowTaps; j++){
+                        var row = (long) (2 * y + j) * width;
+                        var rowSum = 0f;
+                        for(int i = 0; i < columnTaps; i++){
+                            var value = texel(row + 2 * x + i, c);
+                            rowSum += columnWeights[i] * (linear ? SRGB_TO_LINEAR[value] : value);
+                        }
+                        sum += rowWeights[j] * rowSum;
+                    }
+                    byte value;
+                    if(linear){
+                        value = LINEAR_TO_SRGB[Math.min((int) (sum * (LINEAR_TO_SRGB.length - 1) + 0.5f), LINEAR_TO_SRGB.length - 1)];
+                    }else{
+                        value = (byte) Math.min((int) (sum + 0.5f), 255);
+                    }
+                    target.set(ValueLayout.JAVA_BYTE, out++, value);
+                }
+            }
+        }
+
+        /**
+         * Fills in the weights of the source texels {@code 2 * i}, {@code 2 * i + 1} and
+         * {@code 2 * i + 2} that target texel {@code i} averages along a dimension of
+         * {@code size} texels.
+         * @return the number of taps
+         */
+        private static int weights(int size, int i, float[] weights){
+            if(size == 1){
+                weights[0] = 1;
+                return 1;
+            }
+            if(size % 2 == 0){
+                weights[0] = 0.5f;
+                weights[1] = 0.5f;
+                return 2;
+            }
+            var half = size / 2;
+            weights[0] = (float) (half - i) / size;
+            weights[1] = (float) half / size;
+            weights[2] = (float) (i + 1) / size;
+            return 3;
+        }
+
+        private int texel(long index, int channel){
+            return source.get(ValueLayout.JAVA_BYTE, index * channels + channel) & 0xFF;
+        }
+    }
+}
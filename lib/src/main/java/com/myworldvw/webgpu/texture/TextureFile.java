@@ -0,0 +1,283 @@
+package com.myworldvw.webgpu.texture;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static com.myworldvw.webgpu.binding.WebGPU.*;
+
+/**
+ * A 2D texture's mip levels, memory-mapped from a KTX2, DDS or raw file.
+ * <p>
+ * Nothing is read up front beyond the header: each {@link #level(int)} is a slice of the file
+ * mapping, so texel data is paged in by the OS as it is copied to the GPU and never passes
+ * through the Java heap. KTX2 files must not be supercompressed; cube maps, arrays and 3D
+ * textures aren't supported. Raw files hold the tightly packed mip levels one after another,
+ * starting with the largest.
+ * <p>
+ * Levels are laid out as rows of texel blocks - single texels, or 4x4 blocks for compressed
+ * formats - with {@link #bytesPerRow(int)} bytes per row and no padding. The mapping stays
+ * valid until the file is closed and may be read from any thread.
+ */
+public final class TextureFile implements AutoCloseable {
+
+    private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    private static final byte[] KTX2_IDENTIFIER = {
+            (byte) 0xAB, 'K', 'T', 'X', ' ', '2', '0', (byte) 0xBB, '\r', '\n', 0x1A, '\n'
+    };
+    private static final int DDS_MAGIC = 0x20534444;
+    private static final int DDS_HEADER_SIZE = 128;
+    private static final int DDS_DX10_HEADER_SIZE = 20;
+    private static final int DDSD_MIPMAPCOUNT = 0x20000;
+    private static final int DDPF_FOURCC = 0x4;
+    private static final int DDPF_RGB = 0x40;
+    private static final int DDPF_LUMINANCE = 0x20000;
+    private static final int DDSCAPS2_CUBEMAP = 0x200;
+
+    private final Arena arena;
+    private final int format;
+    private final int width;
+    private final int height;
+    private final MemorySegment[] levels;
+
+    private TextureFile(Arena arena, int format, int width, int height, MemorySegment[] levels){
+        this.arena = arena;
+        this.format = format;
+        this.width = width;
+        this.height = height;
+        this.levels = levels;
+    }
+
+    /**
+     * Maps a KTX2 or DDS file, recognized by its header.
+     * @throws IllegalArgumentException if the file isn't a supported KTX2 or DDS texture
+     */
+    public static TextureFile open(Path path) throws IOException {
+        var arena = Arena.ofShared();
+        try{
+            var data = map(path, arena);
+            if(data.byteSize() >= 80 && data.asSlice(0, KTX2_IDENTIFIER.length).mismatch(MemorySegment.ofArray(KTX2_IDENTIFIER)) == -1){
+                return ktx2(arena, data);
+            }else if(data.byteSize() >= DDS_HEADER_SIZE && data.get(INT, 0) == DDS_MAGIC){
+                return dds(arena, data);
+            }
+            throw new IllegalArgumentException(path + " is neither a KTX2 nor a DDS file");
+        }catch(IOException | RuntimeException e){
+            arena.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Maps a file holding only texel data.
+     */
+    public static TextureFile raw(Path path, int format, int width, int height, int mipLevelCount) throws IOException {
+        var arena = Arena.ofShared();
+        try{
+            return wrap(arena, map(path, arena), format, width, height, mipLevelCount);
+        }catch(IOException | RuntimeException e){
+            arena.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Wraps tightly packed texel data already in memory. Closing the file doesn't free it.
+     */
+    public static TextureFile of(MemorySegment data, int format, int width, int height, int mipLevelCount){
+        return wrap(null, data, format, width, height, mipLevelCount);
+    }
+
+    public int format(){
+        return format;
+    }
+
+    public int width(){
+        return width;
+    }
+
+    public int height(){
+        return height;
+    }
+
+    public int mipLevelCount(){
+        return levels.length;
+    }
+
+    public MemorySegment level(int mipLevel){
+        return levels[mipLevel];
+    }
+
+    public int levelWidth(int mipLevel){
+        return Math.max(1, width >> mipLevel);
+    }
+
+    public int levelHeight(int mipLevel){
+        return Math.max(1, height >> mipLevel);
+    }
+
+    /**
+     * @return the bytes in one row of texel blocks of the level
+     */
+    public long bytesPerRow(int mipLevel){
+        return blocks(levelWidth(mipLevel), format) * (long) TextureFormats.blockBytes(format);
+    }
+
+    /**
+     * @return the number of rows of texel blocks in the level
+     */
+    public int rows(int mipLevel){
+        return blocks(levelHeight(mipLevel), format);
+    }
+
+    @Override
+    public void close(){
+        if(arena != null){
+            arena.close();
+        }
+    }
+
+    static int blocks(int texels, int format){
+        var dimension = TextureFormats.blockDimension(format);
+        return (texels + dimension - 1) / dimension;
+    }
+
+    private static MemorySegment map(Path path, Arena arena) throws IOException {
+        try(var channel = FileChannel.open(path, StandardOpenOption.READ)){
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
+        }
+    }
+
+    private static TextureFile wrap(Arena arena, MemorySegment data, int format, int width, int height, int mipLevelCount){
+        check(format, width, height, mipLevelCount);
+        var levels = new MemorySegment[mipLevelCount];
+        long offset = 0;
+        for(int i = 0; i < mipLevelCount; i++){
+            var size = levelSize(format, width, height, i);
+            if(offset + size > data.byteSize()){
+                throw new IllegalArgumentException("Texture data is too short for " + mipLevelCount + " mip levels of "
+                        + width + "x" + height + ": " + data.byteSize() + " bytes");
+            }
+            levels[i] = data.asSlice(offset, size);
+            offset += size;
+        }
+        return new TextureFile(arena, format, width, height, levels);
+    }
+
+    private static TextureFile ktx2(Arena arena, MemorySegment data){
+        var format = TextureFormats.fromVkFormat(data.get(INT, 12));
+        var width = data.get(INT, 20);
+        var height = Math.max(1, data.get(INT, 24));
+        var depth = data.get(INT, 28);
+        var layers = data.get(INT, 32);
+        var faces = data.get(INT, 36);
+        // A level count of 0 asks the loader to generate the mip levels below the first
+        var levelCount = Math.max(1, data.get(INT, 40));
+        var supercompression = data.get(INT, 44);
+        if(format == WGPUTextureFormat_Undefined){
+            throw new IllegalArgumentException("Unsupported KTX2 vkFormat " + data.get(INT, 12));
+        }
+        if(depth > 1 || layers > 1 || faces != 1 || supercompression != 0){
+            throw new IllegalArgumentException("Only plain 2D KTX2 textures are supported: depth " + depth + ", "
+                    + layers + " layers, " + faces + " faces, supercompression " + supercompression);
+        }
+        check(format, width, height, levelCount);
+
+        var levels = new MemorySegment[levelCount];
+        for(int i = 0; i < levelCount; i++){
+            var index = 80 + i * 24L;
+            var offset = data.get(LONG, index);
+            var length = data.get(LONG, index + 8);
+            if(length < levelSize(format, width, height, i)){
+                throw new IllegalArgumentException("KTX2 level " + i + " is too short: " + length + " bytes");
+            }
+            levels[i] = data.asSlice(offset, length);
+        }
+        return new TextureFile(arena, format, width, height, levels);
+    }
+
+    private static TextureFile dds(Arena arena, MemorySegment data){
+        var flags = data.get(INT, 8);
+        var height = data.get(INT, 12);
+        var width = data.get(INT, 16);
+        var mipLevelCount = (flags & DDSD_MIPMAPCOUNT) != 0 ? Math.max(1, data.get(INT, 28)) : 1;
+        var pixelFlags = data.get(INT, 80);
+        var fourCC = data.get(INT, 84);
+        if((data.get(INT, 112) & DDSCAPS2_CUBEMAP) != 0){
+            throw new IllegalArgumentException("DDS cube maps are not supported");
+        }
+
+        long offset = DDS_HEADER_SIZE;
+        int format;
+        if((pixelFlags & DDPF_FOURCC) != 0){
+            if(fourCC == fourCC("DX10")){
+                if(data.get(INT, 132) != 3 || data.get(INT, 140) > 1){
+                    throw new IllegalArgumentException("Only single 2D DDS textures are supported");
+                }
+                format = TextureFormats.fromDxgiFormat(data.get(INT, 128));
+                offset += DDS_DX10_HEADER_SIZE;
+            }else{
+                format = fromFourCC(fourCC);
+            }
+        }else{
+            format = fromMasks(pixelFlags, data.get(INT, 88), data.get(INT, 92), data.get(INT, 100));
+        }
+        if(format == WGPUTextureFormat_Undefined){
+            throw new IllegalArgumentException("Unsupported DDS pixel format");
+        }
+        return wrap(arena, data.asSlice(offset), format, width, height, mipLevelCount);
+    }
+
+    private static int fromFourCC(int fourCC){
+        if(fourCC == fourCC("DXT1")){
+            return WGPUTextureFormat_BC1RGBAUnorm;
+        }else if(fourCC == fourCC("DXT3")){
+            return WGPUTextureFormat_BC2RGBAUnorm;
+        }else if(fourCC == fourCC("DXT5")){
+            return WGPUTextureFormat_BC3RGBAUnorm;
+        }else if(fourCC == fourCC("ATI1") || fourCC == fourCC("BC4U")){
+            return WGPUTextureFormat_BC4RUnorm;
+        }else if(fourCC == fourCC("ATI2") || fourCC == fourCC("BC5U")){
+            return WGPUTextureFormat_BC5RGUnorm;
+        }
+        return WGPUTextureFormat_Undefined;
+    }
+
+    private static int fromMasks(int pixelFlags, int bitCount, int redMask, int blueMask){
+        if((pixelFlags & DDPF_RGB) != 0 && bitCount == 32){
+            if(redMask == 0xFF && blueMask == 0xFF0000){
+                return WGPUTextureFormat_RGBA8Unorm;
+            }else if(redMask == 0xFF0000 && blueMask == 0xFF){
+                return WGPUTextureFormat_BGRA8Unorm;
+            }
+        }else if((pixelFlags & (DDPF_RGB | DDPF_LUMINANCE)) != 0 && bitCount == 8 && redMask == 0xFF){
+            return WGPUTextureFormat_R8Unorm;
+        }
+        return WGPUTextureFormat_Undefined;
+    }
+
+    private static int fourCC(String code){
+        return code.charAt(0) | code.charAt(1) << 8 | code.charAt(2) << 16 | code.charAt(3) << 24;
+    }
+
+    private static long levelSize(int format, int width, int height, int mipLevel){
+        return (long) blocks(Math.max(1, width >> mipLevel), format) * blocks(Math.max(1, height >> mipLevel), format)
+                * TextureFormats.blockBytes(format);
+    }
+
+    private static void check(int format, int width, int height, int mipLevelCount){
+        if(TextureFormats.blockBytes(format) == 0){
+            throw new IllegalArgumentException("Unsupported texture format: " + format);
+        }
+        if(width < 1 || height < 1 || mipLevelCount < 1 || mipLevelCount > 32 - Integer.numberOfLeadingZeros(Math.max(width, height))){
+            throw new IllegalArgumentException("Invalid texture dimensions: " + width + "x" + height + ", " + mipLevelCount + " mips");
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.myworldvw.webgpu.texture;
+
+import static com.myworldvw.webgpu.binding.WebGPU.*;
+
+/**
+ * Texel block sizes of the formats texture files are loaded as, and the mapping of the
+ * Vulkan (KTX2) and DXGI (DDS) format enums onto them.
+ */
+final class TextureFormats {
+
+    private TextureFormats(){}
+
+    /**
+     * @return the size in bytes of one texel block, or 0 if the format can't be loaded
+     */
+    static int blockBytes(int format){
+        return switch(format){
+            case WGPUTextureFormat_R8Unorm, WGPUTextureFormat_R8Snorm -> 1;
+            case WGPUTextureFormat_RG8Unorm, WGPUTextureFormat_RG8Snorm, WGPUTextureFormat_R16Float -> 2;
+            case WGPUTextureFormat_RGBA8Unorm, WGPUTextureFormat_RGBA8UnormSrgb, WGPUTextureFormat_RGBA8Snorm,
+                    WGPUTextureFormat_BGRA8Unorm, WGPUTextureFormat_BGRA8UnormSrgb, WGPUTextureFormat_RG16Float,
+                    WGPUTextureFormat_R32Float, WGPUTextureFormat_RGB10A2Unorm, WGPUTextureFormat_RG11B10Ufloat,
+                    WGPUTextureFormat_RGB9E5Ufloat -> 4;
+            case WGPUTextureFormat_RGBA16Float, WGPUTextureFormat_RG32Float, WGPUTextureFormat_BC1RGBAUnorm,
+                    WGPUTextureFormat_BC1RGBAUnormSrgb, WGPUTextureFormat_BC4RUnorm, WGPUTextureFormat_BC4RSnorm -> 8;
+            case WGPUTextureFormat_RGBA32Float, WGPUTextureFormat_BC2RGBAUnorm, WGPUTextureFormat_BC2RGBAUnormSrgb,
+                    WGPUTextureFormat_BC3RGBAUnorm, WGPUTextureFormat_BC3RGBAUnormSrgb, WGPUTextureFormat_BC5RGUnorm,
+                    WGPUTextureFormat_BC5RGSnorm, WGPUTextureFormat_BC6HRGBUfloat, WGPUTextureFormat_BC6HRGBFloat,
+                    WGPUTextureFormat_BC7RGBAUnorm, WGPUTextureFormat_BC7RGBAUnormSrgb -> 16;
+            default -> 0;
+        };
+    }
+
+    /**
+     * @return the width and height in texels of one texel block - 4 for block-compressed formats, 1 otherwise
+     */
+    static int blockDimension(int format){
+        return format >= WGPUTextureFormat_BC1RGBAUnorm && format <= WGPUTextureFormat_BC7RGBAUnormSrgb ? 4 : 1;
+    }
+
+    /**
+     * @return true for the 8-bit per channel formats mip levels can be generated for on the CPU
+     */
+    static boolean canGenerateMips(int format){
+        return switch(format){
+            case WGPUTextureFormat_R8Unorm, WGPUTextureFormat_RG8Unorm, WGPUTextureFormat_RGBA8Unorm,
+                    WGPUTextureFormat_RGBA8UnormSrgb, WGPUTextureFormat_BGRA8Unorm, WGPUTextureFormat_BGRA8UnormSrgb -> true;
+            default -> false;
+        };
+    }
+
+    static boolean isSrgb(int format){
+        return format == WGPUTextureFormat_RGBA8UnormSrgb || format == WGPUTextureFormat_BGRA8UnormSrgb;
+    }
+
+    /**
+     * @return the texture format of a KTX2 {@code vkFormat}, or {@code Undefined}
+     */
+    static int fromVkFormat(int vkFormat){
+        return switch(vkFormat){
+            case 9 -> WGPUTextureFormat_R8Unorm;
+            case 10 -> WGPUTextureFormat_R8Snorm;
+            case 16 -> WGPUTextureFormat_RG8Unorm;
+            case 17 -> WGPUTextureFormat_RG8Snorm;
+            case 37 -> WGPUTextureFormat_RGBA8Unorm;
+            case 38 -> WGPUTextureFormat_RGBA8Snorm;
+            case 43 -> WGPUTextureFormat_RGBA8UnormSrgb;
+            case 44 -> WGPUTextureFormat_BGRA8Unorm;
+            case 50 -> WGPUTextureFormat_BGRA8UnormSrgb;
+            case 64 -> WGPUTextureFormat_RGB10A2Unorm;
+            case 76 -> WGPUTextureFormat_R16Float;
+            case 83 -> WGPUTextureFormat_RG16Float;
+            case 97 -> WGPUTextureFormat_RGBA16Float;
+            case 100 -> WGPUTextureFormat_R32Float;
+            case 103 -> WGPUTextureFormat_RG32Float;
+            case 109 -> WGPUTextureFormat_RGBA32Float;
+            case 122 -> WGPUTextureFormat_RG11B10Ufloat;
+            case 123 -> WGPUTextureFormat_RGB9E5Ufloat;
+            case 133 -> WGPUTextureFormat_BC1RGBAUnorm;
+            case 134 -> WGPUTextureFormat_BC1RGBAUnormSrgb;
+            case 135 -> WGPUTextureFormat_BC2RGBAUnorm;
+            case 136 -> WGPUTextureFormat_BC2RGBAUnormSrgb;
+            case 137 -> WGPUTextureFormat_BC3RGBAUnorm;
+            case 138 -> WGPUTextureFormat_BC3RGBAUnormSrgb;
+            case 139 -> WGPUTextureFormat_BC4RUnorm;
+            case 140 -> WGPUTextureFormat_BC4RSnorm;
+            case 141 -> WGPUTextureFormat_BC5RGUnorm;
+            case 142 -> WGPUTextureFormat_BC5RGSnorm;
+            case 143 -> WGPUTextureFormat_BC6HRGBUfloat;
+            case 144 -> WGPUTextureFormat_BC6HRGBFloat;
+            case 145 -> WGPUTextureFormat_BC7RGBAUnorm;
+            case 146 -> WGPUTextureFormat_BC7RGBAUnormSrgb;
+            default -> WGPUTextureFormat_Undefined;
+        };
+    }
+
+    /**
+     * @return the texture format of a DDS DX10 header's {@code dxgiFormat}, or {@code Undefined}
+     */
+    static int fromDxgiFormat(int dxgiFormat){
+        return switch(dxgiFormat){
+            case 2 -> WGPUTextureFormat_RGBA32Float;
+            case 10 -> WGPUTextureFormat_RGBA16Float;
+            case 16 -> WGPUTextureFormat_RG32Float;
+            case 24 -> WGPUTextureFormat_RGB10A2Unorm;
+            case 26 -> WGPUTextureFormat_RG11B10Ufloat;
+            case 28 -> WGPUTextureFormat_RGBA8Unorm;
+            case 29 -> WGPUTextureFormat_RGBA8UnormSrgb;
+            case 31 -> WGPUTextureFormat_RGBA8Snorm;
+            case 34 -> WGPUTextureFormat_RG16Float;
+            case 41 -> WGPUTextureFormat_R32Float;
+            case 49 -> WGPUTextureFormat_RG8Unorm;
+            case 51 -> WGPUTextureFormat_RG8Snorm;
+            case 54 -> WGPUTextureFormat_R16Float;
+            case 61 -> WGPUTextureFormat_R8Unorm;
+            case 63 -> WGPUTextureFormat_R8Snorm;
+            case 67 -> WGPUTextureFormat_RGB9E5Ufloat;
+            case 71 -> WGPUTextureFormat_BC1RGBAUnorm;
+            case 72 -> WGPUTextureFormat_BC1RGBAUnormSrgb;
+            case 74 -> WGPUTextureFormat_BC2RGBAUnorm;
+            case 75 -> WGPUTextureFormat_BC2RGBAUnormSrgb;
+            case 77 -> WGPUTextureFormat_BC3RGBAUnorm;
+            case 78 -> WGPUTextureFormat_BC3RGBAUnormSrgb;
+            case 80 -> WGPUTextureFormat_BC4RUnorm;
+            case 81 -> WGPUTextureFormat_BC4RSnorm;
+            case 83 -> WGPUTextureFormat_BC5RGUnorm;
+            case 84 -> WGPUTextureFormat_BC5RGSnorm;
+            case 95 -> WGPUTextureFormat_BC6HRGBUfloat;
+            case 96 -> WGPUTextureFormat_BC6HRGBFloat;
+            case 87 -> WGPUTextureFormat_BGRA8Unorm;
+            case 91 -> WGPUTextureFormat_BGRA8UnormSrgb;
+            case 98 -> WGPUTextureFormat_BC7RGBAUnorm;
+            case 99 -> WGPUTextureFormat_BC7RGBAUnormSrgb;
+            default -> WGPUTextureFormat_Undefined;
+        };
+    }
+}
@@ -0,0 +1,432 @@
+package com.myworldvw.webgpu.texture;
+
+import com.myworldvw.webgpu.WGPUBufferDescriptor;
+import com.myworldvw.webgpu.WGPUExtent3D;
+import com.myworldvw.webgpu.WGPUImageCopyBuffer;
+import com.myworldvw.webgpu.WGPUImageCopyTexture;
+import com.myworldvw.webgpu.WGPUOrigin3D;
+import com.myworldvw.webgpu.WGPUTextureDataLayout;
+import com.myworldvw.webgpu.WGPUTextureDescriptor;
+import com.myworldvw.webgpu.async.CallbackDispatcher;
+import com.myworldvw.webgpu.wgpu.wgpu_h;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import static com.myworldvw.webgpu.webgpu_h.*;
+
+/**
+ * Uploads {@link TextureFile}s to 2D textures through a small ring of staging buffers.
+ * <p>
+ * {@code wgpuCommandEncoderCopyBufferToTexture} needs every row of the source to start at a
+ * multiple of {@link #BYTES_PER_ROW_ALIGNMENT} bytes. The loader copies the rows of each mip
+ * level from the file mapping straight into the mapped memory of a {@code MapWrite | CopySrc}
+ * staging buffer at that pitch, splitting the rows across a fork-join pool, and records one
+ * copy per tile - the rows that fit in a staging buffer. Tiles of small levels share a buffer.
+ * Once a buffer is full it is submitted and mapped again for reuse, while the next buffer is
+ * filled. Texel data never touches the Java heap, and however big the texture, the loader
+ * holds on to no more than {@code stagingBuffers x tileSize} bytes of staging memory.
+ * <p>
+ * If the texture has more mip levels than the file and the format is 8 bits per channel, the
+ * missing levels are generated on the CPU with a box filter, each from the previous one, so
+ * only two generated levels are held in memory at a time.
+ * <p>
+ * Waiting for a staging buffer to become available polls the device. A TextureLoader is not
+ * thread safe - use it from one loading thread.
+ */
+public final class TextureLoader implements AutoCloseable {
+
+    public static final int BYTES_PER_ROW_ALIGNMENT = 256;
+
+    public static final long DEFAULT_TILE_SIZE = 16 * 1024 * 1024;
+
+    public static final int DEFAULT_STAGING_BUFFERS = 2;
+
+    private static final long ROWS_PER_TASK_BYTES = 256 * 1024;
+
+    /**
+     * @param bytesUploaded the texel bytes copied to staging memory, not counting row padding
+     * @param submissions the number of staging buffers submitted
+     * @param levelsGenerated the number of mip levels generated on the CPU
+     * @param repackNanos the time spent copying rows into staging memory
+     * @param mipNanos the time spent generating mip levels
+     * @param stallNanos the time spent waiting for a staging buffer to be mapped again
+     */
+    public record Statistics(long bytesUploaded, long submissions, long levelsGenerated, long repackNanos,
+                             long mipNanos, long stallNanos){
+
+        /**
+         * @return the throughput of copying rows into staging memory, in gigabytes per second
+         */
+        public double repackGigabytesPerSecond(){
+            return repackNanos > 0 ? (double) bytesUploaded / repackNanos : 0;
+        }
+    }
+
+    private static final class Staging {
+        final MemorySegment buffer;
+        MemorySegment mapped;
+        CompletableFuture<Integer> ready;
+
+        Staging(MemorySegment buffer){
+            this.buffer = buffer;
+        }
+    }
+
+    private final MemorySegment device;
+    private final MemorySegment queue;
+    private final ForkJoinPool pool;
+    private final long tileSize;
+
+    private final Arena arena = Arena.ofShared();
+    private final MemorySegment bufferDescriptor;
+    private final MemorySegment source;
+    private final MemorySegment destination;
+    private final MemorySegment copySize;
+    private final MemorySegment commands;
+
+    private final Staging[] staging;
+    private int nextStaging;
+    private Staging current;
+    private MemorySegment encoder;
+    private long cursor;
+
+    private long bytesUploaded;
+    private long submissions;
+    private long levelsGenerated;
+    private long repackNanos;
+    private long mipNanos;
+    private long stallNanos;
+    private boolean closed;
+
+    public TextureLoader(MemorySegment device, MemorySegment queue){
+        this(device, queue, ForkJoinPool.commonPool(), DEFAULT_TILE_SIZE, DEFAULT_STAGING_BUFFERS);
+    }
+
+    /**
+     * @param pool splits repacking and mip generation, or null to do both on the calling thread
+     * @param tileSize the size of each staging buffer, a multiple of {@link #BYTES_PER_ROW_ALIGNMENT}
+     *                 at least as big as one aligned row of the widest level
+     * @param stagingBuffers the number of staging buffers, at least 2 to fill one while another is copied
+     */
+    public TextureLoader(MemorySegment device, MemorySegment queue, ForkJoinPool pool, long tileSize, int stagingBuffers){
+        if(tileSize < BYTES_PER_ROW_ALIGNMENT || tileSize % BYTES_PER_ROW_ALIGNMENT != 0){
+            throw new IllegalArgumentException("Tile size must be a positive multiple of " + BYTES_PER_ROW_ALIGNMENT + ": " + tileSize);
+        }
+        if(stagingBuffers < 1){
+            throw new IllegalArgumentException("Staging buffers must be at least 1: " + stagingBuffers);
+        }
+        this.device = device;
+        this.queue = queue;
+        this.pool = pool;
+        this.tileSize = tileSize;
+        staging = new Staging[stagingBuffers];
+
+        bufferDescriptor = WGPUBufferDescriptor.allocate(arena);
+        WGPUBufferDescriptor.label$set(bufferDescriptor, arena.allocateUtf8String("TextureLoader staging"));
+        WGPUBufferDescriptor.usage$set(bufferDescriptor, WGPUBufferUsage_MapWrite() | WGPUBufferUsage_CopySrc());
+        WGPUBufferDescriptor.size$set(bufferDescriptor, tileSize);
+        WGPUBufferDescriptor.mappedAtCreation$set(bufferDescriptor, 1);
+        source = WGPUImageCopyBuffer.allocate(arena);
+        destination = WGPUImageCopyTexture.allocate(arena);
+        WGPUImageCopyTexture.aspect$set(destination, WGPUTextureAspect_All());
+        copySize = WGPUExtent3D.allocate(arena);
+        WGPUExtent3D.depthOrArrayLayers$set(copySize, 1);
+        commands = arena.allocateArray(WGPUCommandBuffer, 1);
+    }
+
+    /**
+     * Loads a KTX2 or DDS file into a new texture.
+     * @see #load(TextureFile, int, boolean)
+     */
+    public MemorySegment load(Path path, int usage, boolean generateMips) throws IOException {
+        try(var file = TextureFile.open(path)){
+            return load(file, usage, generateMips);
+        }
+    }
+
+    /**
+     * Creates a texture for the file and uploads it. The upload has been submitted when this
+     * returns, so the file may be closed.
+     * @param usage the texture's usage; {@code CopyDst} is added
+     * @param generateMips whether to give a file with a single level a full mip chain, if its
+     *                     format allows generating mip levels
+     * @return the texture, owned by the caller
+     */
+    public MemorySegment load(TextureFile file, int usage, boolean generateMips){
+        var mipLevelCount = file.mipLevelCount();
+        if(generateMips && mipLevelCount == 1 && TextureFormats.canGenerateMips(file.format())){
+            mipLevelCount = 32 - Integer.numberOfLeadingZeros(Math.max(file.width(), file.height()));
+        }
+        try(var arena = Arena.ofConfined()){
+            var descriptor = WGPUTextureDescriptor.allocate(arena);
+            WGPUTextureDescriptor.label$set(descriptor, arena.allocateUtf8String("TextureLoader"));
+            WGPUTextureDescriptor.usage$set(descriptor, usage | WGPUTextureUsage_CopyDst());
+            WGPUTextureDescriptor.dimension$set(descriptor, WGPUTextureDimension_2D());
+            var size = WGPUTextureDescriptor.size$slice(descriptor);
+            WGPUExtent3D.width$set(size, file.width());
+            WGPUExtent3D.height$set(size, file.height());
+            WGPUExtent3D.depthOrArrayLayers$set(size, 1);
+            WGPUTextureDescriptor.format$set(descriptor, file.format());
+            WGPUTextureDescriptor.mipLevelCount$set(descriptor, mipLevelCount);
+            WGPUTextureDescriptor.sampleCount$set(descriptor, 1);
+            var texture = wgpuDeviceCreateTexture(device, descriptor);
+            upload(file, texture);
+            return texture;
+        }
+    }
+
+    /**
+     * Uploads the file's mip levels into a texture of the same format and size, and generates
+     * any further levels the texture has if the format allows it.
+     */
+    public void upload(TextureFile file, MemorySegment texture){
+        ensureOpen();
+        var mipLevelCount = Math.min(file.mipLevelCount(), wgpuTextureGetMipLevelCount(texture));
+        for(int level = 0; level < mipLevelCount; level++){
+            uploadLevel(texture, level, file.format(), file.level(level), file.bytesPerRow(level), file.rows(level), file.levelWidth(level));
+        }
+
+        var textureLevels = wgpuTextureGetMipLevelCount(texture);
+        if(mipLevelCount < textureLevels && TextureFormats.canGenerateMips(file.format())){
+            generate(file, texture, mipLevelCount, textureLevels);
+        }
+        flush();
+    }
+
+    /**
+     * Submits the staging buffer being filled, if any. Uploads are otherwise submitted when a
+     * staging buffer fills up and at the end of {@link #upload(TextureFile, MemorySegment)}.
+     */
+    public void flush(){
+        if(current == null){
+            return;
+        }
+        wgpuBufferUnmap(current.buffer);
+        current.mapped = null;
+        var command = wgpuCommandEncoderFinish(encoder, MemorySegment.NULL);
+        commands.setAtIndex(WGPUCommandBuffer, 0, command);
+        wgpuQueueSubmit(queue, 1, commands);
+        wgpuCommandBufferRelease(command);
+        wgpuCommandEncoderRelease(encoder);
+        encoder = null;
+        current.ready = CallbackDispatcher.mapAsync(current.buffer, WGPUMapMode_Write(), 0, tileSize);
+        current = null;
+        submissions++;
+    }
+
+    public Statistics statistics(){
+        return new Statistics(bytesUploaded, submissions, levelsGenerated, repackNanos, mipNanos, stallNanos);
+    }
+
+    /**
+     * Submits pending uploads, waits for the staging buffers and releases them.
+     */
+    @Override
+    public void close(){
+        if(closed){
+            return;
+        }
+        flush();
+        closed = true;
+        for(var buffer : staging){
+            if(buffer != null){
+                await(buffer.ready);
+                wgpuBufferDestroy(buffer.buffer);
+                wgpuBufferRelease(buffer.buffer);
+            }
+        }
+        arena.close();
+    }
+
+    /**
+     * Copies {@code rows} rows of {@code rowBytes} bytes between segments with different row
+     * pitches, splitting the rows across the pool.
+     * @param pool the pool to split the copy across, or null to copy on the calling thread
+     */
+    public static void repack(ForkJoinPool pool, MemorySegment source, long sourceBytesPerRow,
+                              MemorySegment target, long targetBytesPerRow, long rowBytes, int rows){
+        var task = new RowCopy(source, sourceBytesPerRow, target, targetBytesPerRow, rowBytes, 0, rows);
+        if(pool == null || rows * rowBytes <= ROWS_PER_TASK_BYTES){
+            task.compute();
+        }else{
+            pool.invoke(task);
+        }
+    }
+
+    /**
+     * @return {@code bytesPerRow} rounded up to {@link #BYTES_PER_ROW_ALIGNMENT}
+     */
+    public static long alignedBytesPerRow(long bytesPerRow){
+        return (bytesPerRow + BYTES_PER_ROW_ALIGNMENT - 1) & -BYTES_PER_ROW_ALIGNMENT;
+    }
+
+    private void uploadLevel(MemorySegment texture, int level, int format, MemorySegment data, long bytesPerRow, int rows, int width){
+        var pitch = alignedBytesPerRow(bytesPerRow);
+        if(pitch > tileSize){
+            throw new IllegalArgumentException("A row of mip level " + level + " (" + pitch + " bytes) is larger than the tile size " + tileSize);
+        }
+        var blockDimension = TextureFormats.blockDimension(format);
+
+        var row = 0;
+        while(row < rows){
+            if(current == null){
+                acquireStaging();
+            }
+            var fit = (int) Math.min(rows - row, (tileSize - cursor) / pitch);
+            if(fit == 0){
+                flush();
+                continue;
+            }
+
+            var start = System.nanoTime();
+            repack(pool, data.asSlice(row * bytesPerRow, fit * bytesPerRow), bytesPerRow,
+                    current.mapped.asSlice(cursor, fit * pitch), pitch, bytesPerRow, fit);
+            repackNanos += System.nanoTime() - start;
+
+            var layout = WGPUImageCopyBuffer.layout$slice(source);
+            WGPUTextureDataLayout.offset$set(layout, cursor);
+            WGPUTextureDataLayout.bytesPerRow$set(layout, (int) pitch);
+            WGPUTextureDataLayout.rowsPerImage$set(layout, fit);
+            WGPUImageCopyBuffer.buffer$set(source, current.buffer);
+            WGPUImageCopyTexture.texture$set(destination, texture);
+            WGPUImageCopyTexture.mipLevel$set(destination, level);
+            WGPUOrigin3D.y$set(WGPUImageCopyTexture.origin$slice(destination), row * blockDimension);
+            // Copies of compressed formats cover whole blocks, even where the level's edge doesn't
+            WGPUExtent3D.width$set(copySize, TextureFile.blocks(width, format) * blockDimension);
+            WGPUExtent3D.height$set(copySize, fit * blockDimension);
+            wgpuCommandEncoderCopyBufferToTexture(encoder, source, destination, copySize);
+
+            cursor += fit * pitch;
+            bytesUploaded += fit * bytesPerRow;
+            row += fit;
+        }
+    }
+
+    private void generate(TextureFile file, MemorySegment texture, int firstLevel, int mipLevelCount){
+        var channels = TextureFormats.blockBytes(file.format());
+        var srgb = TextureFormats.isSrgb(file.format());
+        var levelSource = file.level(firstLevel - 1);
+        var width = file.levelWidth(firstLevel - 1);
+        var height = file.levelHeight(firstLevel - 1);
+        Arena previous = null;
+        try{
+            for(int level = firstLevel; level < mipLevelCount; level++){
+                var targetWidth = Math.max(1, width / 2);
+                var targetHeight = Math.max(1, height / 2);
+                var levelArena = Arena.ofShared();
+                MemorySegment target;
+                try{
+                    target = levelArena.allocate((long) targetWidth * targetHeight * channels);
+
+                    var start = System.nanoTime();
+                    MipGenerator.downsample(pool, levelSource, width, height, target, channels, srgb);
+                    mipNanos += System.nanoTime() - start;
+                    levelsGenerated++;
+
+                    uploadLevel(texture, level, file.format(), target, (long) targetWidth * channels, targetHeight, targetWidth);
+                }catch(RuntimeException | Error e){
+                    // Not yet handed over to previous, so the finally below won't close it
+                    levelArena.close();
+                    throw e;
+                }
+                if(previous != null){
+                    previous.close();
+                }
+                previous = levelArena;
+                levelSource = target;
+                width = targetWidth;
+                height = targetHeight;
+            }
+        }finally{
+            if(previous != null){
+                previous.close();
+            }
+        }
+    }
+
+    private void acquireStaging(){
+        var index = nextStaging;
+        nextStaging = (nextStaging + 1) % staging.length;
+        var buffer = staging[index];
+        if(buffer == null){
+            buffer = new Staging(wgpuDeviceCreateBuffer(device, bufferDescriptor));
+            staging[index] = buffer;
+        }else{
+            var status = await(buffer.ready);
+            buffer.ready = null;
+            if(status != WGPUBufferMapAsyncStatus_Success()){
+                throw new IllegalStateException("Failed to map staging buffer for reuse, status " + status);
+            }
+        }
+        buffer.mapped = wgpuBufferGetMappedRange(buffer.buffer, 0, tileSize).reinterpret(tileSize);
+        encoder = wgpuDeviceCreateCommandEncoder(device, MemorySegment.NULL);
+        current = buffer;
+        cursor = 0;
+    }
+
+    private int await(CompletableFuture<Integer> future){
+        if(future == null){
+            return WGPUBufferMapAsyncStatus_Success();
+        }
+        if(!future.isDone()){
+            var start = System.nanoTime();
+            while(!future.isDone()){
+                wgpu_h.wgpuDevicePoll(device, 1, MemorySegment.NULL);
+            }
+            stallNanos += System.nanoTime() - start;
+        }
+        return future.join();
+    }
+
+    private void ensureOpen(){
+        if(closed){
+            throw new IllegalStateException("Texture loader is closed");
+        }
+    }
+
+    private static final class RowCopy extends RecursiveAction {
+
+        final MemorySegment source;
+        final long sourceBytesPerRow;
+        final MemorySegment target;
+        final long targetBytesPerRow;
+        final long rowBytes;
+        final int first;
+        final int last;
+
+        RowCopy(MemorySegment source, long sourceBytesPerRow, MemorySegment target, long targetBytesPerRow,
+                long rowBytes, int first, int last){
+            this.source = source;
+            this.sourceBytesPerRow = sourceBytesPerRow;
+            this.target = target;
+            this.targetBytesPerRow = targetBytesPerRow;
+            this.rowBytes = rowBytes;
+            this.first = first;
+            this.last = last;
+        }
+
+        @Override
+        protected void compute(){
+            var rows = last - first;
+            if(rows > 1 && rows * rowBytes > ROWS_PER_TASK_BYTES){
+                var middle = first + rows / 2;
+                invokeAll(new RowCopy(source, sourceBytesPerRow, target, targetBytesPerRow, rowBytes, first, middle),
+                        new RowCopy(source, sourceBytesPerRow, target, targetBytesPerRow, rowBytes, middle, last));
+                return;
+            }
+            if(sourceBytesPerRow == rowBytes && targetBytesPerRow == rowBytes){
+                MemorySegment.copy(source, first * rowBytes, target, first * rowBytes, rows * rowBytes);
+                return;
+            }
+            for(long row = first; row < last; row++){
+                MemorySegment.copy(source, row * sourceBytesPerRow, target, row * targetBytesPerRow, rowBytes);
+            }
+        }
+    }
+}
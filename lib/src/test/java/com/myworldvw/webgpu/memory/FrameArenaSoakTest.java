@@ -0,0 +1,82 @@
+package com.myworldvw.webgpu.memory;
+
+import com.myworldvw.webgpu.*;
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.SegmentAllocator;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs 100k simulated frames through a {@link FrameArena} and checks that native memory stays
+ * flat once the arena has settled.
+ * <p>
+ * Native memory is measured independently of the arena's own counters: memory allocated
+ * through an {@link java.lang.foreign.Arena} is reserved against the JVM's direct memory, which
+ * the {@code direct} {@link BufferPoolMXBean} reports - so arenas that are never closed, or
+ * blocks the arena forgets about, show up there even if the arena's bookkeeping looks right.
+ */
+class FrameArenaSoakTest {
+
+    private static final int SOAK_FRAMES = 100_000;
+    private static final int SETTLE_FRAMES = 16;
+
+    /**
+     * The descriptors a small frame allocates: a render pass, a few bind groups whose entry
+     * count varies from frame to frame, and a label.
+     */
+    private static void allocateFrame(SegmentAllocator allocator, int frame){
+        var pass = WGPURenderPassDescriptor.allocate(allocator);
+        var attachment = WGPURenderPassColorAttachment.allocate(allocator);
+        WGPURenderPassDescriptor.colorAttachments$set(pass, attachment);
+        for(int i = 0; i < 4; i++){
+            var group = WGPUBindGroupDescriptor.allocate(allocator);
+            var entries = WGPUBindGroupEntry.allocateArray(1 + (frame + i) % 5, allocator);
+            WGPUBindGroupDescriptor.entries$set(group, entries);
+        }
+        WGPUCommandEncoderDescriptor.label$set(WGPUCommandEncoderDescriptor.allocate(allocator),
+                allocator.allocateUtf8String("frame encoder"));
+    }
+
+    private static long nativeMemoryUsed(){
+        return ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+                .filter(pool -> pool.getName().equals("direct"))
+                .mapToLong(BufferPoolMXBean::getMemoryUsed)
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("No direct buffer pool"));
+    }
+
+    @Test
+    void soakKeepsNativeMemoryFlat(){
+        var beforeArena = nativeMemoryUsed();
+        try(var frames = new FrameArena(FrameArena.DEFAULT_BLOCK_SIZE, 3)){
+            // Make sure the probe actually sees the arena's blocks
+            assertTrue(nativeMemoryUsed() - beforeArena >= frames.reservedBytes(),
+                    "Native memory probe does not account for FrameArena's blocks");
+
+            for(int i = 0; i < SETTLE_FRAMES; i++){
+                frames.nextFrame();
+                allocateFrame(frames, i);
+            }
+            var settledMemory = nativeMemoryUsed();
+            var settledBlocks = frames.blockAllocations();
+            var settledBytes = frames.reservedBytes();
+
+            for(int i = SETTLE_FRAMES; i < SOAK_FRAMES; i++){
+                frames.nextFrame();
+                allocateFrame(frames, i);
+            }
+
+            // Less than one block of slack for whatever else the JVM reserves meanwhile; leaking
+            // even a few bytes a frame adds up to far more over the soak
+            var growth = nativeMemoryUsed() - settledMemory;
+            assertTrue(growth < FrameArena.DEFAULT_BLOCK_SIZE,
+                    "Native memory grew by " + growth + " bytes over " + (SOAK_FRAMES - SETTLE_FRAMES) + " frames");
+            assertEquals(settledBlocks, frames.blockAllocations(), "FrameArena kept reserving blocks");
+            assertEquals(settledBytes, frames.reservedBytes(), "FrameArena kept growing");
+        }
+        assertTrue(nativeMemoryUsed() <= beforeArena, "FrameArena did not free its blocks on close");
+    }
+}
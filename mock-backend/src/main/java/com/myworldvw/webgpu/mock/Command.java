@@ -0,0 +1,19 @@
+package com.myworldvw.webgpu.mock;
+
+import java.util.List;
+
+/**
+ * One recorded call into the mock backend.
+ * @param function the name of the WebGPU function, e.g. {@code wgpuRenderPassEncoderDraw}
+ * @param arguments the raw arguments; pointers and handles are recorded as their {@code Long} address
+ * @param thread the id of the calling thread
+ */
+public record Command(String function, List<Object> arguments, long thread){
+
+    /**
+     * @return the address of the first argument - for object methods, the handle the call was made on
+     */
+    public long target(){
+        return arguments.isEmpty() || !(arguments.get(0) instanceof Long address) ? 0 : address;
+    }
+}
@@ -0,0 +1,10 @@
+package com.myworldvw.webgpu.mock;
+
+/**
+ * A snapshot of a live mock object, for leak checks.
+ * @param type the object type
+ * @param address the handle value returned to the application
+ * @param label the label the object was created with, if any
+ * @param references the outstanding reference count
+ */
+public record Handle(HandleType type, long address, String label, int references){}
@@ -0,0 +1,70 @@
+package com.myworldvw.webgpu.mock;
+
+import java.lang.foreign.MemorySegment;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Maps fake handle addresses to mock objects. Handles are never reused, so a stale handle
+ * is always detected instead of aliasing a newer object.
+ */
+final class HandleTable {
+
+    // Start well above page zero and keep handles 16-byte aligned like real allocations
+    private static final long FIRST_HANDLE = 0x10_0000;
+    private static final long HANDLE_STRIDE = 16;
+
+    private final AtomicLong next = new AtomicLong(FIRST_HANDLE);
+    private final ConcurrentHashMap<Long, MockObject> objects = new ConcurrentHashMap<>();
+
+    MemorySegment add(MockObject object){
+        object.address = next.getAndAdd(HANDLE_STRIDE);
+        objects.put(object.address, object);
+        return MemorySegment.ofAddress(object.address);
+    }
+
+    MockObject get(long address){
+        return objects.get(address);
+    }
+
+    boolean isIssued(long address){
+        return address >= FIRST_HANDLE && address < next.get() && (address - FIRST_HANDLE) % HANDLE_STRIDE == 0;
+    }
+
+    /**
+     * Adds a reference to a live object, or re-registers an object whose references had all
+     * been released (used for objects the native API hands out repeatedly, like the queue).
+     */
+    MemorySegment reference(MockObject object){
+        if(object.references.getAndIncrement() == 0){
+            objects.put(object.address, object);
+        }
+        return MemorySegment.ofAddress(object.address);
+    }
+
+    /**
+     * @return true if this released the last reference and freed the object
+     */
+    boolean release(MockObject object){
+        if(object.references.decrementAndGet() == 0){
+            objects.remove(object.address);
+            object.free();
+            return true;
+        }
+        return false;
+    }
+
+    List<Handle> live(){
+        return objects.values().stream()
+                .map(o -> new Handle(o.type, o.address, o.label, o.references.get()))
+                .toList();
+    }
+
+    void clear(){
+        for(var object : objects.values()){
+            object.free();
+        }
+        objects.clear();
+    }
+}
@@ -0,0 +1,29 @@
+package com.myworldvw.webgpu.mock;
+
+/**
+ * The WebGPU object types the mock backend hands out handles for.
+ */
+public enum HandleType {
+    INSTANCE,
+    ADAPTER,
+    SURFACE,
+    DEVICE,
+    QUEUE,
+    BUFFER,
+    TEXTURE,
+    TEXTURE_VIEW,
+    SAMPLER,
+    SHADER_MODULE,
+    BIND_GROUP_LAYOUT,
+    BIND_GROUP,
+    PIPELINE_LAYOUT,
+    RENDER_PIPELINE,
+    COMPUTE_PIPELINE,
+    QUERY_SET,
+    COMMAND_ENCODER,
+    COMMAND_BUFFER,
+    RENDER_PASS_ENCODER,
+    COMPUTE_PASS_ENCODER,
+    RENDER_BUNDLE_ENCODER,
+    RENDER_BUNDLE
+}
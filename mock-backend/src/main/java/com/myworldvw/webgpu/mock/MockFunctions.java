@@ -0,0 +1,2024 @@
+package com.myworldvw.webgpu.mock;
+
+import com.myworldvw.webgpu.*;
+import com.myworldvw.webgpu.mock.MockObject.*;
+
+import java.lang.foreign.*;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static com.myworldvw.webgpu.binding.WebGPU.*;
+import static com.myworldvw.webgpu.wgpu.Wgpu.WGPUNativeQueryType_PipelineStatistics;
+import static java.lang.foreign.ValueLayout.*;
+
+/**
+ * The Java implementations of the {@code webgpu.h} entry points and of the {@code wgpu.h}
+ * extensions for polling, submission indices, multi-draw-indirect, push constants and
+ * pipeline statistics queries.
+ * <p>
+ * Every method named {@code wgpu*} is exported under its own name; its {@link FunctionDescriptor}
+ * is derived from the Java signature ({@link MemorySegment} for pointers and handles, {@code int}
+ * for enums, flags and {@code WGPUBool}, {@code long} for {@code size_t} and {@code uint64_t}).
+ * The {@code *Reference}/{@code *Release} functions of every object type are provided generically.
+ * <p>
+ * Commands are validated when they are called, roughly following the WebGPU specification, and
+ * encoded commands are executed when their command buffer is submitted: copies move real bytes
+ * between buffer and texture memory, render pass clears fill the attachment, and timestamp
+ * queries record {@link System#nanoTime()}. Nothing is rasterized.
+ */
+final class MockFunctions {
+
+    private static final long MAX_BUFFER_SIZE = 256L * 1024 * 1024;
+    private static final int MAX_TEXTURE_DIMENSION = 8192;
+    private static final int MAX_COLOR_ATTACHMENTS = 8;
+    private static final int MAX_BIND_GROUPS = 4;
+    private static final int MAX_VERTEX_BUFFERS = 8;
+    private static final int MAX_WORKGROUPS_PER_DIMENSION = 65535;
+    private static final int MAX_QUERIES = 4096;
+    private static final int COPY_BYTES_PER_ROW_ALIGNMENT = 256;
+    private static final int QUERY_RESOLVE_ALIGNMENT = 256;
+
+    private static final int[] SURFACE_FORMATS = {
+            WGPUTextureFormat_BGRA8Unorm, WGPUTextureFormat_BGRA8UnormSrgb,
+            WGPUTextureFormat_RGBA8Unorm, WGPUTextureFormat_RGBA8UnormSrgb
+    };
+    private static final int[] PRESENT_MODES = {
+            WGPUPresentMode_Fifo, WGPUPresentMode_FifoRelaxed, WGPUPresentMode_Immediate, WGPUPresentMode_Mailbox
+    };
+    private static final int[] ALPHA_MODES = {WGPUCompositeAlphaMode_Opaque};
+
+    private static final Pattern LIFECYCLE = Pattern.compile("wgpu(\\w+?)(Reference|Release)");
+    private static final Map<String, Method> FUNCTIONS = Arrays.stream(MockFunctions.class.getDeclaredMethods())
+            .filter(m -> m.getName().startsWith("wgpu") && !Modifier.isStatic(m.getModifiers()))
+            .collect(Collectors.toUnmodifiableMap(Method::getName, Function.identity()));
+
+    // Structs passed by value cannot be inferred from the Java signature
+    private static final Map<String, FunctionDescriptor> DESCRIPTORS = Map.of(
+            "wgpuSurfaceCapabilitiesFreeMembers", FunctionDescriptor.ofVoid(WGPUSurfaceCapabilities.$LAYOUT()));
+
+    private final MockWebGPU backend;
+    private final Map<Long, Arena> capabilityArenas = new ConcurrentHashMap<>();
+    private final Runnable draw;
+    private final Runnable dispatch;
+
+    MockFunctions(MockWebGPU backend){
+        this.backend = backend;
+        draw = backend::countDraw;
+        dispatch = backend::countDispatch;
+    }
+
+    /**
+     * @return the implementation of the named function bound to this backend, or null if the mock
+     * does not implement it
+     */
+    MethodHandle implementation(String name){
+        try{
+            var lookup = MethodHandles.lookup();
+            var method = FUNCTIONS.get(name);
+            if(method != null){
+                return lookup.unreflect(method).bindTo(this);
+            }
+            var lifecycle = LIFECYCLE.matcher(name);
+            if(lifecycle.matches()){
+                var type = handleType(lifecycle.group(1));
+                if(type != null){
+                    var target = lookup.findVirtual(MockFunctions.class, lifecycle.group(2).toLowerCase(),
+                            MethodType.methodType(void.class, HandleType.class, MemorySegment.class));
+                    return MethodHandles.insertArguments(target.bindTo(this), 0, type);
+                }
+            }
+            return null;
+        }catch(ReflectiveOperationException e){
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static FunctionDescriptor descriptor(String name, MethodType type){
+        var descriptor = DESCRIPTORS.get(name);
+        if(descriptor != null){
+            return descriptor;
+        }
+        var arguments = type.parameterList().stream()
+                .map(MockFunctions::layout)
+                .toArray(MemoryLayout[]::new);
+        return type.returnType() == void.class
+                ? FunctionDescriptor.ofVoid(arguments)
+                : FunctionDescriptor.of(layout(type.returnType()), arguments);
+    }
+
+    private static MemoryLayout layout(Class<?> type){
+        if(type == MemorySegment.class){
+            return ADDRESS;
+        }else if(type == int.class){
+            return JAVA_INT;
+        }else if(type == long.class){
+            return JAVA_LONG;
+        }else if(type == float.class){
+            return JAVA_FLOAT;
+        }else if(type == double.class){
+            return JAVA_DOUBLE;
+        }else if(type == short.class){
+            return JAVA_SHORT;
+        }
+        throw new IllegalArgumentException("No C equivalent for " + type);
+    }
+
+    private static HandleType handleType(String objectName){
+        try{
+            return HandleType.valueOf(objectName.replaceAll("([a-z])([A-Z])", "$1_$2").toUpperCase());
+        }catch(IllegalArgumentException e){
+            return null;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Object lifetime
+
+    void reference(HandleType type, MemorySegment handle){
+        var object = get(handle, MockObject.class, type);
+        if(object != null){
+            backend.handles.reference(object);
+        }
+    }
+
+    void release(HandleType type, MemorySegment handle){
+        var object = get(handle, MockObject.class, type);
+        if(object != null){
+            backend.handles.release(object);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Instance & adapter
+
+    MemorySegment wgpuCreateInstance(MemorySegment descriptor){
+        return backend.handles.add(new MockObject(HandleType.INSTANCE, null, null));
+    }
+
+    MemorySegment wgpuGetProcAddress(MemorySegment device, MemorySegment procName){
+        var name = string(procName);
+        var stub = name != null ? backend.stub(name) : null;
+        return stub != null ? stub : MemorySegment.NULL;
+    }
+
+    void wgpuInstanceRequestAdapter(MemorySegment instance, MemorySegment options, MemorySegment callback, MemorySegment userdata){
+        if(get(instance, MockObject.class, HandleType.INSTANCE) == null){
+            return;
+        }
+        var adapter = backend.handles.add(new MockObject(HandleType.ADAPTER, null, "Mock Adapter"));
+        // Like wgpu-native, adapter and device requests complete before the call returns
+        WGPURequestAdapterCallback.ofAddress(callback, Arena.global())
+                .apply(WGPURequestAdapterStatus_Success, adapter, MemorySegment.NULL, userdata);
+    }
+
+    MemorySegment wgpuInstanceCreateSurface(MemorySegment instance, MemorySegment descriptor){
+        if(get(instance, MockObject.class, HandleType.INSTANCE) == null){
+            return MemorySegment.NULL;
+        }
+        var desc = struct(descriptor, WGPUSurfaceDescriptor.$LAYOUT());
+        var surface = new Surface(desc != null ? string(WGPUSurfaceDescriptor.label$get(desc)) : null);
+        surface.valid = check(null, desc != null, "surface descriptor is null");
+        return backend.handles.add(surface);
+    }
+
+    void wgpuInstanceProcessEvents(MemorySegment instance){
+        if(get(instance, MockObject.class, HandleType.INSTANCE) != null){
+            backend.flush();
+        }
+    }
+
+    long wgpuAdapterEnumerateFeatures(MemorySegment adapter, MemorySegment features){
+        return enumerateFeatures(features);
+    }
+
+    int wgpuAdapterHasFeature(MemorySegment adapter, int feature){
+        return feature == WGPUFeatureName_TimestampQuery ? 1 : 0;
+    }
+
+    void wgpuAdapterRequestDevice(MemorySegment adapter, MemorySegment descriptor, MemorySegment callback, MemorySegment userdata){
+        if(get(adapter, MockObject.class, HandleType.ADAPTER) == null){
+            return;
+        }
+        var desc = struct(descriptor, WGPUDeviceDescriptor.$LAYOUT());
+        var device = desc != null
+                ? new Device(string(WGPUDeviceDescriptor.label$get(desc)),
+                    WGPUDeviceDescriptor.deviceLostCallback$get(desc), WGPUDeviceDescriptor.deviceLostUserdata$get(desc))
+                : new Device(null, MemorySegment.NULL, MemorySegment.NULL);
+        var handle = backend.handles.add(device);
+        WGPURequestDeviceCallback.ofAddress(callback, Arena.global())
+                .apply(WGPURequestDeviceStatus_Success, handle, MemorySegment.NULL, userdata);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Device
+
+    long wgpuDeviceEnumerateFeatures(MemorySegment device, MemorySegment features){
+        return enumerateFeatures(features);
+    }
+
+    int wgpuDeviceHasFeature(MemorySegment device, int feature){
+        return feature == WGPUFeatureName_TimestampQuery ? 1 : 0;
+    }
+
+    MemorySegment wgpuDeviceGetQueue(MemorySegment deviceHandle){
+        var device = get(deviceHandle, Device.class, HandleType.DEVICE);
+        if(device == null){
+            return MemorySegment.NULL;
+        }
+        synchronized(device){
+            if(device.queue == null){
+                device.queue = new Queue(device);
+                return backend.handles.add(device.queue);
+            }
+            return backend.handles.reference(device.queue);
+        }
+    }
+
+    void wgpuDeviceSetUncapturedErrorCallback(MemorySegment deviceHandle, MemorySegment callback, MemorySegment userdata){
+        var device = get(deviceHandle, Device.class, HandleType.DEVICE);
+        if(device != null){
+            device.errorCallback = callback;
+            device.errorUserdata = userdata;
+        }
+    }
+
+    void wgpuDevicePushErrorScope(MemorySegment deviceHandle, int filter){
+        var device = get(deviceHandle, Device.class, HandleType.DEVICE);
+        if(device != null){
+            synchronized(device.errorScopes){
+                device.errorScopes.push(new ErrorScope(filter));
+            }
+        }
+    }
+
+    void wgpuDevicePopErrorScope(MemorySegment deviceHandle, MemorySegment callback, MemorySegment userdata){
+        var device = get(deviceHandle, Device.class, HandleType.DEVICE);
+        if(device == null){
+            return;
+        }
+        ErrorScope scope;
+        synchronized(device.errorScopes){
+            scope = device.errorScopes.poll();
+        }
+        backend.callback(() -> {
+            if(scope == null){
+                backend.invokeErrorCallback(callback, WGPUErrorType_Unknown, "No error scope to pop", userdata);
+            }else if(scope.error == null){
+                backend.invokeErrorCallback(callback, WGPUErrorType_NoError, null, userdata);
+            }else{
+                backend.invokeErrorCallback(callback, scope.error.type(), scope.error.message(), userdata);
+            }
+        });
+    }
+
+    void wgpuDeviceDestroy(MemorySegment deviceHandle){
+        var device = get(deviceHandle, Device.class, HandleType.DEVICE);
+        if(device != null){
+            backend.loseDevice(device, WGPUDeviceLostReason_Destroyed, "Device was destroyed");
+        }
+    }
+
+    int wgpuDevicePoll(MemorySegment deviceHandle, int wait, MemorySegment wrappedSubmissionIndex){
+        if(get(deviceHandle, Device.class, HandleType.DEVICE) != null){
+            backend.flush();
+        }
+        // All submitted work executes during submission, so the queue is always empty
+        return 1;
+    }
+
+    MemorySegment wgpuDeviceCreateBuffer(MemorySegment deviceHandle, MemorySegment descriptor){
+        var device = get(deviceHandle, Device.class, HandleType.DEVICE);
+        if(device == null){
+            return MemorySegment.NULL;
+        }
+        var desc = struct(descriptor, WGPUBufferDescriptor.$LAYOUT());
+        if(!check(device, desc != null, "buffer descriptor is null")){
+            return invalid(new Buffer(device, null, 0, 0));
+        }
+        var label = string(WGPUBufferDescriptor.label$get(desc));
+        var usage = WGPUBufferDescriptor.usage$get(desc);
+        var size = WGPUBufferDescriptor.size$get(desc);
+        var mappedAtCreation = WGPUBufferDescriptor.mappedAtCreation$get(desc) != 0;
+
+        var valid = check(device, usage != 0, "buffer usage must not be empty")
+                && check(device, (usage & WGPUBufferUsage_MapRead) == 0
+                        || (usage & ~(WGPUBufferUsage_MapRead | WGPUBufferUsage_CopyDst)) == 0,
+                    "MapRead buffers may only be combined with CopyDst")
+                && check(device, (usage & WGPUBufferUsage_MapWrite) == 0
+                        || (usage & ~(WGPUBufferUsage_MapWrite | WGPUBufferUsage_CopySrc)) == 0,
+                    "MapWrite buffers may only be combined with CopySrc")
+                && check(device, size >= 0 && size <= MAX_BUFFER_SIZE, "buffer size " + size + " exceeds maxBufferSize")
+                && check(device, !mappedAtCreation || size % 4 == 0, "mappedAtCreation buffer size must be a multiple of 4");
+        if(!valid){
+            return invalid(new Buffer(device, label, 0, usage));
+        }
+
+        var buffer = new Buffer(device, label, size, usage);
+        if(mappedAtCreation){
+            buffer.mapState = WGPUBufferMapState_Mapped;
+            buffer.mapMode = WGPUMapMode_Write;
+            buffer.mapSize = size;
+        }
+        return backend.handles.add(buffer);
+    }
+
+    MemorySegment wgpuDeviceCreateTexture(MemorySegment deviceHandle, MemorySegment descriptor){
+        var device = get(deviceHandle, Device.class, HandleType.DEVICE);
+        if(device == null){
+            return MemorySegment.NULL;
+        }
+        var desc = struct(descriptor, WGPUTextureDescriptor.$LAYOUT());
+        if(!check(device, desc != null, "texture descriptor is null")){
+            return invalid(new Texture(device, null, 1, 1, 1, WGPUTextureFormat_Undefined,
+                    WGPUTextureDimension_2D, 1, 1, 0, null));
+        }
+        var size = WGPUTextureDescriptor.size$slice(desc);
+        var width = WGPUExtent3D.width$get(size);
+        var height = WGPUExtent3D.height$get(size);
+        var layers = WGPUExtent3D.depthOrArrayLayers$get(size);
+        var format = WGPUTextureDescriptor.format$get(desc);
+        var mipLevels = WGPUTextureDescriptor.mipLevelCount$get(desc);
+        var samples = WGPUTextureDescriptor.sampleCount$get(desc);
+        var usage = WGPUTextureDescriptor.usage$get(desc);
+
+        var valid = check(device, width > 0 && height > 0 && layers > 0, "texture size must not be empty")
+                && check(device, width <= MAX_TEXTURE_DIMENSION && height <= MAX_TEXTURE_DIMENSION,
+                    "texture size " + width + "x" + height + " exceeds maxTextureDimension2D")
+                && check(device, usage != 0, "texture usage must not be empty")
+                && check(device, TextureFormats.blockBytes(format) > 0, "unsupported texture format 0x" + Integer.toHexString(format))
+                && check(device, mipLevels >= 1 && mipLevels <= 32 - Integer.numberOfLeadingZeros(Math.max(width, height)),
+                    "invalid mipLevelCount " + mipLevels)
+                && check(device, samples == 1 || samples == 4, "sampleCount must be 1 or 4");
+
+        var texture = new Texture(device, string(WGPUTextureDescriptor.label$get(desc)),
+                valid ? width : 1, valid ? height : 1, valid ? layers : 1, format,
+                WGPUTextureDescriptor.dimension$get(desc), valid ? mipLevels : 1, samples, usage, null);
+        return valid ? backend.handles.add(texture) : invalid(texture);
+    }
+
+    MemorySegment wgpuDeviceCreateSampler(MemorySegment deviceHandle, MemorySegment descriptor){
+        var device = get(deviceHandle, Device.class, HandleType.DEVICE);
+        if(device == null){
+            return MemorySegment.NULL;
+        }
+        var desc = struct(descriptor, WGPUSamplerDescriptor.$LAYOUT());
+        return backend.handles.add(new MockObject(HandleType.SAMPLER, device,
+                desc != null ? string(WGPUSamplerDescriptor.label$get(desc)) : null));
+    }
+
+    MemorySegment wgpuDeviceCreateShaderModule(MemorySegment deviceHandle, MemorySegment descriptor){
+        var device = get(deviceHandle, Device.class, HandleType.DEVICE);
+        if(device == null){
+            return MemorySegment.NULL;
+        }
+        var desc = struct(descriptor, WGPUShaderModuleDescriptor.$LAYOUT());
+        if(!check(device, desc != null, "shader module descriptor is null")){
+            return invalid(new MockObject(HandleType.SHADER_MODULE, device, null));
+        }
+        var module = new MockObject(HandleType.SHADER_MODULE, device, string(WGPUShaderModuleDescriptor.label$get(desc)));
+        var chain = struct(WGPUShaderModuleDescriptor.nextInChain$get(desc), WGPUShaderModuleWGSLDescriptor.$LAYOUT());
+        var sType = chain != null ? WGPUChainedStruct.sType$get(chain) : WGPUSType_Invalid;
+        module.valid = check(device, sType == WGPUSType_ShaderModuleWGSLDescriptor || sType == WGPUSType_ShaderModuleSPIRVDescriptor,
+                    "shader module descriptor must chain a WGSL or SPIR-V descriptor")
+                && check(device, sType != WGPUSType_ShaderModuleWGSLDescriptor
+                        || !MemorySegment.NULL.equals(WGPUShaderModuleWGSLDescriptor.code$get(chain)),
+                    "WGSL shader code is null");
+        return module.valid ? backend.handles.add(module) : invalid(module);
+    }
+
+    MemorySegment wgpuDeviceCreateBindGroupLayout(MemorySegment deviceHandle, MemorySegment descriptor){
+        var device = get(deviceHandle, Device.class, HandleType.DEVICE);
+        if(device == null){
+            return MemorySegment.NULL;
+        }
+        var desc = struct(descriptor, WGPUBindGroupLayoutDescriptor.$LAYOUT());
+        var layout = new MockObject(HandleType.BIND_GROUP_LAYOUT, device,
+                desc != null ? string(WGPUBindGroupLayoutDescriptor.label$get(desc)) : null);
+        layout.valid = check(device, desc != null, "bind group layout descriptor is null");
+        return layout.valid ? backend.handles.add(layout) : invalid(layout);
+    }
+
+    MemorySegment wgpuDeviceCreateBindGroup(MemorySegment deviceHandle, MemorySegment descriptor){
+        var device = get(deviceHandle, Device.class, HandleType.DEVICE);
+        if(device == null){
+            return MemorySegment.NULL;
+        }
+        var desc = struct(descriptor, WGPUBindGroupDescriptor.$LAYOUT());
+        if(!check(device, desc != null, "bind group descriptor is null")){
+            return invalid(new MockObject(HandleType.BIND_GROUP, device, null));
+        }
+        var group = new MockObject(HandleType.BIND_GROUP, device, string(WGPUBindGroupDescriptor.label$get(desc)));
+        var layout = get(WGPUBindGroupDescriptor.layout$get(desc), MockObject.class, HandleType.BIND_GROUP_LAYOUT);
+        group.valid = usable(device, layout, "bind group layout");
+
+        var count = WGPUBindGroupDescriptor.entryCount$get(desc);
+        var entries = array(WGPUBindGroupDescriptor.entries$get(desc), count, WGPUBindGroupEntry.$LAYOUT());
+        for(long i = 0; i < count && group.valid; i++){
+            var buffer = WGPUBindGroupEntry.buffer$get(entries, i);
+            var sampler = WGPUBindGroupEntry.sampler$get(entries, i);
+            var view = WGPUBindGroupEntry.textureView$get(entries, i);
+            group.valid = (isNull(buffer) || usable(device, get(buffer, Buffer.class, HandleType.BUFFER), "buffer"))
+                    && (isNull(sampler) || usable(device, get(sampler, MockObject.class, HandleType.SAMPLER), "sampler"))
+                    && (isNull(view) || usable(device, get(view, TextureView.class, HandleType.TEXTURE_VIEW), "texture view"));
+        }
+        return group.valid ? backend.handles.add(group) : invalid(group);
+    }
+
+    MemorySegment wgpuDeviceCreatePipelineLayout(MemorySegment deviceHandle, MemorySegment descriptor){
+        var device = get(deviceHandle, Device.class, HandleType.DEVICE);
+        if(device == null){
+            return MemorySegment.NULL;
+        }
+        var desc = struct(descriptor, WGPUPipelineLayoutDescriptor.$LAYOUT());
+        if(!check(device, desc != null, "pipeline layout descriptor is null")){
+            return invalid(new MockObject(HandleType.PIPELINE_LAYOUT, device, null));
+        }
+        var layout = new MockObject(HandleType.PIPELINE_LAYOUT, device, string(WGPUPipelineLayoutDescriptor.label$get(desc)));
+        var count = WGPUPipelineLayoutDescriptor.bindGroupLayoutCount$get(desc);
+        layout.valid = check(device, count <= MAX_BIND_GROUPS, "too many bind group layouts: " + count);
+        var layouts = array(WGPUPipelineLayoutDescriptor.bindGroupLayouts$get(desc), count, ADDRESS);
+        for(long i = 0; i < count && layout.valid; i++){
+            layout.valid = usable(device, get(layouts.getAtIndex(ADDRESS, i), MockObject.class, HandleType.BIND_GROUP_LAYOUT),
+                    "bind group layout " + i);
+        }
+        return layout.valid ? backend.handles.add(layout) : invalid(layout);
+    }
+
+    MemorySegment wgpuDeviceCreateRenderPipeline(MemorySegment deviceHandle, MemorySegment descriptor){
+        var device = get(deviceHandle, Device.class, HandleType.DEVICE);
+        if(device == null){
+            return MemorySegment.NULL;
+        }
+        var pipeline = renderPipeline(device, descriptor);
+        return pipeline.valid ? backend.handles.add(pipeline) : invalid(pipeline);
+    }
+
+    void wgpuDeviceCreateRenderPipelineAsync(MemorySegment deviceHandle, MemorySegment descriptor,
+                                             MemorySegment callback, MemorySegment userdata){
+        var device = get(deviceHandle, Device.class, HandleType.DEVICE);
+        if(device == null){
+            return;
+        }
+        var pipeline = renderPipeline(device, descriptor);
+        var handle = pipeline.valid ? backend.handles.add(pipeline) : MemorySegment.NULL;
+        backend.callback(() -> {
+            try(var arena = Arena.ofConfined()){
+                WGPUCreateRenderPipelineAsyncCallback.ofAddress(callback, Arena.global()).apply(
+                        pipeline.valid ? WGPUCreatePipelineAsyncStatus_Success : WGPUCreatePipelineAsyncStatus_ValidationError,
+                        handle, pipeline.valid ? MemorySegment.NULL : arena.allocateUtf8String("Invalid render pipeline"), userdata);
+            }
+        });
+    }
+
+    MemorySegment wgpuDeviceCreateComputePipeline(MemorySegment deviceHandle, MemorySegment descriptor){
+        var device = get(deviceHandle, Device.class, HandleType.DEVICE);
+        if(device == null){
+            return MemorySegment.NULL;
+        }
+        var pipeline = computePipeline(device, descriptor);
+        return pipeline.valid ? backend.handles.add(pipeline) : invalid(pipeline);
+    }
+
+    void wgpuDeviceCreateComputePipelineAsync(MemorySegment deviceHandle, MemorySegment descriptor,
+                                              MemorySegment callback, MemorySegment userdata){
+        var device = get(deviceHandle, Device.class, HandleType.DEVICE);
+        if(device == null){
+            return;
+        }
+        var pipeline = computePipeline(device, descriptor);
+        var handle = pipeline.valid ? backend.handles.add(pipeline) : MemorySegment.NULL;
+        backend.callback(() -> {
+            try(var arena = Arena.ofConfined()){
+                WGPUCreateComputePipelineAsyncCallback.ofAddress(callback, Arena.global()).apply(
+                        pipeline.valid ? WGPUCreatePipelineAsyncStatus_Success : WGPUCreatePipelineAsyncStatus_ValidationError,
+                        handle, pipeline.valid ? MemorySegment.NULL : arena.allocateUtf8String("Invalid compute pipeline"), userdata);
+            }
+        });
+    }
+
+    private Pipeline renderPipeline(Device device, MemorySegment descriptor){
+        var desc = struct(descriptor, WGPURenderPipelineDescriptor.$LAYOUT());
+        if(!check(device, desc != null, "render pipeline descriptor is null")){
+            var pipeline = new Pipeline(HandleType.RENDER_PIPELINE, device, null);
+            pipeline.valid = false;
+            return pipeline;
+        }
+        var pipeline = new Pipeline(HandleType.RENDER_PIPELINE, device, string(WGPURenderPipelineDescriptor.label$get(desc)));
+        var layout = WGPURenderPipelineDescriptor.layout$get(desc);
+        var vertex = WGPURenderPipelineDescriptor.vertex$slice(desc);
+        var fragment = struct(WGPURenderPipelineDescriptor.fragment$get(desc), WGPUFragmentState.$LAYOUT());
+        pipeline.valid = (isNull(layout) || usable(device, get(layout, MockObject.class, HandleType.PIPELINE_LAYOUT), "pipeline layout"))
+                && usable(device, get(WGPUVertexState.module$get(vertex), MockObject.class, HandleType.SHADER_MODULE), "vertex shader module")
+                && check(device, WGPUVertexState.bufferCount$get(vertex) <= MAX_VERTEX_BUFFERS, "too many vertex buffers")
+                && (fragment == null || usable(device, get(WGPUFragmentState.module$get(fragment), MockObject.class, HandleType.SHADER_MODULE),
+                    "fragment shader module"))
+                && (fragment == null || check(device, WGPUFragmentState.targetCount$get(fragment) <= MAX_COLOR_ATTACHMENTS,
+                    "too many color targets"));
+        return pipeline;
+    }
+
+    private Pipeline computePipeline(Device device, MemorySegment descriptor){
+        var desc = struct(descriptor, WGPUComputePipelineDescriptor.$LAYOUT());
+        if(!check(device, desc != null, "compute pipeline descriptor is null")){
+            var pipeline = new Pipeline(HandleType.COMPUTE_PIPELINE, device, null);
+            pipeline.valid = false;
+            return pipeline;
+        }
+        var pipeline = new Pipeline(HandleType.COMPUTE_PIPELINE, device, string(WGPUComputePipelineDescriptor.label$get(desc)));
+        var layout = WGPUComputePipelineDescriptor.layout$get(desc);
+        var stage = WGPUComputePipelineDescriptor.compute$slice(desc);
+        pipeline.valid = (isNull(layout) || usable(device, get(layout, MockObject.class, HandleType.PIPELINE_LAYOUT), "pipeline layout"))
+                && usable(device, get(WGPUProgrammableStageDescriptor.module$get(stage), MockObject.class, HandleType.SHADER_MODULE),
+                    "compute shader module");
+        return pipeline;
+    }
+
+    MemorySegment wgpuRenderPipelineGetBindGroupLayout(MemorySegment pipeline, int groupIndex){
+        return bindGroupLayout(get(pipeline, Pipeline.class, HandleType.RENDER_PIPELINE), groupIndex);
+    }
+
+    MemorySegment wgpuComputePipelineGetBindGroupLayout(MemorySegment pipeline, int groupIndex){
+        return bindGroupLayout(get(pipeline, Pipeline.class, HandleType.COMPUTE_PIPELINE), groupIndex);
+    }
+
+    private MemorySegment bindGroupLayout(Pipeline pipeline, int groupIndex){
+        if(pipeline == null || !check(pipeline, groupIndex >= 0 && groupIndex < MAX_BIND_GROUPS, "invalid bind group index " + groupIndex)){
+            return MemorySegment.NULL;
+        }
+        synchronized(pipeline.bindGroupLayouts){
+            var layout = pipeline.bindGroupLayouts.get(groupIndex);
+            if(layout == null){
+                layout = new MockObject(HandleType.BIND_GROUP_LAYOUT, pipeline.device, null);
+                pipeline.bindGroupLayouts.put(groupIndex, layout);
+                return backend.handles.add(layout);
+            }
+            return backend.handles.reference(layout);
+        }
+    }
+
+    MemorySegment wgpuDeviceCreateQuerySet(MemorySegment deviceHandle, MemorySegment descriptor){
+        var device = get(deviceHandle, Device.class, HandleType.DEVICE);
+        if(device == null){
+            return MemorySegment.NULL;
+        }
+        var desc = struct(descriptor, WGPUQuerySetDescriptor.$LAYOUT());
+        if(!check(device, desc != null, "query set descriptor is null")){
+            return invalid(new QuerySet(device, null, WGPUQueryType_Occlusion, 0));
+        }
+        var count = WGPUQuerySetDescriptor.count$get(desc);
+        var valid = check(device, count > 0 && count <= MAX_QUERIES, "invalid query count " + count);
+        var querySet = new QuerySet(device, string(WGPUQuerySetDescriptor.label$get(desc)),
+                WGPUQuerySetDescriptor.type$get(desc), valid ? count : 0);
+        return valid ? backend.handles.add(querySet) : invalid(querySet);
+    }
+
+    int wgpuQuerySetGetCount(MemorySegment handle){
+        var querySet = get(handle, QuerySet.class, HandleType.QUERY_SET);
+        return querySet != null ? querySet.values.length : 0;
+    }
+
+    int wgpuQuerySetGetType(MemorySegment handle){
+        var querySet = get(handle, QuerySet.class, HandleType.QUERY_SET);
+        return querySet != null ? querySet.queryType : 0;
+    }
+
+    void wgpuQuerySetDestroy(MemorySegment handle){
+        var querySet = get(handle, QuerySet.class, HandleType.QUERY_SET);
+        if(querySet != null){
+            querySet.destroyed = true;
+        }
+    }
+
+    MemorySegment wgpuDeviceCreateCommandEncoder(MemorySegment deviceHandle, MemorySegment descriptor){
+        var device = get(deviceHandle, Device.class, HandleType.DEVICE);
+        if(device == null){
+            return MemorySegment.NULL;
+        }
+        var desc = struct(descriptor, WGPUCommandEncoderDescriptor.$LAYOUT());
+        return backend.handles.add(new Encoder(HandleType.COMMAND_ENCODER, device,
+                desc != null ? string(WGPUCommandEncoderDescriptor.label$get(desc)) : null, null));
+    }
+
+    MemorySegment wgpuDeviceCreateRenderBundleEncoder(MemorySegment deviceHandle, MemorySegment descriptor){
+        var device = get(deviceHandle, Device.class, HandleType.DEVICE);
+        if(device == null){
+            return MemorySegment.NULL;
+        }
+        var desc = struct(descriptor, WGPURenderBundleEncoderDescriptor.$LAYOUT());
+        var encoder = new Encoder(HandleType.RENDER_BUNDLE_ENCODER, device,
+                desc != null ? string(WGPURenderBundleEncoderDescriptor.label$get(desc)) : null, null);
+        encoder.valid = check(device, desc != null, "render bundle encoder descriptor is null")
+                && check(device, WGPURenderBundleEncoderDescriptor.colorFormatCount$get(desc) <= MAX_COLOR_ATTACHMENTS,
+                    "too many color formats");
+        return backend.handles.add(encoder);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Queue
+
+    void wgpuQueueSubmit(MemorySegment queue, long commandCount, MemorySegment commands){
+        submit(queue, commandCount, commands);
+    }
+
+    long wgpuQueueSubmitForIndex(MemorySegment queue, long commandCount, MemorySegment commands){
+        return submit(queue, commandCount, commands);
+    }
+
+    private long submit(MemorySegment queueHandle, long commandCount, MemorySegment commands){
+        var queue = get(queueHandle, Queue.class, HandleType.QUEUE);
+        if(queue == null){
+            return 0;
+        }
+        var handles = array(commands, commandCount, ADDRESS);
+        var buffers = new CommandBuffer[(int) commandCount];
+        for(int i = 0; i < commandCount; i++){
+            var buffer = get(handles.getAtIndex(ADDRESS, i), CommandBuffer.class, HandleType.COMMAND_BUFFER);
+            if(!usable(queue.device, buffer, "command buffer")){
+                return 0;
+            }
+            buffers[i] = buffer;
+        }
+        synchronized(queue){
+            // Validate the whole submission before executing any of it
+            for(var buffer : buffers){
+                if(!check(queue.device, !buffer.submitted, buffer + " has already been submitted")){
+                    return 0;
+                }
+            }
+            for(var buffer : buffers){
+                buffer.submitted = true;
+                for(var operation : buffer.operations){
+                    operation.run();
+                }
+            }
+            backend.countSubmit();
+            return queue.submissions.incrementAndGet();
+        }
+    }
+
+    void wgpuQueueOnSubmittedWorkDone(MemorySegment queue, MemorySegment callback, MemorySegment userdata){
+        if(get(queue, Queue.class, HandleType.QUEUE) != null){
+            backend.callback(() -> WGPUQueueWorkDoneCallback.ofAddress(callback, Arena.global())
+                    .apply(WGPUQueueWorkDoneStatus_Success, userdata));
+        }
+    }
+
+    void wgpuQueueWriteBuffer(MemorySegment queueHandle, MemorySegment bufferHandle, long offset, MemorySegment data, long size){
+        var queue = get(queueHandle, Queue.class, HandleType.QUEUE);
+        var buffer = get(bufferHandle, Buffer.class, HandleType.BUFFER);
+        if(queue == null || !usable(queue.device, buffer, "buffer")){
+            return;
+        }
+        var valid = check(buffer, (buffer.usage & WGPUBufferUsage_CopyDst) != 0, buffer + " is missing CopyDst usage")
+                && check(buffer, offset % 4 == 0 && size % 4 == 0, "write offset and size must be multiples of 4")
+                && check(buffer, offset >= 0 && size >= 0 && offset + size <= buffer.size,
+                    "write of " + size + " bytes at " + offset + " overruns " + buffer)
+                && unmapped(buffer);
+        if(valid){
+            MemorySegment.copy(data.reinterpret(size), 0, buffer.memory, offset, size);
+        }
+    }
+
+    void wgpuQueueWriteTexture(MemorySegment queueHandle, MemorySegment destination, MemorySegment data, long dataSize,
+                               MemorySegment dataLayout, MemorySegment writeSize){
+        var queue = get(queueHandle, Queue.class, HandleType.QUEUE);
+        if(queue == null){
+            return;
+        }
+        var region = textureRegion(queue.device, destination);
+        var layout = struct(dataLayout, WGPUTextureDataLayout.$LAYOUT());
+        var extent = extent(writeSize);
+        if(region == null || !check(queue.device, layout != null && extent != null, "texture data layout or size is null")){
+            return;
+        }
+        var linear = linearLayout(WGPUTextureDataLayout.offset$get(layout), WGPUTextureDataLayout.bytesPerRow$get(layout),
+                WGPUTextureDataLayout.rowsPerImage$get(layout), region.texture, extent);
+        if(checkTextureCopy(region, linear, extent, dataSize, false)
+                && check(region.texture, (region.texture.usage & WGPUTextureUsage_CopyDst) != 0, region.texture + " is missing CopyDst usage")){
+            copyTexture(data.reinterpret(dataSize), linear, region, extent, true);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Buffers
+
+    void wgpuBufferMapAsync(MemorySegment handle, int mode, long offset, long size, MemorySegment callback, MemorySegment userdata){
+        var buffer = get(handle, Buffer.class, HandleType.BUFFER);
+        if(buffer == null){
+            return;
+        }
+        synchronized(buffer){
+            if(size == WGPU_WHOLE_MAP_SIZE){
+                size = Math.max(0, buffer.size - offset);
+            }
+            var required = mode == WGPUMapMode_Read ? WGPUBufferUsage_MapRead : WGPUBufferUsage_MapWrite;
+            if(buffer.device.lost){
+                mapCallback(callback, WGPUBufferMapAsyncStatus_DeviceLost, userdata);
+                return;
+            }
+            var valid = usable(buffer.device, buffer, "buffer")
+                    && check(buffer, mode == WGPUMapMode_Read || mode == WGPUMapMode_Write, "map mode must be exactly one of Read or Write")
+                    && check(buffer, (buffer.usage & required) != 0, buffer + " was not created with the usage for map mode " + mode)
+                    && check(buffer, buffer.mapState == WGPUBufferMapState_Unmapped, buffer + " is already mapped or pending a map")
+                    && check(buffer, offset % 8 == 0 && size % 4 == 0, "map offset must be a multiple of 8 and size a multiple of 4")
+                    && check(buffer, offset >= 0 && offset + size <= buffer.size, "map range overruns " + buffer);
+            if(!valid){
+                mapCallback(callback, WGPUBufferMapAsyncStatus_ValidationError, userdata);
+                return;
+            }
+            var pending = new PendingMap(mode, offset, size, callback, userdata);
+            buffer.pendingMap = pending;
+            buffer.mapState = WGPUBufferMapState_Pending;
+            backend.callback(() -> completeMap(buffer, pending));
+        }
+    }
+
+    private void completeMap(Buffer buffer, PendingMap pending){
+        synchronized(buffer){
+            if(buffer.pendingMap != pending){
+                // Unmapped or destroyed before the callback, which has already been notified
+                return;
+            }
+            buffer.pendingMap = null;
+            buffer.mapState = WGPUBufferMapState_Mapped;
+            buffer.mapMode = pending.mode();
+            buffer.mapOffset = pending.offset();
+            buffer.mapSize = pending.size();
+        }
+        WGPUBufferMapCallback.ofAddress(pending.callback(), Arena.global()).apply(WGPUBufferMapAsyncStatus_Success, pending.userdata());
+    }
+
+    private void mapCallback(MemorySegment callback, int status, MemorySegment userdata){
+        backend.callback(() -> WGPUBufferMapCallback.ofAddress(callback, Arena.global()).apply(status, userdata));
+    }
+
+    MemorySegment wgpuBufferGetMappedRange(MemorySegment handle, long offset, long size){
+        return mappedRange(handle, offset, size);
+    }
+
+    MemorySegment wgpuBufferGetConstMappedRange(MemorySegment handle, long offset, long size){
+        return mappedRange(handle, offset, size);
+    }
+
+    private MemorySegment mappedRange(MemorySegment handle, long offset, long size){
+        var buffer = get(handle, Buffer.class, HandleType.BUFFER);
+        if(buffer == null){
+            return MemorySegment.NULL;
+        }
+        synchronized(buffer){
+            if(size == WGPU_WHOLE_MAP_SIZE){
+                size = Math.max(0, buffer.mapOffset + buffer.mapSize - offset);
+            }
+            var valid = check(buffer, buffer.mapState == WGPUBufferMapState_Mapped, buffer + " is not mapped")
+                    && check(buffer, offset % 8 == 0 && size % 4 == 0, "mapped range offset must be a multiple of 8 and size a multiple of 4")
+                    && check(buffer, offset >= buffer.mapOffset && offset + size <= buffer.mapOffset + buffer.mapSize,
+                        "range [" + offset + ", " + (offset + size) + ") is outside the mapped range of " + buffer);
+            return valid ? buffer.memory.asSlice(offset, size) : MemorySegment.NULL;
+        }
+    }
+
+    void wgpuBufferUnmap(MemorySegment handle){
+        var buffer = get(handle, Buffer.class, HandleType.BUFFER);
+        if(buffer != null){
+            synchronized(buffer){
+                if(buffer.pendingMap != null){
+                    mapCallback(buffer.pendingMap.callback(), WGPUBufferMapAsyncStatus_UnmappedBeforeCallback, buffer.pendingMap.userdata());
+                    buffer.pendingMap = null;
+                }
+                buffer.mapState = WGPUBufferMapState_Unmapped;
+                buffer.mapOffset = 0;
+                buffer.mapSize = 0;
+            }
+        }
+    }
+
+    void wgpuBufferDestroy(MemorySegment handle){
+        var buffer = get(handle, Buffer.class, HandleType.BUFFER);
+        if(buffer != null){
+            synchronized(buffer){
+                if(buffer.pendingMap != null){
+                    mapCallback(buffer.pendingMap.callback(), WGPUBufferMapAsyncStatus_DestroyedBeforeCallback, buffer.pendingMap.userdata());
+                    buffer.pendingMap = null;
+                }
+                buffer.mapState = WGPUBufferMapState_Unmapped;
+                buffer.destroyed = true;
+            }
+        }
+    }
+
+    long wgpuBufferGetSize(MemorySegment handle){
+        var buffer = get(handle, Buffer.class, HandleType.BUFFER);
+        return buffer != null ? buffer.size : 0;
+    }
+
+    int wgpuBufferGetUsage(MemorySegment handle){
+        var buffer = get(handle, Buffer.class, HandleType.BUFFER);
+        return buffer != null ? buffer.usage : 0;
+    }
+
+    int wgpuBufferGetMapState(MemorySegment handle){
+        var buffer = get(handle, Buffer.class, HandleType.BUFFER);
+        if(buffer == null){
+            return WGPUBufferMapState_Unmapped;
+        }
+        synchronized(buffer){
+            return buffer.mapState;
+        }
+    }
+
+    void wgpuBufferSetLabel(MemorySegment handle, MemorySegment label){
+        var buffer = get(handle, Buffer.class, HandleType.BUFFER);
+        if(buffer != null){
+            buffer.label = string(label);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Textures
+
+    MemorySegment wgpuTextureCreateView(MemorySegment handle, MemorySegment descriptor){
+        var texture = get(handle, Texture.class, HandleType.TEXTURE);
+        if(texture == null){
+            return MemorySegment.NULL;
+        }
+        var desc = struct(descriptor, WGPUTextureViewDescriptor.$LAYOUT());
+        var baseMip = desc != null ? WGPUTextureViewDescriptor.baseMipLevel$get(desc) : 0;
+        var baseLayer = desc != null ? WGPUTextureViewDescriptor.baseArrayLayer$get(desc) : 0;
+        var view = new TextureView(texture, desc != null ? string(WGPUTextureViewDescriptor.label$get(desc)) : null,
+                baseMip, baseLayer);
+        view.valid = usable(texture.device, texture, "texture")
+                && check(texture, baseMip >= 0 && baseMip < texture.mipLevels, "base mip level " + baseMip + " out of range for " + texture)
+                && check(texture, baseLayer >= 0 && baseLayer < texture.layers, "base array layer " + baseLayer + " out of range for " + texture);
+        return backend.handles.add(view);
+    }
+
+    void wgpuTextureDestroy(MemorySegment handle){
+        var texture = get(handle, Texture.class, HandleType.TEXTURE);
+        if(texture != null){
+            texture.destroyed = true;
+        }
+    }
+
+    int wgpuTextureGetWidth(MemorySegment handle){
+        var texture = get(handle, Texture.class, HandleType.TEXTURE);
+        return texture != null ? texture.width : 0;
+    }
+
+    int wgpuTextureGetHeight(MemorySegment handle){
+        var texture = get(handle, Texture.class, HandleType.TEXTURE);
+        return texture != null ? texture.height : 0;
+    }
+
+    int wgpuTextureGetDepthOrArrayLayers(MemorySegment handle){
+        var texture = get(handle, Texture.class, HandleType.TEXTURE);
+        return texture != null ? texture.layers : 0;
+    }
+
+    int wgpuTextureGetMipLevelCount(MemorySegment handle){
+        var texture = get(handle, Texture.class, HandleType.TEXTURE);
+        return texture != null ? texture.mipLevels : 0;
+    }
+
+    int wgpuTextureGetSampleCount(MemorySegment handle){
+        var texture = get(handle, Texture.class, HandleType.TEXTURE);
+        return texture != null ? texture.samples : 0;
+    }
+
+    int wgpuTextureGetFormat(MemorySegment handle){
+        var texture = get(handle, Texture.class, HandleType.TEXTURE);
+        return texture != null ? texture.format : WGPUTextureFormat_Undefined;
+    }
+
+    int wgpuTextureGetDimension(MemorySegment handle){
+        var texture = get(handle, Texture.class, HandleType.TEXTURE);
+        return texture != null ? texture.dimension : 0;
+    }
+
+    int wgpuTextureGetUsage(MemorySegment handle){
+        var texture = get(handle, Texture.class, HandleType.TEXTURE);
+        return texture != null ? texture.usage : 0;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Command encoders
+
+    MemorySegment wgpuCommandEncoderBeginRenderPass(MemorySegment handle, MemorySegment descriptor){
+        var encoder = get(handle, Encoder.class, HandleType.COMMAND_ENCODER);
+        if(encoder == null){
+            return MemorySegment.NULL;
+        }
+        var desc = struct(descriptor, WGPURenderPassDescriptor.$LAYOUT());
+        var pass = new Encoder(HandleType.RENDER_PASS_ENCODER, encoder.device,
+                desc != null ? string(WGPURenderPassDescriptor.label$get(desc)) : null, encoder);
+        pass.valid = recording(encoder) && check(encoder, desc != null, "render pass descriptor is null");
+        encoder.passOpen = true;
+        if(!pass.valid){
+            return backend.handles.add(pass);
+        }
+
+        var colorCount = WGPURenderPassDescriptor.colorAttachmentCount$get(desc);
+        var depthStencil = struct(WGPURenderPassDescriptor.depthStencilAttachment$get(desc),
+                WGPURenderPassDepthStencilAttachment.$LAYOUT());
+        pass.valid = check(encoder, colorCount <= MAX_COLOR_ATTACHMENTS, "too many color attachments: " + colorCount)
+                && check(encoder, colorCount > 0 || depthStencil != null, "render pass has no attachments");
+
+        var timestamps = struct(WGPURenderPassDescriptor.timestampWrites$get(desc), WGPURenderPassTimestampWrites.$LAYOUT());
+        if(pass.valid && timestamps != null){
+            var querySet = get(WGPURenderPassTimestampWrites.querySet$get(timestamps), QuerySet.class, HandleType.QUERY_SET);
+            var begin = WGPURenderPassTimestampWrites.beginningOfPassWriteIndex$get(timestamps);
+            var end = WGPURenderPassTimestampWrites.endOfPassWriteIndex$get(timestamps);
+            pass.valid = timestampWrites(pass, querySet, begin, end);
+        }
+
+        var attachments = array(WGPURenderPassDescriptor.colorAttachments$get(desc), colorCount,
+                WGPURenderPassColorAttachment.$LAYOUT());
+        for(long i = 0; i < colorCount && pass.valid; i++){
+            var viewHandle = WGPURenderPassColorAttachment.view$get(attachments, i);
+            if(isNull(viewHandle)){
+                continue;
+            }
+            var view = get(viewHandle, TextureView.class, HandleType.TEXTURE_VIEW);
+            pass.valid = usable(encoder.device, view, "color attachment " + i)
+                    && check(encoder, (view.texture.usage & WGPUTextureUsage_RenderAttachment) != 0,
+                        view.texture + " is missing RenderAttachment usage")
+                    && check(encoder, !TextureFormats.isDepthOrStencil(view.texture.format),
+                        "color attachment " + i + " has a depth/stencil format");
+            if(pass.valid && WGPURenderPassColorAttachment.loadOp$get(attachments, i) == WGPULoadOp_Clear){
+                var color = attachments.asSlice(i * WGPURenderPassColorAttachment.sizeof())
+                        .asSlice(WGPURenderPassColorAttachment.$LAYOUT().byteOffset(MemoryLayout.PathElement.groupElement("clearValue")),
+                                WGPUColor.sizeof());
+                var r = WGPUColor.r$get(color);
+                var g = WGPUColor.g$get(color);
+                var b = WGPUColor.b$get(color);
+                var a = WGPUColor.a$get(color);
+                pass.operations.add(() -> clear(view, r, g, b, a));
+            }
+        }
+
+        if(pass.valid && depthStencil != null){
+            var view = get(WGPURenderPassDepthStencilAttachment.view$get(depthStencil), TextureView.class, HandleType.TEXTURE_VIEW);
+            pass.valid = usable(encoder.device, view, "depth/stencil attachment")
+                    && check(encoder, TextureFormats.isDepthOrStencil(view.texture.format),
+                        "depth/stencil attachment " + view.texture + " does not have a depth/stencil format");
+            if(pass.valid && WGPURenderPassDepthStencilAttachment.depthLoadOp$get(depthStencil) == WGPULoadOp_Clear
+                    && view.texture.format == WGPUTextureFormat_Depth32Float){
+                var depth = WGPURenderPassDepthStencilAttachment.depthClearValue$get(depthStencil);
+                pass.operations.add(() -> clear(view, depth, 0, 0, 0));
+            }
+        }
+        return backend.handles.add(pass);
+    }
+
+    MemorySegment wgpuCommandEncoderBeginComputePass(MemorySegment handle, MemorySegment descriptor){
+        var encoder = get(handle, Encoder.class, HandleType.COMMAND_ENCODER);
+        if(encoder == null){
+            return MemorySegment.NULL;
+        }
+        var desc = struct(descriptor, WGPUComputePassDescriptor.$LAYOUT());
+        var pass = new Encoder(HandleType.COMPUTE_PASS_ENCODER, encoder.device,
+                desc != null ? string(WGPUComputePassDescriptor.label$get(desc)) : null, encoder);
+        pass.valid = recording(encoder);
+        encoder.passOpen = true;
+        var timestamps = desc != null
+                ? struct(WGPUComputePassDescriptor.timestampWrites$get(desc), WGPUComputePassTimestampWrites.$LAYOUT())
+                : null;
+        if(pass.valid && timestamps != null){
+            var querySet = get(WGPUComputePassTimestampWrites.querySet$get(timestamps), QuerySet.class, HandleType.QUERY_SET);
+            pass.valid = timestampWrites(pass, querySet,
+                    WGPUComputePassTimestampWrites.beginningOfPassWriteIndex$get(timestamps),
+                    WGPUComputePassTimestampWrites.endOfPassWriteIndex$get(timestamps));
+        }
+        return backend.handles.add(pass);
+    }
+
+    private boolean timestampWrites(Encoder pass, QuerySet querySet, int begin, int end){
+        var valid = usable(pass.device, querySet, "timestamp query set")
+                && check(pass, querySet.queryType == WGPUQueryType_Timestamp, querySet + " is not a timestamp query set")
+                && check(pass, begin == WGPU_QUERY_SET_INDEX_UNDEFINED || (begin >= 0 && begin < querySet.values.length),
+                    "beginning of pass write index out of range")
+                && check(pass, end == WGPU_QUERY_SET_INDEX_UNDEFINED || (end >= 0 && end < querySet.values.length),
+                    "end of pass write index out of range");
+        if(valid && begin != WGPU_QUERY_SET_INDEX_UNDEFINED){
+            pass.operations.add(() -> querySet.values[begin] = System.nanoTime());
+        }
+        if(valid && end != WGPU_QUERY_SET_INDEX_UNDEFINED){
+            pass.onEnd = () -> querySet.values[end] = System.nanoTime();
+        }
+        return valid;
+    }
+
+    void wgpuCommandEncoderCopyBufferToBuffer(MemorySegment handle, MemorySegment sourceHandle, long sourceOffset,
+                                              MemorySegment destinationHandle, long destinationOffset, long size){
+        var encoder = get(handle, Encoder.class, HandleType.COMMAND_ENCODER);
+        if(encoder == null || !recording(encoder)){
+            return;
+        }
+        var source = get(sourceHandle, Buffer.class, HandleType.BUFFER);
+        var destination = get(destinationHandle, Buffer.class, HandleType.BUFFER);
+        var valid = usable(encoder.device, source, "copy source")
+                && usable(encoder.device, destination, "copy destination")
+                && check(encoder, (source.usage & WGPUBufferUsage_CopySrc) != 0, source + " is missing CopySrc usage")
+                && check(encoder, (destination.usage & WGPUBufferUsage_CopyDst) != 0, destination + " is missing CopyDst usage")
+                && check(encoder, source != destination, "cannot copy a buffer to itself")
+                && check(encoder, sourceOffset % 4 == 0 && destinationOffset % 4 == 0 && size % 4 == 0,
+                    "copy offsets and size must be multiples of 4")
+                && check(encoder, sourceOffset >= 0 && sourceOffset + size <= source.size, "copy overruns " + source)
+                && check(encoder, destinationOffset >= 0 && destinationOffset + size <= destination.size, "copy overruns " + destination);
+        if(!valid){
+            encoder.valid = false;
+            return;
+        }
+        encoder.operations.add(() -> {
+            if(unmapped(source) && unmapped(destination)){
+                MemorySegment.copy(source.memory, sourceOffset, destination.memory, destinationOffset, size);
+            }
+        });
+    }
+
+    void wgpuCommandEncoderClearBuffer(MemorySegment handle, MemorySegment bufferHandle, long offset, long size){
+        var encoder = get(handle, Encoder.class, HandleType.COMMAND_ENCODER);
+        if(encoder == null || !recording(encoder)){
+            return;
+        }
+        var buffer = get(bufferHandle, Buffer.class, HandleType.BUFFER);
+        if(buffer != null && size == WGPU_WHOLE_SIZE){
+            size = buffer.size - offset;
+        }
+        var length = size;
+        var valid = usable(encoder.device, buffer, "buffer")
+                && check(encoder, (buffer.usage & WGPUBufferUsage_CopyDst) != 0, buffer + " is missing CopyDst usage")
+                && check(encoder, offset % 4 == 0 && length % 4 == 0, "clear offset and size must be multiples of 4")
+                && check(encoder, offset >= 0 && length >= 0 && offset + length <= buffer.size, "clear overruns " + buffer);
+        if(!valid){
+            encoder.valid = false;
+            return;
+        }
+        encoder.operations.add(() -> {
+            if(unmapped(buffer)){
+                buffer.memory.asSlice(offset, length).fill((byte) 0);
+            }
+        });
+    }
+
+    void wgpuCommandEncoderCopyBufferToTexture(MemorySegment handle, MemorySegment source, MemorySegment destination, MemorySegment copySize){
+        var encoder = get(handle, Encoder.class, HandleType.COMMAND_ENCODER);
+        if(encoder == null || !recording(encoder)){
+            return;
+        }
+        var src = struct(source, WGPUImageCopyBuffer.$LAYOUT());
+        var buffer = src != null ? get(WGPUImageCopyBuffer.buffer$get(src), Buffer.class, HandleType.BUFFER) : null;
+        var region = textureRegion(encoder.device, destination);
+        var extent = extent(copySize);
+        if(!usable(encoder.device, buffer, "copy source") || region == null || !check(encoder, extent != null, "copy size is null")){
+            encoder.valid = false;
+            return;
+        }
+        var layout = WGPUImageCopyBuffer.layout$slice(src);
+        var linear = linearLayout(WGPUTextureDataLayout.offset$get(layout), WGPUTextureDataLayout.bytesPerRow$get(layout),
+                WGPUTextureDataLayout.rowsPerImage$get(layout), region.texture, extent);
+        var valid = check(encoder, (buffer.usage & WGPUBufferUsage_CopySrc) != 0, buffer + " is missing CopySrc usage")
+                && check(encoder, (region.texture.usage & WGPUTextureUsage_CopyDst) != 0, region.texture + " is missing CopyDst usage")
+                && checkTextureCopy(region, linear, extent, buffer.size, true);
+        if(!valid){
+            encoder.valid = false;
+            return;
+        }
+        encoder.operations.add(() -> {
+            if(unmapped(buffer)){
+                copyTexture(buffer.memory, linear, region, extent, true);
+            }
+        });
+    }
+
+    void wgpuCommandEncoderCopyTextureToBuffer(MemorySegment handle, MemorySegment source, MemorySegment destination, MemorySegment copySize){
+        var encoder = get(handle, Encoder.class, HandleType.COMMAND_ENCODER);
+        if(encoder == null || !recording(encoder)){
+            return;
+        }
+        var region = textureRegion(encoder.device, source);
+        var dst = struct(destination, WGPUImageCopyBuffer.$LAYOUT());
+        var buffer = dst != null ? get(WGPUImageCopyBuffer.buffer$get(dst), Buffer.class, HandleType.BUFFER) : null;
+        var extent = extent(copySize);
+        if(region == null || !usable(encoder.device, buffer, "copy destination") || !check(encoder, extent != null, "copy size is null")){
+            encoder.valid = false;
+            return;
+        }
+        var layout = WGPUImageCopyBuffer.layout$slice(dst);
+        var linear = linearLayout(WGPUTextureDataLayout.offset$get(layout), WGPUTextureDataLayout.bytesPerRow$get(layout),
+                WGPUTextureDataLayout.rowsPerImage$get(layout), region.texture, extent);
+        var valid = check(encoder, (region.texture.usage & WGPUTextureUsage_CopySrc) != 0, region.texture + " is missing CopySrc usage")
+                && check(encoder, (buffer.usage & WGPUBufferUsage_CopyDst) != 0, buffer + " is missing CopyDst usage")
+                && checkTextureCopy(region, linear, extent, buffer.size, true);
+        if(!valid){
+            encoder.valid = false;
+            return;
+        }
+        encoder.operations.add(() -> {
+            if(unmapped(buffer)){
+                copyTexture(buffer.memory, linear, region, extent, false);
+            }
+        });
+    }
+
+    void wgpuCommandEncoderCopyTextureToTexture(MemorySegment handle, MemorySegment source, MemorySegment destination, MemorySegment copySize){
+        var encoder = get(handle, Encoder.class, HandleType.COMMAND_ENCODER);
+        if(encoder == null || !recording(encoder)){
+            return;
+        }
+        var from = textureRegion(encoder.device, source);
+        var to = textureRegion(encoder.device, destination);
+        var extent = extent(copySize);
+        if(from == null || to == null || !check(encoder, extent != null, "copy size is null")){
+            encoder.valid = false;
+            return;
+        }
+        var valid = check(encoder, from.texture.format == to.texture.format, "texture copies require matching formats")
+                && check(encoder, (from.texture.usage & WGPUTextureUsage_CopySrc) != 0, from.texture + " is missing CopySrc usage")
+                && check(encoder, (to.texture.usage & WGPUTextureUsage_CopyDst) != 0, to.texture + " is missing CopyDst usage")
+                && checkTextureBounds(from, extent)
+                && checkTextureBounds(to, extent);
+        if(!valid){
+            encoder.valid = false;
+            return;
+        }
+        encoder.operations.add(() -> {
+            // Stage through a tightly packed copy so overlapping regions behave
+            var rowBytes = rowBytes(from.texture, extent.width());
+            var rows = rows(from.texture, extent.height());
+            try(var arena = Arena.ofConfined()){
+                var staging = arena.allocate(Math.max(1, rowBytes * rows * extent.depth()));
+                var linear = new LinearLayout(0, rowBytes, rows);
+                copyTexture(staging, linear, from, extent, false);
+                copyTexture(staging, linear, to, extent, true);
+            }
+        });
+    }
+
+    void wgpuCommandEncoderWriteTimestamp(MemorySegment handle, MemorySegment querySetHandle, int queryIndex){
+        var encoder = get(handle, Encoder.class, HandleType.COMMAND_ENCODER);
+        if(encoder == null || !recording(encoder)){
+            return;
+        }
+        var querySet = get(querySetHandle, QuerySet.class, HandleType.QUERY_SET);
+        var valid = usable(encoder.device, querySet, "query set")
+                && check(encoder, querySet.queryType == WGPUQueryType_Timestamp, querySet + " is not a timestamp query set")
+                && check(encoder, queryIndex >= 0 && queryIndex < querySet.values.length, "query index " + queryIndex + " out of range");
+        if(!valid){
+            encoder.valid = false;
+            return;
+        }
+        encoder.operations.add(() -> querySet.values[queryIndex] = System.nanoTime());
+    }
+
+    void wgpuCommandEncoderResolveQuerySet(MemorySegment handle, MemorySegment querySetHandle, int firstQuery, int queryCount,
+                                           MemorySegment destinationHandle, long destinationOffset){
+        var encoder = get(handle, Encoder.class, HandleType.COMMAND_ENCODER);
+        if(encoder == null || !recording(encoder)){
+            return;
+        }
+        var querySet = get(querySetHandle, QuerySet.class, HandleType.QUERY_SET);
+        var destination = get(destinationHandle, Buffer.class, HandleType.BUFFER);
+        var valid = usable(encoder.device, querySet, "query set")
+                && usable(encoder.device, destination, "resolve destination")
+                && check(encoder, (destination.usage & WGPUBufferUsage_QueryResolve) != 0, destination + " is missing QueryResolve usage")
+                && check(encoder, firstQuery >= 0 && queryCount >= 0 && firstQuery + queryCount <= querySet.values.length,
+                    "query range out of range for " + querySet)
+                && check(encoder, destinationOffset % QUERY_RESOLVE_ALIGNMENT == 0, "resolve offset must be a multiple of 256")
+                && check(encoder, destinationOffset + queryCount * 8L <= destination.size, "resolve overruns " + destination);
+        if(!valid){
+            encoder.valid = false;
+            return;
+        }
+        encoder.operations.add(() -> {
+            if(unmapped(destination)){
+                MemorySegment.copy(querySet.values, firstQuery, destination.memory, JAVA_LONG_UNALIGNED, destinationOffset, queryCount);
+            }
+        });
+    }
+
+    void wgpuCommandEncoderInsertDebugMarker(MemorySegment handle, MemorySegment markerLabel){
+        var encoder = get(handle, Encoder.class, HandleType.COMMAND_ENCODER);
+        if(encoder != null){
+            recording(encoder);
+        }
+    }
+
+    void wgpuCommandEncoderPushDebugGroup(MemorySegment handle, MemorySegment groupLabel){
+        pushDebugGroup(get(handle, Encoder.class, HandleType.COMMAND_ENCODER));
+    }
+
+    void wgpuCommandEncoderPopDebugGroup(MemorySegment handle){
+        popDebugGroup(get(handle, Encoder.class, HandleType.COMMAND_ENCODER));
+    }
+
+    MemorySegment wgpuCommandEncoderFinish(MemorySegment handle, MemorySegment descriptor){
+        var encoder = get(handle, Encoder.class, HandleType.COMMAND_ENCODER);
+        if(encoder == null){
+            return MemorySegment.NULL;
+        }
+        var desc = struct(descriptor, WGPUCommandBufferDescriptor.$LAYOUT());
+        var valid = recording(encoder)
+                && check(encoder, encoder.debugGroups == 0, "unbalanced debug groups in " + encoder)
+                && check(encoder, encoder.valid, encoder + " recorded an invalid command");
+        encoder.ended = true;
+        var commands = new CommandBuffer(encoder.device, desc != null ? string(WGPUCommandBufferDescriptor.label$get(desc)) : null,
+                encoder.operations);
+        commands.valid = valid;
+        return backend.handles.add(commands);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Render passes & render bundles
+
+    void wgpuRenderPassEncoderSetPipeline(MemorySegment handle, MemorySegment pipeline){
+        setPipeline(get(handle, Encoder.class, HandleType.RENDER_PASS_ENCODER), pipeline, HandleType.RENDER_PIPELINE);
+    }
+
+    void wgpuRenderPassEncoderSetBindGroup(MemorySegment handle, int groupIndex, MemorySegment group,
+                                           long dynamicOffsetCount, MemorySegment dynamicOffsets){
+        setBindGroup(get(handle, Encoder.class, HandleType.RENDER_PASS_ENCODER), groupIndex, group);
+    }
+
+    void wgpuRenderPassEncoderSetVertexBuffer(MemorySegment handle, int slot, MemorySegment buffer, long offset, long size){
+        setVertexBuffer(get(handle, Encoder.class, HandleType.RENDER_PASS_ENCODER), slot, buffer, offset, size);
+    }
+
+    void wgpuRenderPassEncoderSetIndexBuffer(MemorySegment handle, MemorySegment buffer, int format, long offset, long size){
+        setIndexBuffer(get(handle, Encoder.class, HandleType.RENDER_PASS_ENCODER), buffer, format, offset, size);
+    }
+
+    void wgpuRenderPassEncoderSetViewport(MemorySegment handle, float x, float y, float width, float height,
+                                          float minDepth, float maxDepth){
+        var pass = get(handle, Encoder.class, HandleType.RENDER_PASS_ENCODER);
+        if(pass != null && recording(pass)){
+            check(pass, width >= 0 && height >= 0 && minDepth >= 0 && maxDepth <= 1 && minDepth <= maxDepth, "invalid viewport");
+        }
+    }
+
+    void wgpuRenderPassEncoderSetScissorRect(MemorySegment handle, int x, int y, int width, int height){
+        var pass = get(handle, Encoder.class, HandleType.RENDER_PASS_ENCODER);
+        if(pass != null){
+            recording(pass);
+        }
+    }
+
+    void wgpuRenderPassEncoderSetBlendConstant(MemorySegment handle, MemorySegment color){
+        var pass = get(handle, Encoder.class, HandleType.RENDER_PASS_ENCODER);
+        if(pass != null && recording(pass)){
+            check(pass, !isNull(color), "blend constant is null");
+        }
+    }
+
+    void wgpuRenderPassEncoderSetStencilReference(MemorySegment handle, int reference){
+        var pass = get(handle, Encoder.class, HandleType.RENDER_PASS_ENCODER);
+        if(pass != null){
+            recording(pass);
+        }
+    }
+
+    void wgpuRenderPassEncoderDraw(MemorySegment handle, int vertexCount, int instanceCount, int firstVertex, int firstInstance){
+        draw(get(handle, Encoder.class, HandleType.RENDER_PASS_ENCODER), false);
+    }
+
+    void wgpuRenderPassEncoderDrawIndexed(MemorySegment handle, int indexCount, int instanceCount, int firstIndex,
+                                          int baseVertex, int firstInstance){
+        draw(get(handle, Encoder.class, HandleType.RENDER_PASS_ENCODER), true);
+    }
+
+    void wgpuRenderPassEncoderDrawIndirect(MemorySegment handle, MemorySegment indirectBuffer, long indirectOffset){
+        drawIndirect(get(handle, Encoder.class, HandleType.RENDER_PASS_ENCODER), indirectBuffer, indirectOffset, 1, false);
+    }
+
+    void wgpuRenderPassEncoderDrawIndexedIndirect(MemorySegment handle, MemorySegment indirectBuffer, long indirectOffset){
+        drawIndirect(get(handle, Encoder.class, HandleType.RENDER_PASS_ENCODER), indirectBuffer, indirectOffset, 1, true);
+    }
+
+    void wgpuRenderPassEncoderExecuteBundles(MemorySegment handle, long bundleCount, MemorySegment bundles){
+        var pass = get(handle, Encoder.class, HandleType.RENDER_PASS_ENCODER);
+        if(pass == null || !recording(pass)){
+            return;
+        }
+        var handles = array(bundles, bundleCount, ADDRESS);
+        for(long i = 0; i < bundleCount; i++){
+            var bundle = get(handles.getAtIndex(ADDRESS, i), RenderBundle.class, HandleType.RENDER_BUNDLE);
+            if(!usable(pass.device, bundle, "render bundle " + i)){
+                pass.valid = false;
+                return;
+            }
+            pass.operations.addAll(bundle.operations);
+        }
+        // Executing bundles resets the pass state
+        pass.pipelineSet = false;
+        pass.indexBufferSet = false;
+    }
+
+    void wgpuRenderPassEncoderBeginOcclusionQuery(MemorySegment handle, int queryIndex){
+        var pass = get(handle, Encoder.class, HandleType.RENDER_PASS_ENCODER);
+        if(pass != null){
+            recording(pass);
+        }
+    }
+
+    void wgpuRenderPassEncoderEndOcclusionQuery(MemorySegment handle){
+        var pass = get(handle, Encoder.class, HandleType.RENDER_PASS_ENCODER);
+        if(pass != null){
+            recording(pass);
+        }
+    }
+
+    void wgpuRenderPassEncoderInsertDebugMarker(MemorySegment handle, MemorySegment markerLabel){
+        var pass = get(handle, Encoder.class, HandleType.RENDER_PASS_ENCODER);
+        if(pass != null){
+            recording(pass);
+        }
+    }
+
+    void wgpuRenderPassEncoderPushDebugGroup(MemorySegment handle, MemorySegment groupLabel){
+        pushDebugGroup(get(handle, Encoder.class, HandleType.RENDER_PASS_ENCODER));
+    }
+
+    void wgpuRenderPassEncoderPopDebugGroup(MemorySegment handle){
+        popDebugGroup(get(handle, Encoder.class, HandleType.RENDER_PASS_ENCODER));
+    }
+
+    void wgpuRenderPassEncoderEnd(MemorySegment handle){
+        endPass(get(handle, Encoder.class, HandleType.RENDER_PASS_ENCODER));
+    }
+
+    void wgpuRenderBundleEncoderSetPipeline(MemorySegment handle, MemorySegment pipeline){
+        setPipeline(get(handle, Encoder.class, HandleType.RENDER_BUNDLE_ENCODER), pipeline, HandleType.RENDER_PIPELINE);
+    }
+
+    void wgpuRenderBundleEncoderSetBindGroup(MemorySegment handle, int groupIndex, MemorySegment group,
+                                             long dynamicOffsetCount, MemorySegment dynamicOffsets){
+        setBindGroup(get(handle, Encoder.class, HandleType.RENDER_BUNDLE_ENCODER), groupIndex, group);
+    }
+
+    void wgpuRenderBundleEncoderSetVertexBuffer(MemorySegment handle, int slot, MemorySegment buffer, long offset, long size){
+        setVertexBuffer(get(handle, Encoder.class, HandleType.RENDER_BUNDLE_ENCODER), slot, buffer, offset, size);
+    }
+
+    void wgpuRenderBundleEncoderSetIndexBuffer(MemorySegment handle, MemorySegment buffer, int format, long offset, long size){
+        setIndexBuffer(get(handle, Encoder.class, HandleType.RENDER_BUNDLE_ENCODER), buffer, format, offset, size);
+    }
+
+    void wgpuRenderBundleEncoderDraw(MemorySegment handle, int vertexCount, int instanceCount, int firstVertex, int firstInstance){
+        draw(get(handle, Encoder.class, HandleType.RENDER_BUNDLE_ENCODER), false);
+    }
+
+    void wgpuRenderBundleEncoderDrawIndexed(MemorySegment handle, int indexCount, int instanceCount, int firstIndex,
+                                            int baseVertex, int firstInstance){
+        draw(get(handle, Encoder.class, HandleType.RENDER_BUNDLE_ENCODER), true);
+    }
+
+    void wgpuRenderBundleEncoderDrawIndirect(MemorySegment handle, MemorySegment indirectBuffer, long indirectOffset){
+        drawIndirect(get(handle, Encoder.class, HandleType.RENDER_BUNDLE_ENCODER), indirectBuffer, indirectOffset, 1, false);
+    }
+
+    void wgpuRenderBundleEncoderDrawIndexedIndirect(MemorySegment handle, MemorySegment indirectBuffer, long indirectOffset){
+        drawIndirect(get(handle, Encoder.class, HandleType.RENDER_BUNDLE_ENCODER), indirectBuffer, indirectOffset, 1, true);
+    }
+
+    MemorySegment wgpuRenderBundleEncoderFinish(MemorySegment handle, MemorySegment descriptor){
+        var encoder = get(handle, Encoder.class, HandleType.RENDER_BUNDLE_ENCODER);
+        if(encoder == null){
+            return MemorySegment.NULL;
+        }
+        var desc = struct(descriptor, WGPURenderBundleDescriptor.$LAYOUT());
+        var valid = recording(encoder) && check(encoder, encoder.valid, encoder + " recorded an invalid command");
+        encoder.ended = true;
+        var bundle = new RenderBundle(encoder.device, desc != null ? string(WGPURenderBundleDescriptor.label$get(desc)) : null,
+                encoder.operations);
+        bundle.valid = valid;
+        return backend.handles.add(bundle);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Compute passes
+
+    void wgpuComputePassEncoderSetPipeline(MemorySegment handle, MemorySegment pipeline){
+        setPipeline(get(handle, Encoder.class, HandleType.COMPUTE_PASS_ENCODER), pipeline, HandleType.COMPUTE_PIPELINE);
+    }
+
+    void wgpuComputePassEncoderSetBindGroup(MemorySegment handle, int groupIndex, MemorySegment group,
+                                            long dynamicOffsetCount, MemorySegment dynamicOffsets){
+        setBindGroup(get(handle, Encoder.class, HandleType.COMPUTE_PASS_ENCODER), groupIndex, group);
+    }
+
+    void wgpuComputePassEncoderDispatchWorkgroups(MemorySegment handle, int x, int y, int z){
+        var pass = get(handle, Encoder.class, HandleType.COMPUTE_PASS_ENCODER);
+        if(pass == null || !recording(pass)){
+            return;
+        }
+        var valid = check(pass, pass.pipelineSet, "dispatch without a compute pipeline")
+                && check(pass, Integer.compareUnsigned(x, MAX_WORKGROUPS_PER_DIMENSION) <= 0
+                        && Integer.compareUnsigned(y, MAX_WORKGROUPS_PER_DIMENSION) <= 0
+                        && Integer.compareUnsigned(z, MAX_WORKGROUPS_PER_DIMENSION) <= 0,
+                    "workgroup count exceeds maxComputeWorkgroupsPerDimension");
+        if(valid){
+            pass.operations.add(dispatch);
+        }else{
+            pass.valid = false;
+        }
+    }
+
+    void wgpuComputePassEncoderDispatchWorkgroupsIndirect(MemorySegment handle, MemorySegment indirectBuffer, long indirectOffset){
+        var pass = get(handle, Encoder.class, HandleType.COMPUTE_PASS_ENCODER);
+        if(pass == null || !recording(pass)){
+            return;
+        }
+        var buffer = get(indirectBuffer, Buffer.class, HandleType.BUFFER);
+        var valid = check(pass, pass.pipelineSet, "dispatch without a compute pipeline")
+                && usable(pass.device, buffer, "indirect buffer")
+                && check(pass, (buffer.usage & WGPUBufferUsage_Indirect) != 0, buffer + " is missing Indirect usage")
+                && check(pass, indirectOffset % 4 == 0 && indirectOffset + 12 <= buffer.size, "invalid indirect offset");
+        if(valid){
+            pass.operations.add(dispatch);
+        }else{
+            pass.valid = false;
+        }
+    }
+
+    void wgpuComputePassEncoderInsertDebugMarker(MemorySegment handle, MemorySegment markerLabel){
+        var pass = get(handle, Encoder.class, HandleType.COMPUTE_PASS_ENCODER);
+        if(pass != null){
+            recording(pass);
+        }
+    }
+
+    void wgpuComputePassEncoderPushDebugGroup(MemorySegment handle, MemorySegment groupLabel){
+        pushDebugGroup(get(handle, Encoder.class, HandleType.COMPUTE_PASS_ENCODER));
+    }
+
+    void wgpuComputePassEncoderPopDebugGroup(MemorySegment handle){
+        popDebugGroup(get(handle, Encoder.class, HandleType.COMPUTE_PASS_ENCODER));
+    }
+
+    void wgpuComputePassEncoderEnd(MemorySegment handle){
+        endPass(get(handle, Encoder.class, HandleType.COMPUTE_PASS_ENCODER));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // wgpu.h extensions
+
+    void wgpuRenderPassEncoderSetPushConstants(MemorySegment handle, int stages, int offset, int sizeBytes, MemorySegment data){
+        var pass = get(handle, Encoder.class, HandleType.RENDER_PASS_ENCODER);
+        if(pass == null || !recording(pass)){
+            return;
+        }
+        if(!check(pass, offset % 4 == 0 && sizeBytes % 4 == 0, "push constant offset and size must be multiples of 4")
+                || !check(pass, stages != WGPUShaderStage_None, "push constants must be visible to at least one stage")){
+            pass.valid = false;
+        }
+    }
+
+    void wgpuRenderPassEncoderMultiDrawIndirect(MemorySegment handle, MemorySegment buffer, long offset, int count){
+        drawIndirect(get(handle, Encoder.class, HandleType.RENDER_PASS_ENCODER), buffer, offset, count, false);
+    }
+
+    void wgpuRenderPassEncoderMultiDrawIndexedIndirect(MemorySegment handle, MemorySegment buffer, long offset, int count){
+        drawIndirect(get(handle, Encoder.class, HandleType.RENDER_PASS_ENCODER), buffer, offset, count, true);
+    }
+
+    void wgpuRenderPassEncoderMultiDrawIndirectCount(MemorySegment handle, MemorySegment buffer, long offset,
+                                                     MemorySegment countBuffer, long countBufferOffset, int maxCount){
+        drawIndirectCount(get(handle, Encoder.class, HandleType.RENDER_PASS_ENCODER), buffer, offset,
+                countBuffer, countBufferOffset, maxCount, false);
+    }
+
+    void wgpuRenderPassEncoderMultiDrawIndexedIndirectCount(MemorySegment handle, MemorySegment buffer, long offset,
+                                                            MemorySegment countBuffer, long countBufferOffset, int maxCount){
+        drawIndirectCount(get(handle, Encoder.class, HandleType.RENDER_PASS_ENCODER), buffer, offset,
+                countBuffer, countBufferOffset, maxCount, true);
+    }
+
+    void wgpuRenderPassEncoderBeginPipelineStatisticsQuery(MemorySegment handle, MemorySegment querySet, int queryIndex){
+        beginPipelineStatisticsQuery(get(handle, Encoder.class, HandleType.RENDER_PASS_ENCODER), querySet, queryIndex);
+    }
+
+    void wgpuRenderPassEncoderEndPipelineStatisticsQuery(MemorySegment handle){
+        var pass = get(handle, Encoder.class, HandleType.RENDER_PASS_ENCODER);
+        if(pass != null){
+            recording(pass);
+        }
+    }
+
+    void wgpuComputePassEncoderBeginPipelineStatisticsQuery(MemorySegment handle, MemorySegment querySet, int queryIndex){
+        beginPipelineStatisticsQuery(get(handle, Encoder.class, HandleType.COMPUTE_PASS_ENCODER), querySet, queryIndex);
+    }
+
+    void wgpuComputePassEncoderEndPipelineStatisticsQuery(MemorySegment handle){
+        var pass = get(handle, Encoder.class, HandleType.COMPUTE_PASS_ENCODER);
+        if(pass != null){
+            recording(pass);
+        }
+    }
+
+    /**
+     * The draw count is read from the count buffer when the command buffer executes, like on a GPU.
+     */
+    private void drawIndirectCount(Encoder encoder, MemorySegment handle, long offset, MemorySegment countHandle,
+                                   long countOffset, int maxCount, boolean indexed){
+        if(encoder == null || !recording(encoder)){
+            return;
+        }
+        var countBuffer = get(countHandle, Buffer.class, HandleType.BUFFER);
+        var valid = validIndirectDraw(encoder, handle, offset, maxCount, indexed)
+                && indirectBuffer(encoder, countBuffer)
+                && check(encoder, countOffset % 4 == 0 && countOffset + 4 <= countBuffer.size, "invalid indirect count offset");
+        if(valid){
+            encoder.operations.add(() -> {
+                var count = Integer.compareUnsigned(countBuffer.memory.get(JAVA_INT, countOffset), maxCount) < 0
+                        ? countBuffer.memory.get(JAVA_INT, countOffset)
+                        : maxCount;
+                for(int i = 0; i < count; i++){
+                    draw.run();
+                }
+            });
+        }else{
+            encoder.valid = false;
+        }
+    }
+
+    private void beginPipelineStatisticsQuery(Encoder pass, MemorySegment handle, int queryIndex){
+        if(pass == null || !recording(pass)){
+            return;
+        }
+        var querySet = get(handle, QuerySet.class, HandleType.QUERY_SET);
+        var valid = usable(pass.device, querySet, "query set")
+                && check(pass, querySet.queryType == WGPUNativeQueryType_PipelineStatistics, querySet + " is not a pipeline statistics query set")
+                && check(pass, Integer.compareUnsigned(queryIndex, querySet.values.length) < 0, "query index " + queryIndex + " out of range");
+        if(!valid){
+            pass.valid = false;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Shared encoder commands
+
+    private boolean recording(Encoder encoder){
+        return check(encoder, !encoder.ended, encoder + " has already been " + (encoder.parent != null ? "ended" : "finished"))
+                && check(encoder, !encoder.passOpen, encoder + " is locked while a pass is open");
+    }
+
+    private void setPipeline(Encoder encoder, MemorySegment handle, HandleType type){
+        if(encoder == null || !recording(encoder)){
+            return;
+        }
+        if(usable(encoder.device, get(handle, Pipeline.class, type), "pipeline")){
+            encoder.pipelineSet = true;
+        }else{
+            encoder.valid = false;
+        }
+    }
+
+    private void setBindGroup(Encoder encoder, int groupIndex, MemorySegment handle){
+        if(encoder == null || !recording(encoder)){
+            return;
+        }
+        encoder.valid &= check(encoder, groupIndex >= 0 && groupIndex < MAX_BIND_GROUPS, "invalid bind group index " + groupIndex)
+                && usable(encoder.device, get(handle, MockObject.class, HandleType.BIND_GROUP), "bind group");
+    }
+
+    private void setVertexBuffer(Encoder encoder, int slot, MemorySegment handle, long offset, long size){
+        if(encoder == null || !recording(encoder)){
+            return;
+        }
+        var buffer = get(handle, Buffer.class, HandleType.BUFFER);
+        if(buffer != null && size == WGPU_WHOLE_SIZE){
+            size = buffer.size - offset;
+        }
+        encoder.valid &= check(encoder, slot >= 0 && slot < MAX_VERTEX_BUFFERS, "invalid vertex buffer slot " + slot)
+                && usable(encoder.device, buffer, "vertex buffer")
+                && check(encoder, (buffer.usage & WGPUBufferUsage_Vertex) != 0, buffer + " is missing Vertex usage")
+                && check(encoder, offset % 4 == 0, "vertex buffer offset must be a multiple of 4")
+                && check(encoder, offset >= 0 && size >= 0 && offset + size <= buffer.size, "vertex buffer range overruns " + buffer);
+    }
+
+    private void setIndexBuffer(Encoder encoder, MemorySegment handle, int format, long offset, long size){
+        if(encoder == null || !recording(encoder)){
+            return;
+        }
+        var buffer = get(handle, Buffer.class, HandleType.BUFFER);
+        if(buffer != null && size == WGPU_WHOLE_SIZE){
+            size = buffer.size - offset;
+        }
+        var valid = check(encoder, format == WGPUIndexFormat_Uint16 || format == WGPUIndexFormat_Uint32, "invalid index format " + format)
+                && usable(encoder.device, buffer, "index buffer")
+                && check(encoder, (buffer.usage & WGPUBufferUsage_Index) != 0, buffer + " is missing Index usage")
+                && check(encoder, offset % (format == WGPUIndexFormat_Uint16 ? 2 : 4) == 0, "index buffer offset is not aligned to the index format")
+                && check(encoder, offset >= 0 && size >= 0 && offset + size <= buffer.size, "index buffer range overruns " + buffer);
+        encoder.indexBufferSet |= valid;
+        encoder.valid &= valid;
+    }
+
+    private void draw(Encoder encoder, boolean indexed){
+        if(encoder == null || !recording(encoder)){
+            return;
+        }
+        var valid = check(encoder, encoder.pipelineSet, "draw without a render pipeline")
+                && check(encoder, !indexed || encoder.indexBufferSet, "indexed draw without an index buffer");
+        if(valid){
+            encoder.operations.add(draw);
+        }else{
+            encoder.valid = false;
+        }
+    }
+
+    private void drawIndirect(Encoder encoder, MemorySegment handle, long offset, int count, boolean indexed){
+        if(encoder == null || !recording(encoder)){
+            return;
+        }
+        if(validIndirectDraw(encoder, handle, offset, count, indexed)){
+            for(int i = 0; i < count; i++){
+                encoder.operations.add(draw);
+            }
+        }else{
+            encoder.valid = false;
+        }
+    }
+
+    private boolean validIndirectDraw(Encoder encoder, MemorySegment handle, long offset, int count, boolean indexed){
+        var buffer = get(handle, Buffer.class, HandleType.BUFFER);
+        return check(encoder, encoder.pipelineSet, "draw without a render pipeline")
+                && check(encoder, !indexed || encoder.indexBufferSet, "indexed draw without an index buffer")
+                && indirectBuffer(encoder, buffer)
+                && check(encoder, offset % 4 == 0 && offset + (long) count * (indexed ? 20 : 16) <= buffer.size, "invalid indirect offset");
+    }
+
+    private boolean indirectBuffer(Encoder encoder, Buffer buffer){
+        return usable(encoder.device, buffer, "indirect buffer")
+                && check(encoder, (buffer.usage & WGPUBufferUsage_Indirect) != 0, buffer + " is missing Indirect usage");
+    }
+
+    private void pushDebugGroup(Encoder encoder){
+        if(encoder != null && recording(encoder)){
+            encoder.debugGroups++;
+        }
+    }
+
+    private void popDebugGroup(Encoder encoder){
+        if(encoder != null && recording(encoder) && check(encoder, encoder.debugGroups > 0, "no debug group to pop")){
+            encoder.debugGroups--;
+        }
+    }
+
+    private void endPass(Encoder pass){
+        if(pass == null || !recording(pass)){
+            return;
+        }
+        check(pass, pass.debugGroups == 0, "unbalanced debug groups in " + pass);
+        if(pass.onEnd != null){
+            pass.operations.add(pass.onEnd);
+        }
+        pass.ended = true;
+        pass.parent.passOpen = false;
+        pass.parent.valid &= pass.valid;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Surfaces
+
+    void wgpuSurfaceGetCapabilities(MemorySegment handle, MemorySegment adapter, MemorySegment capabilities){
+        var surface = get(handle, Surface.class, HandleType.SURFACE);
+        var caps = struct(capabilities, WGPUSurfaceCapabilities.$LAYOUT());
+        if(surface == null || !check(null, caps != null, "surface capabilities are null")){
+            return;
+        }
+        var arena = Arena.ofShared();
+        var formats = arena.allocateArray(JAVA_INT, SURFACE_FORMATS);
+        capabilityArenas.put(formats.address(), arena);
+        WGPUSurfaceCapabilities.formatCount$set(caps, SURFACE_FORMATS.length);
+        WGPUSurfaceCapabilities.formats$set(caps, formats);
+        WGPUSurfaceCapabilities.presentModeCount$set(caps, PRESENT_MODES.length);
+        WGPUSurfaceCapabilities.presentModes$set(caps, arena.allocateArray(JAVA_INT, PRESENT_MODES));
+        WGPUSurfaceCapabilities.alphaModeCount$set(caps, ALPHA_MODES.length);
+        WGPUSurfaceCapabilities.alphaModes$set(caps, arena.allocateArray(JAVA_INT, ALPHA_MODES));
+    }
+
+    void wgpuSurfaceCapabilitiesFreeMembers(MemorySegment capabilities){
+        // The struct is passed by value, so the arena is found through the formats array it owns
+        var arena = capabilityArenas.remove(WGPUSurfaceCapabilities.formats$get(capabilities).address());
+        if(arena != null){
+            arena.close();
+        }
+    }
+
+    int wgpuSurfaceGetPreferredFormat(MemorySegment surface, MemorySegment adapter){
+        return WGPUTextureFormat_BGRA8Unorm;
+    }
+
+    void wgpuSurfaceConfigure(MemorySegment handle, MemorySegment configuration){
+        var surface = get(handle, Surface.class, HandleType.SURFACE);
+        var config = struct(configuration, WGPUSurfaceConfiguration.$LAYOUT());
+        if(surface == null || !check(null, config != null, "surface configuration is null")){
+            return;
+        }
+        var device = get(WGPUSurfaceConfiguration.device$get(config), Device.class, HandleType.DEVICE);
+        var format = WGPUSurfaceConfiguration.format$get(config);
+        var presentMode = WGPUSurfaceConfiguration.presentMode$get(config);
+        var width = WGPUSurfaceConfiguration.width$get(config);
+        var height = WGPUSurfaceConfiguration.height$get(config);
+        var usage = WGPUSurfaceConfiguration.usage$get(config);
+        var valid = usable(null, device, "device")
+                && check(device, Arrays.stream(SURFACE_FORMATS).anyMatch(f -> f == format), "unsupported surface format 0x" + Integer.toHexString(format))
+                && check(device, Arrays.stream(PRESENT_MODES).anyMatch(m -> m == presentMode), "unsupported present mode " + presentMode)
+                && check(device, width > 0 && height > 0 && width <= MAX_TEXTURE_DIMENSION && height <= MAX_TEXTURE_DIMENSION,
+                    "invalid surface size " + width + "x" + height)
+                && check(device, (usage & WGPUTextureUsage_RenderAttachment) != 0, "surface usage must include RenderAttachment");
+        synchronized(surface){
+            surface.configuredDevice = valid ? device : null;
+            surface.format = format;
+            surface.usage = usage;
+            surface.width = width;
+            surface.height = height;
+            surface.presentMode = presentMode;
+            surface.acquired = null;
+        }
+    }
+
+    void wgpuSurfaceUnconfigure(MemorySegment handle){
+        var surface = get(handle, Surface.class, HandleType.SURFACE);
+        if(surface != null){
+            synchronized(surface){
+                surface.configuredDevice = null;
+                surface.acquired = null;
+            }
+        }
+    }
+
+    void wgpuSurfaceGetCurrentTexture(MemorySegment handle, MemorySegment surfaceTexture){
+        var surface = get(handle, Surface.class, HandleType.SURFACE);
+        var out = struct(surfaceTexture, WGPUSurfaceTexture.$LAYOUT());
+        if(surface == null || !check(null, out != null, "surface texture is null")){
+            return;
+        }
+        synchronized(surface){
+            WGPUSurfaceTexture.texture$set(out, MemorySegment.NULL);
+            WGPUSurfaceTexture.suboptimal$set(out, 0);
+            var device = surface.configuredDevice;
+            if(!check(null, device != null, surface + " is not configured")){
+                WGPUSurfaceTexture.status$set(out, WGPUSurfaceGetCurrentTextureStatus_Lost);
+            }else if(device.lost){
+                WGPUSurfaceTexture.status$set(out, WGPUSurfaceGetCurrentTextureStatus_DeviceLost);
+            }else if(surface.injectedStatus >= 0){
+                WGPUSurfaceTexture.status$set(out, surface.injectedStatus);
+                surface.injectedStatus = -1;
+            }else{
+                var texture = new Texture(device, "surface texture", surface.width, surface.height, 1, surface.format,
+                        WGPUTextureDimension_2D, 1, 1, surface.usage, surface);
+                surface.acquired = texture;
+                WGPUSurfaceTexture.texture$set(out, backend.handles.add(texture));
+                WGPUSurfaceTexture.status$set(out, WGPUSurfaceGetCurrentTextureStatus_Success);
+            }
+        }
+    }
+
+    void wgpuSurfacePresent(MemorySegment handle){
+        var surface = get(handle, Surface.class, HandleType.SURFACE);
+        if(surface != null){
+            synchronized(surface){
+                if(check(surface.configuredDevice, surface.acquired != null, "no surface texture to present on " + surface)){
+                    surface.acquired = null;
+                    surface.presented++;
+                }
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Texture copies & clears
+
+    private record TextureRegion(Texture texture, int mipLevel, int x, int y, int z){}
+
+    private record Extent(int width, int height, int depth){}
+
+    private record LinearLayout(long offset, long bytesPerRow, long rowsPerImage){}
+
+    private TextureRegion textureRegion(Device device, MemorySegment imageCopyTexture){
+        var copy = struct(imageCopyTexture, WGPUImageCopyTexture.$LAYOUT());
+        if(!check(device, copy != null, "image copy texture is null")){
+            return null;
+        }
+        var texture = get(WGPUImageCopyTexture.texture$get(copy), Texture.class, HandleType.TEXTURE);
+        var mip = WGPUImageCopyTexture.mipLevel$get(copy);
+        if(!usable(device, texture, "texture") || !check(texture, !texture.destroyed, texture + " has been destroyed")
+                || !check(texture, mip >= 0 && mip < texture.mipLevels, "mip level " + mip + " out of range for " + texture)){
+            return null;
+        }
+        var origin = WGPUImageCopyTexture.origin$slice(copy);
+        return new TextureRegion(texture, mip, WGPUOrigin3D.x$get(origin), WGPUOrigin3D.y$get(origin), WGPUOrigin3D.z$get(origin));
+    }
+
+    private static Extent extent(MemorySegment pointer){
+        var size = struct(pointer, WGPUExtent3D.$LAYOUT());
+        return size != null
+                ? new Extent(WGPUExtent3D.width$get(size), WGPUExtent3D.height$get(size), WGPUExtent3D.depthOrArrayLayers$get(size))
+                : null;
+    }
+
+    private static LinearLayout linearLayout(long offset, int bytesPerRow, int rowsPerImage, Texture texture, Extent extent){
+        return new LinearLayout(offset,
+                bytesPerRow == WGPU_COPY_STRIDE_UNDEFINED ? rowBytes(texture, extent.width()) : Integer.toUnsignedLong(bytesPerRow),
+                rowsPerImage == WGPU_COPY_STRIDE_UNDEFINED ? rows(texture, extent.height()) : Integer.toUnsignedLong(rowsPerImage));
+    }
+
+    private static long rowBytes(Texture texture, int width){
+        var block = TextureFormats.blockDimension(texture.format);
+        return (long) ((width + block - 1) / block) * TextureFormats.blockBytes(texture.format);
+    }
+
+    private static long rows(Texture texture, int height){
+        var block = TextureFormats.blockDimension(texture.format);
+        return (height + block - 1) / block;
+    }
+
+    private boolean checkTextureBounds(TextureRegion region, Extent extent){
+        var texture = region.texture;
+        var block = TextureFormats.blockDimension(texture.format);
+        return check(texture, region.x % block == 0 && region.y % block == 0 && extent.width() % block == 0 && extent.height() % block == 0
+                        || region.x + extent.width() == texture.mipWidth(region.mipLevel),
+                    "copy region is not aligned to the texel blocks of " + texture)
+                && check(texture, region.x + extent.width() <= texture.physicalWidth(region.mipLevel)
+                        && region.y + extent.height() <= texture.physicalHeight(region.mipLevel)
+                        && region.z + extent.depth() <= texture.layers,
+                    "copy region overruns mip level " + region.mipLevel + " of " + texture);
+    }
+
+    private boolean checkTextureCopy(TextureRegion region, LinearLayout linear, Extent extent, long linearSize, boolean buffer){
+        var rowBytes = rowBytes(region.texture, extent.width());
+        var rows = rows(region.texture, extent.height());
+        var required = extent.depth() == 0 || rows == 0 ? 0
+                : linear.offset() + (extent.depth() - 1) * linear.bytesPerRow() * linear.rowsPerImage()
+                    + (rows - 1) * linear.bytesPerRow() + rowBytes;
+        return checkTextureBounds(region, extent)
+                && check(region.texture, !buffer || linear.bytesPerRow() % COPY_BYTES_PER_ROW_ALIGNMENT == 0
+                        || (rows <= 1 && extent.depth() <= 1),
+                    "bytesPerRow " + linear.bytesPerRow() + " is not a multiple of 256")
+                && check(region.texture, linear.bytesPerRow() >= rowBytes || (rows <= 1 && extent.depth() <= 1),
+                    "bytesPerRow " + linear.bytesPerRow() + " is smaller than a row of " + rowBytes + " bytes")
+                && check(region.texture, linear.rowsPerImage() >= rows || extent.depth() <= 1, "rowsPerImage is smaller than the copy height")
+                && check(region.texture, linear.offset() % TextureFormats.blockBytes(region.texture.format) == 0,
+                    "copy offset " + linear.offset() + " is not a multiple of the texel block size")
+                && check(region.texture, required <= linearSize, "copy of " + required + " bytes overruns the " + linearSize + " byte source/destination");
+    }
+
+    private static void copyTexture(MemorySegment linear, LinearLayout layout, TextureRegion region, Extent extent, boolean upload){
+        var texture = region.texture;
+        var blockBytes = TextureFormats.blockBytes(texture.format);
+        var block = TextureFormats.blockDimension(texture.format);
+        var rowBytes = rowBytes(texture, extent.width());
+        var rows = rows(texture, extent.height());
+        var texels = texture.mip(region.mipLevel);
+        var texelRowPitch = texture.rowBytes(region.mipLevel);
+        var texelImagePitch = texelRowPitch * texture.rows(region.mipLevel);
+        for(long layer = 0; layer < extent.depth(); layer++){
+            for(long row = 0; row < rows; row++){
+                var linearOffset = layout.offset() + layer * layout.bytesPerRow() * layout.rowsPerImage() + row * layout.bytesPerRow();
+                var texelOffset = (region.z + layer) * texelImagePitch + (region.y / block + row) * texelRowPitch
+                        + (long) (region.x / block) * blockBytes;
+                if(upload){
+                    MemorySegment.copy(linear, linearOffset, texels, texelOffset, rowBytes);
+                }else{
+                    MemorySegment.copy(texels, texelOffset, linear, linearOffset, rowBytes);
+                }
+            }
+        }
+    }
+
+    private static void clear(TextureView view, double r, double g, double b, double a){
+        var texture = view.texture;
+        var texel = switch(texture.format){
+            case WGPUTextureFormat_RGBA8Unorm -> new byte[]{unorm8(r), unorm8(g), unorm8(b), unorm8(a)};
+            case WGPUTextureFormat_RGBA8UnormSrgb -> new byte[]{srgb8(r), srgb8(g), srgb8(b), unorm8(a)};
+            case WGPUTextureFormat_BGRA8Unorm -> new byte[]{unorm8(b), unorm8(g), unorm8(r), unorm8(a)};
+            case WGPUTextureFormat_BGRA8UnormSrgb -> new byte[]{srgb8(b), srgb8(g), srgb8(r), unorm8(a)};
+            default -> null;
+        };
+        var segment = MemorySegment.ofArray(new byte[TextureFormats.blockBytes(texture.format)]);
+        if(texel != null){
+            segment.copyFrom(MemorySegment.ofArray(texel));
+        }else if(texture.format == WGPUTextureFormat_R32Float || texture.format == WGPUTextureFormat_Depth32Float){
+            segment.set(JAVA_FLOAT_UNALIGNED, 0, (float) r);
+        }else if(texture.format == WGPUTextureFormat_RGBA32Float){
+            segment.set(JAVA_FLOAT_UNALIGNED, 0, (float) r);
+            segment.set(JAVA_FLOAT_UNALIGNED, 4, (float) g);
+            segment.set(JAVA_FLOAT_UNALIGNED, 8, (float) b);
+            segment.set(JAVA_FLOAT_UNALIGNED, 12, (float) a);
+        }else if(texture.format == WGPUTextureFormat_RGBA16Float){
+            segment.set(JAVA_SHORT_UNALIGNED, 0, Float.floatToFloat16((float) r));
+            segment.set(JAVA_SHORT_UNALIGNED, 2, Float.floatToFloat16((float) g));
+            segment.set(JAVA_SHORT_UNALIGNED, 4, Float.floatToFloat16((float) b));
+            segment.set(JAVA_SHORT_UNALIGNED, 6, Float.floatToFloat16((float) a));
+        }
+        var mip = texture.mip(view.baseMipLevel);
+        var imageBytes = texture.rowBytes(view.baseMipLevel) * texture.rows(view.baseMipLevel);
+        var image = mip.asSlice(view.baseArrayLayer * imageBytes, imageBytes);
+        // Fill by doubling the initialized prefix
+        image.copyFrom(segment.asSlice(0, Math.min(segment.byteSize(), image.byteSize())));
+        for(long filled = segment.byteSize(); filled < image.byteSize(); filled *= 2){
+            MemorySegment.copy(image, 0, image, filled, Math.min(filled, image.byteSize() - filled));
+        }
+    }
+
+    private static byte unorm8(double value){
+        return (byte) Math.round(Math.max(0, Math.min(1, value)) * 255);
+    }
+
+    private static byte srgb8(double linear){
+        linear = Math.max(0, Math.min(1, linear));
+        return unorm8(linear <= 0.0031308 ? linear * 12.92 : 1.055 * Math.pow(linear, 1 / 2.4) - 0.055);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Helpers
+
+    /**
+     * Resolves a handle. Unknown or released handles are reported as validation errors.
+     * @return the object, or null if the handle is NULL or not a live object of the expected type
+     */
+    private <T extends MockObject> T get(MemorySegment handle, Class<T> objectClass, HandleType type){
+        var address = handle.address();
+        if(address == 0){
+            return null;
+        }
+        var object = backend.handles.get(address);
+        if(object == null){
+            backend.error(null, WGPUErrorType_Validation, (backend.handles.isIssued(address) ? "released " : "unknown ")
+                    + type + " handle 0x" + Long.toHexString(address));
+            return null;
+        }
+        if(object.type != type || !objectClass.isInstance(object)){
+            backend.error(deviceOf(object), WGPUErrorType_Validation, "expected a " + type + " handle but got " + object);
+            return null;
+        }
+        return objectClass.cast(object);
+    }
+
+    /**
+     * Checks that an object used by another call is present and was created successfully.
+     */
+    private boolean usable(MockObject context, MockObject object, String role){
+        return check(context, object != null, role + " is null or invalid")
+                && check(context, object.valid, role + " " + object + " is invalid")
+                && check(context, !(object instanceof Buffer buffer && buffer.destroyed), role + " " + object + " has been destroyed");
+    }
+
+    private boolean unmapped(Buffer buffer){
+        synchronized(buffer){
+            return check(buffer, buffer.mapState == WGPUBufferMapState_Unmapped, buffer + " is used while mapped")
+                    && check(buffer, !buffer.destroyed, buffer + " has been destroyed");
+        }
+    }
+
+    private boolean check(MockObject context, boolean condition, String message){
+        if(!condition){
+            backend.error(deviceOf(context), WGPUErrorType_Validation, message);
+        }
+        return condition;
+    }
+
+    private <T extends MockObject> MemorySegment invalid(T object){
+        object.valid = false;
+        return backend.handles.add(object);
+    }
+
+    private static Device deviceOf(MockObject object){
+        if(object == null){
+            return null;
+        }
+        return object instanceof Device device ? device : object.device;
+    }
+
+    private static long enumerateFeatures(MemorySegment features){
+        if(!isNull(features)){
+            features.reinterpret(JAVA_INT.byteSize()).set(JAVA_INT, 0, WGPUFeatureName_TimestampQuery);
+        }
+        return 1;
+    }
+
+    private static boolean isNull(MemorySegment pointer){
+        return pointer.address() == 0;
+    }
+
+    private static MemorySegment struct(MemorySegment pointer, MemoryLayout layout){
+        return isNull(pointer) ? null : pointer.reinterpret(layout.byteSize());
+    }
+
+    private static MemorySegment array(MemorySegment pointer, long count, MemoryLayout element){
+        return isNull(pointer) ? MemorySegment.NULL : pointer.reinterpret(count * element.byteSize());
+    }
+
+    static String string(MemorySegment pointer){
+        return isNull(pointer) ? null : pointer.reinterpret(Long.MAX_VALUE).getUtf8String(0);
+    }
+}
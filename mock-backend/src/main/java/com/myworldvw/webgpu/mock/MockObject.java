@@ -0,0 +1,296 @@
+package com.myworldvw.webgpu.mock;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The state behind one mock handle. Handles are reference counted exactly like the native
+ * objects: creation returns one reference, {@code *Reference} adds one and {@code *Release}
+ * drops one. The object is freed when the last reference is gone.
+ */
+class MockObject {
+
+    final HandleType type;
+    final Device device;
+    volatile String label;
+    final AtomicInteger references = new AtomicInteger(1);
+
+    /**
+     * False for objects created from an invalid descriptor. Like WebGPU's "error objects"
+     * they are still returned (and must still be released), but using them raises errors.
+     */
+    boolean valid = true;
+    long address;
+
+    MockObject(HandleType type, Device device, String label){
+        this.type = type;
+        this.device = device;
+        this.label = label;
+    }
+
+    /**
+     * Called once the last reference has been released.
+     */
+    void free(){}
+
+    @Override
+    public String toString(){
+        return type + "@0x" + Long.toHexString(address) + (label != null ? " '" + label + "'" : "");
+    }
+
+    static final class Device extends MockObject {
+
+        final MemorySegment lostCallback;
+        final MemorySegment lostUserdata;
+        final Deque<ErrorScope> errorScopes = new ArrayDeque<>();
+        volatile MemorySegment errorCallback = MemorySegment.NULL;
+        volatile MemorySegment errorUserdata = MemorySegment.NULL;
+        volatile boolean lost;
+        Queue queue;
+
+        Device(String label, MemorySegment lostCallback, MemorySegment lostUserdata){
+            super(HandleType.DEVICE, null, label);
+            this.lostCallback = lostCallback;
+            this.lostUserdata = lostUserdata;
+        }
+    }
+
+    static final class ErrorScope {
+        final int filter;
+        ValidationError error;
+
+        ErrorScope(int filter){
+            this.filter = filter;
+        }
+    }
+
+    static final class Queue extends MockObject {
+
+        final AtomicLong submissions = new AtomicLong();
+
+        Queue(Device device){
+            super(HandleType.QUEUE, device, null);
+        }
+    }
+
+    static final class Buffer extends MockObject {
+
+        final long size;
+        final int usage;
+        final Arena arena;
+        final MemorySegment memory;
+        int mapState;
+        int mapMode;
+        long mapOffset;
+        long mapSize;
+        PendingMap pendingMap;
+        boolean destroyed;
+
+        Buffer(Device device, String label, long size, int usage){
+            super(HandleType.BUFFER, device, label);
+            this.size = size;
+            this.usage = usage;
+            arena = Arena.ofShared();
+            memory = arena.allocate(Math.max(size, 1), 16);
+        }
+
+        @Override
+        void free(){
+            arena.close();
+        }
+    }
+
+    record PendingMap(int mode, long offset, long size, MemorySegment callback, MemorySegment userdata){}
+
+    static final class Texture extends MockObject {
+
+        final int width;
+        final int height;
+        final int layers;
+        final int format;
+        final int dimension;
+        final int mipLevels;
+        final int samples;
+        final int usage;
+        final Surface surface;
+        private Arena arena;
+        private MemorySegment[] mips;
+        boolean destroyed;
+
+        Texture(Device device, String label, int width, int height, int layers, int format, int dimension,
+                int mipLevels, int samples, int usage, Surface surface){
+            super(HandleType.TEXTURE, device, label);
+            this.width = width;
+            this.height = height;
+            this.layers = layers;
+            this.format = format;
+            this.dimension = dimension;
+            this.mipLevels = mipLevels;
+            this.samples = samples;
+            this.usage = usage;
+            this.surface = surface;
+        }
+
+        int mipWidth(int level){
+            return Math.max(1, width >> level);
+        }
+
+        int mipHeight(int level){
+            return Math.max(1, height >> level);
+        }
+
+        /**
+         * @return the width of the mip level rounded up to whole texel blocks, which copies of
+         * compressed formats may cover even past the level's edge
+         */
+        int physicalWidth(int level){
+            var block = TextureFormats.blockDimension(format);
+            return (mipWidth(level) + block - 1) / block * block;
+        }
+
+        int physicalHeight(int level){
+            var block = TextureFormats.blockDimension(format);
+            return (mipHeight(level) + block - 1) / block * block;
+        }
+
+        /**
+         * @return the number of bytes in one tightly packed row of texel blocks at the given mip level
+         */
+        long rowBytes(int level){
+            var block = TextureFormats.blockDimension(format);
+            return (long) ((mipWidth(level) + block - 1) / block) * TextureFormats.blockBytes(format);
+        }
+
+        long rows(int level){
+            var block = TextureFormats.blockDimension(format);
+            return (mipHeight(level) + block - 1) / block;
+        }
+
+        /**
+         * Texel memory is only allocated when the texture's contents are first written or read, so
+         * large render targets that are never copied cost nothing.
+         * @return the tightly packed contents of the mip level, all array layers in order
+         */
+        synchronized MemorySegment mip(int level){
+            if(mips == null){
+                arena = Arena.ofShared();
+                mips = new MemorySegment[mipLevels];
+            }
+            if(mips[level] == null){
+                mips[level] = arena.allocate(Math.max(1, rowBytes(level) * rows(level) * layers), 16);
+            }
+            return mips[level];
+        }
+
+        @Override
+        synchronized void free(){
+            if(arena != null){
+                arena.close();
+            }
+        }
+    }
+
+    static final class TextureView extends MockObject {
+
+        final Texture texture;
+        final int baseMipLevel;
+        final int baseArrayLayer;
+
+        TextureView(Texture texture, String label, int baseMipLevel, int baseArrayLayer){
+            super(HandleType.TEXTURE_VIEW, texture.device, label);
+            this.texture = texture;
+            this.baseMipLevel = baseMipLevel;
+            this.baseArrayLayer = baseArrayLayer;
+        }
+    }
+
+    static final class QuerySet extends MockObject {
+
+        final int queryType;
+        final long[] values;
+        boolean destroyed;
+
+        QuerySet(Device device, String label, int queryType, int count){
+            super(HandleType.QUERY_SET, device, label);
+            this.queryType = queryType;
+            values = new long[count];
+        }
+    }
+
+    static final class Pipeline extends MockObject {
+
+        final Map<Integer, MockObject> bindGroupLayouts = new HashMap<>();
+
+        Pipeline(HandleType type, Device device, String label){
+            super(type, device, label);
+        }
+    }
+
+    /**
+     * Command encoders, render and compute pass encoders and render bundle encoders. Commands
+     * are validated when they are recorded and queued as operations that run on submission.
+     */
+    static final class Encoder extends MockObject {
+
+        final List<Runnable> operations;
+        final Encoder parent;
+        boolean pipelineSet;
+        boolean indexBufferSet;
+        boolean passOpen;
+        boolean ended;
+        int debugGroups;
+        Runnable onEnd;
+
+        Encoder(HandleType type, Device device, String label, Encoder parent){
+            super(type, device, label);
+            this.parent = parent;
+            operations = parent != null ? parent.operations : new ArrayList<>();
+        }
+    }
+
+    static final class CommandBuffer extends MockObject {
+
+        final List<Runnable> operations;
+        boolean submitted;
+
+        CommandBuffer(Device device, String label, List<Runnable> operations){
+            super(HandleType.COMMAND_BUFFER, device, label);
+            this.operations = operations;
+        }
+    }
+
+    static final class RenderBundle extends MockObject {
+
+        final List<Runnable> operations;
+
+        RenderBundle(Device device, String label, List<Runnable> operations){
+            super(HandleType.RENDER_BUNDLE, device, label);
+            this.operations = operations;
+        }
+    }
+
+    static final class Surface extends MockObject {
+
+        Device configuredDevice;
+        int format;
+        int usage;
+        int width;
+        int height;
+        int presentMode;
+        int injectedStatus = -1;
+        Texture acquired;
+        long presented;
+
+        Surface(String label){
+            super(HandleType.SURFACE, null, label);
+        }
+    }
+}
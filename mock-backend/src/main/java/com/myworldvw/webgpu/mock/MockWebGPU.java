@@ -0,0 +1,362 @@
+package com.myworldvw.webgpu.mock;
+
+import com.myworldvw.webgpu.WGPUErrorCallback;
+import com.myworldvw.webgpu.WGPUDeviceLostCallback;
+import com.myworldvw.webgpu.binding.NativeLookup;
+import com.myworldvw.webgpu.mock.MockObject.*;
+
+import java.lang.foreign.*;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.myworldvw.webgpu.binding.WebGPU.*;
+
+/**
+ * A pure-Java stand-in for the wgpu-native library.
+ * <p>
+ * {@link #install()} registers a {@link SymbolLookup} with {@link NativeLookup} that resolves
+ * every {@code webgpu.h} function - and the {@code wgpu.h} extensions the mock supports - to an
+ * upcall stub into {@link MockFunctions}, so the generated bindings - {@code webgpu_h} and
+ * {@code wgpu_h} as well as the lazily bound {@code WebGPU} and {@code Wgpu} - call into this class
+ * instead of native code. It has to be installed before the first binding is used, since
+ * downcall handles are bound only once.
+ * <p>
+ * The mock hands out fake handles and tracks their references, validates descriptors and
+ * reports errors through error scopes and the uncaptured error callback, optionally records
+ * every call, and defers asynchronous callbacks (buffer mapping, work done, error scope pops,
+ * async pipeline creation) until {@code wgpuInstanceProcessEvents}, {@code wgpuDevicePoll} or
+ * {@link #flush()}, like the real implementation. Call {@link #setDeferCallbacks(boolean)} to
+ * run them immediately instead.
+ */
+public final class MockWebGPU {
+
+    private static MockWebGPU installed;
+
+    final HandleTable handles = new HandleTable();
+    private final MockFunctions functions = new MockFunctions(this);
+    private final Map<String, MemorySegment> stubs = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Runnable> pendingCallbacks = new ConcurrentLinkedQueue<>();
+    private final List<ValidationError> errors = Collections.synchronizedList(new ArrayList<>());
+    private final ConcurrentLinkedQueue<Command> commands = new ConcurrentLinkedQueue<>();
+    private final LongAdder draws = new LongAdder();
+    private final LongAdder dispatches = new LongAdder();
+    private final LongAdder submits = new LongAdder();
+    private volatile boolean recording;
+    private volatile boolean deferCallbacks = true;
+
+    private final MethodHandle recordingTest;
+    private final MethodHandle record;
+    private final MethodHandle failure;
+
+    private MockWebGPU(){
+        try{
+            var lookup = MethodHandles.lookup();
+            recordingTest = lookup.findVirtual(MockWebGPU.class, "isRecording", MethodType.methodType(boolean.class)).bindTo(this);
+            record = lookup.findVirtual(MockWebGPU.class, "record", MethodType.methodType(void.class, String.class, Object[].class))
+                    .bindTo(this);
+            failure = lookup.findVirtual(MockWebGPU.class, "failure", MethodType.methodType(void.class, String.class, Throwable.class))
+                    .bindTo(this);
+        }catch(ReflectiveOperationException e){
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Installs the mock as the implementation of the WebGPU bindings for the rest of the
+     * JVM's lifetime. Subsequent calls return the same instance.
+     * @throws IllegalStateException if another symbol lookup has already been installed
+     */
+    public static synchronized MockWebGPU install(){
+        if(installed == null){
+            var mock = new MockWebGPU();
+            NativeLookup.install(mock.lookup());
+            installed = mock;
+        }
+        return installed;
+    }
+
+    /**
+     * @return a lookup resolving {@code webgpu.h} and {@code wgpu.h} function names to upcall stubs into this mock
+     */
+    public SymbolLookup lookup(){
+        return name -> Optional.ofNullable(stub(name));
+    }
+
+    MemorySegment stub(String name){
+        var stub = stubs.get(name);
+        if(stub == null){
+            var implementation = functions.implementation(name);
+            if(implementation == null){
+                return null;
+            }
+            stub = stubs.computeIfAbsent(name, n -> Linker.nativeLinker().upcallStub(wrap(n, implementation),
+                    MockFunctions.descriptor(n, implementation.type()), Arena.global()));
+        }
+        return stub;
+    }
+
+    /**
+     * Adds optional call recording and makes the stub safe to call: an exception escaping an
+     * upcall terminates the JVM, so failures are reported as internal errors instead.
+     */
+    private MethodHandle wrap(String name, MethodHandle implementation){
+        var type = implementation.type();
+        var logger = record.bindTo(name)
+                .asCollector(Object[].class, type.parameterCount())
+                .asType(type.changeReturnType(void.class));
+        var recorded = MethodHandles.foldArguments(implementation, logger);
+        var target = MethodHandles.guardWithTest(
+                MethodHandles.dropArguments(recordingTest, 0, type.parameterList()),
+                recorded, implementation);
+
+        var handler = MethodHandles.foldArguments(
+                MethodHandles.dropArguments(MethodHandles.empty(type), 0, Throwable.class),
+                failure.bindTo(name));
+        return MethodHandles.catchException(target, Throwable.class, handler);
+    }
+
+    private void record(String function, Object[] arguments){
+        var values = new ArrayList<>(arguments.length);
+        for(var argument : arguments){
+            values.add(argument instanceof MemorySegment segment ? (Object) segment.address() : argument);
+        }
+        commands.add(new Command(function, Collections.unmodifiableList(values), Thread.currentThread().threadId()));
+    }
+
+    private void failure(String function, Throwable error){
+        errors.add(new ValidationError(0, WGPUErrorType_Internal, function, "mock failure: " + error));
+        var thread = Thread.currentThread();
+        thread.getUncaughtExceptionHandler().uncaughtException(thread, error);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Callbacks
+
+    void callback(Runnable callback){
+        if(deferCallbacks){
+            pendingCallbacks.add(callback);
+        }else{
+            callback.run();
+        }
+    }
+
+    /**
+     * Runs all deferred callbacks, including any that are queued by the callbacks themselves.
+     * @return the number of callbacks that ran
+     */
+    public int flush(){
+        var count = 0;
+        Runnable callback;
+        while((callback = pendingCallbacks.poll()) != null){
+            callback.run();
+            count++;
+        }
+        return count;
+    }
+
+    public int pendingCallbacks(){
+        return pendingCallbacks.size();
+    }
+
+    public void setDeferCallbacks(boolean defer){
+        deferCallbacks = defer;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Errors
+
+    /**
+     * Reports an error raised by the calling mock function. It is delivered to the innermost
+     * matching error scope, or to the device's uncaptured error callback.
+     */
+    void error(Device device, int type, String message){
+        var function = StackWalker.getInstance().walk(frames -> frames
+                .map(StackWalker.StackFrame::getMethodName)
+                .filter(n -> n.startsWith("wgpu"))
+                .findFirst()
+                .orElse("unknown"));
+        var error = new ValidationError(device != null ? device.address : 0, type, function, message);
+        errors.add(error);
+        if(device == null || device.lost){
+            return;
+        }
+        synchronized(device.errorScopes){
+            for(var scope : device.errorScopes){
+                if(scope.filter + 1 == type){
+                    if(scope.error == null){
+                        scope.error = error;
+                    }
+                    return;
+                }
+            }
+        }
+        var callback = device.errorCallback;
+        if(!MemorySegment.NULL.equals(callback)){
+            invokeErrorCallback(callback, type, function + ": " + message, device.errorUserdata);
+        }
+    }
+
+    void invokeErrorCallback(MemorySegment callback, int type, String message, MemorySegment userdata){
+        try(var arena = Arena.ofConfined()){
+            WGPUErrorCallback.ofAddress(callback, Arena.global())
+                    .apply(type, message != null ? arena.allocateUtf8String(message) : MemorySegment.NULL, userdata);
+        }
+    }
+
+    /**
+     * @return every error reported so far, including those captured by error scopes
+     */
+    public List<ValidationError> errors(){
+        synchronized(errors){
+            return List.copyOf(errors);
+        }
+    }
+
+    public void clearErrors(){
+        errors.clear();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Fault injection
+
+    /**
+     * Makes the next {@code wgpuSurfaceGetCurrentTexture} on the surface fail with the given
+     * {@code WGPUSurfaceGetCurrentTextureStatus}.
+     */
+    public void injectSurfaceStatus(MemorySegment surface, int status){
+        if(handles.get(surface.address()) instanceof Surface s){
+            synchronized(s){
+                s.injectedStatus = status;
+            }
+        }else{
+            throw new IllegalArgumentException("Not a live surface: " + surface);
+        }
+    }
+
+    /**
+     * Loses the device, invoking its device lost callback.
+     */
+    public void loseDevice(MemorySegment device, int reason, String message){
+        if(handles.get(device.address()) instanceof Device d){
+            loseDevice(d, reason, message);
+        }else{
+            throw new IllegalArgumentException("Not a live device: " + device);
+        }
+    }
+
+    void loseDevice(Device device, int reason, String message){
+        synchronized(device){
+            if(device.lost){
+                return;
+            }
+            device.lost = true;
+        }
+        if(!MemorySegment.NULL.equals(device.lostCallback)){
+            try(var arena = Arena.ofConfined()){
+                WGPUDeviceLostCallback.ofAddress(device.lostCallback, Arena.global())
+                        .apply(reason, arena.allocateUtf8String(message), device.lostUserdata);
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Inspection
+
+    public void setRecording(boolean recording){
+        this.recording = recording;
+    }
+
+    public boolean isRecording(){
+        return recording;
+    }
+
+    /**
+     * @return the calls recorded while {@linkplain #setRecording(boolean) recording} was on, in
+     * the order they were made. Pointer and handle arguments are recorded as their addresses.
+     */
+    public List<Command> commands(){
+        return List.copyOf(commands);
+    }
+
+    public void clearCommands(){
+        commands.clear();
+    }
+
+    public List<Handle> liveHandles(){
+        return handles.live();
+    }
+
+    public long liveHandleCount(HandleType type){
+        return handles.live().stream().filter(h -> h.type() == type).count();
+    }
+
+    void countDraw(){
+        draws.increment();
+    }
+
+    void countDispatch(){
+        dispatches.increment();
+    }
+
+    void countSubmit(){
+        submits.increment();
+    }
+
+    /**
+     * @return the number of draws executed by submitted command buffers
+     */
+    public long drawCount(){
+        return draws.sum();
+    }
+
+    /**
+     * @return the number of compute dispatches executed by submitted command buffers
+     */
+    public long dispatchCount(){
+        return dispatches.sum();
+    }
+
+    public long submitCount(){
+        return submits.sum();
+    }
+
+    /**
+     * @return a read-only view of the buffer's memory
+     */
+    public MemorySegment bufferContents(MemorySegment buffer){
+        if(handles.get(buffer.address()) instanceof Buffer b){
+            return b.memory.asSlice(0, b.size).asReadOnly();
+        }
+        throw new IllegalArgumentException("Not a live buffer: " + buffer);
+    }
+
+    /**
+     * @return a read-only view of the tightly packed texels of one mip level, all array layers
+     * in order
+     */
+    public MemorySegment textureContents(MemorySegment texture, int mipLevel){
+        if(handles.get(texture.address()) instanceof Texture t){
+            return t.mip(mipLevel).asReadOnly();
+        }
+        throw new IllegalArgumentException("Not a live texture: " + texture);
+    }
+
+    /**
+     * Frees every object and clears all recorded state. Handles issued before the reset stay
+     * invalid.
+     */
+    public void reset(){
+        pendingCallbacks.clear();
+        handles.clear();
+        errors.clear();
+        commands.clear();
+        draws.reset();
+        dispatches.reset();
+        submits.reset();
+    }
+}
@@ -0,0 +1,52 @@
+package com.myworldvw.webgpu.mock;
+
+import static com.myworldvw.webgpu.binding.WebGPU.*;
+
+/**
+ * Texel block sizes for the texture formats the mock backend can store.
+ */
+final class TextureFormats {
+
+    private TextureFormats(){}
+
+    /**
+     * @return the size in bytes of one texel block, or 0 if the format is not supported
+     */
+    static int blockBytes(int format){
+        return switch(format){
+            case WGPUTextureFormat_R8Unorm, WGPUTextureFormat_R8Snorm, WGPUTextureFormat_R8Uint,
+                    WGPUTextureFormat_R8Sint, WGPUTextureFormat_Stencil8 -> 1;
+            case WGPUTextureFormat_R16Uint, WGPUTextureFormat_R16Sint, WGPUTextureFormat_R16Float,
+                    WGPUTextureFormat_RG8Unorm, WGPUTextureFormat_RG8Snorm, WGPUTextureFormat_RG8Uint,
+                    WGPUTextureFormat_RG8Sint, WGPUTextureFormat_Depth16Unorm -> 2;
+            case WGPUTextureFormat_R32Float, WGPUTextureFormat_R32Uint, WGPUTextureFormat_R32Sint,
+                    WGPUTextureFormat_RG16Uint, WGPUTextureFormat_RG16Sint, WGPUTextureFormat_RG16Float,
+                    WGPUTextureFormat_RGBA8Unorm, WGPUTextureFormat_RGBA8UnormSrgb, WGPUTextureFormat_RGBA8Snorm,
+                    WGPUTextureFormat_RGBA8Uint, WGPUTextureFormat_RGBA8Sint, WGPUTextureFormat_BGRA8Unorm,
+                    WGPUTextureFormat_BGRA8UnormSrgb, WGPUTextureFormat_RGB10A2Uint, WGPUTextureFormat_RGB10A2Unorm,
+                    WGPUTextureFormat_RG11B10Ufloat, WGPUTextureFormat_RGB9E5Ufloat, WGPUTextureFormat_Depth24Plus,
+                    WGPUTextureFormat_Depth24PlusStencil8, WGPUTextureFormat_Depth32Float -> 4;
+            case WGPUTextureFormat_RG32Float, WGPUTextureFormat_RG32Uint, WGPUTextureFormat_RG32Sint,
+                    WGPUTextureFormat_RGBA16Uint, WGPUTextureFormat_RGBA16Sint, WGPUTextureFormat_RGBA16Float,
+                    WGPUTextureFormat_Depth32FloatStencil8, WGPUTextureFormat_BC1RGBAUnorm,
+                    WGPUTextureFormat_BC1RGBAUnormSrgb, WGPUTextureFormat_BC4RUnorm, WGPUTextureFormat_BC4RSnorm -> 8;
+            case WGPUTextureFormat_RGBA32Float, WGPUTextureFormat_RGBA32Uint, WGPUTextureFormat_RGBA32Sint,
+                    WGPUTextureFormat_BC2RGBAUnorm, WGPUTextureFormat_BC2RGBAUnormSrgb, WGPUTextureFormat_BC3RGBAUnorm,
+                    WGPUTextureFormat_BC3RGBAUnormSrgb, WGPUTextureFormat_BC5RGUnorm, WGPUTextureFormat_BC5RGSnorm,
+                    WGPUTextureFormat_BC6HRGBUfloat, WGPUTextureFormat_BC6HRGBFloat, WGPUTextureFormat_BC7RGBAUnorm,
+                    WGPUTextureFormat_BC7RGBAUnormSrgb -> 16;
+            default -> 0;
+        };
+    }
+
+    /**
+     * @return the width and height in texels of one texel block - 4 for block-compressed formats, 1 otherwise
+     */
+    static int blockDimension(int format){
+        return format >= WGPUTextureFormat_BC1RGBAUnorm && format <= WGPUTextureFormat_BC7RGBAUnormSrgb ? 4 : 1;
+    }
+
+    static boolean isDepthOrStencil(int format){
+        return format >= WGPUTextureFormat_Stencil8 && format <= WGPUTextureFormat_Depth32FloatStencil8;
+    }
+}
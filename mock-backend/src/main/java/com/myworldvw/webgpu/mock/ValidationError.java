@@ -0,0 +1,11 @@
+package com.myworldvw.webgpu.mock;
+
+/**
+ * An error raised by the mock backend. Errors are always recorded here, in addition to being
+ * reported to the device's error scopes or uncaptured error callback like a real implementation.
+ * @param device the address of the device the error belongs to, or 0 if it has none
+ * @param type the {@code WGPUErrorType}
+ * @param function the WebGPU function that raised the error
+ * @param message a description of the error
+ */
+public record ValidationError(long device, int type, String function, String message){}
@@ -0,0 +1,127 @@
+package com.myworldvw.webgpu.mock;
+
+import com.myworldvw.webgpu.*;
+import com.myworldvw.webgpu.async.DeviceEventLoop;
+import com.myworldvw.webgpu.demo.TriangleScene;
+import com.myworldvw.webgpu.frame.FrameScheduler;
+import com.myworldvw.webgpu.instrument.GpuProfiler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import static com.myworldvw.webgpu.webgpu_h.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the demo's device setup, scene and render loop against the mock and checks that it
+ * passes validation, releases every object it creates and stops allocating native memory
+ * once it has settled.
+ */
+class DemoSceneTest {
+
+    private static final int FRAMES = 1000;
+    private static final int SETTLE_FRAMES = 50;
+    private static final int RESIZE_FRAME = 20;
+
+    private static MockWebGPU mock;
+
+    @BeforeAll
+    static void install(){
+        mock = MockWebGPU.install();
+    }
+
+    @AfterEach
+    void reset(){
+        mock.reset();
+    }
+
+    @Test
+    void renderLoopLeavesNoLiveHandles() throws InterruptedException {
+        renderDemo();
+
+        assertEquals(List.of(), mock.errors());
+        assertEquals(List.of(), mock.liveHandles());
+        assertEquals(FRAMES, mock.drawCount());
+    }
+
+    @Test
+    void renderLoopDoesNotGrowNativeMemory() throws InterruptedException {
+        // Less than one frame arena block of slack; descriptors leaked every frame add up to far more
+        var growth = renderDemo();
+        assertTrue(growth < FrameScheduler.DEFAULT_ARENA_BLOCK_SIZE,
+                "Native memory grew by " + growth + " bytes over " + (FRAMES - SETTLE_FRAMES) + " frames");
+    }
+
+    /**
+     * Sets up the device like the demo does, renders {@link #FRAMES} frames of the demo's scene
+     * - resizing the surface early on - and releases everything again.
+     * @return the growth of native memory from {@link #SETTLE_FRAMES} frames in to the last frame
+     */
+    private static long renderDemo() throws InterruptedException {
+        var instance = wgpuCreateInstance(MemorySegment.NULL);
+        var events = DeviceEventLoop.forInstance(instance);
+        long growth;
+        try(var arena = Arena.ofConfined()){
+            var surface = wgpuInstanceCreateSurface(instance, WGPUSurfaceDescriptor.allocate(arena));
+
+            var options = WGPURequestAdapterOptions.allocate(arena);
+            WGPURequestAdapterOptions.compatibleSurface$set(options, surface);
+            var adapter = events.await(events.requestAdapter(instance, options)).handle();
+            var device = events.await(events.requestDevice(adapter, TriangleScene.deviceDescriptor(adapter, arena))).handle();
+            var queue = wgpuDeviceGetQueue(device);
+
+            var scheduler = new FrameScheduler(adapter, device, surface, 200, 200,
+                    FrameScheduler.DEFAULT_FRAMES_IN_FLIGHT, FrameScheduler.PresentPolicy.LOW_LATENCY, events);
+            var scene = new TriangleScene(device, queue, scheduler.format());
+            var profiler = new GpuProfiler(device, GpuProfiler.DEFAULT_MAX_PASSES,
+                    GpuProfiler.DEFAULT_FRAMES_IN_FLIGHT, 1.0, events, null);
+            assertTrue(profiler.isSupported());
+
+            var settled = 0L;
+            for(int i = 0; i < FRAMES; i++){
+                if(i == RESIZE_FRAME){
+                    scheduler.resize(320, 240);
+                }else if(i == SETTLE_FRAMES){
+                    settled = nativeMemoryUsed();
+                }
+                var frame = scheduler.beginFrame();
+                assertNotNull(frame, "Frame " + i + " was skipped");
+                profiler.beginFrame();
+                scene.render(frame.encoder(), frame.view(), frame.arena(), profiler);
+                profiler.resolve(frame.encoder());
+                scheduler.endFrame(frame);
+                profiler.submitted();
+            }
+            growth = nativeMemoryUsed() - settled;
+
+            profiler.close();
+            scheduler.close();
+            scene.close();
+            wgpuQueueRelease(queue);
+            events.close();
+            wgpuDeviceRelease(device);
+            wgpuAdapterRelease(adapter);
+            wgpuSurfaceRelease(surface);
+        }
+        wgpuInstanceRelease(instance);
+        return growth;
+    }
+
+    /**
+     * @return the native memory allocated through arenas and direct buffers - including the
+     * mock's, which keeps buffer and texture contents off-heap
+     */
+    private static long nativeMemoryUsed(){
+        return ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+                .filter(pool -> pool.getName().equals("direct"))
+                .mapToLong(BufferPoolMXBean::getMemoryUsed)
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("No direct buffer pool"));
+    }
+}